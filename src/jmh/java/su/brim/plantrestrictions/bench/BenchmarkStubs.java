@@ -0,0 +1,188 @@
+package su.brim.plantrestrictions.bench;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.config.ConfigManager;
+import su.brim.plantrestrictions.debug.DebugLogger;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import org.bukkit.Material;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Заглушки Bukkit для бенчмарков.
+ * <p>
+ * {@link PlantRestrictions} нельзя создать вне сервера, поэтому экземпляр
+ * выделяется без вызова конструктора, а нужные поля заполняются рефлексией.
+ * Политика генерируется детерминированно и по размеру близка к боевой:
+ * десятки королевств и полный набор растений.
+ */
+public final class BenchmarkStubs {
+
+    public static final int KINGDOM_COUNT = 48;
+    private static final long SEED = 0x5EEDL;
+
+    private BenchmarkStubs() {
+    }
+
+    /**
+     * Создаёт плагин-заглушку с загруженной конфигурацией и политикой
+     */
+    public static PlantRestrictions createPlugin() {
+        PlantClassifier classifier = PlantClassifier.defaults();
+        return createPlugin(createConfig(classifier.materials(PlantClassifier.PLANTABLE)), classifier);
+    }
+
+    /**
+     * Создаёт плагин-заглушку с заданной конфигурацией, например, скопированной с сервера.
+     * Классификация материалов и территории берутся из неё же; сезоны не применяются.
+     */
+    public static PlantRestrictions createPlugin(YamlConfiguration config) {
+        return createPlugin(config, PlantClassifier.load(config, quietLogger()));
+    }
+
+    private static PlantRestrictions createPlugin(YamlConfiguration config, PlantClassifier classifier) {
+        try {
+            PlantRestrictions plugin = allocate(PlantRestrictions.class);
+            Logger logger = quietLogger();
+
+            DebugLogger debugLogger = new DebugLogger(logger);
+            setField(plugin, "debugLogger", debugLogger);
+
+            ConfigManager configManager = new ConfigManager(plugin);
+            setField(plugin, "configManager", configManager);
+
+            PlantManager plantManager = new PlantManager(plugin);
+            setField(plugin, "plantManager", plantManager);
+            setField(plugin, "identityCache", new IdentityCache(null, plantManager.getKingdomRegistry()));
+            setField(plugin, "metrics", new PlantMetrics(plantManager.getKingdomRegistry()));
+
+            configManager.load(config);
+            plantManager.publish(PlantPolicy.compile(config, config.getBoolean("restrict-teamless", true),
+                    classifier, plantManager.getKingdomRegistry(), logger));
+            setField(plugin, "zoneIndex", createZoneIndex(config, plantManager.getKingdomRegistry(), logger));
+            return plugin;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Не удалось создать заглушку плагина", e);
+        }
+    }
+
+    /**
+     * Все материалы, которые плагин считает растениями
+     */
+    public static Set<Material> plantableMaterials(PlantManager plantManager) {
+        return plantManager.getClassifier().materials(PlantClassifier.PLANTABLE);
+    }
+
+    /**
+     * Конфигурация из встроенного config.yml с королевствами, сгенерированными поверх
+     */
+    public static YamlConfiguration createConfig(Set<Material> plantable) {
+        YamlConfiguration config = new YamlConfiguration();
+        try (InputStream resource = BenchmarkStubs.class.getClassLoader().getResourceAsStream("config.yml")) {
+            if (resource != null) {
+                config.load(new InputStreamReader(resource, StandardCharsets.UTF_8));
+            }
+        } catch (IOException | InvalidConfigurationException e) {
+            throw new IllegalStateException("Не удалось прочитать config.yml", e);
+        }
+
+        List<Material> plants = new ArrayList<>(plantable);
+        Random random = new Random(SEED);
+
+        config.set("kingdoms", null);
+        for (int i = 0; i < KINGDOM_COUNT; i++) {
+            Collections.shuffle(plants, random);
+            int count = 8 + random.nextInt(17);
+            List<String> allowed = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                allowed.add(plants.get(j).name());
+            }
+            config.set("kingdoms." + kingdomId(i) + ".allowed-plants", allowed);
+        }
+        config.set("global-allowed", List.of("WHEAT_SEEDS", "POTATO", "CARROT"));
+        config.set("restrict-teamless", true);
+        return config;
+    }
+
+    public static String kingdomId(int i) {
+        return "kingdom_" + i;
+    }
+
+    /**
+     * Индексы королевств в порядке, в котором они встречаются в событиях:
+     * в основном игроки с королевствами, изредка — без королевства
+     */
+    public static int[] kingdomMix(KingdomRegistry registry, int size) {
+        Random random = new Random(SEED);
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = random.nextInt(20) == 0
+                    ? KingdomRegistry.NO_KINGDOM
+                    : registry.intern(kingdomId(random.nextInt(KINGDOM_COUNT)));
+        }
+        return result;
+    }
+
+    /**
+     * Материалы в порядке, в котором они встречаются в событиях:
+     * половина — растения, остальное — произвольные предметы
+     */
+    public static Material[] materialMix(Set<Material> plantable, int size) {
+        Random random = new Random(SEED);
+        Material[] all = Material.values();
+        Material[] plants = plantable.toArray(new Material[0]);
+        Material[] result = new Material[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = random.nextBoolean() ? plants[random.nextInt(plants.length)] : all[random.nextInt(all.length)];
+        }
+        return result;
+    }
+
+    /**
+     * Индекс территорий только с зонами из конфигурации: назначения из PDC чанков вне сервера недоступны
+     */
+    private static ZoneIndex createZoneIndex(YamlConfiguration config, KingdomRegistry registry, Logger logger)
+            throws ReflectiveOperationException {
+        ZoneIndex zoneIndex = allocate(ZoneIndex.class);
+        setField(zoneIndex, "kingdomRegistry", registry);
+        setField(zoneIndex, "overrides", new ConcurrentHashMap<>());
+        zoneIndex.publish(zoneIndex.compile(config, logger));
+        return zoneIndex;
+    }
+
+    private static Logger quietLogger() {
+        Logger logger = Logger.getLogger("PlantRestrictions-Bench");
+        logger.setLevel(Level.WARNING);
+        return logger;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T allocate(Class<T> type) throws ReflectiveOperationException {
+        Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        Object unsafe = field.get(null);
+        return (T) unsafe.getClass().getMethod("allocateInstance", Class.class).invoke(unsafe, type);
+    }
+
+    private static void setField(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
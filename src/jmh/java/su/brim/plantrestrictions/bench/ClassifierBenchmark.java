@@ -0,0 +1,54 @@
+package su.brim.plantrestrictions.bench;
+
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Таблица классификации материалов {@link PlantClassifier}.
+ * Смесь материалов включает и растения, и произвольные предметы,
+ * чтобы оценить оба исхода предварительных фильтров.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifierBenchmark {
+
+    private static final int MIX_SIZE = 1 << 12;
+
+    private PlantClassifier classifier;
+    private Material[] materials;
+    private Material[] cropBlocks;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        classifier = PlantClassifier.defaults();
+        materials = BenchmarkStubs.materialMix(classifier.materials(PlantClassifier.PLANTABLE), MIX_SIZE);
+        cropBlocks = BenchmarkStubs.materialMix(classifier.materials(PlantClassifier.CROP_BLOCK), MIX_SIZE);
+    }
+
+    private int next() {
+        return cursor = (cursor + 1) & (MIX_SIZE - 1);
+    }
+
+    @Benchmark
+    public boolean isInteractSeed() {
+        return classifier.is(materials[next()], PlantClassifier.INTERACT_SEED);
+    }
+
+    @Benchmark
+    public boolean isVillagerPlantable() {
+        return classifier.is(materials[next()], PlantClassifier.VILLAGER_PLANTABLE);
+    }
+
+    @Benchmark
+    public Material cropBlockToSeed() {
+        return classifier.seedOf(cropBlocks[next()]);
+    }
+}
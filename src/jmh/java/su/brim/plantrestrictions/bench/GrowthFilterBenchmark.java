@@ -0,0 +1,81 @@
+package su.brim.plantrestrictions.bench;
+
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Предварительный фильтр {@link org.bukkit.event.block.BlockGrowEvent}.
+ * <p>
+ * Смесь материалов похожа на новые состояния блоков на случайных тиках:
+ * большинство — посторонние блоки (трава, листва, лёд, медь), меньшинство —
+ * посевы. Таблица классификации сравнивается с {@link EnumSet} и switch.
+ * Режим — среднее время, результат в наносекундах на проверку.
+ * Запуск: {@code mvn -Pjmh test-compile exec:exec -Djmh.args="GrowthFilterBenchmark"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrowthFilterBenchmark {
+
+    private static final int MIX_SIZE = 1 << 12;
+
+    /** Доля растений среди событий роста, в процентах */
+    @Param({"5", "50"})
+    public int plantPercent;
+
+    private PlantClassifier classifier;
+    private Set<Material> growingSet;
+    private Material[] states;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        classifier = PlantClassifier.defaults();
+        growingSet = classifier.materials(PlantClassifier.GROWING);
+
+        Material[] plants = growingSet.toArray(new Material[0]);
+        Material[] other = {Material.GRASS_BLOCK, Material.OAK_LEAVES, Material.ICE, Material.SNOW,
+                Material.VINE, Material.OXIDIZED_COPPER, Material.FIRE, Material.KELP, Material.TWISTING_VINES,
+                Material.POINTED_DRIPSTONE, Material.BUDDING_AMETHYST, Material.FARMLAND};
+        Random random = new Random(0x5EEDL);
+        states = new Material[MIX_SIZE];
+        for (int i = 0; i < MIX_SIZE; i++) {
+            states[i] = random.nextInt(100) < plantPercent
+                    ? plants[random.nextInt(plants.length)]
+                    : other[random.nextInt(other.length)];
+        }
+    }
+
+    private Material next() {
+        return states[cursor = (cursor + 1) & (MIX_SIZE - 1)];
+    }
+
+    @Benchmark
+    public Material classifierTable() {
+        return classifier.plantOf(next());
+    }
+
+    @Benchmark
+    public boolean enumSet() {
+        return growingSet.contains(next());
+    }
+
+    @Benchmark
+    public boolean switchBaseline() {
+        return switch (next()) {
+            case WHEAT, BEETROOTS, POTATOES, CARROTS, TORCHFLOWER_CROP, PITCHER_CROP,
+                 MELON_STEM, PUMPKIN_STEM, MELON, PUMPKIN, COCOA, SWEET_BERRY_BUSH,
+                 CAVE_VINES, CAVE_VINES_PLANT, NETHER_WART, SUGAR_CANE, CACTUS, BAMBOO -> true;
+            default -> false;
+        };
+    }
+}
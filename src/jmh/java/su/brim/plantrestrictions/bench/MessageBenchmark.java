@@ -0,0 +1,44 @@
+package su.brim.plantrestrictions.bench;
+
+import su.brim.plantrestrictions.config.ConfigManager;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Построение сообщений в {@link ConfigManager}.
+ * {@code legacyDeserialize} — прежний способ (разбор строки на каждый запрет), для сравнения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageBenchmark {
+
+    private ConfigManager configManager;
+    private final LegacyComponentSerializer legacy = LegacyComponentSerializer.legacyAmpersand();
+
+    @Setup
+    public void setup() {
+        configManager = BenchmarkStubs.createPlugin().getConfigManager();
+    }
+
+    @Benchmark
+    public Component noPermission() {
+        return configManager.getNoPermissionMessage();
+    }
+
+    @Benchmark
+    public Component listItem() {
+        return configManager.getListItem("Oak Sapling");
+    }
+
+    @Benchmark
+    public Component legacyDeserialize() {
+        return legacy.deserialize("&cУ вашего королевства нет права сажать это растение!");
+    }
+}
@@ -0,0 +1,71 @@
+package su.brim.plantrestrictions.bench;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.manager.PlantManager;
+import org.bukkit.Material;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Путь принятия решения в {@link PlantManager}.
+ * Запуск: {@code mvn -Pjmh test-compile exec:exec -Djmh.args="PlantManagerBenchmark -prof gc"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PlantManagerBenchmark {
+
+    private static final int MIX_SIZE = 1 << 12;
+
+    private PlantManager plantManager;
+    private Material[] materials;
+    private int[] kingdoms;
+    private String[] kingdomIds;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        PlantRestrictions plugin = BenchmarkStubs.createPlugin();
+        plantManager = plugin.getPlantManager();
+
+        Set<Material> plantable = BenchmarkStubs.plantableMaterials(plantManager);
+        materials = BenchmarkStubs.materialMix(plantable, MIX_SIZE);
+        kingdoms = BenchmarkStubs.kingdomMix(plantManager.getKingdomRegistry(), MIX_SIZE);
+
+        kingdomIds = new String[MIX_SIZE];
+        for (int i = 0; i < MIX_SIZE; i++) {
+            kingdomIds[i] = plantManager.getKingdomRegistry().id(kingdoms[i]);
+        }
+    }
+
+    private int next() {
+        return cursor = (cursor + 1) & (MIX_SIZE - 1);
+    }
+
+    @Benchmark
+    public boolean canPlantByIndex() {
+        int i = next();
+        return plantManager.canPlant(kingdoms[i], materials[i]);
+    }
+
+    @Benchmark
+    public boolean canPlantById() {
+        int i = next();
+        return plantManager.canPlant(kingdomIds[i], materials[i]);
+    }
+
+    @Benchmark
+    public boolean isPlantable() {
+        return plantManager.isPlantable(materials[next()]);
+    }
+
+    @Benchmark
+    public Set<Material> getAllowedPlants() {
+        return plantManager.getAllowedPlants(kingdomIds[next()]);
+    }
+}
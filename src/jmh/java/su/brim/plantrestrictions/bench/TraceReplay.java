@@ -0,0 +1,348 @@
+package su.brim.plantrestrictions.bench;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.listener.PlantListener;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.RuleProgram;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.trace.TraceFormat;
+import su.brim.plantrestrictions.trace.TraceReader;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Воспроизведение трассы, записанной {@code /pr trace}, вне сервера.
+ * <p>
+ * События проходят через тот же путь решения, что и на сервере
+ * ({@link PlantListener#decide}, {@link PlantManager}), с политикой из переданного config.yml.
+ * Отчёт: пропускная способность, задержка решения по процентилям и расхождения
+ * с записанными на сервере итогами. Итоги можно сохранить ({@code --out})
+ * и сравнить с итогами другой сборки ({@code --diff}) — так проверяется,
+ * что оптимизация не меняет решений на реальной нагрузке.
+ * <p>
+ * Запуск:
+ * {@code mvn -Pjmh test-compile exec:exec -Dbench.main=su.brim.plantrestrictions.bench.TraceReplay
+ * -Djmh.args="trace.bin.gz --config config.yml [--paced [скорость]] [--out decisions.bin] [--diff other.bin]"}
+ * <p>
+ * Ограничения: лимиты чанков не проверяются (записанный {@link TraceFormat#QUOTA} ожидается
+ * как разрешение правилами), сезоны не применяются, зоны — только из конфигурации
+ * без назначений из PDC, правила с условием биома не воспроизводятся (в трассе нет биома).
+ */
+public final class TraceReplay {
+
+    private static final int WARMUP_PASSES = 3;
+    private static final int DIFF_LIMIT = 20;
+    private static final int DECISIONS_MAGIC = 0x50524443;
+    // Итог события, которое нельзя воспроизвести
+    private static final byte UNREPLAYABLE = -1;
+
+    private final PlantListener listener;
+    private final PlantManager plantManager;
+    private final List<TraceReader.Event> source;
+    private final PlantMetrics.Handler[] handlers;
+    private final Material[] materials;
+    private final int[] kingdoms;
+    private final int[] groups;
+    private final Block[] targets;
+    private final long[] nanos;
+
+    private TraceReplay(PlantRestrictions plugin, List<TraceReader.Event> events) {
+        this.listener = new PlantListener(plugin, null);
+        this.plantManager = plugin.getPlantManager();
+        this.source = events;
+
+        int size = events.size();
+        handlers = new PlantMetrics.Handler[size];
+        materials = new Material[size];
+        kingdoms = new int[size];
+        groups = new int[size];
+        targets = new Block[size];
+        nanos = new long[size];
+
+        Map<String, PlantMetrics.Handler> byLabel = new HashMap<>();
+        for (PlantMetrics.Handler handler : PlantMetrics.Handler.values()) {
+            byLabel.put(handler.label(), handler);
+        }
+        KingdomRegistry registry = plantManager.getKingdomRegistry();
+        Map<TraceReader.World, World> worlds = new HashMap<>();
+        Map<List<Object>, Block> blocks = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            TraceReader.Event event = events.get(i);
+            handlers[i] = byLabel.get(event.handler());
+            materials[i] = Material.getMaterial(event.material());
+            kingdoms[i] = event.kingdom() != null ? registry.intern(event.kingdom()) : KingdomRegistry.NO_KINGDOM;
+            groups[i] = event.groups();
+            nanos[i] = event.nanos();
+            if (event.world() != null) {
+                World world = worlds.computeIfAbsent(event.world(), TraceReplay::world);
+                // Место записано с точностью до чанка: блок ставится в его угол на записанной высоте
+                targets[i] = blocks.computeIfAbsent(List.of(event.world(), event.chunkX(), event.chunkZ(), event.y()),
+                        key -> block(world, event.chunkX() << 4, event.y(), event.chunkZ() << 4));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("TraceReplay <trace.bin.gz> [--config config.yml] [--paced [скорость]]"
+                    + " [--out decisions.bin] [--diff decisions.bin]");
+            System.exit(2);
+        }
+        Path tracePath = Path.of(args[0]);
+        Path configPath = null;
+        Path outPath = null;
+        Path diffPath = null;
+        double speed = 0;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--config" -> configPath = Path.of(args[++i]);
+                case "--out" -> outPath = Path.of(args[++i]);
+                case "--diff" -> diffPath = Path.of(args[++i]);
+                case "--paced" -> speed = i + 1 < args.length && !args[i + 1].startsWith("--")
+                        ? Double.parseDouble(args[++i]) : 1.0;
+                default -> throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+            }
+        }
+
+        List<TraceReader.Event> events;
+        try (TraceReader reader = new TraceReader(tracePath)) {
+            events = reader.readAll();
+        }
+        YamlConfiguration config = configPath != null
+                ? YamlConfiguration.loadConfiguration(configPath.toFile())
+                : BenchmarkStubs.createConfig(PlantClassifier.defaults().materials(PlantClassifier.PLANTABLE));
+        if (configPath == null) {
+            System.out.println("Конфигурация не указана (--config), используются сгенерированные королевства"
+                    + " бенчмарков: расхождения с трассой ожидаемы");
+        }
+        // Счётчики лимитов есть только на сервере
+        config.set("quotas.enabled", false);
+
+        TraceReplay replay = new TraceReplay(BenchmarkStubs.createPlugin(config), events);
+        System.out.printf("Трасса %s: %d событий%n", tracePath.getFileName(), events.size());
+        if (events.isEmpty()) {
+            return;
+        }
+
+        if (speed <= 0) {
+            for (int i = 0; i < WARMUP_PASSES; i++) {
+                replay.run(new long[events.size()], new byte[events.size()], 0);
+            }
+        }
+        long[] latencies = new long[events.size()];
+        byte[] decisions = new byte[events.size()];
+        long start = System.nanoTime();
+        replay.run(latencies, decisions, speed);
+        long wallNanos = System.nanoTime() - start;
+
+        replay.report(latencies, decisions, wallNanos, speed);
+        if (outPath != null) {
+            writeDecisions(outPath, decisions);
+            System.out.println("Итоги записаны в " + outPath);
+        }
+        if (diffPath != null) {
+            replay.diff("Расхождения с " + diffPath.getFileName(), decisions, readDecisions(diffPath));
+        }
+    }
+
+    /**
+     * Один проход по трассе
+     *
+     * @param speed 0 — без пауз, иначе во столько раз быстрее записи
+     */
+    private void run(long[] latencies, byte[] decisions, double speed) {
+        long origin = System.nanoTime();
+        for (int i = 0; i < decisions.length; i++) {
+            if (speed > 0) {
+                long due = origin + (long) (nanos[i] / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            long start = System.nanoTime();
+            decisions[i] = decide(i);
+            latencies[i] = System.nanoTime() - start;
+        }
+    }
+
+    private byte decide(int i) {
+        PlantMetrics.Handler handler = handlers[i];
+        Material material = materials[i];
+        if (handler == null || material == null) {
+            return UNREPLAYABLE;
+        }
+        try {
+            return switch (handler) {
+                case PLACE, INTERACT, DISPENSE -> targets[i] == null ? UNREPLAYABLE
+                        : (byte) listener.decide(handler, kingdoms[i], groups[i], material, targets[i]).ordinal();
+                case VILLAGER_GIVE -> outcome(plantManager.canPlant(kingdoms[i], groups[i],
+                        RuleProgram.UNKNOWN_ZONE, material, null));
+                case VILLAGER_PLANT -> outcome(kingdoms[i] != KingdomRegistry.NO_KINGDOM
+                        ? plantManager.canPlant(kingdoms[i], material)
+                        : plantManager.getPolicy().allowsVillagerCrop(material));
+                default -> UNREPLAYABLE;
+            };
+        } catch (UnsupportedOperationException e) {
+            // Правило обратилось к тому, чего нет в трассе (биом)
+            return UNREPLAYABLE;
+        }
+    }
+
+    private static byte outcome(boolean allowed) {
+        return allowed ? TraceFormat.ALLOWED : TraceFormat.DENIED;
+    }
+
+    private void report(long[] latencies, byte[] decisions, long wallNanos, double speed) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        System.out.printf("%s: %d решений за %.3f с, %,.0f решений/с по времени решений%n",
+                speed > 0 ? String.format("В темпе записи ×%.1f", speed) : "Без пауз",
+                latencies.length, wallNanos / 1e9, latencies.length / (total / 1e9));
+        System.out.printf("Задержка: p50 %d нс, p99 %d нс, p999 %d нс, max %d нс%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                sorted[sorted.length - 1]);
+
+        byte[] recorded = new byte[source.size()];
+        for (int i = 0; i < recorded.length; i++) {
+            byte outcome = source.get(i).outcome();
+            // Лимит чанка не воспроизводится: правила это событие разрешили
+            recorded[i] = outcome == TraceFormat.QUOTA ? TraceFormat.ALLOWED : outcome;
+        }
+        diff("Расхождения с трассой", decisions, recorded);
+    }
+
+    /**
+     * Сравнивает итоги по событиям. Невоспроизводимые события считаются отдельно.
+     */
+    private void diff(String title, byte[] decisions, byte[] other) {
+        if (other.length != decisions.length) {
+            System.out.printf("%s: разное число событий (%d и %d)%n", title, decisions.length, other.length);
+            return;
+        }
+        Map<String, Integer> byHandler = new TreeMap<>();
+        Map<String, Integer> byMaterial = new TreeMap<>();
+        List<String> examples = new ArrayList<>();
+        int skipped = 0;
+        int differences = 0;
+        for (int i = 0; i < decisions.length; i++) {
+            if (decisions[i] == UNREPLAYABLE || other[i] == UNREPLAYABLE) {
+                skipped++;
+                continue;
+            }
+            if (decisions[i] == other[i]) {
+                continue;
+            }
+            differences++;
+            TraceReader.Event event = source.get(i);
+            byHandler.merge(event.handler(), 1, Integer::sum);
+            byMaterial.merge(event.material(), 1, Integer::sum);
+            if (examples.size() < DIFF_LIMIT) {
+                examples.add(String.format("  #%d %s %s королевство=%s группы=%d мир=%s чанк=%d,%d y=%d: %s вместо %s",
+                        i, event.handler(), event.material(), event.kingdom(), event.groups(),
+                        event.world() != null ? event.world().name() : "-", event.chunkX(), event.chunkZ(),
+                        event.y(), name(decisions[i]), name(other[i])));
+            }
+        }
+
+        System.out.printf("%s: %d из %d (не воспроизведено %d)%n", title, differences, decisions.length, skipped);
+        if (differences > 0) {
+            System.out.println("  по обработчикам: " + byHandler);
+            System.out.println("  по материалам: " + byMaterial);
+            examples.forEach(System.out::println);
+        }
+    }
+
+    private static String name(byte outcome) {
+        return outcome >= 0 && outcome < PlantListener.Verdict.values().length
+                ? PlantListener.Verdict.values()[outcome].name()
+                : "?";
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * quantile))];
+    }
+
+    private static void writeDecisions(Path path, byte[] decisions) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(path))))) {
+            out.writeInt(DECISIONS_MAGIC);
+            out.writeInt(decisions.length);
+            out.write(decisions);
+        }
+    }
+
+    private static byte[] readDecisions(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path))))) {
+            if (in.readInt() != DECISIONS_MAGIC) {
+                throw new IOException("Не файл итогов TraceReplay: " + path);
+            }
+            byte[] decisions = new byte[in.readInt()];
+            in.readFully(decisions);
+            return decisions;
+        }
+    }
+
+    /**
+     * Мир-заглушка: имя, измерение и высоты, которые читают условные правила
+     */
+    private static World world(TraceReader.World recorded) {
+        World.Environment environment = World.Environment.values()[recorded.environment()];
+        return stub(World.class, (proxy, method) -> switch (method) {
+            case "getName" -> recorded.name();
+            case "getEnvironment" -> environment;
+            case "getMinHeight" -> environment == World.Environment.NORMAL ? -64 : 0;
+            case "getMaxHeight" -> environment == World.Environment.NORMAL ? 320 : 256;
+            default -> throw new UnsupportedOperationException("World." + method);
+        });
+    }
+
+    /**
+     * Блок-заглушка: мир и координаты. Биом в трассу не пишется, поэтому {@code getBiome} не поддерживается.
+     */
+    private static Block block(World world, int x, int y, int z) {
+        return stub(Block.class, (proxy, method) -> switch (method) {
+            case "getWorld" -> world;
+            case "getX" -> x;
+            case "getY" -> y;
+            case "getZ" -> z;
+            default -> throw new UnsupportedOperationException("Block." + method);
+        });
+    }
+
+    private interface Answer {
+        Object answer(Object proxy, String method);
+    }
+
+    private static <T> T stub(Class<T> type, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(TraceReplay.class.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, methodArgs) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == methodArgs[0];
+                    case "toString" -> type.getSimpleName() + "-stub";
+                    default -> answer.answer(proxy, method.getName());
+                }));
+    }
+}
@@ -1,17 +1,75 @@
 package su.brim.plantrestrictions;
 
 import su.brim.kingdoms.api.KingdomsAPI;
+import su.brim.plantrestrictions.analytics.PlantAnalytics;
+import su.brim.plantrestrictions.api.PlantRestrictionsApi;
+import su.brim.plantrestrictions.api.PlantRestrictionsService;
+import su.brim.plantrestrictions.audit.AuditLog;
+import su.brim.plantrestrictions.cluster.DirectoryTransport;
+import su.brim.plantrestrictions.cluster.PolicySync;
 import su.brim.plantrestrictions.config.ConfigManager;
+import su.brim.plantrestrictions.config.ConfigReloader;
+import su.brim.plantrestrictions.config.ConfigWatcher;
+import su.brim.plantrestrictions.debug.DebugLogger;
+import su.brim.plantrestrictions.listener.AcquisitionListener;
+import su.brim.plantrestrictions.listener.AutomationListener;
+import su.brim.plantrestrictions.listener.CropListener;
+import su.brim.plantrestrictions.listener.DenialNotifier;
+import su.brim.plantrestrictions.listener.GrowthListener;
+import su.brim.plantrestrictions.listener.IdentityListener;
+import su.brim.plantrestrictions.listener.ListenerRegistrar;
 import su.brim.plantrestrictions.listener.PlantListener;
+import su.brim.plantrestrictions.listener.QuotaListener;
+import su.brim.plantrestrictions.listener.TerritoryListener;
+import su.brim.plantrestrictions.listener.VillagerOwnershipListener;
+import su.brim.plantrestrictions.manager.AutomationOwnership;
+import su.brim.plantrestrictions.manager.CropOwnership;
+import su.brim.plantrestrictions.manager.IdentityCache;
 import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.manager.VillagerOwnership;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.metrics.PrometheusExporter;
+import su.brim.plantrestrictions.quota.QuotaCounter;
+import su.brim.plantrestrictions.trace.TraceRecorder;
+import su.brim.plantrestrictions.scan.ScanJob;
+import su.brim.plantrestrictions.season.SeasonSchedule;
+import su.brim.plantrestrictions.season.SeasonScheduler;
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import su.brim.plantrestrictions.util.ConcurrentLongIntMap;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
 public final class PlantRestrictions extends JavaPlugin {
 
     private static PlantRestrictions instance;
     private ConfigManager configManager;
     private PlantManager plantManager;
     private KingdomsAPI kingdomsAPI;
+    private ConfigReloader configReloader;
+    private ConfigWatcher configWatcher;
+    private DebugLogger debugLogger;
+    private IdentityCache identityCache;
+    private PlantMetrics metrics;
+    private PrometheusExporter prometheusExporter;
+    private ListenerRegistrar listenerRegistrar;
+    private VillagerOwnership villagerOwnership;
+    private ZoneIndex zoneIndex;
+    private AutomationOwnership automationOwnership;
+    private CropOwnership cropOwnership;
+    private AuditLog auditLog;
+    private PlantAnalytics analytics;
+    private TraceRecorder traceRecorder;
+    private PolicySync policySync;
+    private QuotaCounter quotaCounter;
+    private SeasonScheduler seasonScheduler;
+    private volatile ScanJob scanJob;
 
     @Override
     public void onEnable() {
@@ -26,27 +84,98 @@ public final class PlantRestrictions extends JavaPlugin {
         }
 
         // Инициализация
+        this.debugLogger = new DebugLogger(getLogger());
+        debugLogger.start();
         this.configManager = new ConfigManager(this);
         this.plantManager = new PlantManager(this);
+        this.identityCache = new IdentityCache(kingdomsAPI, plantManager.getKingdomRegistry());
+        this.metrics = new PlantMetrics(plantManager.getKingdomRegistry());
+        this.auditLog = new AuditLog(getLogger(), plantManager.getKingdomRegistry());
+        this.analytics = new PlantAnalytics(getLogger(), plantManager.getKingdomRegistry());
+        this.traceRecorder = new TraceRecorder(getLogger(), plantManager.getKingdomRegistry());
+        this.policySync = new PolicySync(this, DirectoryTransport::new);
+        this.villagerOwnership = new VillagerOwnership(this, plantManager.getKingdomRegistry());
+        this.zoneIndex = new ZoneIndex(this, plantManager.getKingdomRegistry());
+        this.automationOwnership = new AutomationOwnership(this, plantManager.getKingdomRegistry());
+        this.cropOwnership = new CropOwnership(this, plantManager.getKingdomRegistry());
+        this.quotaCounter = new QuotaCounter(this);
+        this.seasonScheduler = new SeasonScheduler(this);
+        this.configReloader = new ConfigReloader(this);
+        DenialNotifier denialNotifier = new DenialNotifier(this);
+        this.listenerRegistrar = new ListenerRegistrar(this, new PlantListener(this, denialNotifier),
+                new GrowthListener(this, denialNotifier), new QuotaListener(quotaCounter),
+                new CropListener(this, denialNotifier), new AcquisitionListener(this, denialNotifier));
 
         // Загрузка конфигурации
-        configManager.loadConfig();
-        plantManager.loadAllowedPlants();
+        ConfigReloader.Result result = configReloader.reload();
+        if (!result.success()) {
+            getLogger().severe("Ошибка в config.yml: " + result.error());
+            getLogger().severe("Используются настройки по умолчанию");
+            configManager.loadConfig();
+            plantManager.loadAllowedPlants();
+        }
+        applyRuntimeSettings();
+
+        // Регистрация слушателей (обработчики посадки регистрирует applyRuntimeSettings)
+        getServer().getPluginManager().registerEvents(new IdentityListener(identityCache), this);
+        getServer().getPluginManager().registerEvents(denialNotifier, this);
+        getServer().getPluginManager().registerEvents(new VillagerOwnershipListener(this), this);
+        getServer().getPluginManager().registerEvents(new TerritoryListener(zoneIndex), this);
+        getServer().getPluginManager().registerEvents(new AutomationListener(this), this);
 
-        // Регистрация слушателей
-        getServer().getPluginManager().registerEvents(new PlantListener(this), this);
+        // API для других плагинов
+        getServer().getServicesManager().register(PlantRestrictionsApi.class,
+                new PlantRestrictionsService(plantManager, zoneIndex), this, ServicePriority.Normal);
 
         // Регистрация команд
         PlantRestrictionsCommand command = new PlantRestrictionsCommand(this);
         getCommand("plantrestrictions").setExecutor(command);
         getCommand("plantrestrictions").setTabCompleter(command);
 
+        // Прерванная перепись продолжается, когда сервер догрузит миры
+        getServer().getAsyncScheduler().runDelayed(this, task -> resumeScan(), 10L, TimeUnit.SECONDS);
+
         getLogger().info("PlantRestrictions успешно включён!");
         getLogger().info("Загружено " + plantManager.getTotalPlantsCount() + " настроек растений");
     }
 
     @Override
     public void onDisable() {
+        if (configWatcher != null) {
+            configWatcher.stop();
+            configWatcher = null;
+        }
+        if (prometheusExporter != null) {
+            prometheusExporter.stop();
+            prometheusExporter = null;
+        }
+        getServer().getServicesManager().unregisterAll(this);
+        ScanJob job = scanJob;
+        if (job != null) {
+            job.pause();
+            scanJob = null;
+        }
+        if (seasonScheduler != null) {
+            seasonScheduler.stop();
+        }
+        if (listenerRegistrar != null) {
+            listenerRegistrar.unregisterAll();
+        }
+        if (auditLog != null) {
+            auditLog.stop();
+        }
+        if (analytics != null) {
+            analytics.stop();
+        }
+        if (traceRecorder != null) {
+            traceRecorder.stop();
+        }
+        if (policySync != null) {
+            policySync.stop();
+        }
+        if (debugLogger != null) {
+            debugLogger.stop();
+        }
         getLogger().info("PlantRestrictions отключён!");
         instance = null;
     }
@@ -67,14 +196,195 @@ public final class PlantRestrictions extends JavaPlugin {
         return kingdomsAPI;
     }
 
-    public void reload() {
-        configManager.loadConfig();
-        plantManager.loadAllowedPlants();
+    public IdentityCache getIdentityCache() {
+        return identityCache;
     }
 
-    public void debug(String message) {
-        if (configManager.isDebug()) {
-            getLogger().info("[DEBUG] " + message);
+    public DebugLogger getDebugLogger() {
+        return debugLogger;
+    }
+
+    public PlantMetrics getMetrics() {
+        return metrics;
+    }
+
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    public PlantAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    public TraceRecorder getTraceRecorder() {
+        return traceRecorder;
+    }
+
+    public PolicySync getPolicySync() {
+        return policySync;
+    }
+
+    public VillagerOwnership getVillagerOwnership() {
+        return villagerOwnership;
+    }
+
+    public AutomationOwnership getAutomationOwnership() {
+        return automationOwnership;
+    }
+
+    public CropOwnership getCropOwnership() {
+        return cropOwnership;
+    }
+
+    public QuotaCounter getQuotaCounter() {
+        return quotaCounter;
+    }
+
+    public SeasonScheduler getSeasonScheduler() {
+        return seasonScheduler;
+    }
+
+    public ZoneIndex getZoneIndex() {
+        return zoneIndex;
+    }
+
+    /**
+     * Текущая перепись растений или null
+     */
+    public ScanJob getScanJob() {
+        return scanJob;
+    }
+
+    /**
+     * Запускает перепись, если другой сейчас нет
+     *
+     * @return false если перепись уже идёт или приостановлена
+     */
+    public synchronized boolean startScan(ScanJob job) {
+        if (scanJob != null) {
+            return false;
+        }
+        scanJob = job;
+        job.start();
+        return true;
+    }
+
+    /**
+     * Забывает завершённую или отменённую перепись
+     */
+    public synchronized void finishScan(ScanJob job) {
+        if (scanJob == job) {
+            scanJob = null;
         }
     }
+
+    private void resumeScan() {
+        try {
+            ScanJob job = ScanJob.resume(this, configManager.getScanSettings());
+            if (job != null) {
+                startScan(job);
+            }
+        } catch (IOException | RuntimeException e) {
+            getLogger().warning("Не удалось продолжить перепись растений: " + e.getMessage());
+        }
+    }
+
+    public ConfigReloader getConfigReloader() {
+        return configReloader;
+    }
+
+    public ListenerRegistrar getListenerRegistrar() {
+        return listenerRegistrar;
+    }
+
+    /**
+     * Перезагружает конфигурацию в текущем потоке
+     */
+    public ConfigReloader.Result reload() {
+        ConfigReloader.Result result = configReloader.reload();
+        applyRuntimeSettings();
+        return result;
+    }
+
+    /**
+     * Публикует результат перезагрузки: расписание сезонов, политику действующего сезона и зоны.
+     * Выполняется под той же блокировкой, что и смена сезона, поэтому смена сезона
+     * не может вклиниться между выбором политики и её публикацией.
+     */
+    public synchronized void publishReload(SeasonSchedule seasons, PlantPolicy base, PlantPolicy[] variants,
+                                           Map<String, ConcurrentLongIntMap> zones) {
+        zoneIndex.publish(zones);
+        publishPolicy(seasonScheduler.install(seasons, base, variants));
+    }
+
+    /**
+     * Публикует готовый снимок политики вне перезагрузки (смена сезона)
+     * и приводит в соответствие с ним счётчики лимитов, кэш игроков и обработчики событий
+     */
+    public synchronized void publishPolicy(PlantPolicy policy) {
+        plantManager.publish(policy);
+        quotaCounter.apply(policy.getQuotas());
+        identityCache.setPermissionGroups(policy.getRules().getPermissions());
+        identityCache.invalidateAll();
+        listenerRegistrar.apply(policy);
+    }
+
+    /**
+     * Приводит обработчики событий и фоновые задачи в соответствие с текущей конфигурацией
+     */
+    public synchronized void applyRuntimeSettings() {
+        quotaCounter.apply(plantManager.getPolicy().getQuotas());
+        // Набор обработчиков зависит от того, включена ли история посадок
+        analytics.apply(configManager.getAnalyticsSettings());
+        listenerRegistrar.apply(plantManager.getPolicy());
+        updateConfigWatcher();
+        updatePrometheusExporter();
+        auditLog.apply(configManager.getAuditSettings());
+        policySync.apply(configManager.getClusterSettings());
+    }
+
+    /**
+     * Запускает или останавливает отслеживание config.yml согласно настройке auto-reload
+     */
+    private void updateConfigWatcher() {
+        boolean enabled = configManager.isAutoReload();
+        if (configWatcher != null) {
+            if (enabled && configWatcher.getDelayMs() == configManager.getAutoReloadDelayMs()) {
+                return;
+            }
+            configWatcher.stop();
+            configWatcher = null;
+        }
+        if (enabled) {
+            configWatcher = new ConfigWatcher(this, configReloader, configManager.getAutoReloadDelayMs());
+            configWatcher.start();
+        }
+    }
+
+    /**
+     * Запускает или останавливает выгрузку метрик для Prometheus
+     */
+    private void updatePrometheusExporter() {
+        Path file = configManager.getPrometheusFile();
+        long interval = configManager.getPrometheusIntervalSeconds();
+        if (prometheusExporter != null) {
+            if (Objects.equals(prometheusExporter.getFile(), file) && prometheusExporter.getIntervalSeconds() == interval) {
+                return;
+            }
+            prometheusExporter.stop();
+            prometheusExporter = null;
+        }
+        if (file != null && metrics.isEnabled()) {
+            prometheusExporter = new PrometheusExporter(this, file, interval);
+            prometheusExporter.start();
+        }
+    }
+
+    /**
+     * Выводит отладочное сообщение. На горячих путях используйте
+     * {@link DebugLogger} с шаблонами, чтобы не собирать строку впустую.
+     */
+    public void debug(String message) {
+        debugLogger.log("{}", message);
+    }
 }
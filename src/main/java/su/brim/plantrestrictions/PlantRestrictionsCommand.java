@@ -1,25 +1,53 @@
 package su.brim.plantrestrictions;
 
 import su.brim.kingdoms.api.KingdomsAPI;
+import su.brim.plantrestrictions.analytics.PlantAnalytics;
+import su.brim.plantrestrictions.audit.AuditLog;
+import su.brim.plantrestrictions.cluster.PolicySync;
+import su.brim.plantrestrictions.cluster.PolicyTransport;
+import su.brim.plantrestrictions.debug.DebugLogger;
+import su.brim.plantrestrictions.loadtest.LoadTest;
+import su.brim.plantrestrictions.manager.CropOwnership;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.scan.ScanJob;
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import su.brim.plantrestrictions.trace.TraceRecorder;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Material;
+import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
+import org.bukkit.configuration.InvalidConfigurationException;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class PlantRestrictionsCommand implements CommandExecutor, TabCompleter {
 
     private final PlantRestrictions plugin;
+    private final AtomicBoolean loadTestRunning = new AtomicBoolean();
+    private volatile ScheduledTask traceTimer;
 
     public PlantRestrictionsCommand(PlantRestrictions plugin) {
         this.plugin = plugin;
@@ -39,6 +67,15 @@ public class PlantRestrictionsCommand implements CommandExecutor, TabCompleter {
         switch (subCommand) {
             case "reload" -> handleReload(sender);
             case "list" -> handleList(sender, args);
+            case "debug" -> handleDebug(sender, args);
+            case "cache" -> handleCache(sender, args);
+            case "stats" -> handleStats(sender);
+            case "zone" -> handleZone(sender, args);
+            case "scan" -> handleScan(sender, args);
+            case "loadtest" -> handleLoadTest(sender, args);
+            case "analytics" -> handleAnalytics(sender, args);
+            case "trace" -> handleTrace(sender, args);
+            case "cluster" -> handleCluster(sender, args);
             case "help" -> sendHelp(sender);
             default -> {
                 sender.sendMessage(Component.text("Неизвестная команда. Используйте /pr help", NamedTextColor.RED));
@@ -54,8 +91,695 @@ public class PlantRestrictionsCommand implements CommandExecutor, TabCompleter {
             return;
         }
 
-        plugin.reload();
-        sender.sendMessage(plugin.getConfigManager().getReloadSuccessMessage());
+        // Разбор и компиляция выполняются вне потока региона,
+        // текущая политика действует до готовности новой
+        plugin.getConfigReloader().reloadAsync(result -> {
+            if (result.success()) {
+                plugin.applyRuntimeSettings();
+                sender.sendMessage(plugin.getConfigManager().getReloadSuccessMessage());
+                sender.sendMessage(Component.text("(" + result.describeTimings() + ")", NamedTextColor.GRAY));
+            } else {
+                sender.sendMessage(plugin.getConfigManager().getReloadFailedMessage(result.error()));
+            }
+        });
+    }
+
+    private void handleStats(CommandSender sender) {
+        if (!sender.hasPermission("plantrestrictions.debug")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+
+        PlantMetrics metrics = plugin.getMetrics();
+        if (!metrics.isEnabled()) {
+            sender.sendMessage(Component.text("Метрики выключены (metrics.enabled: false)", NamedTextColor.RED));
+            return;
+        }
+
+        sender.sendMessage(Component.text("=== PlantRestrictions: статистика ===", NamedTextColor.GOLD));
+        for (PlantMetrics.Handler handler : PlantMetrics.Handler.values()) {
+            long prefiltered = metrics.getEvents(handler, PlantMetrics.Outcome.PREFILTERED);
+            long bypass = metrics.getEvents(handler, PlantMetrics.Outcome.BYPASS);
+            long allowed = metrics.getEvents(handler, PlantMetrics.Outcome.ALLOWED);
+            long denied = metrics.getEvents(handler, PlantMetrics.Outcome.DENIED);
+            long total = prefiltered + bypass + allowed + denied;
+
+            String latency = "";
+            long p50 = metrics.getLatencyPercentile(handler, 0.50);
+            if (p50 >= 0) {
+                latency = String.format(", p50 < %s, p99 < %s",
+                        formatNanos(p50), formatNanos(metrics.getLatencyPercentile(handler, 0.99)));
+            }
+
+            String inactive = plugin.getListenerRegistrar().isActive(handler) ? "" : " (не зарегистрирован)";
+
+            sender.sendMessage(Component.text(handler.label() + ": ", NamedTextColor.YELLOW)
+                    .append(Component.text(String.format("%d всего, %d отсеяно, %d bypass, %d разрешено, %d запрещено%s%s",
+                            total, prefiltered, bypass, allowed, denied, latency, inactive), NamedTextColor.GRAY)));
+        }
+
+        KingdomRegistry registry = plugin.getPlantManager().getKingdomRegistry();
+        long[] kingdomDenials = metrics.getKingdomDenials();
+        List<String> topKingdoms = topEntries(kingdomDenials, i -> i == 0 ? "без королевства" : registry.id(i - 1));
+        if (!topKingdoms.isEmpty()) {
+            sender.sendMessage(Component.text("Запреты по королевствам: ", NamedTextColor.YELLOW)
+                    .append(Component.text(String.join(", ", topKingdoms), NamedTextColor.GRAY)));
+        }
+
+        Material[] materials = Material.values();
+        List<String> topMaterials = topEntries(metrics.getMaterialDenials(), i -> materials[i].name());
+        if (!topMaterials.isEmpty()) {
+            sender.sendMessage(Component.text("Запреты по материалам: ", NamedTextColor.YELLOW)
+                    .append(Component.text(String.join(", ", topMaterials), NamedTextColor.GRAY)));
+        }
+
+        CropOwnership crops = plugin.getCropOwnership();
+        int chunks = crops.loadedChunks();
+        if (chunks > 0) {
+            sender.sendMessage(Component.text("Владельцы посевов: ", NamedTextColor.YELLOW)
+                    .append(Component.text(String.format("%d посевов в %d чанках, ~%d байт на чанк",
+                            crops.size(), chunks, crops.memoryBytes() / chunks), NamedTextColor.GRAY)));
+        }
+
+        PlantAnalytics analytics = plugin.getAnalytics();
+        if (analytics.isEnabled()) {
+            long lastFlush = analytics.getLastFlushMillis();
+            sender.sendMessage(Component.text("История посадок: ", NamedTextColor.YELLOW)
+                    .append(Component.text(String.format("ожидают записи %d, записано %d, ошибок записи %d%s",
+                            analytics.getPendingRows(), analytics.getFlushedRows(), analytics.getFailedFlushes(),
+                            lastFlush == 0 ? "" : ", последняя запись "
+                                    + (System.currentTimeMillis() - lastFlush) / 1000 + " с назад"),
+                            NamedTextColor.GRAY)));
+        }
+
+        PolicySync sync = plugin.getPolicySync();
+        if (sync.isEnabled()) {
+            sender.sendMessage(Component.text("Общая политика: ", NamedTextColor.YELLOW)
+                    .append(Component.text((sync.getAppliedVersion() == 0 ? "локальный config.yml"
+                            : "версия " + sync.getAppliedVersion())
+                            + (sync.getLastError() != null ? ", ошибка: " + sync.getLastError() : ""),
+                            NamedTextColor.GRAY)));
+        }
+
+        AuditLog auditLog = plugin.getAuditLog();
+        if (auditLog.isEnabled()) {
+            sender.sendMessage(Component.text("Журнал аудита: ", NamedTextColor.YELLOW)
+                    .append(Component.text("записано " + auditLog.getWrittenCount()
+                            + ", отброшено " + auditLog.getDroppedCount(), NamedTextColor.GRAY)));
+        }
+    }
+
+    /**
+     * Синтетическая нагрузка на решения о посадке в нескольких регионах одновременно
+     */
+    private void handleLoadTest(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.debug")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+
+        long decisions;
+        int threads;
+        int slice;
+        try {
+            decisions = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000L;
+            threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+            slice = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        } catch (NumberFormatException e) {
+            sender.sendMessage(Component.text("/pr loadtest [решений] [регионов] [решений за тик]", NamedTextColor.RED));
+            return;
+        }
+        if (decisions < 1 || threads < 1 || threads > 64 || slice < 1) {
+            sender.sendMessage(Component.text("Нужно: решений ≥ 1, регионов от 1 до 64, решений за тик ≥ 1",
+                    NamedTextColor.RED));
+            return;
+        }
+        if (!loadTestRunning.compareAndSet(false, true)) {
+            sender.sendMessage(Component.text("Нагрузочный тест уже идёт", NamedTextColor.RED));
+            return;
+        }
+
+        World world = sender instanceof Player player ? player.getWorld() : Bukkit.getWorlds().get(0);
+        sender.sendMessage(Component.text(String.format("Нагрузочный тест: %d решений в %d регионах мира %s...",
+                decisions, threads, world.getName()), NamedTextColor.YELLOW));
+
+        LoadTest.Options options = new LoadTest.Options(world, decisions, threads, slice);
+        new LoadTest(plugin, plugin.getListenerRegistrar().getPlantListener(), options, result -> {
+            loadTestRunning.set(false);
+            sender.sendMessage(Component.text("=== Нагрузочный тест ===", NamedTextColor.GOLD));
+            sender.sendMessage(Component.text(String.format("%d решений за %.1f с: %,.0f решений/с (%d регионов)",
+                    result.decisions(), result.wallNanos() / 1e9, result.opsPerSecond(), result.threads()),
+                    NamedTextColor.YELLOW));
+            sender.sendMessage(Component.text(String.format("Задержка: p50 < %s, p99 < %s, p999 < %s",
+                    formatNanos(result.p50()), formatNanos(result.p99()), formatNanos(result.p999())),
+                    NamedTextColor.GRAY));
+            sender.sendMessage(Component.text(result.bytesPerDecision() >= 0
+                    ? String.format("Выделено памяти: %.1f байт на решение", result.bytesPerDecision())
+                    : "Выделение памяти: JVM не поддерживает подсчёт", NamedTextColor.GRAY));
+            sender.sendMessage(Component.text(String.format("Разрешено %d, запрещено %d, лимит %d",
+                    result.allowed(), result.denied(), result.quota()), NamedTextColor.GRAY));
+        }).start();
+    }
+
+    /**
+     * Запись трассы событий посадки для воспроизведения вне сервера ({@code TraceReplay}).
+     * Запись ограничена по времени, чтобы забытая трасса не заполнила диск.
+     */
+    private void handleTrace(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.debug")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+
+        TraceRecorder recorder = plugin.getTraceRecorder();
+        String action = args.length > 1 ? args[1].toLowerCase() : "status";
+        switch (action) {
+            case "start" -> {
+                int seconds;
+                try {
+                    seconds = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+                } catch (NumberFormatException e) {
+                    sender.sendMessage(Component.text("/pr trace start [секунд]", NamedTextColor.RED));
+                    return;
+                }
+                if (seconds < 1 || seconds > 86_400) {
+                    sender.sendMessage(Component.text("Длительность записи: от 1 до 86400 секунд", NamedTextColor.RED));
+                    return;
+                }
+                if (recorder.isRecording()) {
+                    sender.sendMessage(Component.text("Трасса уже записывается", NamedTextColor.RED));
+                    return;
+                }
+                // Создание файла — ввод-вывод, поэтому вне потока региона
+                plugin.getServer().getAsyncScheduler().runNow(plugin, task -> startTrace(sender, seconds));
+            }
+            case "stop" -> {
+                if (!recorder.isRecording()) {
+                    sender.sendMessage(Component.text("Трасса не записывается", NamedTextColor.RED));
+                    return;
+                }
+                if (traceTimer != null) {
+                    traceTimer.cancel();
+                }
+                // Остановка ждёт дозаписи файла, поэтому выполняется вне потока региона
+                plugin.getServer().getAsyncScheduler().runNow(plugin, task -> stopTrace(sender));
+            }
+            case "status" -> sender.sendMessage(Component.text(recorder.isRecording()
+                    ? String.format("Трасса записывается: %d событий, отброшено %d",
+                    recorder.getWrittenCount(), recorder.getDroppedCount())
+                    : "Трасса не записывается", NamedTextColor.YELLOW));
+            default -> sender.sendMessage(Component.text("/pr trace [start [секунд]|stop|status]", NamedTextColor.RED));
+        }
+    }
+
+    private void startTrace(CommandSender sender, int seconds) {
+        Path file;
+        try {
+            file = plugin.getTraceRecorder().start(plugin.getDataFolder().toPath().resolve("traces"));
+        } catch (IOException | IllegalStateException e) {
+            sender.sendMessage(Component.text("Не удалось начать запись трассы: " + e.getMessage(),
+                    NamedTextColor.RED));
+            return;
+        }
+        // Трасса получает события только от зарегистрированных обработчиков
+        plugin.getListenerRegistrar().refresh();
+        traceTimer = plugin.getServer().getAsyncScheduler().runDelayed(plugin,
+                task -> stopTrace(sender), seconds, TimeUnit.SECONDS);
+        sender.sendMessage(Component.text(String.format("Запись трассы в %s на %d с", file.getFileName(), seconds),
+                NamedTextColor.GREEN));
+    }
+
+    private void stopTrace(CommandSender sender) {
+        traceTimer = null;
+        TraceRecorder recorder = plugin.getTraceRecorder();
+        Path file = recorder.stop();
+        if (file == null) {
+            return;
+        }
+        plugin.getListenerRegistrar().refresh();
+        sender.sendMessage(Component.text(String.format("Трасса записана в %s: %d событий, отброшено %d",
+                file.getFileName(), recorder.getWrittenCount(), recorder.getDroppedCount()), NamedTextColor.GREEN));
+    }
+
+    /**
+     * Общая политика серверов: публикация, принудительная проверка и версии на серверах.
+     * Обращения к хранилищу выполняются в асинхронном потоке.
+     */
+    private void handleCluster(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.cluster")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+        PolicySync sync = plugin.getPolicySync();
+        if (!sync.isEnabled()) {
+            sender.sendMessage(Component.text("Общая политика выключена (cluster.enabled: false)", NamedTextColor.RED));
+            return;
+        }
+
+        String action = args.length > 1 ? args[1].toLowerCase() : "status";
+        switch (action) {
+            case "publish" -> plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+                long version;
+                try {
+                    version = sync.publish();
+                } catch (IOException | InvalidConfigurationException e) {
+                    sender.sendMessage(Component.text("Политика не опубликована: " + e.getMessage(), NamedTextColor.RED));
+                    return;
+                }
+                sender.sendMessage(Component.text("Опубликована версия " + version
+                        + ", серверы применят её при следующей проверке", NamedTextColor.GREEN));
+                sync.poll();
+            });
+            case "sync" -> plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+                sync.poll();
+                sender.sendMessage(Component.text("Применена версия " + sync.getAppliedVersion()
+                        + (sync.getLastError() != null ? " (ошибка: " + sync.getLastError() + ")" : ""),
+                        sync.getLastError() != null ? NamedTextColor.RED : NamedTextColor.GREEN));
+            });
+            case "status" -> plugin.getServer().getAsyncScheduler().runNow(plugin, task -> sendClusterStatus(sender, sync));
+            default -> sender.sendMessage(Component.text("/pr cluster [status|publish|sync]", NamedTextColor.RED));
+        }
+    }
+
+    private void sendClusterStatus(CommandSender sender, PolicySync sync) {
+        PolicyTransport.Manifest latest;
+        List<PolicyTransport.ShardStatus> shards;
+        try {
+            latest = sync.latest();
+            shards = new ArrayList<>(sync.shards());
+        } catch (IOException e) {
+            sender.sendMessage(Component.text("Хранилище общей политики недоступно: " + e.getMessage(), NamedTextColor.RED));
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        sender.sendMessage(Component.text("=== Общая политика ===", NamedTextColor.GOLD));
+        sender.sendMessage(Component.text(latest == null ? "Ничего не опубликовано"
+                : String.format("Последняя версия %d (%s) от %s, %d с назад", latest.version(),
+                latest.checksum().substring(0, 12), latest.publisher(), (now - latest.publishedAt()) / 1000),
+                NamedTextColor.YELLOW));
+        shards.sort(Comparator.comparing(PolicyTransport.ShardStatus::shard));
+        for (PolicyTransport.ShardStatus shard : shards) {
+            boolean current = latest != null && shard.version() == latest.version();
+            String state = shard.version() == 0 ? "локальный config.yml" : "версия " + shard.version();
+            String seen = (now - shard.seenAt()) / 1000 + " с назад";
+            sender.sendMessage(Component.text(shard.shard() + (shard.shard().equals(sync.getShardId()) ? " (этот)" : "")
+                            + ": ", NamedTextColor.YELLOW)
+                    .append(Component.text(state + ", проверка " + seen
+                                    + (shard.error() != null ? ", ошибка: " + shard.error() : ""),
+                            shard.error() != null ? NamedTextColor.RED
+                                    : current ? NamedTextColor.GREEN : NamedTextColor.GRAY)));
+        }
+    }
+
+    /**
+     * История посадок из базы аналитики. Запрос выполняется в асинхронном потоке,
+     * поток региона игрока не ждёт базу.
+     */
+    private void handleAnalytics(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.analytics")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+        PlantAnalytics analytics = plugin.getAnalytics();
+        if (!analytics.isEnabled()) {
+            sender.sendMessage(Component.text("История посадок выключена (analytics.enabled: false)", NamedTextColor.RED));
+            return;
+        }
+
+        int days;
+        int page;
+        try {
+            days = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+            page = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        } catch (NumberFormatException e) {
+            sender.sendMessage(Component.text("/pr analytics [дней] [kingdom|all] [страница]", NamedTextColor.RED));
+            return;
+        }
+        String kingdom = args.length > 2 && !args[2].equalsIgnoreCase("all") ? args[2] : null;
+
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            PlantAnalytics.Page result;
+            try {
+                result = analytics.query(days, kingdom, page);
+            } catch (SQLException e) {
+                sender.sendMessage(Component.text("Ошибка чтения истории посадок: " + e.getMessage(), NamedTextColor.RED));
+                return;
+            }
+
+            sender.sendMessage(Component.text(String.format("=== Посадки за %d дн.%s (стр. %d/%d) ===", Math.max(1, days),
+                    kingdom != null ? ", " + kingdom : "", result.page(), result.pages()), NamedTextColor.GOLD));
+            if (result.rows().isEmpty()) {
+                sender.sendMessage(Component.text("Нет данных", NamedTextColor.GRAY));
+            }
+            for (PlantAnalytics.Row row : result.rows()) {
+                String owner = row.kingdom().isEmpty() ? "без королевства" : row.kingdom();
+                sender.sendMessage(Component.text(owner + " ", NamedTextColor.YELLOW)
+                        .append(Component.text(row.material() + ": посажено " + row.planted()
+                                + ", запрещено " + row.denied(), NamedTextColor.GRAY)));
+            }
+            int pending = analytics.getPendingRows();
+            if (pending > 0) {
+                sender.sendMessage(Component.text("Ещё не записано в базу: " + pending + " счётчиков",
+                        NamedTextColor.GRAY));
+            }
+        });
+    }
+
+    /**
+     * Пять наибольших ненулевых значений в виде "имя: значение"
+     */
+    private List<String> topEntries(long[] values, IntFunction<String> names) {
+        return IntStream.range(0, values.length)
+                .filter(i -> values[i] > 0)
+                .boxed()
+                .sorted((a, b) -> Long.compare(values[b], values[a]))
+                .limit(5)
+                .map(i -> names.apply(i) + ": " + values[i])
+                .toList();
+    }
+
+    private String formatNanos(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " нс";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1f мкс", nanos / 1_000.0);
+        }
+        return String.format("%.1f мс", nanos / 1_000_000.0);
+    }
+
+    /**
+     * Зона чанка, в котором стоит игрок. Команда игрока в Folia выполняется
+     * в его регионе, поэтому PDC чанка можно менять напрямую.
+     */
+    private void handleZone(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.zone")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+        if (!(sender instanceof Player player)) {
+            sender.sendMessage(Component.text("Команда доступна только игрокам", NamedTextColor.RED));
+            return;
+        }
+
+        ZoneIndex zoneIndex = plugin.getZoneIndex();
+        Chunk chunk = player.getLocation().getChunk();
+        String position = chunk.getWorld().getName() + " " + chunk.getX() + ", " + chunk.getZ();
+        String action = args.length > 1 ? args[1].toLowerCase() : "info";
+
+        switch (action) {
+            case "info" -> {
+                int zone = zoneIndex.zoneAt(chunk.getWorld(), chunk.getX(), chunk.getZ());
+                sender.sendMessage(Component.text("Чанк " + position + ": зона " + zoneIndex.describe(zone),
+                        NamedTextColor.YELLOW));
+                if (!plugin.getPlantManager().getPolicy().usesTerritories()) {
+                    sender.sendMessage(Component.text("Ограничения по зонам выключены (territories.enabled)",
+                            NamedTextColor.GRAY));
+                }
+            }
+            case "set" -> {
+                if (args.length < 3) {
+                    sender.sendMessage(Component.text("/pr zone set <kingdom|neutral|wild>", NamedTextColor.RED));
+                    return;
+                }
+                int zone = zoneIndex.parseZone(args[2].toLowerCase());
+                zoneIndex.assign(chunk, zone);
+                sender.sendMessage(Component.text("Чанк " + position + ": зона " + zoneIndex.describe(zone),
+                        NamedTextColor.GREEN));
+            }
+            case "reset" -> {
+                boolean had = zoneIndex.reset(chunk);
+                int zone = zoneIndex.zoneAt(chunk.getWorld(), chunk.getX(), chunk.getZ());
+                sender.sendMessage(Component.text((had ? "Назначение снято" : "Назначения не было")
+                        + ", зона по конфигурации: " + zoneIndex.describe(zone), NamedTextColor.GREEN));
+            }
+            default -> sender.sendMessage(Component.text("/pr zone <info|set <kingdom|neutral|wild>|reset>",
+                    NamedTextColor.RED));
+        }
+    }
+
+    /**
+     * Перепись растений мира. Ввод-вывод (список чанков, контрольная точка) — в асинхронном потоке.
+     */
+    private void handleScan(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.scan")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+
+        String action = args.length > 1 ? args[1].toLowerCase() : "status";
+        ScanJob job = plugin.getScanJob();
+        switch (action) {
+            case "start" -> startScan(sender, args);
+            case "status" -> {
+                if (job == null) {
+                    sender.sendMessage(Component.text("Перепись не запущена", NamedTextColor.YELLOW));
+                    return;
+                }
+                sendScanStatus(sender, job);
+            }
+            case "pause" -> {
+                if (job == null || !job.isRunning()) {
+                    sender.sendMessage(Component.text("Перепись не идёт", NamedTextColor.RED));
+                    return;
+                }
+                plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+                    job.pause();
+                    sender.sendMessage(Component.text("Перепись приостановлена, прогресс сохранён", NamedTextColor.GREEN));
+                });
+            }
+            case "resume" -> {
+                if (job == null || job.isRunning()) {
+                    sender.sendMessage(Component.text("Нет приостановленной переписи", NamedTextColor.RED));
+                    return;
+                }
+                job.start();
+                sender.sendMessage(Component.text("Перепись продолжена", NamedTextColor.GREEN));
+            }
+            case "cancel" -> {
+                if (job == null) {
+                    sender.sendMessage(Component.text("Перепись не запущена", NamedTextColor.RED));
+                    return;
+                }
+                plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+                    job.cancel();
+                    plugin.finishScan(job);
+                    sender.sendMessage(Component.text("Перепись отменена, отчёт: "
+                            + job.getReportFile().getFileName(), NamedTextColor.GREEN));
+                });
+            }
+            default -> sender.sendMessage(Component.text(
+                    "/pr scan <start <world> [loaded|stored] [kingdom <id>] [remove|convert <MATERIAL>]|status|pause|resume|cancel>",
+                    NamedTextColor.RED));
+        }
+    }
+
+    private void startScan(CommandSender sender, String[] args) {
+        if (plugin.getScanJob() != null) {
+            sender.sendMessage(Component.text("Перепись уже запущена: /pr scan status", NamedTextColor.RED));
+            return;
+        }
+        World world = args.length > 2 ? Bukkit.getWorld(args[2]) : null;
+        if (world == null) {
+            sender.sendMessage(Component.text(
+                    "/pr scan start <world> [loaded|stored] [kingdom <id>] [remove|convert <MATERIAL>]", NamedTextColor.RED));
+            return;
+        }
+
+        ScanJob.Source source = ScanJob.Source.LOADED;
+        String kingdom = null;
+        ScanJob.Remediation remediation = ScanJob.Remediation.NONE;
+        Material convertTo = null;
+        for (int i = 3; i < args.length; i++) {
+            String option = args[i].toLowerCase();
+            switch (option) {
+                case "loaded", "stored" -> source = ScanJob.Source.parse(option);
+                case "kingdom" -> {
+                    if (++i >= args.length) {
+                        sender.sendMessage(Component.text("Укажите королевство: kingdom <id>", NamedTextColor.RED));
+                        return;
+                    }
+                    kingdom = args[i].toLowerCase();
+                }
+                case "remove" -> remediation = ScanJob.Remediation.REMOVE;
+                case "convert" -> {
+                    convertTo = ++i < args.length ? Material.matchMaterial(args[i]) : null;
+                    if (convertTo == null || !convertTo.isBlock()) {
+                        sender.sendMessage(Component.text("Укажите блок: convert <MATERIAL>", NamedTextColor.RED));
+                        return;
+                    }
+                    remediation = ScanJob.Remediation.CONVERT;
+                }
+                default -> {
+                    sender.sendMessage(Component.text("Неизвестный параметр " + args[i], NamedTextColor.RED));
+                    return;
+                }
+            }
+        }
+
+        ScanJob.Options options = new ScanJob.Options(world.getName(), source, kingdom, remediation, convertTo);
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            ScanJob job;
+            try {
+                job = ScanJob.create(plugin, options, plugin.getConfigManager().getScanSettings());
+            } catch (IOException e) {
+                sender.sendMessage(Component.text("Не удалось прочитать чанки мира: " + e.getMessage(),
+                        NamedTextColor.RED));
+                return;
+            }
+            if (!plugin.startScan(job)) {
+                sender.sendMessage(Component.text("Перепись уже запущена: /pr scan status", NamedTextColor.RED));
+                return;
+            }
+            ScanJob.Progress progress = job.progress();
+            sender.sendMessage(Component.text("Перепись мира " + world.getName() + " запущена: "
+                    + progress.totalChunks() + " сохранённых чанков (" + source.label() + ", "
+                    + remediation.label() + ")", NamedTextColor.GREEN));
+        });
+    }
+
+    private void sendScanStatus(CommandSender sender, ScanJob job) {
+        ScanJob.Options options = job.getOptions();
+        ScanJob.Progress progress = job.progress();
+        double percent = progress.totalChunks() == 0 ? 100.0 : progress.completedChunks() * 100.0 / progress.totalChunks();
+
+        sender.sendMessage(Component.text("=== Перепись мира " + options.world() + " ===", NamedTextColor.GOLD));
+        sender.sendMessage(Component.text(String.format("%s: %d/%d чанков (%.1f%%), пропущено %d, %d с",
+                job.isRunning() ? "Идёт" : "Приостановлена", progress.completedChunks(), progress.totalChunks(),
+                percent, progress.skippedChunks(), progress.elapsedMillis() / 1000), NamedTextColor.YELLOW));
+        sender.sendMessage(Component.text("Растений: " + progress.plants() + ", не разрешено: " + progress.disallowed()
+                + ", исправлено: " + progress.removed(), NamedTextColor.GRAY));
+        if (!progress.topMaterials().isEmpty()) {
+            sender.sendMessage(Component.text("Чаще всего: ", NamedTextColor.YELLOW)
+                    .append(Component.text(progress.topMaterials().entrySet().stream()
+                            .map(e -> e.getKey() + ": " + e.getValue())
+                            .collect(Collectors.joining(", ")), NamedTextColor.GRAY)));
+        }
+        if (!progress.zones().isEmpty()) {
+            sender.sendMessage(Component.text("По зонам: ", NamedTextColor.YELLOW)
+                    .append(Component.text(progress.zones().entrySet().stream()
+                            .map(e -> e.getKey() + ": " + e.getValue())
+                            .collect(Collectors.joining(", ")), NamedTextColor.GRAY)));
+        }
+        sender.sendMessage(Component.text("Отчёт: scans/" + job.getReportFile().getFileName(), NamedTextColor.GRAY));
+    }
+
+    private void handleCache(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.debug")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+
+        IdentityCache cache = plugin.getIdentityCache();
+
+        if (args.length > 1 && args[1].equalsIgnoreCase("clear")) {
+            cache.invalidateAll();
+            sender.sendMessage(Component.text("Кэш игроков очищен", NamedTextColor.GREEN));
+            return;
+        }
+
+        long hits = cache.getHits();
+        long misses = cache.getMisses();
+        long total = hits + misses;
+        double hitRate = total == 0 ? 0.0 : hits * 100.0 / total;
+
+        sender.sendMessage(Component.text("=== Кэш игроков ===", NamedTextColor.GOLD));
+        sender.sendMessage(Component.text("Записей: " + cache.size(), NamedTextColor.GRAY));
+        sender.sendMessage(Component.text(String.format("Попаданий: %d, промахов: %d (%.1f%%)", hits, misses, hitRate),
+                NamedTextColor.GRAY));
+        // Каждое попадание экономит запрос королевства, проверку админа и bypass права
+        sender.sendMessage(Component.text("Сэкономлено вызовов KingdomsAddon/прав: " + hits * 3, NamedTextColor.GRAY));
+    }
+
+    private void handleDebug(CommandSender sender, String[] args) {
+        if (!sender.hasPermission("plantrestrictions.debug")) {
+            sender.sendMessage(plugin.getConfigManager().getNoPermissionCmdMessage());
+            return;
+        }
+
+        DebugLogger debugLogger = plugin.getDebugLogger();
+
+        if (args.length < 2) {
+            DebugLogger.Filter filter = debugLogger.getFilter();
+            sender.sendMessage(Component.text("Отладка: " + describeFilter(filter)
+                    + ", отброшено записей: " + debugLogger.getDroppedCount(), NamedTextColor.YELLOW));
+            sender.sendMessage(Component.text("/pr debug <on|off|reset|player <ник>|kingdom <id>|material <MATERIAL>>",
+                    NamedTextColor.GRAY));
+            return;
+        }
+
+        DebugLogger.Filter filter;
+        switch (args[1].toLowerCase()) {
+            case "on" -> filter = DebugLogger.Filter.ALL;
+            case "off" -> filter = null;
+            case "reset" -> {
+                debugLogger.setCommandFilter(null);
+                sender.sendMessage(Component.text("Отладка: по настройке из конфига (" 
+                        + describeFilter(debugLogger.getFilter()) + ")", NamedTextColor.GREEN));
+                return;
+            }
+            case "player" -> {
+                Player target = args.length > 2 ? Bukkit.getPlayerExact(args[2]) : null;
+                if (target == null) {
+                    sender.sendMessage(Component.text("Игрок не найден", NamedTextColor.RED));
+                    return;
+                }
+                filter = new DebugLogger.Filter(target.getUniqueId(), DebugLogger.ANY_KINGDOM, null);
+            }
+            case "kingdom" -> {
+                if (args.length < 3) {
+                    sender.sendMessage(Component.text("Укажите королевство: /pr debug kingdom <id>", NamedTextColor.RED));
+                    return;
+                }
+                String kingdomId = args[2].toLowerCase();
+                KingdomRegistry registry = plugin.getPlantManager().getKingdomRegistry();
+                int kingdom = registry.indexOf(kingdomId);
+                if (kingdom == KingdomRegistry.NO_KINGDOM) {
+                    // Регистрируется только королевство, известное KingdomsAddon
+                    if (plugin.getKingdomsAPI().getAllKingdoms().stream().noneMatch(kingdomId::equalsIgnoreCase)) {
+                        sender.sendMessage(Component.text("Королевство не найдено: " + kingdomId, NamedTextColor.RED));
+                        return;
+                    }
+                    kingdom = registry.intern(kingdomId);
+                }
+                filter = new DebugLogger.Filter(null, kingdom, null);
+            }
+            case "material" -> {
+                Material material = args.length > 2 ? Material.matchMaterial(args[2]) : null;
+                if (material == null) {
+                    sender.sendMessage(Component.text("Неизвестный материал", NamedTextColor.RED));
+                    return;
+                }
+                filter = new DebugLogger.Filter(null, DebugLogger.ANY_KINGDOM, material);
+            }
+            default -> {
+                sender.sendMessage(Component.text("/pr debug <on|off|reset|player <ник>|kingdom <id>|material <MATERIAL>>",
+                        NamedTextColor.RED));
+                return;
+            }
+        }
+
+        // "off" задаётся пустым фильтром, который ничему не соответствует
+        debugLogger.setCommandFilter(filter != null ? filter : DebugLogger.Filter.NONE);
+        sender.sendMessage(Component.text("Отладка: " + describeFilter(debugLogger.getFilter()), NamedTextColor.GREEN));
+    }
+
+    private String describeFilter(DebugLogger.Filter filter) {
+        if (filter == null || filter == DebugLogger.Filter.NONE) {
+            return "выключена";
+        }
+        if (filter.player() != null) {
+            Player target = Bukkit.getPlayer(filter.player());
+            return "игрок " + (target != null ? target.getName() : filter.player());
+        }
+        if (filter.kingdom() != DebugLogger.ANY_KINGDOM) {
+            return "королевство " + plugin.getPlantManager().getKingdomRegistry().id(filter.kingdom());
+        }
+        if (filter.material() != null) {
+            return "материал " + filter.material().name();
+        }
+        return "включена";
     }
 
     private void handleList(CommandSender sender, String[] args) {
@@ -118,6 +842,39 @@ public class PlantRestrictionsCommand implements CommandExecutor, TabCompleter {
             sender.sendMessage(Component.text("/pr reload", NamedTextColor.YELLOW)
                     .append(Component.text(" - Перезагрузить конфигурацию", NamedTextColor.GRAY)));
         }
+
+        if (sender.hasPermission("plantrestrictions.debug")) {
+            sender.sendMessage(Component.text("/pr debug", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Управление отладочным журналом", NamedTextColor.GRAY)));
+            sender.sendMessage(Component.text("/pr cache [clear]", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Статистика кэша игроков", NamedTextColor.GRAY)));
+            sender.sendMessage(Component.text("/pr stats", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Статистика обработчиков событий", NamedTextColor.GRAY)));
+            sender.sendMessage(Component.text("/pr loadtest [решений] [регионов] [решений за тик]", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Нагрузочный тест решений о посадке", NamedTextColor.GRAY)));
+            sender.sendMessage(Component.text("/pr trace [start [секунд]|stop|status]", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Запись трассы событий для воспроизведения", NamedTextColor.GRAY)));
+        }
+
+        if (sender.hasPermission("plantrestrictions.analytics")) {
+            sender.sendMessage(Component.text("/pr analytics [дней] [kingdom|all] [страница]", NamedTextColor.YELLOW)
+                    .append(Component.text(" - История посадок по королевствам", NamedTextColor.GRAY)));
+        }
+
+        if (sender.hasPermission("plantrestrictions.cluster")) {
+            sender.sendMessage(Component.text("/pr cluster [status|publish|sync]", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Общая политика серверов", NamedTextColor.GRAY)));
+        }
+
+        if (sender.hasPermission("plantrestrictions.zone")) {
+            sender.sendMessage(Component.text("/pr zone [set <kingdom>|reset]", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Зона текущего чанка", NamedTextColor.GRAY)));
+        }
+
+        if (sender.hasPermission("plantrestrictions.scan")) {
+            sender.sendMessage(Component.text("/pr scan <start <world>|status|pause|resume|cancel>", NamedTextColor.YELLOW)
+                    .append(Component.text(" - Перепись растений мира", NamedTextColor.GRAY)));
+        }
     }
 
     /**
@@ -158,6 +915,25 @@ public class PlantRestrictionsCommand implements CommandExecutor, TabCompleter {
             if (sender.hasPermission("plantrestrictions.reload")) {
                 subCommands.add("reload");
             }
+            if (sender.hasPermission("plantrestrictions.debug")) {
+                subCommands.add("debug");
+                subCommands.add("cache");
+                subCommands.add("stats");
+                subCommands.add("loadtest");
+                subCommands.add("trace");
+            }
+            if (sender.hasPermission("plantrestrictions.analytics")) {
+                subCommands.add("analytics");
+            }
+            if (sender.hasPermission("plantrestrictions.cluster")) {
+                subCommands.add("cluster");
+            }
+            if (sender.hasPermission("plantrestrictions.zone")) {
+                subCommands.add("zone");
+            }
+            if (sender.hasPermission("plantrestrictions.scan")) {
+                subCommands.add("scan");
+            }
 
             String input = args[0].toLowerCase();
             completions = subCommands.stream()
@@ -169,6 +945,70 @@ public class PlantRestrictionsCommand implements CommandExecutor, TabCompleter {
             String input = args[1].toLowerCase();
             List<String> kingdoms = plugin.getKingdomsAPI().getAllKingdoms();
 
+            completions = kingdoms.stream()
+                    .filter(k -> k.toLowerCase().startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("debug")
+                && sender.hasPermission("plantrestrictions.debug")) {
+            String input = args[1].toLowerCase();
+            completions = List.of("on", "off", "reset", "player", "kingdom", "material").stream()
+                    .filter(s -> s.startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("trace")
+                && sender.hasPermission("plantrestrictions.debug")) {
+            String input = args[1].toLowerCase();
+            completions = List.of("start", "stop", "status").stream()
+                    .filter(s -> s.startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("cluster")
+                && sender.hasPermission("plantrestrictions.cluster")) {
+            String input = args[1].toLowerCase();
+            completions = List.of("status", "publish", "sync").stream()
+                    .filter(s -> s.startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("zone")
+                && sender.hasPermission("plantrestrictions.zone")) {
+            String input = args[1].toLowerCase();
+            completions = List.of("info", "set", "reset").stream()
+                    .filter(s -> s.startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 2 && args[0].equalsIgnoreCase("scan")
+                && sender.hasPermission("plantrestrictions.scan")) {
+            String input = args[1].toLowerCase();
+            completions = List.of("start", "status", "pause", "resume", "cancel").stream()
+                    .filter(s -> s.startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("scan") && args[1].equalsIgnoreCase("start")
+                && sender.hasPermission("plantrestrictions.scan")) {
+            String input = args[2].toLowerCase();
+            completions = Bukkit.getWorlds().stream()
+                    .map(World::getName)
+                    .filter(w -> w.toLowerCase().startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length > 3 && args[0].equalsIgnoreCase("scan") && args[1].equalsIgnoreCase("start")
+                && sender.hasPermission("plantrestrictions.scan")) {
+            String input = args[args.length - 1].toLowerCase();
+            String previous = args[args.length - 2].toLowerCase();
+            List<String> options = previous.equals("kingdom") ? plugin.getKingdomsAPI().getAllKingdoms()
+                    : previous.equals("convert") ? List.of("AIR", "DEAD_BUSH", "SHORT_GRASS")
+                    : List.of("loaded", "stored", "kingdom", "remove", "convert");
+            completions = options.stream()
+                    .filter(o -> o.toLowerCase().startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("zone") && args[1].equalsIgnoreCase("set")
+                && sender.hasPermission("plantrestrictions.zone")) {
+            String input = args[2].toLowerCase();
+            List<String> zones = new ArrayList<>(plugin.getKingdomsAPI().getAllKingdoms());
+            zones.add(ZoneIndex.NEUTRAL_ID);
+            zones.add(ZoneIndex.WILD_ID);
+            completions = zones.stream()
+                    .filter(z -> z.toLowerCase().startsWith(input))
+                    .collect(Collectors.toList());
+        } else if (args.length == 3 && args[0].equalsIgnoreCase("analytics")
+                && sender.hasPermission("plantrestrictions.analytics")) {
+            String input = args[2].toLowerCase();
+            List<String> kingdoms = new ArrayList<>(plugin.getKingdomsAPI().getAllKingdoms());
+            kingdoms.add("all");
             completions = kingdoms.stream()
                     .filter(k -> k.toLowerCase().startsWith(input))
                     .collect(Collectors.toList());
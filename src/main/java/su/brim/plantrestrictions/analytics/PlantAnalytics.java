@@ -0,0 +1,427 @@
+package su.brim.plantrestrictions.analytics;
+
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.util.ConcurrentLongIntMap;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * История посадок по дням: сколько и чего сажают королевства и в каких мирах,
+ * сколько посадок запрещено.
+ * <p>
+ * Потоки регионов только прибавляют единицу к счётчику в {@link ConcurrentLongIntMap}
+ * по упакованному ключу (день, мир, королевство, материал, итог) — под блокировкой
+ * одной полосы, без ввода-вывода и выделения памяти. Единственный поток записи раз в
+ * {@code flush-interval-seconds} переносит накопленные счётчики пачкой в файл SQLite
+ * (драйвер входит в сервер) одной транзакцией и вычитает записанное из памяти,
+ * поэтому посадки, учтённые во время записи, не теряются. Пока база недоступна,
+ * счётчики копятся в памяти; их число — {@link #getPendingRows()}.
+ */
+public class PlantAnalytics {
+
+    private static final Material[] MATERIALS = Material.values();
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long STOP_TIMEOUT_MS = 5000L;
+    private static final int PAGE_SIZE = 10;
+
+    // Ключ: материал (16 бит), итог (1), королевство + 1 (12), мир (8), день от 1970 (20)
+    private static final int OUTCOME_SHIFT = 16;
+    private static final int KINGDOM_SHIFT = 17;
+    private static final int WORLD_SHIFT = 29;
+    private static final int DAY_SHIFT = 37;
+    private static final int MAX_KINGDOMS = (1 << 12) - 1;
+    private static final int MAX_WORLDS = 1 << 8;
+
+    private static final String UPSERT = "INSERT INTO plantings (day, world, kingdom, material, planted, denied) "
+            + "VALUES (?, ?, ?, ?, ?, ?) ON CONFLICT (day, world, kingdom, material) DO UPDATE SET "
+            + "planted = planted + excluded.planted, denied = denied + excluded.denied";
+
+    /**
+     * Настройки из секции {@code analytics}
+     *
+     * @param file файл базы SQLite
+     */
+    public record Settings(boolean enabled, Path file, long flushIntervalSeconds) {
+
+        public static final Settings DISABLED = new Settings(false, null, 0L);
+    }
+
+    /**
+     * Строка результата запроса
+     *
+     * @param kingdom ID королевства, пустая строка — игроки без королевства
+     */
+    public record Row(String kingdom, String material, long planted, long denied) {
+    }
+
+    /**
+     * Страница результата запроса
+     *
+     * @param pages всего страниц
+     */
+    public record Page(List<Row> rows, int page, int pages) {
+    }
+
+    private final Logger logger;
+    private final KingdomRegistry kingdomRegistry;
+    private final ConcurrentLongIntMap pending = new ConcurrentLongIntMap();
+    private final Map<String, Integer> worldIndexes = new ConcurrentHashMap<>();
+    private final String[] worldNames = new String[MAX_WORLDS];
+    private final LongAdder flushedRows = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final AtomicLong lastFlushMillis = new AtomicLong();
+
+    // Смещение часового пояса сервера, обновляется потоком записи (переход на летнее время)
+    private volatile long zoneOffsetMillis = TimeZone.getDefault().getOffset(System.currentTimeMillis());
+    private volatile boolean enabled;
+    private volatile Settings settings = Settings.DISABLED;
+    private Thread writer;
+    private Flusher flusher;
+
+    public PlantAnalytics(Logger logger, KingdomRegistry kingdomRegistry) {
+        this.logger = logger;
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Запускает, перезапускает или останавливает поток записи согласно настройкам
+     */
+    public synchronized void apply(Settings next) {
+        if (next.equals(settings)) {
+            return;
+        }
+        stop();
+        settings = next;
+        if (!next.enabled()) {
+            return;
+        }
+
+        flusher = new Flusher(next);
+        writer = new Thread(flusher, "PlantRestrictions-Analytics");
+        writer.setDaemon(true);
+        writer.start();
+        enabled = true;
+    }
+
+    /**
+     * Останавливает поток записи, записав накопленные счётчики
+     */
+    public synchronized void stop() {
+        enabled = false;
+        settings = Settings.DISABLED;
+        if (writer == null) {
+            return;
+        }
+        // Не прерывание: флаг прерывания остался бы и на последней записи в базу
+        flusher.stopping = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        flusher = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Учитывает решение о посадке игроком. Не блокирует и не выполняет ввод-вывод.
+     *
+     * @param kingdom индекс королевства игрока ({@link KingdomRegistry#NO_KINGDOM} — без королевства)
+     * @param allowed true — растение посажено, false — посадка запрещена
+     */
+    public void record(int kingdom, Material material, World world, boolean allowed) {
+        if (!enabled || kingdom >= MAX_KINGDOMS) {
+            return;
+        }
+        Integer worldIndex = worldIndexes.get(world.getName());
+        if (worldIndex == null) {
+            worldIndex = internWorld(world.getName());
+            if (worldIndex < 0) {
+                return;
+            }
+        }
+        long day = Math.floorDiv(System.currentTimeMillis() + zoneOffsetMillis, DAY_MILLIS);
+        long key = (long) material.ordinal()
+                | (allowed ? 1L : 0L) << OUTCOME_SHIFT
+                | (long) (kingdom + 1) << KINGDOM_SHIFT
+                | (long) worldIndex << WORLD_SHIFT
+                | day << DAY_SHIFT;
+        pending.addTo(key, 1);
+    }
+
+    /**
+     * Ключей (день, мир, королевство, материал, итог), ещё не записанных в базу
+     */
+    public int getPendingRows() {
+        return pending.size();
+    }
+
+    /**
+     * Строк, записанных в базу с момента запуска
+     */
+    public long getFlushedRows() {
+        return flushedRows.sum();
+    }
+
+    /**
+     * Неудачных попыток записи
+     */
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    /**
+     * Время последней успешной записи, 0 — записи ещё не было
+     */
+    public long getLastFlushMillis() {
+        return lastFlushMillis.get();
+    }
+
+    /**
+     * Посадки по королевствам и материалам за последние дни, по убыванию числа посадок.
+     * Открывает своё соединение; вызывать вне потоков регионов.
+     *
+     * @param days    сколько последних дней, включая сегодняшний
+     * @param kingdom ID королевства или null для всех
+     * @param page    номер страницы с 1
+     */
+    public Page query(int days, String kingdom, int page) throws SQLException {
+        Path file = settings.file();
+        if (file == null || !Files.exists(file)) {
+            return new Page(List.of(), 1, 1);
+        }
+        String from = LocalDate.ofEpochDay(Math.floorDiv(System.currentTimeMillis() + zoneOffsetMillis, DAY_MILLIS)
+                - Math.max(1, days) + 1).toString();
+        String filter = kingdom != null ? " AND kingdom = ?" : "";
+
+        try (Connection connection = open(file)) {
+            int total;
+            try (PreparedStatement count = connection.prepareStatement(
+                    "SELECT COUNT(*) FROM (SELECT 1 FROM plantings WHERE day >= ?" + filter
+                            + " GROUP BY kingdom, material)")) {
+                count.setString(1, from);
+                if (kingdom != null) {
+                    count.setString(2, kingdom);
+                }
+                try (ResultSet result = count.executeQuery()) {
+                    total = result.next() ? result.getInt(1) : 0;
+                }
+            }
+            int pages = Math.max(1, (total + PAGE_SIZE - 1) / PAGE_SIZE);
+            int current = Math.min(Math.max(1, page), pages);
+
+            List<Row> rows = new ArrayList<>(PAGE_SIZE);
+            try (PreparedStatement select = connection.prepareStatement(
+                    "SELECT kingdom, material, SUM(planted) AS p, SUM(denied) AS d FROM plantings WHERE day >= ?"
+                            + filter + " GROUP BY kingdom, material ORDER BY p DESC, d DESC LIMIT ? OFFSET ?")) {
+                int index = 1;
+                select.setString(index++, from);
+                if (kingdom != null) {
+                    select.setString(index++, kingdom);
+                }
+                select.setInt(index++, PAGE_SIZE);
+                select.setInt(index, (current - 1) * PAGE_SIZE);
+                try (ResultSet result = select.executeQuery()) {
+                    while (result.next()) {
+                        rows.add(new Row(result.getString(1), result.getString(2), result.getLong(3),
+                                result.getLong(4)));
+                    }
+                }
+            }
+            return new Page(rows, current, pages);
+        }
+    }
+
+    private synchronized int internWorld(String worldName) {
+        Integer existing = worldIndexes.get(worldName);
+        if (existing != null) {
+            return existing;
+        }
+        int index = worldIndexes.size();
+        if (index >= MAX_WORLDS) {
+            return -1;
+        }
+        worldNames[index] = worldName;
+        worldIndexes.put(worldName, index);
+        return index;
+    }
+
+    private static Connection open(Path file) throws SQLException {
+        try {
+            // Драйвер входит в сервер, но загрузчик классов плагина DriverManager не видит без явной загрузки
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("Драйвер SQLite не найден", e);
+        }
+        return DriverManager.getConnection("jdbc:sqlite:" + file.toAbsolutePath());
+    }
+
+    /**
+     * Поток записи: переносит счётчики из памяти в базу
+     */
+    private final class Flusher implements Runnable {
+
+        private final Settings settings;
+        private Connection connection;
+        private long[] keys = new long[256];
+        private int[] counts = new int[256];
+        private int size;
+        private boolean failing;
+        private volatile boolean stopping;
+
+        Flusher(Settings settings) {
+            this.settings = settings;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long intervalNanos = TimeUnit.SECONDS.toNanos(settings.flushIntervalSeconds());
+                long deadline = System.nanoTime() + intervalNanos;
+                while (!stopping) {
+                    // stop() будит поток через unpark; ложные пробуждения не сокращают интервал
+                    LockSupport.parkNanos(this, deadline - System.nanoTime());
+                    if (!stopping && System.nanoTime() - deadline >= 0) {
+                        flush();
+                        deadline = System.nanoTime() + intervalNanos;
+                    }
+                }
+                // Плагин выключается или аналитика перенастроена: записываем остаток
+                flush();
+            } finally {
+                close();
+            }
+        }
+
+        private void flush() {
+            zoneOffsetMillis = TimeZone.getDefault().getOffset(System.currentTimeMillis());
+            size = 0;
+            pending.forEach(this::collect);
+            if (size == 0) {
+                return;
+            }
+
+            try {
+                write();
+            } catch (SQLException e) {
+                failedFlushes.increment();
+                // Счётчики остаются в памяти до следующей попытки
+                if (!failing) {
+                    logger.warning("Ошибка записи аналитики посадок, данные копятся в памяти: " + e.getMessage());
+                    failing = true;
+                }
+                close();
+                return;
+            }
+            if (failing) {
+                logger.info("Запись аналитики посадок восстановлена");
+                failing = false;
+            }
+
+            // Вычитаем записанное: то, что прибавили во время записи, останется до следующего раза
+            for (int i = 0; i < size; i++) {
+                pending.addTo(keys[i], -counts[i]);
+            }
+            flushedRows.add(size);
+            lastFlushMillis.set(System.currentTimeMillis());
+        }
+
+        private void collect(long key, int count) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            keys[size] = key;
+            counts[size] = count;
+            size++;
+        }
+
+        private void write() throws SQLException {
+            if (connection == null) {
+                connection = connect();
+            }
+            boolean committed = false;
+            connection.setAutoCommit(false);
+            try (PreparedStatement upsert = connection.prepareStatement(UPSERT)) {
+                for (int i = 0; i < size; i++) {
+                    long key = keys[i];
+                    boolean allowed = (key >>> OUTCOME_SHIFT & 1L) != 0;
+                    int kingdom = (int) (key >>> KINGDOM_SHIFT & MAX_KINGDOMS) - 1;
+                    upsert.setString(1, LocalDate.ofEpochDay(key >>> DAY_SHIFT).toString());
+                    upsert.setString(2, worldNames[(int) (key >>> WORLD_SHIFT & (MAX_WORLDS - 1))]);
+                    upsert.setString(3, kingdom >= 0 ? kingdomRegistry.id(kingdom) : "");
+                    upsert.setString(4, MATERIALS[(int) (key & 0xFFFF)].name());
+                    upsert.setInt(5, allowed ? counts[i] : 0);
+                    upsert.setInt(6, allowed ? 0 : counts[i]);
+                    upsert.addBatch();
+                }
+                upsert.executeBatch();
+                connection.commit();
+                committed = true;
+            } finally {
+                if (!committed) {
+                    connection.rollback();
+                }
+            }
+        }
+
+        private Connection connect() throws SQLException {
+            try {
+                Files.createDirectories(settings.file().toAbsolutePath().getParent());
+            } catch (IOException e) {
+                throw new SQLException("Не удалось создать папку для " + settings.file(), e);
+            }
+            Connection created = open(settings.file());
+            try (Statement statement = created.createStatement()) {
+                // WAL: запросы /pr analytics читают базу, не мешая записи
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS plantings (day TEXT NOT NULL, world TEXT NOT NULL, "
+                        + "kingdom TEXT NOT NULL, material TEXT NOT NULL, planted INTEGER NOT NULL DEFAULT 0, "
+                        + "denied INTEGER NOT NULL DEFAULT 0, PRIMARY KEY (day, world, kingdom, material))");
+            } catch (SQLException e) {
+                created.close();
+                throw e;
+            }
+            return created;
+        }
+
+        private void close() {
+            if (connection == null) {
+                return;
+            }
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                logger.warning("Ошибка закрытия базы аналитики: " + e.getMessage());
+            }
+            connection = null;
+        }
+    }
+}
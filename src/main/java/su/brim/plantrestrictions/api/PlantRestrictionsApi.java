@@ -0,0 +1,90 @@
+package su.brim.plantrestrictions.api;
+
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.BitSet;
+
+/**
+ * API для других плагинов (магазины, квесты, BreweryX): какие растения может сажать королевство.
+ * <p>
+ * Ответы учитывают списки королевств и режимы зон. Условные правила ({@code rules}) зависят
+ * от прав конкретного игрока и места посадки, поэтому в ответах API не участвуют.
+ * <p>
+ * Регистрируется в {@link org.bukkit.plugin.ServicesManager}:
+ * <pre>{@code
+ * PlantRestrictionsApi api = Bukkit.getServicesManager().load(PlantRestrictionsApi.class);
+ * int kingdom = api.resolveKingdom("north");
+ * boolean allowed = api.canPlant(kingdom, Material.WHEAT_SEEDS);
+ * }</pre>
+ * Все методы можно вызывать из любого потока. Запросы к политике не выделяют память,
+ * кроме методов, возвращающих новый {@link BitSet}. Пакетные запросы отвечают по
+ * одному снимку политики, даже если во время запроса идёт перезагрузка.
+ */
+public interface PlantRestrictionsApi {
+
+    /** Дескриптор игрока без королевства */
+    int NO_KINGDOM = -1;
+
+    /**
+     * Дескриптор королевства для быстрых запросов. Не меняется до перезапуска сервера,
+     * его можно хранить. Королевство, которого нет в конфигурации, может сажать
+     * только глобально разрешённые растения; если плагин его ещё не встречал, оно получает
+     * общий дескриптор неизвестного королевства — такой дескриптор стоит запросить заново
+     * после смены {@link #version()}.
+     *
+     * @param kingdomId ID королевства, null — игрок без королевства
+     * @return дескриптор или {@link #NO_KINGDOM}
+     */
+    int resolveKingdom(String kingdomId);
+
+    /**
+     * ID королевства по дескриптору
+     *
+     * @return ID или null для {@link #NO_KINGDOM}
+     */
+    String kingdomId(int kingdom);
+
+    /**
+     * Может ли королевство сажать материал без учёта зоны.
+     * Материалы, которые не считаются растениями, разрешены всегда.
+     */
+    boolean canPlant(int kingdom, Material material);
+
+    /**
+     * Может ли королевство сажать материал в данной точке с учётом зоны чанка.
+     * Зоны меняются и без перезагрузки ({@code /pr zone}), поэтому результат
+     * нельзя кэшировать по {@link #version()}.
+     */
+    boolean canPlantAt(int kingdom, Material material, World world, int blockX, int blockZ);
+
+    /**
+     * Пакетный запрос: бит {@code i} результата установлен, если разрешён {@code materials[i]}
+     */
+    BitSet canPlant(int kingdom, Material[] materials);
+
+    /**
+     * Пакетный запрос без выделения памяти: результат пишется в {@code result}
+     * (бит {@code i} — {@code materials[i]}), прежнее содержимое стирается
+     */
+    void canPlant(int kingdom, Material[] materials, BitSet result);
+
+    /**
+     * Все разрешённые королевству растения: бит установлен по {@link Material#ordinal()}.
+     * Включает глобально разрешённые растения, но не материалы, которые растениями не считаются.
+     */
+    BitSet allowedPlants(int kingdom);
+
+    /**
+     * Ограничивает ли плагин посадку этого материала вообще
+     */
+    boolean isPlant(Material material);
+
+    /**
+     * Номер версии политики, растёт при каждой перезагрузке конфигурации.
+     * Результаты запросов можно кэшировать, пока версия не изменилась: версия
+     * увеличивается после публикации новой политики, поэтому ответ, полученный
+     * после чтения версии, не старше этой версии.
+     */
+    long version();
+}
@@ -0,0 +1,95 @@
+package su.brim.plantrestrictions.api;
+
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.BitSet;
+
+/**
+ * Реализация {@link PlantRestrictionsApi} поверх снимка {@link PlantPolicy}.
+ * Дескриптор королевства — его индекс в {@link KingdomRegistry}.
+ */
+public final class PlantRestrictionsService implements PlantRestrictionsApi {
+
+    private static final Material[] MATERIALS = Material.values();
+
+    private final PlantManager plantManager;
+    private final KingdomRegistry kingdomRegistry;
+    private final ZoneIndex zoneIndex;
+
+    public PlantRestrictionsService(PlantManager plantManager, ZoneIndex zoneIndex) {
+        this.plantManager = plantManager;
+        this.kingdomRegistry = plantManager.getKingdomRegistry();
+        this.zoneIndex = zoneIndex;
+    }
+
+    @Override
+    public int resolveKingdom(String kingdomId) {
+        return kingdomRegistry.lookup(kingdomId);
+    }
+
+    @Override
+    public String kingdomId(int kingdom) {
+        return kingdom == NO_KINGDOM ? null : kingdomRegistry.id(kingdom);
+    }
+
+    @Override
+    public boolean canPlant(int kingdom, Material material) {
+        return plantManager.getPolicy().canPlant(kingdom, material);
+    }
+
+    @Override
+    public boolean canPlantAt(int kingdom, Material material, World world, int blockX, int blockZ) {
+        PlantPolicy policy = plantManager.getPolicy();
+        if (!policy.usesTerritories()) {
+            return policy.canPlant(kingdom, material);
+        }
+        return policy.canPlant(kingdom, zoneIndex.zoneAt(world, blockX >> 4, blockZ >> 4), material);
+    }
+
+    @Override
+    public BitSet canPlant(int kingdom, Material[] materials) {
+        BitSet result = new BitSet(materials.length);
+        canPlant(kingdom, materials, result);
+        return result;
+    }
+
+    @Override
+    public void canPlant(int kingdom, Material[] materials, BitSet result) {
+        result.clear();
+        PlantPolicy policy = plantManager.getPolicy();
+        for (int i = 0; i < materials.length; i++) {
+            if (policy.canPlant(kingdom, materials[i])) {
+                result.set(i);
+            }
+        }
+    }
+
+    @Override
+    public BitSet allowedPlants(int kingdom) {
+        PlantPolicy policy = plantManager.getPolicy();
+        PlantClassifier classifier = policy.getClassifier();
+        BitSet result = new BitSet(MATERIALS.length);
+        for (Material material : MATERIALS) {
+            if (classifier.is(material, PlantClassifier.PLANTABLE) && policy.canPlant(kingdom, material)) {
+                result.set(material.ordinal());
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isPlant(Material material) {
+        return plantManager.isPlantable(material);
+    }
+
+    @Override
+    public long version() {
+        return plantManager.getVersion();
+    }
+}
@@ -0,0 +1,264 @@
+package su.brim.plantrestrictions.audit;
+
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.util.MpscRingBuffer;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Журнал аудита: запреты посадки, обходы ограничений по bypass праву
+ * и правам админа, запреты посадки жителями и раздатчиками.
+ * <p>
+ * Потоки регионов только создают {@link AuditRecord} и кладут его в
+ * {@link MpscRingBuffer} без блокировок. Единственный поток записи раз в
+ * {@code flush-interval-ms} забирает накопившиеся записи пачкой и дописывает
+ * их в сжатый файл. Переполненный буфер не задерживает игру: запись
+ * отбрасывается и учитывается в {@link #getDroppedCount()}.
+ * <p>
+ * Файлы {@code audit-<время>.tsv.gz} только дописываются: при каждом запуске
+ * и по достижении {@code max-file-size-mb} начинается новый файл, самые старые
+ * сверх {@code max-files} удаляются. Читаются командой {@link AuditReader}.
+ */
+public class AuditLog {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int BATCH = 1024;
+    private static final long STOP_TIMEOUT_MS = 5000L;
+
+    /**
+     * Настройки из секции {@code audit}
+     *
+     * @param directory папка с файлами журнала
+     */
+    public record Settings(boolean enabled, Path directory, int bufferSize, long flushIntervalMs,
+                           long maxFileBytes, int maxFiles) {
+
+        public static final Settings DISABLED = new Settings(false, null, 0, 0L, 0L, 0);
+    }
+
+    private final Logger logger;
+    private final KingdomRegistry kingdomRegistry;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // null — журнал выключен
+    private volatile MpscRingBuffer<AuditRecord> buffer;
+    private Settings settings = Settings.DISABLED;
+    private Thread writer;
+    private BatchWriter batchWriter;
+
+    public AuditLog(Logger logger, KingdomRegistry kingdomRegistry) {
+        this.logger = logger;
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Запускает, перезапускает или останавливает поток записи согласно настройкам
+     */
+    public synchronized void apply(Settings next) {
+        if (next.equals(settings)) {
+            return;
+        }
+        stop();
+        settings = next;
+        if (!next.enabled()) {
+            return;
+        }
+
+        MpscRingBuffer<AuditRecord> created = new MpscRingBuffer<>(next.bufferSize());
+        batchWriter = new BatchWriter(created, next);
+        writer = new Thread(batchWriter, "PlantRestrictions-Audit");
+        writer.setDaemon(true);
+        writer.start();
+        buffer = created;
+    }
+
+    /**
+     * Останавливает поток записи, дописав накопленные записи
+     */
+    public synchronized void stop() {
+        buffer = null;
+        settings = Settings.DISABLED;
+        if (writer == null) {
+            return;
+        }
+        // Не прерывание: оно закрыло бы FileChannel посреди записи, и последняя пачка
+        // вместе с концом сжатого файла потерялась бы
+        batchWriter.stopping = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+        batchWriter = null;
+    }
+
+    public boolean isEnabled() {
+        return buffer != null;
+    }
+
+    /**
+     * Записывает событие. Не блокирует и не выполняет ввод-вывод.
+     *
+     * @param player  игрок или null, если посадку выполнил житель или механизм
+     * @param kingdom индекс королевства игрока или владельца
+     */
+    public void record(AuditRecord.Action action, PlantMetrics.Handler handler, Player player, int kingdom,
+                       Material material, World world, int x, int y, int z) {
+        MpscRingBuffer<AuditRecord> current = buffer;
+        if (current == null) {
+            return;
+        }
+        AuditRecord record = new AuditRecord(System.currentTimeMillis(), action, handler.label(),
+                player != null ? player.getUniqueId() : null, player != null ? player.getName() : null,
+                kingdom >= 0 ? kingdomRegistry.id(kingdom) : null, material.name(),
+                world.getName(), x, y, z);
+        if (!current.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Поток записи: пачками переносит записи из буфера в текущий файл
+     */
+    private final class BatchWriter implements Runnable {
+
+        private final MpscRingBuffer<AuditRecord> source;
+        private final Settings settings;
+        private final StringBuilder line = new StringBuilder(160);
+
+        private FileChannel channel;
+        private Writer out;
+        private volatile boolean stopping;
+
+        BatchWriter(MpscRingBuffer<AuditRecord> source, Settings settings) {
+            this.source = source;
+            this.settings = settings;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long intervalNanos = TimeUnit.MILLISECONDS.toNanos(settings.flushIntervalMs());
+                while (!stopping) {
+                    flushBatches();
+                    // stop() будит поток через unpark
+                    LockSupport.parkNanos(this, intervalNanos);
+                }
+                // Плагин выключается или журнал перенастроен: дописываем остаток
+                flushBatches();
+            } finally {
+                close();
+            }
+        }
+
+        private void flushBatches() {
+            try {
+                int count;
+                do {
+                    count = source.drain(this::write, BATCH);
+                } while (count == BATCH);
+                if (out != null) {
+                    out.flush();
+                    if (channel.size() >= settings.maxFileBytes()) {
+                        close();
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
+                logger.warning("Ошибка записи журнала аудита: " + e.getMessage());
+                close();
+            }
+        }
+
+        private void write(AuditRecord record) {
+            try {
+                if (out == null) {
+                    open();
+                }
+                line.setLength(0);
+                record.appendTo(line);
+                line.append('\n');
+                out.append(line);
+                written.increment();
+            } catch (IOException e) {
+                dropped.increment();
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void open() throws IOException {
+            Path directory = settings.directory();
+            Files.createDirectories(directory);
+            String name = AuditReader.FILE_PREFIX + LocalDateTime.now().format(FILE_TIME);
+            Path file = directory.resolve(name + AuditReader.FILE_SUFFIX);
+            for (int i = 1; Files.exists(file); i++) {
+                file = directory.resolve(name + "-" + i + AuditReader.FILE_SUFFIX);
+            }
+
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            OutputStream stream = Channels.newOutputStream(channel);
+            // syncFlush: после каждой пачки файл читается до последней записанной строки
+            out = new OutputStreamWriter(new GZIPOutputStream(stream, 65536, true), StandardCharsets.UTF_8);
+            deleteOldFiles(directory);
+        }
+
+        private void close() {
+            if (out == null) {
+                return;
+            }
+            try {
+                out.close();
+            } catch (IOException e) {
+                logger.warning("Не удалось закрыть файл журнала аудита: " + e.getMessage());
+            }
+            out = null;
+            channel = null;
+        }
+
+        private void deleteOldFiles(Path directory) throws IOException {
+            List<Path> files = new ArrayList<>();
+            try (Stream<Path> list = Files.list(directory)) {
+                list.filter(AuditReader::isAuditFile).forEach(files::add);
+            }
+            // Имена начинаются с времени создания, поэтому сортировка по имени — по возрасту
+            files.sort(null);
+            for (int i = 0; i < files.size() - settings.maxFiles(); i++) {
+                Files.deleteIfExists(files.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package su.brim.plantrestrictions.audit;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Чтение журнала аудита вне сервера. Не требует Bukkit:
+ * <pre>
+ * java -cp PlantRestrictions.jar su.brim.plantrestrictions.audit.AuditReader plugins/PlantRestrictions/audit \
+ *     --player Steve --since 2025-01-01
+ * </pre>
+ * Фильтры: {@code --player <ник|UUID>}, {@code --kingdom <id|->}, {@code --material <MATERIAL>},
+ * {@code --action <denied|bypass|admin>}, {@code --handler <place|interact|...>}, {@code --world <мир>},
+ * {@code --since} и {@code --until} (ISO-время или дата). Подходящие записи выводятся в stdout
+ * в формате файла, итог — в stderr.
+ * <p>
+ * Файл, в который сервер ещё пишет, читается до последней сброшенной пачки.
+ */
+public final class AuditReader {
+
+    static final String FILE_PREFIX = "audit-";
+    static final String FILE_SUFFIX = ".tsv.gz";
+
+    private AuditReader() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Использование: AuditReader <папка|файл>... [--player <ник|UUID>] [--kingdom <id>]"
+                    + " [--material <MATERIAL>] [--action <denied|bypass|admin>] [--handler <обработчик>]"
+                    + " [--world <мир>] [--since <время>] [--until <время>]");
+            System.exit(2);
+            return;
+        }
+
+        List<Path> paths = new ArrayList<>();
+        Predicate<AuditRecord> filter = record -> true;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                paths.add(Path.of(arg));
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Нет значения для " + arg);
+            }
+            filter = filter.and(parseFilter(arg, args[++i]));
+        }
+
+        long[] matched = {0};
+        Predicate<AuditRecord> finalFilter = filter;
+        long malformed = read(paths, record -> {
+            if (finalFilter.test(record)) {
+                System.out.println(record);
+                matched[0]++;
+            }
+        });
+        System.err.println("Найдено записей: " + matched[0]
+                + (malformed > 0 ? ", пропущено повреждённых строк: " + malformed : ""));
+    }
+
+    /**
+     * Читает записи из файлов и папок в порядке времени создания файлов
+     *
+     * @return количество пропущенных повреждённых строк
+     */
+    public static long read(List<Path> paths, Consumer<AuditRecord> action) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> list = Files.list(path)) {
+                    list.filter(AuditReader::isAuditFile).forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        files.sort(null);
+
+        long malformed = 0;
+        for (Path file : files) {
+            malformed += readFile(file, action);
+        }
+        return malformed;
+    }
+
+    private static long readFile(Path file, Consumer<AuditRecord> action) throws IOException {
+        long malformed = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), 65536), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                AuditRecord record;
+                try {
+                    record = AuditRecord.parse(line);
+                } catch (IllegalArgumentException e) {
+                    malformed++;
+                    continue;
+                }
+                action.accept(record);
+            }
+        } catch (EOFException e) {
+            // Файл ещё дописывается или сервер остановлен аварийно: всё до обрыва уже прочитано
+        }
+        return malformed;
+    }
+
+    private static Predicate<AuditRecord> parseFilter(String option, String value) {
+        return switch (option) {
+            case "--player" -> record -> value.equalsIgnoreCase(record.name())
+                    || (record.player() != null && value.equalsIgnoreCase(record.player().toString()));
+            case "--kingdom" -> AuditRecord.NONE.equals(value)
+                    ? record -> record.kingdom() == null
+                    : record -> value.equalsIgnoreCase(record.kingdom());
+            case "--material" -> record -> value.equalsIgnoreCase(record.material());
+            case "--action" -> {
+                AuditRecord.Action action = AuditRecord.Action.parse(value.toLowerCase());
+                yield record -> record.action() == action;
+            }
+            case "--handler" -> record -> value.equalsIgnoreCase(record.handler());
+            case "--world" -> record -> value.equals(record.world());
+            case "--since" -> {
+                long since = parseTime(value);
+                yield record -> record.time() >= since;
+            }
+            case "--until" -> {
+                long until = parseTime(value);
+                yield record -> record.time() < until;
+            }
+            default -> throw new IllegalArgumentException("Неизвестный фильтр: " + option);
+        };
+    }
+
+    static boolean isAuditFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+
+    private static long parseTime(String value) {
+        try {
+            return Instant.parse(value).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+    }
+}
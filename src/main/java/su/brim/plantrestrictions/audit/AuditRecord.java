@@ -0,0 +1,117 @@
+package su.brim.plantrestrictions.audit;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Запись журнала аудита.
+ * <p>
+ * Хранит только строки и примитивы, чтобы {@link AuditReader} работал
+ * без Bukkit на classpath. В файле запись — одна строка с полями через табуляцию,
+ * отсутствующее значение записывается как {@value #NONE}.
+ *
+ * @param time     время, мс от эпохи
+ * @param action   что произошло
+ * @param handler  обработчик ({@code PlantMetrics.Handler#label()})
+ * @param player   UUID игрока или null (житель, раздатчик)
+ * @param name     ник игрока или null
+ * @param kingdom  ID королевства игрока или владельца, null — без королевства
+ * @param material материал растения
+ */
+public record AuditRecord(long time, Action action, String handler, UUID player, String name, String kingdom,
+                          String material, String world, int x, int y, int z) {
+
+    static final String NONE = "-";
+    private static final int FIELDS = 11;
+
+    /**
+     * Что произошло
+     */
+    public enum Action {
+        /** Посадка запрещена */
+        DENIED("denied"),
+        /** Пропущено по праву plantrestrictions.bypass */
+        BYPASS("bypass"),
+        /** Пропущено как админу KingdomsAddon */
+        ADMIN("admin");
+
+        private final String label;
+
+        Action(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        static Action parse(String label) {
+            for (Action action : values()) {
+                if (action.label.equals(label)) {
+                    return action;
+                }
+            }
+            throw new IllegalArgumentException("Неизвестное действие: " + label);
+        }
+    }
+
+    /**
+     * Дописывает запись строкой в формате файла, без перевода строки
+     */
+    public void appendTo(StringBuilder out) {
+        out.append(Instant.ofEpochMilli(time)).append('\t')
+                .append(action.label()).append('\t')
+                .append(handler).append('\t')
+                .append(player != null ? player.toString() : NONE).append('\t')
+                .append(orNone(name)).append('\t')
+                .append(orNone(kingdom)).append('\t')
+                .append(material).append('\t')
+                .append(orNone(world)).append('\t')
+                .append(x).append('\t')
+                .append(y).append('\t')
+                .append(z);
+    }
+
+    /**
+     * Разбирает строку файла
+     *
+     * @throws IllegalArgumentException если строка повреждена
+     */
+    public static AuditRecord parse(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != FIELDS) {
+            throw new IllegalArgumentException("Ожидается " + FIELDS + " полей, получено " + fields.length);
+        }
+        try {
+            return new AuditRecord(
+                    Instant.parse(fields[0]).toEpochMilli(),
+                    Action.parse(fields[1]),
+                    fields[2],
+                    NONE.equals(fields[3]) ? null : UUID.fromString(fields[3]),
+                    noneToNull(fields[4]),
+                    noneToNull(fields[5]),
+                    fields[6],
+                    noneToNull(fields[7]),
+                    Integer.parseInt(fields[8]),
+                    Integer.parseInt(fields[9]),
+                    Integer.parseInt(fields[10]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Повреждённая запись: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(128);
+        appendTo(out);
+        return out.toString();
+    }
+
+    private static String orNone(String value) {
+        return value == null || value.isEmpty() ? NONE : value;
+    }
+
+    private static String noneToNull(String value) {
+        return NONE.equals(value) ? null : value;
+    }
+}
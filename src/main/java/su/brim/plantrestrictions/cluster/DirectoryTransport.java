@@ -0,0 +1,154 @@
+package su.brim.plantrestrictions.cluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Хранилище снимков в общей папке (сетевой диск, общий том контейнеров).
+ * <pre>
+ * snapshots/&lt;версия&gt;.yml      содержимое снимков, не изменяются после записи
+ * latest.properties           указатель на последний снимок
+ * shards/&lt;сервер&gt;.properties  отчёты серверов
+ * </pre>
+ * Указатель и отчёты заменяются атомарным переименованием временного файла,
+ * поэтому читатель видит либо старую, либо новую версию целиком. Снимок
+ * записывается до указателя и создаётся только если версия ещё свободна.
+ */
+public class DirectoryTransport implements PolicyTransport {
+
+    private static final String LATEST = "latest.properties";
+
+    private final Path directory;
+    private final Path snapshots;
+    private final Path shards;
+
+    public DirectoryTransport(PolicySync.Settings settings) throws IOException {
+        this.directory = settings.directory();
+        this.snapshots = directory.resolve("snapshots");
+        this.shards = directory.resolve("shards");
+        Files.createDirectories(snapshots);
+        Files.createDirectories(shards);
+    }
+
+    @Override
+    public Manifest latest() throws IOException {
+        Properties properties;
+        try {
+            properties = read(directory.resolve(LATEST));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            return new Manifest(Long.parseLong(properties.getProperty("version")),
+                    properties.getProperty("checksum"),
+                    Long.parseLong(properties.getProperty("published-at", "0")),
+                    properties.getProperty("publisher", ""));
+        } catch (NumberFormatException e) {
+            throw new IOException("Повреждён " + LATEST + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public byte[] fetch(long version) throws IOException {
+        return Files.readAllBytes(snapshot(version));
+    }
+
+    @Override
+    public void publish(Manifest manifest, byte[] content) throws IOException {
+        Path temp = Files.createTempFile(snapshots, "publish-", ".tmp");
+        try {
+            Files.write(temp, content);
+            // Без замены: занятая версия означает одновременную публикацию с другого сервера
+            Files.move(temp, snapshot(manifest.version()));
+        } catch (FileAlreadyExistsException e) {
+            throw new IOException("Версия " + manifest.version() + " уже опубликована другим сервером");
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty("version", Long.toString(manifest.version()));
+        properties.setProperty("checksum", manifest.checksum());
+        properties.setProperty("published-at", Long.toString(manifest.publishedAt()));
+        properties.setProperty("publisher", manifest.publisher());
+        replace(directory.resolve(LATEST), properties);
+    }
+
+    @Override
+    public void report(ShardStatus status) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("shard", status.shard());
+        properties.setProperty("version", Long.toString(status.version()));
+        properties.setProperty("checksum", status.checksum() != null ? status.checksum() : "");
+        properties.setProperty("applied-at", Long.toString(status.appliedAt()));
+        properties.setProperty("seen-at", Long.toString(status.seenAt()));
+        if (status.error() != null) {
+            properties.setProperty("error", status.error());
+        }
+        replace(shards.resolve(fileName(status.shard()) + ".properties"), properties);
+    }
+
+    @Override
+    public List<ShardStatus> shards() throws IOException {
+        List<ShardStatus> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(shards, "*.properties")) {
+            for (Path file : files) {
+                try {
+                    Properties properties = read(file);
+                    String checksum = properties.getProperty("checksum", "");
+                    result.add(new ShardStatus(properties.getProperty("shard", file.getFileName().toString()),
+                            Long.parseLong(properties.getProperty("version", "0")),
+                            checksum.isEmpty() ? null : checksum,
+                            Long.parseLong(properties.getProperty("applied-at", "0")),
+                            Long.parseLong(properties.getProperty("seen-at", "0")),
+                            properties.getProperty("error")));
+                } catch (NumberFormatException | NoSuchFileException e) {
+                    // Отчёт повреждён или удалён во время чтения
+                }
+            }
+        }
+        return result;
+    }
+
+    private Path snapshot(long version) {
+        return snapshots.resolve(version + ".yml");
+    }
+
+    private static Properties read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        return properties;
+    }
+
+    private static void replace(Path file, Properties properties) throws IOException {
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp, StandardOpenOption.TRUNCATE_EXISTING)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Имя сервера как имя файла: всё, кроме букв, цифр, точки, дефиса и подчёркивания, заменяется
+     */
+    private static String fileName(String shard) {
+        return shard.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,291 @@
+package su.brim.plantrestrictions.cluster;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.config.ConfigReloader;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Общая политика для нескольких серверов.
+ * <p>
+ * {@code /pr cluster publish} берёт секции политики ({@link #POLICY_SECTIONS}) из
+ * локального config.yml и публикует их в {@link PolicyTransport} следующей версией
+ * с контрольной суммой SHA-256. Каждый сервер раз в {@link Settings#pollIntervalSeconds()}
+ * читает только указатель на последнюю версию; снимок скачивается, когда версия сменилась,
+ * проверяется по контрольной сумме и применяется обычным конвейером {@link ConfigReloader}:
+ * компиляция вне потоков регионов, затем атомарная замена снимка политики.
+ * Версия с тем же содержимым, что уже действует, не компилируется повторно.
+ * <p>
+ * Остальные настройки (сообщения, метрики, аудит) остаются локальными. Если хранилище
+ * недоступно, действует последняя применённая политика, а ошибка попадает в отчёт сервера.
+ */
+public class PolicySync {
+
+    /**
+     * Секции config.yml, из которых складывается политика посадки
+     */
+    public static final List<String> POLICY_SECTIONS = List.of("restrict-teamless", "global-allowed", "kingdoms",
+            "classification", "territories", "rules", "seasons", "growth", "quotas", "crop-protection",
+            "acquisition");
+
+    /**
+     * @param shardId             имя сервера в отчётах
+     * @param directory           общая папка для {@link DirectoryTransport}
+     * @param pollIntervalSeconds как часто проверяется новая версия
+     */
+    public record Settings(boolean enabled, String shardId, Path directory, long pollIntervalSeconds) {
+        public static final Settings DISABLED = new Settings(false, "", null, 10L);
+    }
+
+    private final PlantRestrictions plugin;
+    private final PolicyTransport.Factory transportFactory;
+    // Опрос и публикация выполняются по очереди; apply этой блокировки не берёт
+    private final Object syncLock = new Object();
+
+    private volatile Settings settings = Settings.DISABLED;
+    private volatile PolicyTransport transport;
+    private ScheduledTask pollTask;
+
+    private volatile long appliedVersion;
+    private volatile String appliedChecksum;
+    private volatile long appliedAt;
+    private volatile long rejectedVersion;
+    private volatile String lastError;
+
+    public PolicySync(PlantRestrictions plugin, PolicyTransport.Factory transportFactory) {
+        this.plugin = plugin;
+        this.transportFactory = transportFactory;
+    }
+
+    /**
+     * Применяет настройки: запускает, перезапускает или останавливает опрос хранилища
+     */
+    public synchronized void apply(Settings next) {
+        if (next.equals(settings)) {
+            return;
+        }
+        stop();
+        boolean wasApplied = appliedVersion != 0;
+        settings = next;
+        appliedVersion = 0;
+        appliedChecksum = null;
+        rejectedVersion = 0;
+        lastError = null;
+        if (!next.enabled()) {
+            transport = null;
+            if (wasApplied) {
+                // Снова действует локальный config.yml
+                plugin.getConfigReloader().clearClusterPolicy();
+                plugin.getServer().getAsyncScheduler().runNow(plugin, task -> plugin.reload());
+            }
+            return;
+        }
+
+        transport = null;
+        pollTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> poll(),
+                0L, next.pollIntervalSeconds(), TimeUnit.SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (pollTask != null) {
+            pollTask.cancel();
+            pollTask = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return settings.enabled();
+    }
+
+    public String getShardId() {
+        return settings.shardId();
+    }
+
+    /**
+     * Применённая версия общей политики, 0 — действует локальный config.yml
+     */
+    public long getAppliedVersion() {
+        return appliedVersion;
+    }
+
+    public String getAppliedChecksum() {
+        return appliedChecksum;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Проверяет хранилище и применяет новую версию. Вызывать в асинхронном потоке.
+     */
+    public void poll() {
+        synchronized (syncLock) {
+            Settings current = settings;
+            if (!current.enabled()) {
+                return;
+            }
+            PolicyTransport store = transport;
+            try {
+                if (store == null) {
+                    // Общая папка могла быть ещё не смонтирована при запуске
+                    store = transportFactory.create(current);
+                    transport = store;
+                }
+                PolicyTransport.Manifest latest = store.latest();
+                // Ошибка отклонённой версии остаётся в отчёте до следующей публикации
+                if (latest == null || latest.version() != rejectedVersion) {
+                    if (latest != null && latest.version() != appliedVersion) {
+                        if (latest.checksum().equals(appliedChecksum)) {
+                            // Опубликовано то же содержимое — компилировать нечего
+                            appliedVersion = latest.version();
+                        } else {
+                            install(store, latest);
+                        }
+                    }
+                    if (lastError != null) {
+                        plugin.getLogger().info("Синхронизация общей политики восстановлена");
+                        lastError = null;
+                    }
+                }
+            } catch (IOException e) {
+                if (!Objects.equals(lastError, e.getMessage())) {
+                    plugin.getLogger().warning("Ошибка синхронизации общей политики: " + e.getMessage());
+                }
+                lastError = e.getMessage();
+            }
+            if (store != null) {
+                report(store);
+            }
+        }
+    }
+
+    /**
+     * Публикует секции политики локального config.yml следующей версией.
+     * Если такое содержимое уже опубликовано последним, новая версия не создаётся.
+     * Вызывать в асинхронном потоке.
+     *
+     * @return опубликованная версия
+     * @throws InvalidConfigurationException если config.yml содержит ошибки
+     */
+    public long publish() throws IOException, InvalidConfigurationException {
+        synchronized (syncLock) {
+            PolicyTransport current = transport;
+            if (current == null) {
+                throw new IOException(settings.enabled()
+                        ? "хранилище недоступно" + (lastError != null ? ": " + lastError : "")
+                        : "общая политика выключена (cluster.enabled: false)");
+            }
+            YamlConfiguration policy = new YamlConfiguration();
+            overlay(policy, plugin.getConfigReloader().loadChecked());
+            byte[] content = policy.saveToString().getBytes(StandardCharsets.UTF_8);
+            String checksum = sha256(content);
+
+            PolicyTransport.Manifest latest = current.latest();
+            if (latest != null && latest.checksum().equals(checksum)) {
+                return latest.version();
+            }
+            long version = latest != null ? latest.version() + 1 : 1L;
+            current.publish(new PolicyTransport.Manifest(version, checksum, System.currentTimeMillis(),
+                    settings.shardId()), content);
+            plugin.getLogger().info("Опубликована общая политика версии " + version);
+            return version;
+        }
+    }
+
+    /**
+     * Отчёты всех серверов. Вызывать в асинхронном потоке.
+     */
+    public List<PolicyTransport.ShardStatus> shards() throws IOException {
+        PolicyTransport current = transport;
+        return current != null ? current.shards() : List.of();
+    }
+
+    /**
+     * Последняя опубликованная версия. Вызывать в асинхронном потоке.
+     */
+    public PolicyTransport.Manifest latest() throws IOException {
+        PolicyTransport current = transport;
+        return current != null ? current.latest() : null;
+    }
+
+    /**
+     * Заменяет секции политики в config секциями из policy; отсутствующие в policy секции
+     * удаляются, чтобы действовали значения по умолчанию, одинаковые на всех серверах
+     */
+    public static void overlay(ConfigurationSection config, ConfigurationSection policy) {
+        for (String section : POLICY_SECTIONS) {
+            config.set(section, null);
+            Object value = policy.get(section, null);
+            if (value instanceof ConfigurationSection nested) {
+                config.createSection(section);
+                for (Map.Entry<String, Object> entry : nested.getValues(true).entrySet()) {
+                    if (!(entry.getValue() instanceof ConfigurationSection)) {
+                        config.set(section + "." + entry.getKey(), entry.getValue());
+                    } else if (((ConfigurationSection) entry.getValue()).getKeys(false).isEmpty()) {
+                        config.createSection(section + "." + entry.getKey());
+                    }
+                }
+            } else if (value != null) {
+                config.set(section, value);
+            }
+        }
+    }
+
+    private void install(PolicyTransport current, PolicyTransport.Manifest latest) throws IOException {
+        byte[] content = current.fetch(latest.version());
+        if (!sha256(content).equals(latest.checksum())) {
+            throw new IOException("контрольная сумма версии " + latest.version() + " не совпадает, снимок пропущен");
+        }
+        YamlConfiguration policy = new YamlConfiguration();
+        try {
+            policy.loadFromString(new String(content, StandardCharsets.UTF_8));
+        } catch (InvalidConfigurationException e) {
+            rejectedVersion = latest.version();
+            throw new IOException("версия " + latest.version() + " не является YAML: " + e.getMessage());
+        }
+
+        ConfigReloader.Result result = plugin.getConfigReloader().reload(policy);
+        if (!result.success()) {
+            // Ошибочная версия не перекомпилируется на каждом опросе
+            rejectedVersion = latest.version();
+            throw new IOException("версия " + latest.version() + " отклонена: " + result.error());
+        }
+        appliedVersion = latest.version();
+        appliedChecksum = latest.checksum();
+        appliedAt = System.currentTimeMillis();
+        plugin.applyRuntimeSettings();
+        plugin.getLogger().info("Применена общая политика версии " + latest.version() + " от " + latest.publisher()
+                + " (" + result.describeTimings() + ")");
+    }
+
+    private void report(PolicyTransport current) {
+        try {
+            current.report(new PolicyTransport.ShardStatus(settings.shardId(), appliedVersion, appliedChecksum,
+                    appliedAt, System.currentTimeMillis(), lastError));
+        } catch (IOException e) {
+            // Ошибка хранилища уже учтена опросом
+        }
+    }
+
+    static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
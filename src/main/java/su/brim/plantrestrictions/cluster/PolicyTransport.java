@@ -0,0 +1,73 @@
+package su.brim.plantrestrictions.cluster;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Общее хранилище снимков политики для нескольких серверов.
+ * <p>
+ * Хранит пронумерованные снимки, указатель на последний из них и отчёты серверов
+ * о применённой версии. По умолчанию — общая папка ({@link DirectoryTransport});
+ * {@link PolicySync} получает хранилище через {@link Factory}, поэтому его можно
+ * заменить другой реализацией, например, в памяти.
+ * Методы вызываются из асинхронных потоков.
+ */
+public interface PolicyTransport {
+
+    /**
+     * Описание опубликованного снимка
+     *
+     * @param checksum    SHA-256 содержимого снимка в hex
+     * @param publishedAt время публикации, мс от эпохи
+     * @param publisher   сервер, опубликовавший снимок
+     */
+    record Manifest(long version, String checksum, long publishedAt, String publisher) {
+    }
+
+    /**
+     * Отчёт сервера о применённой политике
+     *
+     * @param version   применённая версия, 0 — действует локальный config.yml
+     * @param appliedAt когда версия применена, мс от эпохи
+     * @param seenAt    последнее обращение сервера к хранилищу, мс от эпохи
+     * @param error     последняя ошибка синхронизации или null
+     */
+    record ShardStatus(String shard, long version, String checksum, long appliedAt, long seenAt, String error) {
+    }
+
+    /**
+     * Создаёт хранилище по настройкам синхронизации
+     */
+    @FunctionalInterface
+    interface Factory {
+        PolicyTransport create(PolicySync.Settings settings) throws IOException;
+    }
+
+    /**
+     * Последний опубликованный снимок
+     *
+     * @return описание или null, если ничего не опубликовано
+     */
+    Manifest latest() throws IOException;
+
+    /**
+     * Содержимое снимка версии
+     */
+    byte[] fetch(long version) throws IOException;
+
+    /**
+     * Публикует снимок и делает его последним. Версия должна быть свободна:
+     * если её одновременно занял другой сервер, публикация отклоняется.
+     */
+    void publish(Manifest manifest, byte[] content) throws IOException;
+
+    /**
+     * Записывает отчёт сервера, заменяя прежний
+     */
+    void report(ShardStatus status) throws IOException;
+
+    /**
+     * Отчёты всех серверов
+     */
+    List<ShardStatus> shards() throws IOException;
+}
@@ -1,28 +1,44 @@
 package su.brim.plantrestrictions.config;
 
 import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.analytics.PlantAnalytics;
+import su.brim.plantrestrictions.audit.AuditLog;
+import su.brim.plantrestrictions.cluster.PolicySync;
+import su.brim.plantrestrictions.scan.ScanJob;
 import net.kyori.adventure.text.Component;
-import net.kyori.adventure.text.minimessage.MiniMessage;
-import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.nio.file.Path;
+
 public class ConfigManager {
 
     private final PlantRestrictions plugin;
-    private final MiniMessage miniMessage = MiniMessage.miniMessage();
-    private final LegacyComponentSerializer legacySerializer = LegacyComponentSerializer.legacyAmpersand();
 
-    private boolean debug;
-    private boolean restrictTeamless;
+    private volatile boolean debug;
+    private volatile boolean restrictTeamless;
 
     // Сообщения
-    private String msgNoPermission;
-    private String msgNoKingdom;
-    private String msgReloadSuccess;
-    private String msgListHeader;
-    private String msgListItem;
-    private String msgListEmpty;
-    private String msgNoPermissionCmd;
+    private volatile Messages messages;
+    private volatile long denialCooldownMs;
+    private volatile boolean denialActionBar;
+
+    // Выгрузка метрик
+    private volatile Path prometheusFile;
+    private volatile long prometheusIntervalSeconds;
+
+    // Журнал аудита
+    private volatile AuditLog.Settings auditSettings = AuditLog.Settings.DISABLED;
+    private volatile PlantAnalytics.Settings analyticsSettings = PlantAnalytics.Settings.DISABLED;
+
+    // Общая политика серверов
+    private volatile PolicySync.Settings clusterSettings = PolicySync.Settings.DISABLED;
+
+    // Перепись растений
+    private volatile ScanJob.Settings scanSettings = new ScanJob.Settings(4, 16, 30L);
+
+    // Автоматическая перезагрузка
+    private boolean autoReload;
+    private long autoReloadDelayMs;
 
     public ConfigManager(PlantRestrictions plugin) {
         this.plugin = plugin;
@@ -31,29 +47,76 @@ public class ConfigManager {
     public void loadConfig() {
         plugin.saveDefaultConfig();
         plugin.reloadConfig();
+        load(plugin.getConfig());
+    }
 
-        FileConfiguration config = plugin.getConfig();
-
+    /**
+     * Применяет уже разобранную конфигурацию
+     */
+    public void load(FileConfiguration config) {
         this.debug = config.getBoolean("debug", false);
         this.restrictTeamless = config.getBoolean("restrict-teamless", true);
 
-        // Загрузка сообщений
-        this.msgNoPermission = config.getString("messages.no-permission", 
-                "&cУ вашего королевства нет права сажать это растение!");
-        this.msgNoKingdom = config.getString("messages.no-kingdom", 
-                "&cВы не принадлежите ни к одному королевству!");
-        this.msgReloadSuccess = config.getString("messages.reload-success", 
-                "&aКонфигурация PlantRestrictions перезагружена!");
-        this.msgListHeader = config.getString("messages.list-header", 
-                "&6=== Разрешённые растения для %kingdom% ===");
-        this.msgListItem = config.getString("messages.list-item", 
-                "&7- &a%plant%");
-        this.msgListEmpty = config.getString("messages.list-empty", 
-                "&7Нет разрешённых растений");
-        this.msgNoPermissionCmd = config.getString("messages.no-permission-cmd", 
-                "&cУ вас нет прав на эту команду!");
-
-        plugin.debug("Конфигурация загружена. Debug: " + debug + ", RestrictTeamless: " + restrictTeamless);
+        // Сообщения собираются в Component один раз за загрузку
+        this.messages = Messages.load(config);
+
+        this.denialCooldownMs = Math.max(0L, config.getLong("denial-notice.cooldown-ms", 1500L));
+        this.denialActionBar = config.getBoolean("denial-notice.action-bar", true);
+
+        plugin.getIdentityCache().setTtlSeconds(config.getLong("identity-cache-ttl-seconds", 30L));
+
+        // Метрики
+        plugin.getMetrics().setEnabled(config.getBoolean("metrics.enabled", true));
+        plugin.getMetrics().setLatencyEnabled(config.getBoolean("metrics.latency", true));
+        String prometheusFile = config.getString("metrics.prometheus-file", "");
+        this.prometheusFile = prometheusFile == null || prometheusFile.isBlank()
+                ? null
+                : plugin.getDataFolder().toPath().resolve(prometheusFile);
+        this.prometheusIntervalSeconds = Math.max(1L, config.getLong("metrics.export-interval-seconds", 15L));
+
+        // Журнал аудита
+        if (config.getBoolean("audit.enabled", false)) {
+            this.auditSettings = new AuditLog.Settings(true,
+                    plugin.getDataFolder().toPath().resolve(config.getString("audit.directory", "audit")),
+                    Math.max(64, config.getInt("audit.buffer-size", 8192)),
+                    Math.max(100L, config.getLong("audit.flush-interval-ms", 1000L)),
+                    Math.max(1L, config.getLong("audit.max-file-size-mb", 16L)) << 20,
+                    Math.max(1, config.getInt("audit.max-files", 20)));
+        } else {
+            this.auditSettings = AuditLog.Settings.DISABLED;
+        }
+
+        // История посадок
+        if (config.getBoolean("analytics.enabled", false)) {
+            this.analyticsSettings = new PlantAnalytics.Settings(true,
+                    plugin.getDataFolder().toPath().resolve(config.getString("analytics.file", "analytics.db")),
+                    Math.max(1L, config.getLong("analytics.flush-interval-seconds", 30L)));
+        } else {
+            this.analyticsSettings = PlantAnalytics.Settings.DISABLED;
+        }
+
+        // Общая политика серверов
+        if (config.getBoolean("cluster.enabled", false)) {
+            String shardId = config.getString("cluster.shard-id", "");
+            this.clusterSettings = new PolicySync.Settings(true,
+                    shardId == null || shardId.isBlank() ? "server-" + plugin.getServer().getPort() : shardId,
+                    plugin.getDataFolder().toPath().resolve(config.getString("cluster.directory", "cluster")),
+                    Math.max(1L, config.getLong("cluster.poll-interval-seconds", 10L)));
+        } else {
+            this.clusterSettings = PolicySync.Settings.DISABLED;
+        }
+
+        // Перепись растений; запущенная перепись продолжает работать со старыми ограничениями
+        this.scanSettings = new ScanJob.Settings(
+                Math.max(1, config.getInt("scan.chunks-per-tick", 4)),
+                Math.max(1, config.getInt("scan.max-in-flight", 16)),
+                Math.max(5L, config.getLong("scan.checkpoint-seconds", 30L)));
+
+        this.autoReload = config.getBoolean("auto-reload", true);
+        this.autoReloadDelayMs = Math.max(50L, config.getLong("auto-reload-delay-ms", 500L));
+
+        plugin.getDebugLogger().setConfigEnabled(debug);
+        plugin.getDebugLogger().log("Конфигурация загружена. Debug: {}, RestrictTeamless: {}", debug, restrictTeamless);
     }
 
     public boolean isDebug() {
@@ -64,32 +127,83 @@ public class ConfigManager {
         return restrictTeamless;
     }
 
+    public boolean isAutoReload() {
+        return autoReload;
+    }
+
+    public long getAutoReloadDelayMs() {
+        return autoReloadDelayMs;
+    }
+
+    /**
+     * Файл для выгрузки метрик Prometheus (null — выгрузка выключена)
+     */
+    public Path getPrometheusFile() {
+        return prometheusFile;
+    }
+
+    public long getPrometheusIntervalSeconds() {
+        return prometheusIntervalSeconds;
+    }
+
+    public AuditLog.Settings getAuditSettings() {
+        return auditSettings;
+    }
+
+    public PlantAnalytics.Settings getAnalyticsSettings() {
+        return analyticsSettings;
+    }
+
+    public PolicySync.Settings getClusterSettings() {
+        return clusterSettings;
+    }
+
+    public ScanJob.Settings getScanSettings() {
+        return scanSettings;
+    }
+
+    public long getDenialCooldownMs() {
+        return denialCooldownMs;
+    }
+
+    public boolean isDenialActionBar() {
+        return denialActionBar;
+    }
+
+    public Messages getMessages() {
+        return messages;
+    }
+
     // Методы для получения сообщений как Component (Adventure API)
     public Component getNoPermissionMessage() {
-        return legacySerializer.deserialize(msgNoPermission);
+        return messages.get(Messages.Key.NO_PERMISSION);
     }
 
     public Component getNoKingdomMessage() {
-        return legacySerializer.deserialize(msgNoKingdom);
+        return messages.get(Messages.Key.NO_KINGDOM);
     }
 
     public Component getReloadSuccessMessage() {
-        return legacySerializer.deserialize(msgReloadSuccess);
+        return messages.get(Messages.Key.RELOAD_SUCCESS);
+    }
+
+    public Component getReloadFailedMessage(String error) {
+        return messages.format(Messages.Template.RELOAD_FAILED, error);
     }
 
     public Component getListHeader(String kingdom) {
-        return legacySerializer.deserialize(msgListHeader.replace("%kingdom%", kingdom));
+        return messages.format(Messages.Template.LIST_HEADER, kingdom);
     }
 
     public Component getListItem(String plant) {
-        return legacySerializer.deserialize(msgListItem.replace("%plant%", plant));
+        return messages.format(Messages.Template.LIST_ITEM, plant);
     }
 
     public Component getListEmptyMessage() {
-        return legacySerializer.deserialize(msgListEmpty);
+        return messages.get(Messages.Key.LIST_EMPTY);
     }
 
     public Component getNoPermissionCmdMessage() {
-        return legacySerializer.deserialize(msgNoPermissionCmd);
+        return messages.get(Messages.Key.NO_PERMISSION_CMD);
     }
 }
@@ -0,0 +1,278 @@
+package su.brim.plantrestrictions.config;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.cluster.PolicySync;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.season.SeasonSchedule;
+import su.brim.plantrestrictions.util.ConcurrentLongIntMap;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Конвейер перезагрузки конфигурации.
+ * <p>
+ * Разбор и проверка {@code config.yml} и компиляция новой политики выполняются
+ * вне потоков регионов. Текущая политика продолжает работать всё это время и
+ * заменяется только после того, как новая полностью готова. Файл с ошибками
+ * отклоняется без изменения действующих настроек.
+ * <p>
+ * Если сервер получает общую политику ({@link PolicySync}), её секции
+ * заменяют соответствующие секции локального файла при каждой перезагрузке.
+ */
+public class ConfigReloader {
+
+    private final PlantRestrictions plugin;
+    private final File configFile;
+    // Секции политики последнего применённого снимка кластера, null — только локальный файл
+    private volatile YamlConfiguration clusterPolicy;
+
+    public ConfigReloader(PlantRestrictions plugin) {
+        this.plugin = plugin;
+        this.configFile = new File(plugin.getDataFolder(), "config.yml");
+    }
+
+    /**
+     * Результат перезагрузки
+     *
+     * @param success    применена ли новая конфигурация
+     * @param error      причина отказа (null при успехе)
+     * @param parseNanos время разбора, проверки и компиляции
+     * @param swapNanos  время публикации нового снимка
+     */
+    public record Result(boolean success, String error, long parseNanos, long swapNanos) {
+
+        static Result failed(String error, long parseNanos) {
+            return new Result(false, error, parseNanos, 0L);
+        }
+
+        /**
+         * Описание времени перезагрузки для логов и сообщений
+         */
+        public String describeTimings() {
+            return String.format("разбор: %.2f мс, замена: %.1f мкс", parseNanos / 1_000_000.0, swapNanos / 1_000.0);
+        }
+    }
+
+    /**
+     * Перезагружает конфигурацию в асинхронном потоке
+     *
+     * @param callback вызывается с результатом в том же асинхронном потоке
+     */
+    public void reloadAsync(Consumer<Result> callback) {
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> callback.accept(reload()));
+    }
+
+    /**
+     * Перезагружает конфигурацию в текущем потоке.
+     * Перезагрузки выполняются строго по очереди.
+     */
+    public synchronized Result reload() {
+        return reload(clusterPolicy);
+    }
+
+    /**
+     * Перезагружает конфигурацию, заменив секции политики секциями снимка кластера.
+     * При успехе снимок применяется и при следующих перезагрузках.
+     *
+     * @param sharedPolicy секции политики или null — только локальный файл
+     */
+    public synchronized Result reload(YamlConfiguration sharedPolicy) {
+        long start = System.nanoTime();
+        YamlConfiguration config;
+        try {
+            config = loadChecked();
+            if (sharedPolicy != null) {
+                PolicySync.overlay(config, sharedPolicy);
+                List<String> errors = validate(config);
+                if (!errors.isEmpty()) {
+                    throw new InvalidConfigurationException("общая политика: " + String.join("; ", errors));
+                }
+            }
+        } catch (InvalidConfigurationException e) {
+            return Result.failed(e.getMessage(), System.nanoTime() - start);
+        }
+
+        PlantPolicy basePolicy = plugin.getPlantManager().compile(config, config.getBoolean("restrict-teamless", true));
+        // Политика каждого сезона компилируется сразу, смена сезона — только замена снимка
+        SeasonSchedule seasons = SeasonSchedule.parse(config, plugin.getLogger());
+        PlantPolicy[] variants = new PlantPolicy[seasons.size()];
+        for (int i = 0; i < variants.length; i++) {
+            YamlConfiguration merged = seasons.overlay(config, i);
+            variants[i] = plugin.getPlantManager().compile(merged, merged.getBoolean("restrict-teamless", true));
+        }
+        Map<String, ConcurrentLongIntMap> zones = plugin.getZoneIndex().compile(config, plugin.getLogger());
+        long parseNanos = System.nanoTime() - start;
+
+        long swapStart = System.nanoTime();
+        plugin.getConfigManager().load(config);
+        plugin.publishReload(seasons, basePolicy, variants, zones);
+        long swapNanos = System.nanoTime() - swapStart;
+        clusterPolicy = sharedPolicy;
+
+        return new Result(true, null, parseNanos, swapNanos);
+    }
+
+    /**
+     * Читает и проверяет локальный config.yml, ничего не применяя
+     *
+     * @throws InvalidConfigurationException если файл не читается или содержит ошибки
+     */
+    public YamlConfiguration loadChecked() throws InvalidConfigurationException {
+        plugin.saveDefaultConfig();
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.load(configFile);
+        } catch (IOException e) {
+            throw new InvalidConfigurationException("не удалось прочитать файл: " + e.getMessage());
+        } catch (InvalidConfigurationException e) {
+            throw new InvalidConfigurationException("неверный YAML: " + firstLine(e.getMessage()));
+        }
+        config.setDefaults(loadDefaults());
+
+        List<String> errors = validate(config);
+        if (!errors.isEmpty()) {
+            throw new InvalidConfigurationException(String.join("; ", errors));
+        }
+        return config;
+    }
+
+    /**
+     * Забывает снимок кластера: следующая перезагрузка применит только локальный файл
+     */
+    public void clearClusterPolicy() {
+        this.clusterPolicy = null;
+    }
+
+    /**
+     * Проверяет структуру конфигурации.
+     * Неизвестные материалы не считаются ошибкой — о них предупреждает компилятор политики.
+     */
+    private List<String> validate(YamlConfiguration config) {
+        List<String> errors = new ArrayList<>();
+
+        checkType(config, "debug", Boolean.class, "true/false", errors);
+        checkType(config, "restrict-teamless", Boolean.class, "true/false", errors);
+        checkType(config, "auto-reload", Boolean.class, "true/false", errors);
+
+        if (config.isSet("global-allowed") && !config.isList("global-allowed")) {
+            errors.add("global-allowed должен быть списком");
+        }
+
+        if (config.isSet("kingdoms")) {
+            ConfigurationSection kingdoms = config.getConfigurationSection("kingdoms");
+            if (kingdoms == null) {
+                errors.add("kingdoms должен быть секцией");
+            } else {
+                for (String kingdomId : kingdoms.getKeys(false)) {
+                    String path = "kingdoms." + kingdomId + ".allowed-plants";
+                    if (!config.isConfigurationSection("kingdoms." + kingdomId)) {
+                        errors.add("kingdoms." + kingdomId + " должен быть секцией");
+                    } else if (config.isSet(path) && !config.isList(path)) {
+                        errors.add(path + " должен быть списком");
+                    }
+                }
+            }
+        }
+
+        if (config.isSet("classification") && !config.isConfigurationSection("classification")) {
+            errors.add("classification должен быть секцией");
+        } else if (config.isSet("classification.crop-blocks")
+                && !config.isConfigurationSection("classification.crop-blocks")) {
+            errors.add("classification.crop-blocks должен быть секцией");
+        }
+
+        if (config.isSet("territories") && !config.isConfigurationSection("territories")) {
+            errors.add("territories должен быть секцией");
+        } else if (config.isSet("territories.worlds") && !config.isConfigurationSection("territories.worlds")) {
+            errors.add("territories.worlds должен быть секцией");
+        }
+        checkType(config, "territories.enabled", Boolean.class, "true/false", errors);
+        checkType(config, "growth.enabled", Boolean.class, "true/false", errors);
+        checkType(config, "audit.enabled", Boolean.class, "true/false", errors);
+        checkType(config, "analytics.enabled", Boolean.class, "true/false", errors);
+        checkType(config, "quotas.enabled", Boolean.class, "true/false", errors);
+        checkType(config, "crop-protection.enabled", Boolean.class, "true/false", errors);
+        checkType(config, "acquisition.enabled", Boolean.class, "true/false", errors);
+        checkType(config, "cluster.enabled", Boolean.class, "true/false", errors);
+        for (String section : new String[]{"quotas.groups", "quotas.limits"}) {
+            if (config.isSet(section) && !config.isConfigurationSection(section)) {
+                errors.add(section + " должен быть секцией");
+            }
+        }
+        if (config.isSet("rules") && !config.isConfigurationSection("rules")) {
+            errors.add("rules должен быть секцией");
+        } else if (config.isConfigurationSection("rules")) {
+            for (String id : config.getConfigurationSection("rules").getKeys(false)) {
+                String path = "rules." + id;
+                if (!config.isConfigurationSection(path)) {
+                    errors.add(path + " должен быть секцией");
+                } else if (config.isSet(path + ".plants") && !config.isList(path + ".plants")) {
+                    errors.add(path + ".plants должен быть списком");
+                }
+            }
+        }
+        checkType(config, "seasons.enabled", Boolean.class, "true/false", errors);
+        if (config.isSet("seasons.variants")) {
+            ConfigurationSection variants = config.getConfigurationSection("seasons.variants");
+            if (variants == null) {
+                errors.add("seasons.variants должен быть секцией");
+            } else {
+                for (String name : variants.getKeys(false)) {
+                    String path = "seasons.variants." + name;
+                    if (!config.isConfigurationSection(path)) {
+                        errors.add(path + " должен быть секцией");
+                    } else if (!config.isString(path + ".from") || !config.isString(path + ".to")) {
+                        errors.add(path + " должен содержать from и to (строки в кавычках)");
+                    } else if (config.isSet(path + ".policy") && !config.isConfigurationSection(path + ".policy")) {
+                        errors.add(path + ".policy должен быть секцией");
+                    }
+                }
+            }
+        }
+        if (config.isSet("growth.worlds") && !config.isConfigurationSection("growth.worlds")) {
+            errors.add("growth.worlds должен быть секцией");
+        }
+
+        return errors;
+    }
+
+    private void checkType(YamlConfiguration config, String path, Class<?> type, String expected, List<String> errors) {
+        Object value = config.get(path, null);
+        if (value != null && !type.isInstance(value)) {
+            errors.add(path + " должен быть " + expected);
+        }
+    }
+
+    private YamlConfiguration loadDefaults() {
+        YamlConfiguration defaults = new YamlConfiguration();
+        InputStream resource = plugin.getResource("config.yml");
+        if (resource == null) {
+            return defaults;
+        }
+        try (InputStreamReader reader = new InputStreamReader(resource, StandardCharsets.UTF_8)) {
+            defaults.load(reader);
+        } catch (IOException | InvalidConfigurationException e) {
+            plugin.getLogger().warning("Не удалось прочитать встроенный config.yml: " + e.getMessage());
+        }
+        return defaults;
+    }
+
+    private static String firstLine(String message) {
+        if (message == null) {
+            return "";
+        }
+        int newline = message.indexOf('\n');
+        return newline < 0 ? message : message.substring(0, newline);
+    }
+}
@@ -0,0 +1,107 @@
+package su.brim.plantrestrictions.config;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Следит за изменениями {@code config.yml} и перезагружает конфигурацию.
+ * <p>
+ * Редакторы часто сохраняют файл в несколько приёмов, поэтому перезагрузка
+ * запускается только после того, как изменения затихли на заданное время.
+ */
+public class ConfigWatcher implements Runnable {
+
+    private static final String CONFIG_FILE = "config.yml";
+
+    private final PlantRestrictions plugin;
+    private final ConfigReloader reloader;
+    private final long delayMs;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public ConfigWatcher(PlantRestrictions plugin, ConfigReloader reloader, long delayMs) {
+        this.plugin = plugin;
+        this.reloader = reloader;
+        this.delayMs = delayMs;
+    }
+
+    /**
+     * Запускает фоновый поток наблюдения
+     */
+    public void start() {
+        Path folder = plugin.getDataFolder().toPath();
+        try {
+            watchService = folder.getFileSystem().newWatchService();
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Не удалось запустить отслеживание config.yml: " + e.getMessage());
+            return;
+        }
+
+        thread = new Thread(this, "PlantRestrictions-ConfigWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Останавливает фоновый поток наблюдения
+     */
+    public void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    public long getDelayMs() {
+        return delayMs;
+    }
+
+    @Override
+    public void run() {
+        boolean pending = false;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = pending
+                        ? watchService.poll(delayMs, TimeUnit.MILLISECONDS)
+                        : watchService.take();
+
+                if (key == null) {
+                    // Изменения затихли — перезагружаем
+                    pending = false;
+                    handleResult(reloader.reload());
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path path && path.getFileName().toString().equals(CONFIG_FILE)) {
+                        pending = true;
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Плагин выключается
+        }
+    }
+
+    private void handleResult(ConfigReloader.Result result) {
+        if (result.success()) {
+            plugin.getLogger().info("config.yml изменён, конфигурация перезагружена (" + result.describeTimings() + ")");
+            // Настройки auto-reload и метрик могли измениться
+            plugin.applyRuntimeSettings();
+        } else {
+            plugin.getLogger().warning("config.yml изменён, но содержит ошибки — изменения не применены: " + result.error());
+        }
+    }
+}
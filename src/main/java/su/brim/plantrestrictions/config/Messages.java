@@ -0,0 +1,157 @@
+package su.brim.plantrestrictions.config;
+
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.*;
+
+/**
+ * Сообщения плагина, собранные в {@link Component} один раз при загрузке конфигурации.
+ * <p>
+ * Поддерживаются legacy-коды ({@code &c}) и MiniMessage ({@code <red>}),
+ * а также переводы из секции {@code locales}. Для сообщений без плейсхолдеров
+ * на каждый вызов не выполняется ни разбора, ни выделения памяти.
+ */
+public final class Messages {
+
+    /**
+     * Сообщения без плейсхолдеров
+     */
+    public enum Key {
+        NO_PERMISSION("no-permission", "&cУ вашего королевства нет права сажать это растение!"),
+        NO_KINGDOM("no-kingdom", "&cВы не принадлежите ни к одному королевству!"),
+        ZONE_DENIED("zone-denied", "&cНа этой территории нельзя сажать это растение!"),
+        QUOTA_EXCEEDED("quota-exceeded", "&cВ этом чанке уже слишком много таких растений!"),
+        CROP_PROTECTED("crop-protected", "&cЭтот урожай посадило другое королевство!"),
+        ACQUISITION_DENIED("acquisition-denied", "&cВашему королевству нельзя получать это растение!"),
+        RELOAD_SUCCESS("reload-success", "&aКонфигурация PlantRestrictions перезагружена!"),
+        LIST_EMPTY("list-empty", "&7Нет разрешённых растений"),
+        NO_PERMISSION_CMD("no-permission-cmd", "&cУ вас нет прав на эту команду!");
+
+        private final String path;
+        private final String defaultValue;
+
+        Key(String path, String defaultValue) {
+            this.path = path;
+            this.defaultValue = defaultValue;
+        }
+    }
+
+    /**
+     * Сообщения с плейсхолдерами — хранятся как шаблоны
+     */
+    public enum Template {
+        RELOAD_FAILED("reload-failed", "&cОшибка в config.yml, изменения не применены: %error%", "error"),
+        LIST_HEADER("list-header", "&6=== Разрешённые растения для %kingdom% ===", "kingdom"),
+        LIST_ITEM("list-item", "&7- &a%plant%", "plant");
+
+        private final String path;
+        private final String defaultValue;
+        private final String placeholder;
+
+        Template(String path, String defaultValue, String placeholder) {
+            this.path = path;
+            this.defaultValue = defaultValue;
+            this.placeholder = placeholder;
+        }
+    }
+
+    private static final MiniMessage MINI_MESSAGE = MiniMessage.miniMessage();
+    private static final LegacyComponentSerializer LEGACY = LegacyComponentSerializer.legacyAmpersand();
+
+    private final boolean miniMessage;
+    private final Component[] components;
+    private final String[] templates;
+    private final Map<Locale, Component[]> localized;
+
+    private Messages(boolean miniMessage, Component[] components, String[] templates,
+                     Map<Locale, Component[]> localized) {
+        this.miniMessage = miniMessage;
+        this.components = components;
+        this.templates = templates;
+        this.localized = localized;
+    }
+
+    /**
+     * Собирает сообщения из конфигурации
+     *
+     * @param config корневая секция конфигурации
+     */
+    public static Messages load(ConfigurationSection config) {
+        boolean miniMessage = "minimessage".equalsIgnoreCase(config.getString("message-format", "legacy"));
+
+        Component[] components = new Component[Key.values().length];
+        for (Key key : Key.values()) {
+            components[key.ordinal()] = parse(miniMessage,
+                    config.getString("messages." + key.path, key.defaultValue));
+        }
+
+        String[] templates = new String[Template.values().length];
+        for (Template template : Template.values()) {
+            templates[template.ordinal()] = config.getString("messages." + template.path, template.defaultValue);
+        }
+
+        // Переводы: locales.<ru_ru|en_us|en>.<ключ>
+        Map<Locale, Component[]> localized = new HashMap<>();
+        ConfigurationSection locales = config.getConfigurationSection("locales");
+        if (locales != null) {
+            for (String tag : locales.getKeys(false)) {
+                ConfigurationSection section = locales.getConfigurationSection(tag);
+                if (section == null) {
+                    continue;
+                }
+                Component[] translated = components.clone();
+                for (Key key : Key.values()) {
+                    String value = section.getString(key.path);
+                    if (value != null) {
+                        translated[key.ordinal()] = parse(miniMessage, value);
+                    }
+                }
+                localized.put(Locale.forLanguageTag(tag.replace('_', '-')), translated);
+            }
+        }
+
+        return new Messages(miniMessage, components, templates, Map.copyOf(localized));
+    }
+
+    /**
+     * Возвращает готовое сообщение на языке по умолчанию
+     */
+    public Component get(Key key) {
+        return components[key.ordinal()];
+    }
+
+    /**
+     * Возвращает готовое сообщение для языка клиента.
+     * Ищется точное совпадение (en_US), затем язык (en), затем сообщение по умолчанию.
+     */
+    public Component get(Key key, Locale locale) {
+        if (localized.isEmpty() || locale == null) {
+            return components[key.ordinal()];
+        }
+        Component[] translated = localized.get(locale);
+        if (translated == null) {
+            translated = localized.get(Locale.forLanguageTag(locale.getLanguage()));
+        }
+        return translated != null ? translated[key.ordinal()] : components[key.ordinal()];
+    }
+
+    /**
+     * Собирает сообщение с подставленным значением плейсхолдера
+     */
+    public Component format(Template template, String value) {
+        String raw = templates[template.ordinal()];
+        if (miniMessage) {
+            return MINI_MESSAGE.deserialize(raw.replace("%" + template.placeholder + "%", "<" + template.placeholder + ">"),
+                    Placeholder.unparsed(template.placeholder, value));
+        }
+        return LEGACY.deserialize(raw.replace("%" + template.placeholder + "%", value));
+    }
+
+    private static Component parse(boolean miniMessage, String raw) {
+        return miniMessage ? MINI_MESSAGE.deserialize(raw) : LEGACY.deserialize(raw);
+    }
+}
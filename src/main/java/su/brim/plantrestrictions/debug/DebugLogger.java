@@ -0,0 +1,221 @@
+package su.brim.plantrestrictions.debug;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Отладочный журнал без затрат в выключенном состоянии.
+ * <p>
+ * Сообщения передаются ленивыми поставщиками или шаблонами с плейсхолдерами
+ * {@code {}}; строка собирается только если запись действительно будет выведена.
+ * Форматирование и вывод в консоль выполняются в отдельном потоке через
+ * ограниченную очередь, поэтому потоки регионов не ждут ввода-вывода —
+ * при переполнении записи отбрасываются и подсчитываются.
+ * <p>
+ * Журнал можно ограничить одним игроком, королевством или материалом.
+ */
+public class DebugLogger {
+
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /** Любое королевство */
+    public static final int ANY_KINGDOM = Integer.MIN_VALUE;
+
+    private final Logger logger;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+
+    // null — журнал выключен
+    private volatile Filter filter;
+    private volatile Filter commandFilter;
+    private volatile boolean configEnabled;
+
+    private Thread writer;
+
+    public DebugLogger(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Ограничение журнала. Пустые поля означают «любой».
+     *
+     * @param player   UUID игрока или null
+     * @param kingdom  индекс королевства или {@link #ANY_KINGDOM}
+     * @param material материал или null
+     */
+    public record Filter(UUID player, int kingdom, Material material) {
+
+        public static final Filter ALL = new Filter(null, ANY_KINGDOM, null);
+
+        /** Фильтр, которому не соответствует ни одна запись */
+        public static final Filter NONE = new Filter(null, Integer.MAX_VALUE, null);
+
+        boolean isGlobal() {
+            return player == null && kingdom == ANY_KINGDOM && material == null;
+        }
+
+        boolean matches(UUID playerId, int kingdomIndex, Material mat) {
+            return (player == null || player.equals(playerId))
+                    && (kingdom == ANY_KINGDOM || kingdom == kingdomIndex)
+                    && (material == null || material == mat);
+        }
+    }
+
+    private record Entry(String template, Object[] args, Supplier<String> supplier) {
+
+        String format() {
+            if (supplier != null) {
+                return supplier.get();
+            }
+            StringBuilder result = new StringBuilder(template.length() + 32);
+            int argIndex = 0;
+            int from = 0;
+            int placeholder;
+            while ((placeholder = template.indexOf("{}", from)) >= 0) {
+                result.append(template, from, placeholder);
+                result.append(argIndex < args.length ? args[argIndex++] : "{}");
+                from = placeholder + 2;
+            }
+            result.append(template, from, template.length());
+            return result.toString();
+        }
+    }
+
+    /**
+     * Запускает поток вывода
+     */
+    public void start() {
+        writer = new Thread(this::drain, "PlantRestrictions-Debug");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Останавливает поток вывода
+     */
+    public void stop() {
+        if (writer != null) {
+            writer.interrupt();
+            writer = null;
+        }
+    }
+
+    /**
+     * Включает или выключает журнал согласно настройке debug в конфиге
+     */
+    public void setConfigEnabled(boolean enabled) {
+        this.configEnabled = enabled;
+        updateFilter();
+    }
+
+    /**
+     * Устанавливает ограничение из команды (null — вернуться к настройке из конфига)
+     */
+    public void setCommandFilter(Filter filter) {
+        this.commandFilter = filter;
+        updateFilter();
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private void updateFilter() {
+        Filter fromCommand = commandFilter;
+        if (fromCommand == Filter.NONE) {
+            this.filter = null;
+        } else {
+            this.filter = fromCommand != null ? fromCommand : (configEnabled ? Filter.ALL : null);
+        }
+    }
+
+    /**
+     * Включён ли журнал без ограничений
+     */
+    public boolean isEnabled() {
+        Filter current = filter;
+        return current != null && current.isGlobal();
+    }
+
+    /**
+     * Будет ли выведена запись для данного игрока, королевства и материала
+     *
+     * @param player   игрок или null, если неизвестен
+     * @param kingdom  индекс королевства
+     * @param material материал или null
+     */
+    public boolean isEnabled(Player player, int kingdom, Material material) {
+        Filter current = filter;
+        return current != null && current.matches(player != null ? player.getUniqueId() : null, kingdom, material);
+    }
+
+    public void log(Supplier<String> message) {
+        if (isEnabled()) {
+            enqueue(new Entry(null, null, message));
+        }
+    }
+
+    public void log(String template, Object arg) {
+        if (isEnabled()) {
+            enqueue(new Entry(template, new Object[]{arg}, null));
+        }
+    }
+
+    public void log(String template, Object arg1, Object arg2) {
+        if (isEnabled()) {
+            enqueue(new Entry(template, new Object[]{arg1, arg2}, null));
+        }
+    }
+
+    public void log(Player player, int kingdom, Material material, String template, Object arg1, Object arg2) {
+        if (isEnabled(player, kingdom, material)) {
+            enqueue(new Entry(template, new Object[]{arg1, arg2}, null));
+        }
+    }
+
+    public void log(Player player, int kingdom, Material material, String template,
+                    Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(player, kingdom, material)) {
+            enqueue(new Entry(template, new Object[]{arg1, arg2, arg3}, null));
+        }
+    }
+
+    public void log(Player player, int kingdom, Material material, String template,
+                    Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (isEnabled(player, kingdom, material)) {
+            enqueue(new Entry(template, new Object[]{arg1, arg2, arg3, arg4}, null));
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        if (!queue.offer(entry)) {
+            dropped.increment();
+        }
+    }
+
+    private void drain() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Entry entry = queue.take();
+                try {
+                    logger.info("[DEBUG] " + entry.format());
+                } catch (RuntimeException e) {
+                    logger.warning("[DEBUG] Ошибка форматирования: " + e);
+                }
+            }
+        } catch (InterruptedException ignored) {
+            // Плагин выключается
+        }
+    }
+}
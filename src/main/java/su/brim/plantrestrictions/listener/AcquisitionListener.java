@@ -0,0 +1,222 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.audit.AuditLog;
+import su.brim.plantrestrictions.audit.AuditRecord;
+import su.brim.plantrestrictions.config.Messages;
+import su.brim.plantrestrictions.debug.DebugLogger;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.manager.RuleProgram;
+import su.brim.plantrestrictions.manager.VillagerOwnership;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import io.papermc.paper.event.player.PlayerTradeEvent;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Villager;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.CraftItemEvent;
+
+import java.util.UUID;
+
+/**
+ * Запрет получения растений, которые нельзя сажать: подбор с земли игроками и жителями,
+ * покупка у жителей и странствующих торговцев, крафт.
+ * <p>
+ * Житель, не подобравший запрещённые семена, не пытается их посадить, и
+ * {@link PlantListener#onEntityChangeBlock} не приходится отменять посадку снова и снова.
+ * <p>
+ * Подбор предметов вызывается постоянно возле ферм, поэтому проверка начинается с
+ * битовой маски {@link PlantPolicy#mayDeny(Material)} по порядковому номеру материала:
+ * всё, что никому не запрещено, отсеивается одним обращением к массиву. Королевство
+ * берётся из кэшей {@link IdentityCache} и {@link VillagerOwnership}. Задержка подбора
+ * предмету не ставится: она действует на всех, и игрок, которому отказано, не давал бы
+ * подобрать предмет остальным. Повтор события на каждом тике обходится в чтение из кэшей.
+ * <p>
+ * Регистрируется через {@link ListenerRegistrar}, только пока включена секция acquisition.
+ */
+public class AcquisitionListener {
+
+    private final PlantManager plantManager;
+    private final IdentityCache identityCache;
+    private final VillagerOwnership villagerOwnership;
+    private final DenialNotifier denialNotifier;
+    private final DebugLogger debug;
+    private final PlantMetrics metrics;
+    private final AuditLog auditLog;
+
+    public AcquisitionListener(PlantRestrictions plugin, DenialNotifier denialNotifier) {
+        this.plantManager = plugin.getPlantManager();
+        this.identityCache = plugin.getIdentityCache();
+        this.villagerOwnership = plugin.getVillagerOwnership();
+        this.denialNotifier = denialNotifier;
+        this.debug = plugin.getDebugLogger();
+        this.metrics = plugin.getMetrics();
+        this.auditLog = plugin.getAuditLog();
+    }
+
+    /**
+     * Подбор предмета игроком или жителем.
+     * Житель проверяется от имени королевства игрока, выбросившего предмет, если тот
+     * есть в кэше, иначе — своего владельца, как при посадке.
+     * KingdomsAddon в потоке региона не опрашивается.
+     * <p>
+     * В Folia событие вызывается в регионе предмета.
+     */
+    public void onPickup(EntityPickupItemEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.PICKUP, checkPickup(event), start);
+    }
+
+    private PlantMetrics.Outcome checkPickup(EntityPickupItemEvent event) {
+        PlantPolicy.Acquisition acquisition = plantManager.getPolicy().getAcquisition();
+        Item item = event.getItem();
+        if (event.getEntity() instanceof Player player) {
+            if (!acquisition.playerPickup()) {
+                return PlantMetrics.Outcome.PREFILTERED;
+            }
+            Material material = item.getItemStack().getType();
+            if (!plantManager.getPolicy().mayDeny(material)) {
+                return PlantMetrics.Outcome.PREFILTERED;
+            }
+
+            IdentityCache.Identity identity = identityCache.get(player);
+            if (identity.bypass() || identity.admin()) {
+                return PlantMetrics.Outcome.BYPASS;
+            }
+            int kingdom = identity.kingdom();
+            if (plantManager.canPlant(kingdom, identity.groups(), RuleProgram.UNKNOWN_ZONE, material, null)) {
+                return PlantMetrics.Outcome.ALLOWED;
+            }
+
+            // Без сообщения и аудита: игрок, стоящий над предметом, пытается подобрать его снова
+            rejectPickup(event, kingdom, material);
+            debug.log(player, kingdom, material, "Игроку {} запрещено подбирать {} (королевство: {})",
+                    player.getName(), material, identity.kingdomId());
+            return PlantMetrics.Outcome.DENIED;
+        }
+
+        if (!(event.getEntity() instanceof Villager villager) || !acquisition.villagerPickup()) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+        Material material = item.getItemStack().getType();
+        PlantPolicy policy = plantManager.getPolicy();
+        if (!policy.mayDeny(material) || !policy.getClassifier().is(material, PlantClassifier.VILLAGER_PLANTABLE)) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+
+        // Выброшенные игроком семена закрепят жителя за его королевством (VillagerOwnershipListener)
+        UUID thrower = item.getThrower();
+        IdentityCache.Identity throwerIdentity = thrower != null ? identityCache.cached(thrower) : null;
+        int owner = throwerIdentity != null ? throwerIdentity.kingdom() : villagerOwnership.getOwner(villager);
+        // Условные правила проверяются, как при подборе игроком: без места и без прав
+        boolean allowed = (owner != KingdomRegistry.NO_KINGDOM || policy.allowsVillagerCrop(material))
+                && plantManager.canPlant(owner, 0, RuleProgram.UNKNOWN_ZONE, material, null);
+        if (allowed) {
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+
+        rejectPickup(event, owner, material);
+        if (debug.isEnabled(null, owner, material)) {
+            debug.log(null, owner, material, "Жителю {} запрещено подбирать {} (владелец: {})",
+                    villager.getUniqueId(), material, plantManager.getKingdomRegistry().id(owner));
+        }
+        return PlantMetrics.Outcome.DENIED;
+    }
+
+    /**
+     * Покупка у жителя или странствующего торговца.
+     * <p>
+     * В Folia событие вызывается в регионе игрока.
+     */
+    public void onTrade(PlayerTradeEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.TRADE, checkTrade(event), start);
+    }
+
+    private PlantMetrics.Outcome checkTrade(PlayerTradeEvent event) {
+        Material material = event.getTrade().getResult().getType();
+        if (!plantManager.getPolicy().mayDeny(material)) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+        if (!check(PlantMetrics.Handler.TRADE, event.getPlayer(), material, event.getVillager().getLocation())) {
+            event.setCancelled(true);
+            return PlantMetrics.Outcome.DENIED;
+        }
+        return PlantMetrics.Outcome.ALLOWED;
+    }
+
+    /**
+     * Крафт растения, например семян тыквы или арбуза.
+     * <p>
+     * В Folia событие вызывается в регионе игрока.
+     */
+    public void onCraft(CraftItemEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.CRAFT, checkCraft(event), start);
+    }
+
+    private PlantMetrics.Outcome checkCraft(CraftItemEvent event) {
+        Material material = event.getRecipe().getResult().getType();
+        if (!plantManager.getPolicy().mayDeny(material)) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+        if (!(event.getWhoClicked() instanceof Player player)) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+        if (!check(PlantMetrics.Handler.CRAFT, player, material, player.getLocation())) {
+            event.setCancelled(true);
+            return PlantMetrics.Outcome.DENIED;
+        }
+        return PlantMetrics.Outcome.ALLOWED;
+    }
+
+    /**
+     * Проверка покупки или крафта игроком с уведомлением и аудитом.
+     * Место получения неизвестно, правила с условиями места не действуют.
+     *
+     * @return true если получение разрешено (в том числе в обход ограничений)
+     */
+    private boolean check(PlantMetrics.Handler handler, Player player, Material material, Location location) {
+        IdentityCache.Identity identity = identityCache.get(player);
+
+        if (identity.bypass() || identity.admin()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, material, "Игрок {} получает {} в обход ограничений ({})",
+                    player.getName(), material, handler.label());
+            audit(identity.bypass() ? AuditRecord.Action.BYPASS : AuditRecord.Action.ADMIN, handler, player,
+                    identity.kingdom(), material, location);
+            return true;
+        }
+
+        int kingdom = identity.kingdom();
+        if (plantManager.canPlant(kingdom, identity.groups(), RuleProgram.UNKNOWN_ZONE, material, null)) {
+            return true;
+        }
+
+        denialNotifier.deny(player, identity.kingdomId() == null
+                ? Messages.Key.NO_KINGDOM : Messages.Key.ACQUISITION_DENIED);
+        metrics.denied(kingdom, material);
+        audit(AuditRecord.Action.DENIED, handler, player, kingdom, material, location);
+        debug.log(player, kingdom, material, "Заблокировано получение {} игроком {} ({}, королевство: {})",
+                material, player.getName(), handler.label(), identity.kingdomId());
+        return false;
+    }
+
+    private void rejectPickup(EntityPickupItemEvent event, int kingdom, Material material) {
+        event.setCancelled(true);
+        metrics.denied(kingdom, material);
+    }
+
+    private void audit(AuditRecord.Action action, PlantMetrics.Handler handler, Player player, int kingdom,
+                       Material material, Location location) {
+        if (auditLog.isEnabled()) {
+            auditLog.record(action, handler, player, kingdom, material, location.getWorld(),
+                    location.getBlockX(), location.getBlockY(), location.getBlockZ());
+        }
+    }
+}
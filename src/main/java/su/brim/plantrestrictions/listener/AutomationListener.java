@@ -0,0 +1,69 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.manager.AutomationOwnership;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+import java.util.List;
+
+/**
+ * Записывает владельца механизмов при установке и убирает их из кэша
+ * {@link AutomationOwnership} при разрушении и выгрузке чанка.
+ */
+public class AutomationListener implements Listener {
+
+    private final IdentityCache identityCache;
+    private final AutomationOwnership automationOwnership;
+
+    public AutomationListener(PlantRestrictions plugin) {
+        this.identityCache = plugin.getIdentityCache();
+        this.automationOwnership = plugin.getAutomationOwnership();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlace(BlockPlaceEvent event) {
+        Block block = event.getBlockPlaced();
+        if (AutomationOwnership.isAutomation(block.getType())) {
+            automationOwnership.setOwner(block, identityCache.get(event.getPlayer()).kingdom());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBreak(BlockBreakEvent event) {
+        if (AutomationOwnership.isAutomation(event.getBlock().getType())) {
+            automationOwnership.evict(event.getBlock());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        evictAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        evictAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        automationOwnership.evict(event.getChunk());
+    }
+
+    private void evictAll(List<Block> blocks) {
+        for (Block block : blocks) {
+            if (AutomationOwnership.isAutomation(block.getType())) {
+                automationOwnership.evict(block);
+            }
+        }
+    }
+}
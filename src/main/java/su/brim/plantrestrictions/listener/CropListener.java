@@ -0,0 +1,329 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.audit.AuditLog;
+import su.brim.plantrestrictions.audit.AuditRecord;
+import su.brim.plantrestrictions.config.Messages;
+import su.brim.plantrestrictions.debug.DebugLogger;
+import su.brim.plantrestrictions.manager.CropOwnership;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.VillagerOwnership;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Villager;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.entity.EntityInteractEvent;
+import org.bukkit.event.player.PlayerHarvestBlockEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+
+import java.util.List;
+
+/**
+ * Защита посевов: записывает в {@link CropOwnership} королевство, посадившее
+ * растение, и не даёт чужим собирать урожай, ломать посевы и вытаптывать грядки.
+ * <p>
+ * Владелец записывается на MONITOR, то есть только для посадок, которые разрешил
+ * {@link PlantListener} и не отменили другие плагины. Проверки сбора урожая сначала
+ * отсеивают блоки, не являющиеся растениями, одним чтением из таблицы классификации,
+ * затем читают владельца из памяти.
+ * <p>
+ * Регистрируется через {@link ListenerRegistrar}, только пока защита посевов включена.
+ */
+public class CropListener implements Listener {
+
+    private final PlantManager plantManager;
+    private final IdentityCache identityCache;
+    private final CropOwnership cropOwnership;
+    private final VillagerOwnership villagerOwnership;
+    private final DenialNotifier denialNotifier;
+    private final DebugLogger debug;
+    private final PlantMetrics metrics;
+    private final AuditLog auditLog;
+
+    public CropListener(PlantRestrictions plugin, DenialNotifier denialNotifier) {
+        this.plantManager = plugin.getPlantManager();
+        this.identityCache = plugin.getIdentityCache();
+        this.cropOwnership = plugin.getCropOwnership();
+        this.villagerOwnership = plugin.getVillagerOwnership();
+        this.denialNotifier = denialNotifier;
+        this.debug = plugin.getDebugLogger();
+        this.metrics = plugin.getMetrics();
+        this.auditLog = plugin.getAuditLog();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        cropOwnership.load(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        cropOwnership.unload(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(WorldSaveEvent event) {
+        cropOwnership.save(event.getWorld());
+    }
+
+    /**
+     * Посадка состоялась — записываем королевство игрока (игрок без королевства снимает прежнего владельца)
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlace(BlockPlaceEvent event) {
+        Block block = event.getBlockPlaced();
+        if (plantManager.getClassifier().plantOf(block.getType()) != null) {
+            cropOwnership.setOwner(block, identityCache.get(event.getPlayer()).kingdom());
+        }
+    }
+
+    /**
+     * Сбор урожая разрушением посева (в том числе плода тыквы или арбуза),
+     * а также разрушение грядки или песка душ под ним
+     */
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        Block crop = switch (block.getType()) {
+            case FARMLAND, SOUL_SAND -> block.getRelative(BlockFace.UP);
+            default -> block;
+        };
+        Material plant = plantManager.getClassifier().plantOf(crop.getType());
+        if (plant == null) {
+            metrics.record(PlantMetrics.Handler.HARVEST, PlantMetrics.Outcome.PREFILTERED, 0L);
+            return;
+        }
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.HARVEST, checkPlayer(event.getPlayer(), crop, plant, event), start);
+    }
+
+    /**
+     * Сбор урожая без разрушения: сладкие ягоды, светящиеся ягоды
+     */
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onHarvest(PlayerHarvestBlockEvent event) {
+        Block block = event.getHarvestedBlock();
+        Material plant = plantManager.getClassifier().plantOf(block.getType());
+        if (plant == null) {
+            metrics.record(PlantMetrics.Handler.HARVEST, PlantMetrics.Outcome.PREFILTERED, 0L);
+            return;
+        }
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.HARVEST, checkPlayer(event.getPlayer(), block, plant, event), start);
+    }
+
+    /**
+     * Вытаптывание грядки под посевом
+     */
+    @EventHandler(priority = EventPriority.HIGH)
+    public void onTrample(PlayerInteractEvent event) {
+        Block block = event.getClickedBlock();
+        if (event.getAction() != Action.PHYSICAL || block == null || block.getType() != Material.FARMLAND
+                || !plantManager.getPolicy().getCropProtection().trampling()) {
+            return;
+        }
+        Block crop = block.getRelative(BlockFace.UP);
+        Material plant = plantManager.getClassifier().plantOf(crop.getType());
+        if (plant == null) {
+            return;
+        }
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.HARVEST, checkPlayer(event.getPlayer(), crop, plant, event), start);
+    }
+
+    /**
+     * Вытаптывание грядки мобами. Если на мобе едет игрок, проверяется игрок;
+     * житель может вытоптать посев своего королевства, остальные мобы — только посев без владельца.
+     * Без аудита: моб, которому отказано, прыгает на грядку снова и снова.
+     */
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onEntityTrample(EntityInteractEvent event) {
+        Block block = event.getBlock();
+        if (block.getType() != Material.FARMLAND || !plantManager.getPolicy().getCropProtection().trampling()) {
+            return;
+        }
+        Block crop = block.getRelative(BlockFace.UP);
+        Material plant = plantManager.getClassifier().plantOf(crop.getType());
+        if (plant == null) {
+            return;
+        }
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.HARVEST, checkEntity(event.getEntity(), crop, plant, event), start);
+    }
+
+    /**
+     * Жители собирают урожай (блок становится воздухом) и сажают новый.
+     * В Folia EntityChangeBlockEvent вызывается в регионе блока.
+     */
+    @EventHandler(priority = EventPriority.HIGH, ignoreCancelled = true)
+    public void onVillagerHarvest(EntityChangeBlockEvent event) {
+        if (!(event.getEntity() instanceof Villager villager) || event.getTo() != Material.AIR
+                || !plantManager.getPolicy().getCropProtection().villagers()) {
+            return;
+        }
+        Block block = event.getBlock();
+        Material plant = plantManager.getClassifier().plantOf(block.getType());
+        if (plant == null) {
+            return;
+        }
+
+        long start = metrics.start();
+        int owner = cropOwnership.getOwner(block);
+        int villagerOwner = villagerOwnership.getOwner(villager);
+        if (owner == KingdomRegistry.NO_KINGDOM || owner == villagerOwner) {
+            metrics.record(PlantMetrics.Handler.HARVEST, PlantMetrics.Outcome.ALLOWED, start);
+            return;
+        }
+
+        event.setCancelled(true);
+        metrics.denied(villagerOwner, plant);
+        auditLog.record(AuditRecord.Action.DENIED, PlantMetrics.Handler.HARVEST, null, villagerOwner, plant,
+                block.getWorld(), block.getX(), block.getY(), block.getZ());
+        if (debug.isEnabled(null, villagerOwner, plant)) {
+            debug.log(null, villagerOwner, plant, "Житель не собрал чужой урожай {} на {} (владелец посева: {})",
+                    plant, block.getLocation(), plantManager.getKingdomRegistry().id(owner));
+        }
+        metrics.record(PlantMetrics.Handler.HARVEST, PlantMetrics.Outcome.DENIED, start);
+    }
+
+    /**
+     * Житель с владельцем посадил растение — оно принадлежит королевству жителя
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onVillagerPlant(EntityChangeBlockEvent event) {
+        if (event.getEntity() instanceof Villager villager
+                && plantManager.getClassifier().plantOf(event.getTo()) != null) {
+            cropOwnership.setOwner(event.getBlock(), villagerOwnership.getOwner(villager));
+        }
+    }
+
+    /**
+     * Посев разрушен, в том числе вместе с грядкой под ним
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBroken(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        cropOwnership.remove(block);
+        if (block.getType() == Material.FARMLAND || block.getType() == Material.SOUL_SAND) {
+            cropOwnership.remove(block.getRelative(BlockFace.UP));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onVillagerHarvested(EntityChangeBlockEvent event) {
+        if (event.getTo() == Material.AIR) {
+            cropOwnership.remove(event.getBlock());
+        }
+    }
+
+    /**
+     * Вода и лава смывают посевы
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onFlow(BlockFromToEvent event) {
+        cropOwnership.remove(event.getToBlock());
+    }
+
+    /**
+     * Саженец или гриб превращается в дерево — растение исчезает
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStructureGrow(StructureGrowEvent event) {
+        cropOwnership.remove(event.getLocation().getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        removeAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        removeAll(event.blockList());
+    }
+
+    private PlantMetrics.Outcome checkPlayer(Player player, Block crop, Material plant, Cancellable event) {
+        int owner = cropOwnership.getOwner(crop);
+        if (owner == KingdomRegistry.NO_KINGDOM) {
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+
+        IdentityCache.Identity identity = identityCache.get(player);
+        if (identity.kingdom() == owner) {
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+        if (identity.bypass() || identity.admin()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, plant, "Игрок {} обходит защиту посевов ({})",
+                    player.getName(), "harvest");
+            audit(identity.bypass() ? AuditRecord.Action.BYPASS : AuditRecord.Action.ADMIN, player,
+                    identity.kingdom(), plant, crop);
+            return PlantMetrics.Outcome.BYPASS;
+        }
+
+        event.setCancelled(true);
+        denialNotifier.deny(player, Messages.Key.CROP_PROTECTED);
+        metrics.denied(identity.kingdom(), plant);
+        audit(AuditRecord.Action.DENIED, player, identity.kingdom(), plant, crop);
+        debug.log(player, identity.kingdom(), plant, "Игрок {} не собрал чужой урожай {} (владелец посева: {})",
+                player.getName(), plant, plantManager.getKingdomRegistry().id(owner));
+        return PlantMetrics.Outcome.DENIED;
+    }
+
+    private PlantMetrics.Outcome checkEntity(Entity entity, Block crop, Material plant, Cancellable event) {
+        for (Entity passenger : entity.getPassengers()) {
+            if (passenger instanceof Player player) {
+                return checkPlayer(player, crop, plant, event);
+            }
+        }
+        int owner = cropOwnership.getOwner(crop);
+        if (owner == KingdomRegistry.NO_KINGDOM) {
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+        int kingdom = entity instanceof Villager villager
+                ? villagerOwnership.getOwner(villager) : KingdomRegistry.NO_KINGDOM;
+        if (kingdom == owner) {
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+
+        event.setCancelled(true);
+        metrics.denied(kingdom, plant);
+        if (debug.isEnabled(null, kingdom, plant)) {
+            debug.log(null, kingdom, plant, "{} не вытоптал чужой посев {} на {} (владелец посева: {})",
+                    entity.getType(), plant, crop.getLocation(), plantManager.getKingdomRegistry().id(owner));
+        }
+        return PlantMetrics.Outcome.DENIED;
+    }
+
+    private void audit(AuditRecord.Action action, Player player, int kingdom, Material plant, Block block) {
+        if (auditLog.isEnabled()) {
+            auditLog.record(action, PlantMetrics.Handler.HARVEST, player, kingdom, plant,
+                    block.getWorld(), block.getX(), block.getY(), block.getZ());
+        }
+    }
+
+    private void removeAll(List<Block> blocks) {
+        for (Block block : blocks) {
+            cropOwnership.remove(block);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.config.ConfigManager;
+import su.brim.plantrestrictions.config.Messages;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Уведомления игрока о запрете посадки.
+ * <p>
+ * Первый запрет сообщается в чат. Повторные запреты в течение задержки
+ * (игрок зажал правую кнопку с запрещёнными семенами) не отправляются по
+ * одному, а объединяются в одно сообщение над хотбаром по окончании задержки.
+ */
+public class DenialNotifier implements Listener {
+
+    private final PlantRestrictions plugin;
+    private final Map<UUID, Window> windows = new ConcurrentHashMap<>();
+
+    /**
+     * Окно подавления повторных сообщений
+     */
+    private static final class Window {
+        final long startedAt;
+        final AtomicInteger suppressed = new AtomicInteger();
+        volatile Messages.Key key;
+
+        Window(long startedAt, Messages.Key key) {
+            this.startedAt = startedAt;
+            this.key = key;
+        }
+    }
+
+    public DenialNotifier(PlantRestrictions plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Сообщает игроку о запрете
+     */
+    public void deny(Player player, Messages.Key key) {
+        ConfigManager config = plugin.getConfigManager();
+        long cooldownMs = config.getDenialCooldownMs();
+        Messages messages = config.getMessages();
+
+        if (cooldownMs <= 0) {
+            player.sendMessage(messages.get(key, player.locale()));
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        UUID playerId = player.getUniqueId();
+        Window window = windows.get(playerId);
+
+        if (window != null && now - window.startedAt < cooldownMs) {
+            window.key = key;
+            if (window.suppressed.getAndIncrement() == 0 && config.isDenialActionBar()) {
+                // Первый подавленный запрет — планируем одно итоговое сообщение
+                long delayTicks = Math.max(1L, (window.startedAt + cooldownMs - now) / 50L);
+                player.getScheduler().runDelayed(plugin, task -> flush(player, window), null, delayTicks);
+            }
+            return;
+        }
+
+        windows.put(playerId, new Window(now, key));
+        player.sendMessage(messages.get(key, player.locale()));
+    }
+
+    private void flush(Player player, Window window) {
+        int count = window.suppressed.get();
+        if (count <= 0) {
+            return;
+        }
+        Component message = plugin.getConfigManager().getMessages().get(window.key, player.locale());
+        player.sendActionBar(message.append(Component.text(" ×" + count, NamedTextColor.GRAY)));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        windows.remove(event.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,152 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.audit.AuditLog;
+import su.brim.plantrestrictions.audit.AuditRecord;
+import su.brim.plantrestrictions.config.Messages;
+import su.brim.plantrestrictions.debug.DebugLogger;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Cancellable;
+import org.bukkit.event.block.BlockFertilizeEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ограничение роста уже посаженных растений: рост посевов, костная мука,
+ * рост саженцев и грибов в структуры, распространение грибов, бамбука и хоруса.
+ * <p>
+ * {@link BlockGrowEvent} вызывается на случайных тиках во всех загруженных
+ * чанках, поэтому первым делом выполняется предварительный фильтр — одно
+ * чтение из таблицы классификации по ordinal нового материала. Зона и мир
+ * смотрятся только для растений, рост которых ограничивается.
+ * <p>
+ * Как и {@link PlantListener}, регистрируется через {@link ListenerRegistrar}.
+ */
+public class GrowthListener {
+
+    private final PlantManager plantManager;
+    private final IdentityCache identityCache;
+    private final ZoneIndex zoneIndex;
+    private final DebugLogger debug;
+    private final DenialNotifier denialNotifier;
+    private final PlantMetrics metrics;
+    private final AuditLog auditLog;
+
+    public GrowthListener(PlantRestrictions plugin, DenialNotifier denialNotifier) {
+        this.plantManager = plugin.getPlantManager();
+        this.identityCache = plugin.getIdentityCache();
+        this.zoneIndex = plugin.getZoneIndex();
+        this.debug = plugin.getDebugLogger();
+        this.denialNotifier = denialNotifier;
+        this.metrics = plugin.getMetrics();
+        this.auditLog = plugin.getAuditLog();
+    }
+
+    /**
+     * Рост посевов, стеблей, тростника, кактусов, ягод
+     */
+    public void onBlockGrow(BlockGrowEvent event) {
+        PlantPolicy policy = plantManager.getPolicy();
+        Material plant = policy.getClassifier().plantOf(event.getNewState().getType());
+        if (plant == null) {
+            // Без замера времени: для посторонних блоков это самый частый исход
+            metrics.record(PlantMetrics.Handler.GROW, PlantMetrics.Outcome.PREFILTERED, 0L);
+            return;
+        }
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.GROW, checkGrowth(policy, plant, event.getBlock(), event), start);
+    }
+
+    /**
+     * Распространение грибов, бамбука и хоруса
+     */
+    public void onBlockSpread(BlockSpreadEvent event) {
+        PlantPolicy policy = plantManager.getPolicy();
+        Material plant = policy.getClassifier().plantOf(event.getNewState().getType());
+        if (plant == null) {
+            metrics.record(PlantMetrics.Handler.SPREAD, PlantMetrics.Outcome.PREFILTERED, 0L);
+            return;
+        }
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.SPREAD, checkGrowth(policy, plant, event.getBlock(), event), start);
+    }
+
+    /**
+     * Костная мука
+     */
+    public void onFertilize(BlockFertilizeEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.FERTILIZE,
+                checkPlayerGrowth(PlantMetrics.Handler.FERTILIZE, event.getBlock(), event.getPlayer(), event), start);
+    }
+
+    /**
+     * Рост саженцев, грибов и азалий в структуры
+     */
+    public void onStructureGrow(StructureGrowEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.STRUCTURE_GROW,
+                checkPlayerGrowth(PlantMetrics.Handler.STRUCTURE_GROW, event.getLocation().getBlock(),
+                        event.getPlayer(), event), start);
+    }
+
+    private PlantMetrics.Outcome checkPlayerGrowth(PlantMetrics.Handler handler, Block block, Player player,
+                                                   Cancellable event) {
+        PlantPolicy policy = plantManager.getPolicy();
+        Material plant = policy.getClassifier().plantOf(block.getType());
+        if (plant == null) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+
+        if (player != null) {
+            IdentityCache.Identity identity = identityCache.get(player);
+            if (identity.bypass() || identity.admin()) {
+                debug.log(player, DebugLogger.ANY_KINGDOM, plant, "Игрок {} обходит ограничение роста ({})",
+                        player.getName(), "growth");
+                auditLog.record(identity.bypass() ? AuditRecord.Action.BYPASS : AuditRecord.Action.ADMIN, handler,
+                        player, identity.kingdom(), plant, block.getWorld(), block.getX(), block.getY(), block.getZ());
+                return PlantMetrics.Outcome.BYPASS;
+            }
+        }
+
+        PlantMetrics.Outcome outcome = checkGrowth(policy, plant, block, event);
+        if (outcome == PlantMetrics.Outcome.DENIED && player != null) {
+            denialNotifier.deny(player, Messages.Key.ZONE_DENIED);
+            auditLog.record(AuditRecord.Action.DENIED, handler, player, identityCache.get(player).kingdom(), plant,
+                    block.getWorld(), block.getX(), block.getY(), block.getZ());
+        }
+        return outcome;
+    }
+
+    private PlantMetrics.Outcome checkGrowth(PlantPolicy policy, Material plant, Block block, Cancellable event) {
+        int zone = policy.usesTerritories()
+                ? zoneIndex.zoneAt(block.getWorld(), block.getX() >> 4, block.getZ() >> 4)
+                : ZoneIndex.WILD;
+        if (policy.canGrow(block.getWorld().getName(), zone, plant)) {
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+
+        // Замедление: часть событий роста пропускается
+        float chance = policy.getGrowthRules().chance();
+        if (chance > 0f && ThreadLocalRandom.current().nextFloat() < chance) {
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+
+        event.setCancelled(true);
+        if (debug.isEnabled(null, DebugLogger.ANY_KINGDOM, plant)) {
+            debug.log(null, DebugLogger.ANY_KINGDOM, plant, "Остановлен рост {} на {} (зона: {})",
+                    plant, block.getLocation(), zoneIndex.describe(zone));
+        }
+        return PlantMetrics.Outcome.DENIED;
+    }
+}
@@ -0,0 +1,39 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.manager.IdentityCache;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Поддерживает {@link IdentityCache} в актуальном состоянии.
+ */
+public class IdentityListener implements Listener {
+
+    private final IdentityCache identityCache;
+
+    public IdentityListener(IdentityCache identityCache) {
+        this.identityCache = identityCache;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        identityCache.resolve(event.getPlayer());
+    }
+
+    /**
+     * Плагины прав обычно пересчитывают права при смене мира
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        identityCache.invalidate(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        identityCache.invalidate(event.getPlayer().getUniqueId());
+    }
+}
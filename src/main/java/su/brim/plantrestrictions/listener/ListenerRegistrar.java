@@ -0,0 +1,199 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import io.papermc.paper.event.player.PlayerTradeEvent;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockDispenseEvent;
+import org.bukkit.event.block.BlockFertilizeEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.inventory.CraftItemEvent;
+import org.bukkit.event.player.PlayerInteractEntityEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+import org.bukkit.plugin.EventExecutor;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Регистрирует обработчики {@link PlantListener}, {@link GrowthListener} и {@link AcquisitionListener}
+ * по одному на тип события
+ * в зависимости от скомпилированной политики, а также {@link QuotaListener} и {@link CropListener}
+ * целиком, пока включены лимиты и защита посевов.
+ * <p>
+ * Если при текущей политике обработчик ничего не может запретить (например,
+ * все посевы жителей разрешены), он снимается с {@link HandlerList} и не
+ * участвует в рассылке событий вовсе. Исключение — обработчики, из которых
+ * история посадок и трасса получают события: они остаются, пока те включены.
+ * Пересчитывается при каждой перезагрузке, а также при начале и конце записи трассы.
+ */
+public class ListenerRegistrar {
+
+    private final PlantRestrictions plugin;
+    private final PlantListener plantListener;
+    private final GrowthListener growthListener;
+    private final QuotaListener quotaListener;
+    private final CropListener cropListener;
+    private final AcquisitionListener acquisitionListener;
+    private boolean quotaTracking;
+    private boolean cropProtection;
+    // Для каждого зарегистрированного обработчика — свой объект Listener,
+    // чтобы снимать его с HandlerList независимо от остальных
+    private final Map<PlantMetrics.Handler, Listener> active = new EnumMap<>(PlantMetrics.Handler.class);
+
+    public ListenerRegistrar(PlantRestrictions plugin, PlantListener plantListener, GrowthListener growthListener,
+                             QuotaListener quotaListener, CropListener cropListener,
+                             AcquisitionListener acquisitionListener) {
+        this.plugin = plugin;
+        this.plantListener = plantListener;
+        this.growthListener = growthListener;
+        this.quotaListener = quotaListener;
+        this.cropListener = cropListener;
+        this.acquisitionListener = acquisitionListener;
+    }
+
+    /**
+     * Приводит набор зарегистрированных обработчиков в соответствие с политикой
+     */
+    public synchronized void apply(PlantPolicy policy) {
+        boolean quotas = policy.getQuotas().enabled();
+        // История посадок получает события только от PLACE и INTERACT, трасса — от всех обработчиков посадки
+        boolean tracing = plugin.getTraceRecorder().isRecording();
+        boolean observed = tracing || plugin.getAnalytics().isEnabled();
+        update(PlantMetrics.Handler.PLACE, quotas || observed || policy.restricts(PlantClassifier.PLANTABLE),
+                BlockPlaceEvent.class, BlockPlaceEvent.getHandlerList(), plantListener::onBlockPlace);
+        update(PlantMetrics.Handler.INTERACT, quotas || observed || policy.restricts(PlantClassifier.INTERACT_SEED),
+                PlayerInteractEvent.class, PlayerInteractEvent.getHandlerList(), plantListener::onPlayerInteract);
+        // Передача семян жителю ещё и назначает ему владельца, это нужно, пока ограничены посевы жителей
+        update(PlantMetrics.Handler.VILLAGER_GIVE,
+                tracing || policy.restricts(PlantClassifier.VILLAGER_PLANTABLE | PlantClassifier.CROP_BLOCK),
+                PlayerInteractEntityEvent.class, PlayerInteractEntityEvent.getHandlerList(),
+                plantListener::onPlayerInteractEntity);
+        update(PlantMetrics.Handler.VILLAGER_PLANT, tracing || policy.restricts(PlantClassifier.CROP_BLOCK),
+                EntityChangeBlockEvent.class, EntityChangeBlockEvent.getHandlerList(),
+                plantListener::onEntityChangeBlock);
+        update(PlantMetrics.Handler.DISPENSE, quotas || tracing || policy.restricts(PlantClassifier.PLANTABLE),
+                BlockDispenseEvent.class, BlockDispenseEvent.getHandlerList(), plantListener::onBlockDispense);
+
+        boolean growth = policy.restrictsGrowth();
+        PlantPolicy.GrowthRules rules = policy.getGrowthRules();
+        update(PlantMetrics.Handler.GROW, growth,
+                BlockGrowEvent.class, BlockGrowEvent.getHandlerList(), growthListener::onBlockGrow);
+        update(PlantMetrics.Handler.SPREAD, growth && rules.spread(),
+                BlockSpreadEvent.class, BlockSpreadEvent.getHandlerList(), growthListener::onBlockSpread);
+        update(PlantMetrics.Handler.FERTILIZE, growth && rules.fertilize(),
+                BlockFertilizeEvent.class, BlockFertilizeEvent.getHandlerList(), growthListener::onFertilize);
+        update(PlantMetrics.Handler.STRUCTURE_GROW, growth && rules.structures(),
+                StructureGrowEvent.class, StructureGrowEvent.getHandlerList(), growthListener::onStructureGrow);
+
+        PlantPolicy.Acquisition acquisition = policy.getAcquisition();
+        boolean players = policy.restricts(PlantClassifier.PLANTABLE);
+        update(PlantMetrics.Handler.PICKUP, acquisition.playerPickup() && players
+                        || acquisition.villagerPickup() && policy.restricts(PlantClassifier.VILLAGER_PLANTABLE),
+                EntityPickupItemEvent.class, EntityPickupItemEvent.getHandlerList(), acquisitionListener::onPickup);
+        update(PlantMetrics.Handler.TRADE, acquisition.trades() && players,
+                PlayerTradeEvent.class, PlayerTradeEvent.getHandlerList(), acquisitionListener::onTrade);
+        update(PlantMetrics.Handler.CRAFT, acquisition.crafting() && players,
+                CraftItemEvent.class, CraftItemEvent.getHandlerList(), acquisitionListener::onCraft);
+
+        // Счётчики лимитов нужны только пока лимиты включены
+        if (quotas != quotaTracking) {
+            if (quotas) {
+                plugin.getServer().getPluginManager().registerEvents(quotaListener, plugin);
+            } else {
+                HandlerList.unregisterAll(quotaListener);
+            }
+            quotaTracking = quotas;
+            plugin.getLogger().info("Учёт лимитов растений " + (quotas ? "включён" : "отключён"));
+        }
+
+        // Владельцы посевов записываются только пока защита включена; без обработчика
+        // выгрузки чанков индекс в памяти не очищался бы, поэтому он сбрасывается вместе с ним
+        boolean crops = policy.getCropProtection().enabled();
+        if (crops != cropProtection) {
+            if (crops) {
+                plugin.getServer().getPluginManager().registerEvents(cropListener, plugin);
+                plugin.getCropOwnership().start();
+            } else {
+                HandlerList.unregisterAll(cropListener);
+                plugin.getCropOwnership().stop();
+            }
+            cropProtection = crops;
+            plugin.getLogger().info("Защита посевов " + (crops ? "включена" : "отключена"));
+        }
+    }
+
+    /**
+     * Пересчитывает обработчики для текущей политики, например после начала или конца записи трассы
+     */
+    public synchronized void refresh() {
+        apply(plugin.getPlantManager().getPolicy());
+    }
+
+    /**
+     * Снимает все обработчики
+     */
+    public synchronized void unregisterAll() {
+        for (Listener listener : active.values()) {
+            HandlerList.unregisterAll(listener);
+        }
+        active.clear();
+        HandlerList.unregisterAll(quotaListener);
+        quotaTracking = false;
+        HandlerList.unregisterAll(cropListener);
+        if (cropProtection) {
+            plugin.getCropOwnership().stop();
+        }
+        cropProtection = false;
+    }
+
+    public PlantListener getPlantListener() {
+        return plantListener;
+    }
+
+    /**
+     * Зарегистрирован ли обработчик сейчас
+     */
+    public synchronized boolean isActive(PlantMetrics.Handler handler) {
+        return handler == PlantMetrics.Handler.HARVEST ? cropProtection : active.containsKey(handler);
+    }
+
+    private <T extends Event> void update(PlantMetrics.Handler handler, boolean needed, Class<T> type,
+                                          HandlerList handlers, Consumer<T> action) {
+        Listener registered = active.get(handler);
+        if (needed == (registered != null)) {
+            return;
+        }
+
+        if (needed) {
+            Listener listener = new Listener() {
+            };
+            // Bukkit вызывает исполнитель и для подклассов события, поэтому тип проверяется явно
+            EventExecutor executor = (l, event) -> {
+                if (type.isInstance(event)) {
+                    action.accept(type.cast(event));
+                }
+            };
+            plugin.getServer().getPluginManager().registerEvent(type, listener, EventPriority.NORMAL,
+                    executor, plugin, true);
+            active.put(handler, listener);
+            plugin.getLogger().info("Обработчик " + handler.label() + " включён");
+        } else {
+            handlers.unregister(registered);
+            active.remove(handler);
+            plugin.getLogger().info("Обработчик " + handler.label()
+                    + " отключён: текущая политика ничего не запрещает, история и трасса не записываются");
+        }
+    }
+}
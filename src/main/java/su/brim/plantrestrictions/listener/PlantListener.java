@@ -1,19 +1,35 @@
 package su.brim.plantrestrictions.listener;
 
-import su.brim.kingdoms.api.KingdomsAPI;
 import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.analytics.PlantAnalytics;
+import su.brim.plantrestrictions.audit.AuditLog;
+import su.brim.plantrestrictions.audit.AuditRecord;
+import su.brim.plantrestrictions.config.Messages;
+import su.brim.plantrestrictions.debug.DebugLogger;
+import su.brim.plantrestrictions.manager.AutomationOwnership;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
 import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.RuleProgram;
+import su.brim.plantrestrictions.manager.VillagerOwnership;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.quota.QuotaCounter;
+import su.brim.plantrestrictions.quota.QuotaRules;
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import su.brim.plantrestrictions.trace.TraceFormat;
+import su.brim.plantrestrictions.trace.TraceRecorder;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
 import org.bukkit.block.data.BlockData;
 import org.bukkit.block.data.Ageable;
-import org.bukkit.entity.Entity;
+import org.bukkit.block.data.Bisected;
+import org.bukkit.block.data.Directional;
 import org.bukkit.entity.Player;
 import org.bukkit.entity.Villager;
-import org.bukkit.event.EventHandler;
-import org.bukkit.event.EventPriority;
-import org.bukkit.event.Listener;
 import org.bukkit.event.block.Action;
+import org.bukkit.event.block.BlockDispenseEvent;
 import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.EntityChangeBlockEvent;
 import org.bukkit.event.player.PlayerInteractEntityEvent;
@@ -22,63 +38,130 @@ import org.bukkit.inventory.EquipmentSlot;
 import org.bukkit.inventory.ItemStack;
 
 /**
- * Слушатель событий посадки растений.
+ * Обработчики событий посадки растений.
+ * Регистрируются не через аннотации, а {@link ListenerRegistrar} — только те,
+ * которые при текущей политике могут что-то запретить.
  * В Folia события вызываются в регионе игрока/сущности, поэтому
  * дополнительная синхронизация не требуется.
  */
-public class PlantListener implements Listener {
+public class PlantListener {
 
     private final PlantRestrictions plugin;
     private final PlantManager plantManager;
-    private final KingdomsAPI kingdomsAPI;
-
-    public PlantListener(PlantRestrictions plugin) {
+    private final IdentityCache identityCache;
+    private final DebugLogger debug;
+    private final DenialNotifier denialNotifier;
+    private final PlantMetrics metrics;
+    private final VillagerOwnership villagerOwnership;
+    private final ZoneIndex zoneIndex;
+    private final AutomationOwnership automationOwnership;
+    private final AuditLog auditLog;
+    private final QuotaCounter quotaCounter;
+    private final PlantAnalytics analytics;
+    private final TraceRecorder trace;
+
+    public PlantListener(PlantRestrictions plugin, DenialNotifier denialNotifier) {
         this.plugin = plugin;
         this.plantManager = plugin.getPlantManager();
-        this.kingdomsAPI = plugin.getKingdomsAPI();
+        this.identityCache = plugin.getIdentityCache();
+        this.debug = plugin.getDebugLogger();
+        this.denialNotifier = denialNotifier;
+        this.metrics = plugin.getMetrics();
+        this.villagerOwnership = plugin.getVillagerOwnership();
+        this.zoneIndex = plugin.getZoneIndex();
+        this.automationOwnership = plugin.getAutomationOwnership();
+        this.auditLog = plugin.getAuditLog();
+        this.quotaCounter = plugin.getQuotaCounter();
+        this.analytics = plugin.getAnalytics();
+        this.trace = plugin.getTraceRecorder();
     }
 
     /**
      * Обработка размещения блоков (саженцы, кактусы, грибы и т.д.)
      */
-    @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onBlockPlace(BlockPlaceEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.PLACE, checkBlockPlace(event), start);
+    }
+
+    private PlantMetrics.Outcome checkBlockPlace(BlockPlaceEvent event) {
         Player player = event.getPlayer();
         Material material = event.getBlockPlaced().getType();
 
         // Проверяем, является ли это растением
         if (!plantManager.isPlantable(material)) {
-            return;
+            recordSeedPlanting(player, material, event.getBlockPlaced());
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
+        IdentityCache.Identity identity = identityCache.get(player);
+
+        Block placed = event.getBlockPlaced();
+
         // Проверяем bypass право
-        if (player.hasPermission("plantrestrictions.bypass")) {
-            plugin.debug("Игрок " + player.getName() + " имеет bypass право");
-            return;
+        if (identity.bypass()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, material, "Игрок {} имеет bypass право ({})",
+                    player.getName(), "place");
+            audit(AuditRecord.Action.BYPASS, PlantMetrics.Handler.PLACE, player, identity.kingdom(), material, placed);
+            return PlantMetrics.Outcome.BYPASS;
         }
 
         // Проверяем админа KingdomsAddon
-        if (kingdomsAPI.isAdmin(player)) {
-            plugin.debug("Игрок " + player.getName() + " является админом KingdomsAddon");
-            return;
+        if (identity.admin()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, material, "Игрок {} является админом KingdomsAddon ({})",
+                    player.getName(), "place");
+            audit(AuditRecord.Action.ADMIN, PlantMetrics.Handler.PLACE, player, identity.kingdom(), material, placed);
+            return PlantMetrics.Outcome.BYPASS;
         }
 
-        // Получаем королевство игрока
-        String kingdomId = kingdomsAPI.getPlayerKingdom(player.getUniqueId());
-
-        // Проверяем разрешение
-        if (!plantManager.canPlant(kingdomId, material)) {
+        int kingdom = identity.kingdom();
+        String kingdomId = identity.kingdomId();
+
+        // Проверяем разрешение с учётом зоны, в которую ставится блок, и лимит чанка
+        Verdict verdict = decide(PlantMetrics.Handler.PLACE, kingdom, identity.groups(), material, placed);
+        trace.record(PlantMetrics.Handler.PLACE, event.getHand(), material, kingdom, identity.groups(), placed,
+                outcome(verdict));
+        // Растения, которые ставятся как блок, считаются здесь; посевы из семян — в recordSeedPlanting
+        if (analytics.isEnabled()) {
+            Material plant = plantManager.getClassifier().plantOf(material);
+            analytics.record(kingdom, plant != null ? plant : material, placed.getWorld(), verdict == Verdict.ALLOWED);
+        }
+        if (verdict == Verdict.DENIED) {
             event.setCancelled(true);
 
-            if (kingdomId == null) {
-                player.sendMessage(plugin.getConfigManager().getNoKingdomMessage());
-            } else {
-                player.sendMessage(plugin.getConfigManager().getNoPermissionMessage());
-            }
+            denialNotifier.deny(player, denialKey(kingdom, kingdomId, material));
+            metrics.denied(kingdom, material);
+            audit(AuditRecord.Action.DENIED, PlantMetrics.Handler.PLACE, player, kingdom, material, placed);
 
-            plugin.debug("Заблокирована посадка " + material.name() + 
-                    " игроком " + player.getName() + 
-                    " (королевство: " + kingdomId + ")");
+            debug.log(player, kingdom, material, "Заблокирована посадка {} игроком {} (королевство: {})",
+                    material, player.getName(), kingdomId);
+            return PlantMetrics.Outcome.DENIED;
+        }
+        if (verdict == Verdict.QUOTA) {
+            event.setCancelled(true);
+            denyQuota(PlantMetrics.Handler.PLACE, player, kingdom, material, placed);
+            return PlantMetrics.Outcome.DENIED;
+        }
+        return PlantMetrics.Outcome.ALLOWED;
+    }
+
+    /**
+     * Посадка семян: правый клик уже разрешён обработчиком взаимодействия, а появившийся блок
+     * посева (пшеница, картофель, стебель) растением для посадки не считается и отсеивается
+     * до проверок. Посадка засчитывается в историю здесь, под материалом семян.
+     * Блоки-предметы (плод тыквы или арбуза) посадкой не являются.
+     */
+    private void recordSeedPlanting(Player player, Material material, Block placed) {
+        if (!analytics.isEnabled() || material.isItem()) {
+            return;
+        }
+        Material seed = plantManager.getClassifier().plantOf(material);
+        if (seed == null || !plantManager.getClassifier().is(seed, PlantClassifier.INTERACT_SEED)) {
+            return;
+        }
+        IdentityCache.Identity identity = identityCache.get(player);
+        if (!identity.bypass() && !identity.admin()) {
+            analytics.record(identity.kingdom(), seed, placed.getWorld(), true);
         }
     }
 
@@ -95,74 +178,92 @@ public class PlantListener implements Listener {
      * запрещено сажать, блокируем взаимодействие, а Minecraft сам не даст
      * посадить в невалидное место.
      */
-    @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onPlayerInteract(PlayerInteractEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.INTERACT, checkPlayerInteract(event), start);
+    }
+
+    private PlantMetrics.Outcome checkPlayerInteract(PlayerInteractEvent event) {
         // Только правый клик по блоку
         if (event.getAction() != Action.RIGHT_CLICK_BLOCK) {
-            return;
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
-        Player player = event.getPlayer();
-        EquipmentSlot hand = event.getHand();
-        if (hand == null) {
-            return;
-        }
-
-        // Получаем предмет из той руки, которой произведён клик
-        ItemStack item = (hand == EquipmentSlot.HAND) 
-                ? player.getInventory().getItemInMainHand() 
-                : player.getInventory().getItemInOffHand();
-
+        // Предмет из той руки, которой произведён клик, без обращения к инвентарю
+        ItemStack item = event.getItem();
         if (item == null || item.getType() == Material.AIR) {
-            return;
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
         Material material = item.getType();
 
         // Проверяем, является ли это семенами/растением для посадки
-        if (!isSeedOrPlantable(material)) {
-            return;
+        if (!plantManager.getClassifier().is(material, PlantClassifier.INTERACT_SEED)) {
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
         Block clickedBlock = event.getClickedBlock();
         if (clickedBlock == null) {
-            return;
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
         // Разрешаем помещать предметы в котёл (для BreweryX и т.п.)
         if (isCauldron(clickedBlock.getType())) {
-            return;
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
+        Player player = event.getPlayer();
+        EquipmentSlot hand = event.getHand();
+
+        IdentityCache.Identity identity = identityCache.get(player);
+
+        // Растение появится на соседнем с кликнутым блоке
+        Block target = clickedBlock.getRelative(event.getBlockFace());
+
         // Проверяем bypass право
-        if (player.hasPermission("plantrestrictions.bypass")) {
-            plugin.debug("Игрок " + player.getName() + " имеет bypass право (interact, hand=" + hand + ")");
-            return;
+        if (identity.bypass()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, material, "Игрок {} имеет bypass право (interact, hand={})",
+                    player.getName(), hand);
+            audit(AuditRecord.Action.BYPASS, PlantMetrics.Handler.INTERACT, player, identity.kingdom(), material, target);
+            return PlantMetrics.Outcome.BYPASS;
         }
 
         // Проверяем админа KingdomsAddon
-        if (kingdomsAPI.isAdmin(player)) {
-            plugin.debug("Игрок " + player.getName() + " является админом KingdomsAddon (interact)");
-            return;
+        if (identity.admin()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, material, "Игрок {} является админом KingdomsAddon ({})",
+                    player.getName(), "interact");
+            audit(AuditRecord.Action.ADMIN, PlantMetrics.Handler.INTERACT, player, identity.kingdom(), material, target);
+            return PlantMetrics.Outcome.BYPASS;
         }
 
-        // Получаем королевство игрока
-        String kingdomId = kingdomsAPI.getPlayerKingdom(player.getUniqueId());
+        int kingdom = identity.kingdom();
+        String kingdomId = identity.kingdomId();
 
-        // Проверяем разрешение
-        if (!plantManager.canPlant(kingdomId, material)) {
+        // Проверяем разрешение с учётом зоны, в которой появится растение, и лимит чанка
+        Verdict verdict = decide(PlantMetrics.Handler.INTERACT, kingdom, identity.groups(), material, target);
+        trace.record(PlantMetrics.Handler.INTERACT, hand, material, kingdom, identity.groups(), target,
+                outcome(verdict));
+        // Разрешённая посадка засчитывается при появлении блока посева (recordSeedPlanting)
+        if (verdict != Verdict.ALLOWED) {
+            analytics.record(kingdom, material, target.getWorld(), false);
+        }
+        if (verdict == Verdict.DENIED) {
             event.setCancelled(true);
 
-            if (kingdomId == null) {
-                player.sendMessage(plugin.getConfigManager().getNoKingdomMessage());
-            } else {
-                player.sendMessage(plugin.getConfigManager().getNoPermissionMessage());
-            }
+            denialNotifier.deny(player, denialKey(kingdom, kingdomId, material));
+            metrics.denied(kingdom, material);
+            audit(AuditRecord.Action.DENIED, PlantMetrics.Handler.INTERACT, player, kingdom, material, target);
 
-            plugin.debug("Заблокирована посадка семян " + material.name() + 
-                    " игроком " + player.getName() + 
-                    " (рука: " + hand + ", королевство: " + kingdomId + ")");
+            debug.log(player, kingdom, material, "Заблокирована посадка семян {} игроком {} (рука: {}, королевство: {})",
+                    material, player.getName(), hand, kingdomId);
+            return PlantMetrics.Outcome.DENIED;
+        }
+        if (verdict == Verdict.QUOTA) {
+            event.setCancelled(true);
+            denyQuota(PlantMetrics.Handler.INTERACT, player, kingdom, material, target);
+            return PlantMetrics.Outcome.DENIED;
         }
+        return PlantMetrics.Outcome.ALLOWED;
     }
 
     /**
@@ -172,11 +273,14 @@ public class PlantListener implements Listener {
      * 
      * В Folia событие вызывается в регионе целевой сущности (жителя).
      */
-    @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onPlayerInteractEntity(PlayerInteractEntityEvent event) {
-        Entity rightClicked = event.getRightClicked();
-        if (!(rightClicked instanceof Villager)) {
-            return;
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.VILLAGER_GIVE, checkPlayerInteractEntity(event), start);
+    }
+
+    private PlantMetrics.Outcome checkPlayerInteractEntity(PlayerInteractEntityEvent event) {
+        if (!(event.getRightClicked() instanceof Villager villager)) {
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
         Player player = event.getPlayer();
@@ -188,147 +292,325 @@ public class PlantListener implements Listener {
                 : player.getInventory().getItemInOffHand();
 
         if (item == null || item.getType() == Material.AIR) {
-            return;
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
         Material material = item.getType();
 
         // Проверяем только семена/овощи, которые житель может посадить
-        if (!isVillagerPlantable(material)) {
-            return;
+        if (!plantManager.getClassifier().is(material, PlantClassifier.VILLAGER_PLANTABLE)) {
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
+        IdentityCache.Identity identity = identityCache.get(player);
+
         // Проверяем bypass право
-        if (player.hasPermission("plantrestrictions.bypass")) {
-            plugin.debug("Игрок " + player.getName() + " имеет bypass право (villager give)");
-            return;
+        if (identity.bypass()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, material, "Игрок {} имеет bypass право ({})",
+                    player.getName(), "villager give");
+            audit(AuditRecord.Action.BYPASS, PlantMetrics.Handler.VILLAGER_GIVE, player, identity.kingdom(),
+                    material, villager.getLocation().getBlock());
+            villagerOwnership.claim(villager, identity.kingdom());
+            return PlantMetrics.Outcome.BYPASS;
         }
 
         // Проверяем админа KingdomsAddon
-        if (kingdomsAPI.isAdmin(player)) {
-            plugin.debug("Игрок " + player.getName() + " является админом KingdomsAddon (villager give)");
-            return;
+        if (identity.admin()) {
+            debug.log(player, DebugLogger.ANY_KINGDOM, material, "Игрок {} является админом KingdomsAddon ({})",
+                    player.getName(), "villager give");
+            audit(AuditRecord.Action.ADMIN, PlantMetrics.Handler.VILLAGER_GIVE, player, identity.kingdom(),
+                    material, villager.getLocation().getBlock());
+            // Только админ может переназначить жителя чужого королевства
+            villagerOwnership.setOwner(villager, identity.kingdom());
+            return PlantMetrics.Outcome.BYPASS;
         }
 
-        // Получаем королевство игрока
-        String kingdomId = kingdomsAPI.getPlayerKingdom(player.getUniqueId());
+        int kingdom = identity.kingdom();
+        String kingdomId = identity.kingdomId();
 
-        // Проверяем разрешение
-        if (!plantManager.canPlant(kingdomId, material)) {
+        // Проверяем разрешение: место посадки неизвестно, правила с условиями места не действуют
+        boolean allowed = plantManager.canPlant(kingdom, identity.groups(), RuleProgram.UNKNOWN_ZONE, material, null);
+        trace.record(PlantMetrics.Handler.VILLAGER_GIVE, hand, material, kingdom, identity.groups(), null,
+                allowed ? TraceFormat.ALLOWED : TraceFormat.DENIED);
+        if (!allowed) {
             event.setCancelled(true);
 
-            if (kingdomId == null) {
-                player.sendMessage(plugin.getConfigManager().getNoKingdomMessage());
-            } else {
-                player.sendMessage(plugin.getConfigManager().getNoPermissionMessage());
-            }
+            denialNotifier.deny(player, kingdomId == null ? Messages.Key.NO_KINGDOM : Messages.Key.NO_PERMISSION);
+            metrics.denied(kingdom, material);
+            audit(AuditRecord.Action.DENIED, PlantMetrics.Handler.VILLAGER_GIVE, player, kingdom,
+                    material, villager.getLocation().getBlock());
+
+            debug.log(player, kingdom, material, "Заблокирована передача {} жителю игроком {} (королевство: {})",
+                    material, player.getName(), kingdomId);
+            return PlantMetrics.Outcome.DENIED;
+        }
 
-            plugin.debug("Заблокирована передача " + material.name() + 
-                    " жителю игроком " + player.getName() + 
-                    " (королевство: " + kingdomId + ")");
+        // Житель без владельца, получивший семена от члена королевства, сажает их от имени этого королевства;
+        // чужого жителя одной передачей семян не переманить
+        if (villagerOwnership.claim(villager, kingdom)) {
+            debug.log(player, kingdom, material, "Житель {} теперь принадлежит {}", villager.getUniqueId(), kingdomId);
         }
+        return PlantMetrics.Outcome.ALLOWED;
     }
 
     /**
      * Дополнительная защита: блокируем посадку растений жителями.
      * Это страхующий обработчик на случай, если житель уже имеет семена
      * в инвентаре (например, подобрал с земли или получил при торговле).
+     * Житель, закреплённый за королевством ({@link VillagerOwnership}),
+     * сажает то, что разрешено этому королевству.
      * 
      * В Folia EntityChangeBlockEvent вызывается в регионе блока.
      */
-    @EventHandler(priority = EventPriority.NORMAL, ignoreCancelled = true)
     public void onEntityChangeBlock(EntityChangeBlockEvent event) {
-        Entity entity = event.getEntity();
-        if (!(entity instanceof Villager)) {
-            return;
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.VILLAGER_PLANT, checkEntityChangeBlock(event), start);
+    }
+
+    private PlantMetrics.Outcome checkEntityChangeBlock(EntityChangeBlockEvent event) {
+        if (!(event.getEntity() instanceof Villager villager)) {
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
         Material toMaterial = event.getBlockData().getMaterial();
 
         // Проверяем, является ли новый блок растением
         // Жители сажают: пшеницу, картофель, морковь, свёклу
-        Material seedMaterial = cropBlockToSeed(toMaterial);
+        Material seedMaterial = plantManager.getClassifier().seedOf(toMaterial);
         if (seedMaterial == null) {
-            return;
+            return PlantMetrics.Outcome.PREFILTERED;
         }
 
-        // Проверяем, разрешено ли это растение глобально
-        if (plantManager.canPlant(null, seedMaterial) && 
-                !plugin.getConfigManager().isRestrictTeamless()) {
-            // Если для бескоролевственных разрешено и растение глобально доступно — пропускаем
-            return;
+        // Житель с владельцем сажает по правилам своего королевства,
+        // без владельца — только то, что доступно игрокам без королевства.
+        // Условные правила и зона проверяются по месту посадки, как у раздатчика; прав у жителя нет
+        int owner = villagerOwnership.getOwner(villager);
+        Block target = event.getBlock();
+        boolean allowed = (owner != KingdomRegistry.NO_KINGDOM
+                || plantManager.getPolicy().allowsVillagerCrop(seedMaterial))
+                && canPlantAt(owner, 0, seedMaterial, target);
+        trace.record(PlantMetrics.Handler.VILLAGER_PLANT, null, seedMaterial, owner, 0, target,
+                allowed ? TraceFormat.ALLOWED : TraceFormat.DENIED);
+        if (allowed) {
+            return PlantMetrics.Outcome.ALLOWED;
         }
 
-        // Блокируем посадку жителем — мы не можем определить,
-        // к какому королевству принадлежит житель
         event.setCancelled(true);
-        plugin.debug("Заблокирована посадка " + toMaterial.name() + 
-                " жителем на " + event.getBlock().getLocation());
+        metrics.denied(owner, seedMaterial);
+        audit(AuditRecord.Action.DENIED, PlantMetrics.Handler.VILLAGER_PLANT, null, owner, seedMaterial, target);
+        if (debug.isEnabled(null, owner, seedMaterial)) {
+            debug.log(null, owner, seedMaterial, "Заблокирована посадка {} жителем на {} (владелец: {})",
+                    toMaterial, target.getLocation(), plantManager.getKingdomRegistry().id(owner));
+        }
+        return PlantMetrics.Outcome.DENIED;
     }
 
     /**
-     * Проверяет, является ли блок котлом (для BreweryX)
+     * Раздатчик с растением: решение принимается так же, как для игрока,
+     * от имени королевства, поставившего раздатчик. Раздатчики без владельца
+     * (поставлены до установки плагина или не игроком) считаются игроками без королевства.
+     * <p>
+     * Обычный раздатчик выбрасывает семена и саженцы предметом, поэтому сам выброс не отменяется:
+     * иначе ломались бы сортировщики и передача предметов. Если посадка запрещена, блок перед
+     * раздатчиком проверяется после срабатывания, и растение, которое поставило поведение
+     * раздатчика (из другого плагина или ядра), убирается, а предмет выпадает обратно.
+     * Так же проверяется лимит чанка: посадку раздатчиком {@link QuotaListener} не видит,
+     * поэтому оставленное растение учитывается в счётчике здесь.
+     * <p>
+     * Владелец берётся из кэша {@link AutomationOwnership}, поэтому редстоун-часы
+     * не читают PDC на каждый импульс.
      */
-    private boolean isCauldron(Material material) {
-        return switch (material) {
-            case CAULDRON,
-                 WATER_CAULDRON,
-                 LAVA_CAULDRON,
-                 POWDER_SNOW_CAULDRON -> true;
-            default -> false;
-        };
+    public void onBlockDispense(BlockDispenseEvent event) {
+        long start = metrics.start();
+        metrics.record(PlantMetrics.Handler.DISPENSE, checkBlockDispense(event), start);
+    }
+
+    private PlantMetrics.Outcome checkBlockDispense(BlockDispenseEvent event) {
+        Block block = event.getBlock();
+        // Выбрасыватель не сажает, а только выбрасывает предмет
+        if (block.getType() != Material.DISPENSER) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+
+        Material material = event.getItem().getType();
+        if (!plantManager.getClassifier().is(material, PlantClassifier.PLANTABLE)) {
+            return PlantMetrics.Outcome.PREFILTERED;
+        }
+
+        // Растение появляется перед раздатчиком, это может быть уже соседний чанк
+        Block target = block.getBlockData() instanceof Directional directional
+                ? block.getRelative(directional.getFacing())
+                : block;
+
+        // У механизма нет прав, поэтому правила с условием группы прав к нему не относятся
+        int owner = automationOwnership.getOwner(block);
+        boolean allowed = canPlantAt(owner, 0, material, target);
+        QuotaRules quotas = plantManager.getPolicy().getQuotas();
+        if (allowed && (!quotas.enabled() || quotas.groupOfPlant(material) == QuotaRules.NO_GROUP)) {
+            trace.record(PlantMetrics.Handler.DISPENSE, null, material, owner, 0, target, TraceFormat.ALLOWED);
+            return PlantMetrics.Outcome.ALLOWED;
+        }
+
+        // Поведение раздатчика выполняется после события, результат виден в следующей задаче региона.
+        // Посадка, разрешённая политикой, ещё может упереться в лимит чанка; итог такой посадки
+        // в счётчиках обработчика — ALLOWED, превышение лимита добавляется в запреты
+        Material before = target.getType();
+        plugin.getServer().getRegionScheduler().execute(plugin, target.getWorld(), target.getX() >> 4,
+                target.getZ() >> 4, () -> checkDispensedPlant(block, target, before, owner, material, allowed));
+        return allowed ? PlantMetrics.Outcome.ALLOWED : PlantMetrics.Outcome.DENIED;
     }
 
     /**
-     * Проверяет, является ли материал семенами или растением для посадки через взаимодействие
+     * Проверяет растение, поставленное раздатчиком: убирает его, если посадка запрещена
+     * или превышен лимит чанка, иначе учитывает в счётчике лимитов.
+     * Вызывается в регионе целевого блока.
+     *
+     * @param allowed разрешена ли посадка политикой без учёта лимита
      */
-    private boolean isSeedOrPlantable(Material material) {
-        return switch (material) {
-            case WHEAT_SEEDS,
-                 BEETROOT_SEEDS,
-                 MELON_SEEDS,
-                 PUMPKIN_SEEDS,
-                 TORCHFLOWER_SEEDS,
-                 PITCHER_POD,
-                 POTATO,
-                 CARROT,
-                 NETHER_WART,
-                 COCOA_BEANS,
-                 SWEET_BERRIES,
-                 GLOW_BERRIES -> true;
-            default -> false;
-        };
+    private void checkDispensedPlant(Block dispenser, Block target, Material before, int owner, Material material,
+                                     boolean allowed) {
+        Material placed = target.getType();
+        PlantClassifier classifier = plantManager.getClassifier();
+        boolean planted = placed == material || classifier.seedOf(placed) == material
+                || classifier.plantOf(placed) == material;
+        if (placed == before || !planted) {
+            // Предмет выброшен, а не посажен
+            return;
+        }
+
+        if (allowed) {
+            QuotaRules quotas = plantManager.getPolicy().getQuotas();
+            int group = quotas.enabled() ? quotas.groupOfBlock(placed) : QuotaRules.NO_GROUP;
+            if (withinQuota(quotas, owner, group, target)) {
+                quotaCounter.change(target, before, placed);
+                trace.record(PlantMetrics.Handler.DISPENSE, null, material, owner, 0, target, TraceFormat.ALLOWED);
+                return;
+            }
+        }
+
+        // Верхняя половина высокого растения без обновления физики сама не исчезнет
+        if (target.getBlockData() instanceof Bisected) {
+            Block upper = target.getRelative(BlockFace.UP);
+            if (upper.getType() == placed) {
+                upper.setType(Material.AIR, false);
+            }
+        }
+        target.setType(Material.AIR, false);
+        target.getWorld().dropItemNaturally(target.getLocation(), new ItemStack(material));
+        trace.record(PlantMetrics.Handler.DISPENSE, null, material, owner, 0, target,
+                allowed ? TraceFormat.QUOTA : TraceFormat.DENIED);
+        metrics.denied(owner, material);
+        auditLog.record(AuditRecord.Action.DENIED, PlantMetrics.Handler.DISPENSE, null, owner, material,
+                target.getWorld(), target.getX(), target.getY(), target.getZ());
+        if (debug.isEnabled(null, owner, material)) {
+            debug.log(null, owner, material, "Убрана посадка {} раздатчиком на {} (владелец: {}{})",
+                    material, dispenser.getLocation(), plantManager.getKingdomRegistry().id(owner),
+                    allowed ? ", превышен лимит чанка" : "");
+        }
     }
 
     /**
-     * Материалы, которые житель может получить и посадить
+     * Итог проверки посадки без учёта обхода ограничений
      */
-    private boolean isVillagerPlantable(Material material) {
-        return switch (material) {
-            case WHEAT_SEEDS,
-                 BEETROOT_SEEDS,
-                 TORCHFLOWER_SEEDS,
-                 PITCHER_POD,
-                 POTATO,
-                 CARROT -> true;
-            default -> false;
-        };
+    public enum Verdict {
+        ALLOWED,
+        /** Запрещено королевству или зоной */
+        DENIED,
+        /** Превышен лимит чанка */
+        QUOTA
+    }
+
+    /**
+     * Решение о посадке игроком в точке мира: условные правила, разрешение королевства
+     * с учётом зоны, затем лимит чанка.
+     * Побочных эффектов (уведомлений, метрик, аудита) нет — их добавляют обработчики.
+     * Используется и нагрузочным тестом ({@code /pr loadtest}). Вызывать в регионе блока.
+     *
+     * @param handler {@link PlantMetrics.Handler#PLACE} — material это ставящийся блок,
+     *                иначе — предмет, которым сажают
+     * @param groups  маска групп прав игрока из {@link IdentityCache.Identity#groups()}
+     */
+    public Verdict decide(PlantMetrics.Handler handler, int kingdom, int groups, Material material, Block target) {
+        if (!canPlantAt(kingdom, groups, material, target)) {
+            return Verdict.DENIED;
+        }
+        QuotaRules quotas = plantManager.getPolicy().getQuotas();
+        if (quotas.enabled()) {
+            int group = handler == PlantMetrics.Handler.PLACE
+                    ? quotas.groupOfBlock(material)
+                    : quotas.groupOfPlant(material);
+            if (!withinQuota(quotas, kingdom, group, target)) {
+                return Verdict.QUOTA;
+            }
+        }
+        return Verdict.ALLOWED;
+    }
+
+    /**
+     * Итог для трассы: порядок {@link Verdict} совпадает с константами {@link TraceFormat}
+     */
+    private static byte outcome(Verdict verdict) {
+        return (byte) verdict.ordinal();
+    }
+
+    /**
+     * Не превышен ли лимит группы в чанке. Счётчик читается из памяти, блоки не обходятся.
+     */
+    private boolean withinQuota(QuotaRules quotas, int kingdom, int group, Block target) {
+        if (group == QuotaRules.NO_GROUP) {
+            return true;
+        }
+        int limit = quotas.limit(kingdom, group);
+        return limit == QuotaRules.UNLIMITED || quotaCounter.count(target, group) < limit;
+    }
+
+    private void denyQuota(PlantMetrics.Handler handler, Player player, int kingdom, Material material, Block target) {
+        denialNotifier.deny(player, Messages.Key.QUOTA_EXCEEDED);
+        metrics.denied(kingdom, material);
+        audit(AuditRecord.Action.DENIED, handler, player, kingdom, material, target);
+        debug.log(player, kingdom, material, "Превышен лимит {} в чанке {},{} (игрок: {})",
+                material, target.getX() >> 4, target.getZ() >> 4, player.getName());
+    }
+
+    private void audit(AuditRecord.Action action, PlantMetrics.Handler handler, Player player, int kingdom,
+                       Material material, Block block) {
+        if (auditLog.isEnabled()) {
+            auditLog.record(action, handler, player, kingdom, material,
+                    block.getWorld(), block.getX(), block.getY(), block.getZ());
+        }
     }
 
     /**
-     * Преобразует тип блока посева в соответствующий материал семян.
-     * Жители сажают блоки посевов (WHEAT, BEETROOTS, POTATOES, CARROTS),
-     * а в конфиге ограничения настроены на материалы семян/предметов.
+     * Проверка разрешения в точке мира. Зона ищется, только если политика от неё зависит;
+     * поиск идёт по примитивному ключу чанка и не выделяет память.
      */
-    private Material cropBlockToSeed(Material cropBlock) {
-        return switch (cropBlock) {
-            case WHEAT -> Material.WHEAT_SEEDS;
-            case BEETROOTS -> Material.BEETROOT_SEEDS;
-            case POTATOES -> Material.POTATO;
-            case CARROTS -> Material.CARROT;
-            case TORCHFLOWER_CROP -> Material.TORCHFLOWER_SEEDS;
-            case PITCHER_CROP -> Material.PITCHER_POD;
-            default -> null;
+    private boolean canPlantAt(int kingdom, int groups, Material material, Block target) {
+        int zone = plantManager.getPolicy().needsZone()
+                ? zoneIndex.zoneAt(target.getWorld(), target.getX() >> 4, target.getZ() >> 4)
+                : ZoneIndex.WILD;
+        return plantManager.canPlant(kingdom, groups, zone, material, target);
+    }
+
+    /**
+     * Сообщение о запрете: если без учёта зоны посадка разрешена, запретила зона
+     */
+    private Messages.Key denialKey(int kingdom, String kingdomId, Material material) {
+        if (plantManager.getPolicy().usesTerritories() && plantManager.getPolicy().canPlant(kingdom, material)) {
+            return Messages.Key.ZONE_DENIED;
+        }
+        return kingdomId == null ? Messages.Key.NO_KINGDOM : Messages.Key.NO_PERMISSION;
+    }
+
+    /**
+     * Проверяет, является ли блок котлом (для BreweryX)
+     */
+    static boolean isCauldron(Material material) {
+        return switch (material) {
+            case CAULDRON,
+                 WATER_CAULDRON,
+                 LAVA_CAULDRON,
+                 POWDER_SNOW_CAULDRON -> true;
+            default -> false;
         };
     }
 }
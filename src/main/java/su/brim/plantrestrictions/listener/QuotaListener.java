@@ -0,0 +1,104 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.quota.QuotaCounter;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockGrowEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.block.BlockSpreadEvent;
+import org.bukkit.event.entity.EntityChangeBlockEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.StructureGrowEvent;
+
+import java.util.List;
+
+/**
+ * Поддерживает счётчики {@link QuotaCounter}: загружает их вместе с чанком
+ * и меняет на единицу при посадке, разрушении, росте и распространении растений.
+ * <p>
+ * Все обработчики — MONITOR, то есть учитывают только состоявшиеся изменения.
+ * Регистрируется через {@link ListenerRegistrar}, только пока лимиты включены.
+ */
+public class QuotaListener implements Listener {
+
+    private final QuotaCounter quotaCounter;
+
+    public QuotaListener(QuotaCounter quotaCounter) {
+        this.quotaCounter = quotaCounter;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        quotaCounter.load(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        quotaCounter.unload(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlace(BlockPlaceEvent event) {
+        Block block = event.getBlockPlaced();
+        quotaCounter.change(block, event.getBlockReplacedState().getType(), block.getType());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        quotaCounter.change(block, block.getType(), Material.AIR);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onGrow(BlockGrowEvent event) {
+        Block block = event.getBlock();
+        quotaCounter.change(block, block.getType(), event.getNewState().getType());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSpread(BlockSpreadEvent event) {
+        Block block = event.getBlock();
+        quotaCounter.change(block, block.getType(), event.getNewState().getType());
+    }
+
+    /**
+     * Саженец или гриб превращается в дерево — растение исчезает
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStructureGrow(StructureGrowEvent event) {
+        Block block = event.getLocation().getBlock();
+        quotaCounter.change(block, block.getType(), Material.AIR);
+    }
+
+    /**
+     * Жители сажают и собирают урожай, кролики съедают морковь
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityChangeBlock(EntityChangeBlockEvent event) {
+        Block block = event.getBlock();
+        quotaCounter.change(block, block.getType(), event.getTo());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        removeAll(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        removeAll(event.blockList());
+    }
+
+    private void removeAll(List<Block> blocks) {
+        for (Block block : blocks) {
+            quotaCounter.change(block, block.getType(), Material.AIR);
+        }
+    }
+}
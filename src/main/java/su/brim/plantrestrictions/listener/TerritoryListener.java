@@ -0,0 +1,32 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+
+/**
+ * Поддерживает точечные назначения зон в {@link ZoneIndex}:
+ * переносит их из PDC загружаемых чанков и убирает при выгрузке.
+ * В Folia события чанков вызываются в регионе чанка.
+ */
+public class TerritoryListener implements Listener {
+
+    private final ZoneIndex zoneIndex;
+
+    public TerritoryListener(ZoneIndex zoneIndex) {
+        this.zoneIndex = zoneIndex;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        zoneIndex.load(event.getChunk());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        zoneIndex.unload(event.getChunk());
+    }
+}
@@ -0,0 +1,80 @@
+package su.brim.plantrestrictions.listener;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.manager.VillagerOwnership;
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import io.papermc.paper.event.player.PlayerTradeEvent;
+import org.bukkit.entity.Villager;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityPickupItemEvent;
+
+import java.util.UUID;
+
+/**
+ * Назначает жителям-фермерам королевство-владельца и поддерживает кэш
+ * {@link VillagerOwnership} в актуальном состоянии.
+ * <p>
+ * Владельцем становится королевство игрока, который первым накормил жителя
+ * (житель подобрал выброшенные игроком семена) или нанял его
+ * (торговал с фермером без владельца). Жителя, у которого уже есть владелец,
+ * так не переманить — сменить владельца может только админ KingdomsAddon.
+ * Передача семян из руки обрабатывается в {@link PlantListener}.
+ */
+public class VillagerOwnershipListener implements Listener {
+
+    private final PlantManager plantManager;
+    private final IdentityCache identityCache;
+    private final VillagerOwnership villagerOwnership;
+
+    public VillagerOwnershipListener(PlantRestrictions plugin) {
+        this.plantManager = plugin.getPlantManager();
+        this.identityCache = plugin.getIdentityCache();
+        this.villagerOwnership = plugin.getVillagerOwnership();
+    }
+
+    /**
+     * Житель без владельца подобрал семена, выброшенные игроком
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPickup(EntityPickupItemEvent event) {
+        if (!(event.getEntity() instanceof Villager villager)) {
+            return;
+        }
+        if (!plantManager.getClassifier().is(event.getItem().getItemStack().getType(),
+                PlantClassifier.VILLAGER_PLANTABLE)) {
+            return;
+        }
+        // Королевство бросившего берётся только из кэша: игрок не в сети жителя не закрепляет
+        UUID thrower = event.getItem().getThrower();
+        IdentityCache.Identity identity = thrower != null ? identityCache.cached(thrower) : null;
+        if (identity != null) {
+            villagerOwnership.claim(villager, identity.kingdom());
+        }
+    }
+
+    /**
+     * Торговля с фермером без владельца закрепляет его за королевством игрока
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTrade(PlayerTradeEvent event) {
+        if (event.getVillager() instanceof Villager villager
+                && villager.getProfession() == Villager.Profession.FARMER) {
+            villagerOwnership.claim(villager, identityCache.get(event.getPlayer()).kingdom());
+        }
+    }
+
+    /**
+     * Выгрузка чанка, смерть или удаление жителя
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRemove(EntityRemoveFromWorldEvent event) {
+        if (event.getEntity() instanceof Villager) {
+            villagerOwnership.evict(event.getEntity().getUniqueId());
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package su.brim.plantrestrictions.loadtest;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.listener.PlantListener;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantManager;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Синтетическая нагрузка на решения о посадке ({@code /pr loadtest}).
+ * <p>
+ * Решения проходят через {@link PlantListener#decide} и {@link PlantManager} — тот же путь,
+ * что у обработчиков событий, но без уведомлений, метрик и аудита. Поддельные игроки
+ * равномерно распределены по всем известным королевствам и игрокам без королевства
+ * и имеют случайный набор групп прав условных правил, материалы — все сажаемые растения.
+ * <p>
+ * Каждый поток нагрузки занимает свой чанк, удалённый от остальных на {@value #SPACING_CHUNKS}
+ * чанков, то есть работает в своём регионе Folia. Чтобы не останавливать тик региона,
+ * за тик выполняется не больше {@link Options#slice()} решений. Задержка меряется
+ * на каждое решение (вместе с накладными расходами {@link System#nanoTime()}),
+ * выделение памяти — по счётчику потока за всю порцию.
+ */
+public class LoadTest {
+
+    private static final int SPACING_CHUNKS = 64;
+    private static final int TARGETS = 64;
+    // Гистограмма: 8 линейных корзин, далее по 8 корзин на каждую степень двойки
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) << SUB_BITS;
+
+    /**
+     * @param decisions всего решений
+     * @param threads   сколько регионов нагружается одновременно
+     * @param slice     решений за тик в одном регионе
+     */
+    public record Options(World world, long decisions, int threads, int slice) {
+    }
+
+    /**
+     * Итог нагрузочного теста
+     *
+     * @param opsPerSecond      суммарная пропускная способность по времени работы потоков
+     * @param bytesPerDecision  выделено памяти на решение, -1 если JVM не считает выделения
+     */
+    public record Result(long decisions, int threads, long allowed, long denied, long quota, long wallNanos,
+                         double opsPerSecond, long p50, long p99, long p999, double bytesPerDecision) {
+    }
+
+    private final PlantRestrictions plugin;
+    private final PlantListener listener;
+    private final Options options;
+    private final Consumer<Result> done;
+
+    // Общие итоги защищены this
+    private final long[] histogram = new long[BUCKETS];
+    private long allowed;
+    private long denied;
+    private long quota;
+    private double opsPerSecond;
+    private long allocatedBytes;
+    private boolean allocationSupported = true;
+    private final AtomicInteger remaining = new AtomicInteger();
+    private long startedAt;
+
+    public LoadTest(PlantRestrictions plugin, PlantListener listener, Options options, Consumer<Result> done) {
+        this.plugin = plugin;
+        this.listener = listener;
+        this.options = options;
+        this.done = done;
+    }
+
+    /**
+     * Загружает чанки потоков и запускает нагрузку
+     */
+    public void start() {
+        PlantClassifier classifier = plugin.getPlantManager().getClassifier();
+        List<Material> plants = new ArrayList<>(classifier.materials(PlantClassifier.PLANTABLE));
+        plants.addAll(classifier.materials(PlantClassifier.INTERACT_SEED));
+        Material[] materials = plants.toArray(new Material[0]);
+
+        // Поддельные игроки: все королевства реестра и игроки без королевства
+        KingdomRegistry registry = plugin.getPlantManager().getKingdomRegistry();
+        int[] kingdoms = new int[registry.size() + 1];
+        for (int i = 0; i < registry.size(); i++) {
+            kingdoms[i] = i;
+        }
+        kingdoms[registry.size()] = KingdomRegistry.NO_KINGDOM;
+
+        World world = options.world();
+        int spawnX = world.getSpawnLocation().getBlockX() >> 4;
+        int spawnZ = world.getSpawnLocation().getBlockZ() >> 4;
+        remaining.set(options.threads());
+        startedAt = System.nanoTime();
+        long share = options.decisions() / options.threads();
+        for (int i = 0; i < options.threads(); i++) {
+            long count = i == 0 ? options.decisions() - share * (options.threads() - 1) : share;
+            int chunkX = spawnX + i * SPACING_CHUNKS;
+            int chunkZ = spawnZ;
+            Worker worker = new Worker(world, chunkX, chunkZ, count, materials, kingdoms, i);
+            world.getChunkAtAsync(chunkX, chunkZ).whenComplete((chunk, error) -> {
+                if (chunk == null || error != null) {
+                    plugin.getLogger().warning("Нагрузочный тест: не удалось загрузить чанк " + chunkX + "," + chunkZ);
+                    worker.finish();
+                    return;
+                }
+                worker.begin(chunk);
+            });
+        }
+    }
+
+    /**
+     * Нагрузка в одном регионе. Все методы, кроме конструктора, выполняются в регионе чанка.
+     */
+    private final class Worker {
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+        private final Material[] materials;
+        private final int[] kingdoms;
+        private final SplittableRandom random;
+        private final long[] histogram = new long[BUCKETS];
+        private final Block[] targets = new Block[TARGETS];
+        private long left;
+        private long busyNanos;
+        private long allocated;
+        private long completed;
+        private long allowed;
+        private long denied;
+        private long quota;
+        private Chunk chunk;
+
+        Worker(World world, int chunkX, int chunkZ, long count, Material[] materials, int[] kingdoms, int seed) {
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.left = count;
+            this.materials = materials;
+            this.kingdoms = kingdoms;
+            this.random = new SplittableRandom(0x5EED + seed);
+        }
+
+        void begin(Chunk loaded) {
+            chunk = loaded;
+            chunk.addPluginChunkTicket(plugin);
+            // Блоки создаются заранее: в событиях их тоже создаёт сервер, а не плагин
+            int y = world.getHighestBlockYAt(chunkX << 4, chunkZ << 4) + 1;
+            for (int i = 0; i < TARGETS; i++) {
+                targets[i] = chunk.getBlock(random.nextInt(16), y, random.nextInt(16));
+            }
+            slice();
+        }
+
+        void slice() {
+            if (materials.length == 0) {
+                finish();
+                return;
+            }
+            long count = Math.min(left, options.slice());
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long threadId = Thread.currentThread().threadId();
+            long allocatedBefore = allocatedBytes(threads, threadId);
+            long sliceStart = System.nanoTime();
+
+            for (long i = 0; i < count; i++) {
+                Material material = materials[random.nextInt(materials.length)];
+                int kingdom = kingdoms[random.nextInt(kingdoms.length)];
+                int groups = random.nextInt();
+                Block target = targets[(int) (i & (TARGETS - 1))];
+                PlantMetrics.Handler handler = (i & 1) == 0 ? PlantMetrics.Handler.PLACE : PlantMetrics.Handler.INTERACT;
+
+                long start = System.nanoTime();
+                PlantListener.Verdict verdict = listener.decide(handler, kingdom, groups, material, target);
+                long nanos = System.nanoTime() - start;
+
+                histogram[bucket(nanos)]++;
+                switch (verdict) {
+                    case ALLOWED -> allowed++;
+                    case DENIED -> denied++;
+                    case QUOTA -> quota++;
+                }
+            }
+
+            busyNanos += System.nanoTime() - sliceStart;
+            long allocatedAfter = allocatedBytes(threads, threadId);
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                allocated += allocatedAfter - allocatedBefore;
+            }
+            left -= count;
+            completed += count;
+
+            if (left > 0) {
+                plugin.getServer().getRegionScheduler().runDelayed(plugin, world, chunkX, chunkZ,
+                        task -> slice(), 1L);
+            } else {
+                finish();
+            }
+        }
+
+        void finish() {
+            if (chunk != null) {
+                chunk.removePluginChunkTicket(plugin);
+            }
+            merge(this);
+        }
+    }
+
+    private void merge(Worker worker) {
+        Result result = null;
+        synchronized (this) {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] += worker.histogram[i];
+            }
+            allowed += worker.allowed;
+            denied += worker.denied;
+            quota += worker.quota;
+            allocatedBytes += worker.allocated;
+            if (worker.busyNanos > 0) {
+                opsPerSecond += worker.completed * 1e9 / worker.busyNanos;
+            }
+            if (remaining.decrementAndGet() == 0) {
+                long total = allowed + denied + quota;
+                result = new Result(total, options.threads(), allowed, denied, quota, System.nanoTime() - startedAt,
+                        opsPerSecond, percentile(0.50), percentile(0.99), percentile(0.999),
+                        allocationSupported && total > 0 ? (double) allocatedBytes / total : -1.0);
+            }
+        }
+        if (result != null) {
+            done.accept(result);
+        }
+    }
+
+    private long allocatedBytes(ThreadMXBean threads, long threadId) {
+        if (threads instanceof com.sun.management.ThreadMXBean hotspot && hotspot.isThreadAllocatedMemorySupported()
+                && hotspot.isThreadAllocatedMemoryEnabled()) {
+            return hotspot.getThreadAllocatedBytes(threadId);
+        }
+        synchronized (this) {
+            allocationSupported = false;
+        }
+        return -1L;
+    }
+
+    /**
+     * Верхняя граница корзины, в которую попадает квантиль
+     */
+    private long percentile(double quantile) {
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0L;
+        }
+        long threshold = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= threshold) {
+                return upperBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    static int bucket(long nanos) {
+        if (nanos < (1L << SUB_BITS)) {
+            return (int) Math.max(0L, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) | sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < (1 << SUB_BITS)) {
+            return bucket;
+        }
+        int exponent = (bucket >>> SUB_BITS) + SUB_BITS - 1;
+        int sub = bucket & ((1 << SUB_BITS) - 1);
+        long width = 1L << (exponent - SUB_BITS);
+        return (((1L << SUB_BITS) | sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+}
@@ -0,0 +1,126 @@
+package su.brim.plantrestrictions.manager;
+
+import su.brim.plantrestrictions.util.ConcurrentLongIntMap;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.TileState;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Королевство игрока, поставившего механизм (раздатчик, выбрасыватель, крафтер).
+ * <p>
+ * Владелец хранится в PDC самого блока и переживает перезапуск сервера.
+ * Прочитанное значение кэшируется по ключу блока ({@link Block#getBlockKey()})
+ * в примитивном отображении мира — в том числе отсутствие владельца, — поэтому
+ * частые импульсы редстоун-часов не читают PDC повторно. Запись кэша меняется
+ * при установке и разрушении механизма и убирается при выгрузке чанка.
+ */
+public class AutomationOwnership {
+
+    // Отсутствие записи в кэше — нужно прочитать PDC
+    private static final int MISSING = Integer.MIN_VALUE;
+
+    private final NamespacedKey key;
+    private final KingdomRegistry kingdomRegistry;
+    private final Map<String, ConcurrentLongIntMap> owners = new ConcurrentHashMap<>();
+
+    public AutomationOwnership(Plugin plugin, KingdomRegistry kingdomRegistry) {
+        this.key = new NamespacedKey(plugin, "owner-kingdom");
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Отслеживается ли владелец блоков этого типа
+     */
+    public static boolean isAutomation(Material material) {
+        return switch (material) {
+            case DISPENSER, DROPPER, CRAFTER -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Индекс королевства-владельца механизма. Вызывать в регионе блока.
+     *
+     * @return индекс из {@link KingdomRegistry} или {@link KingdomRegistry#NO_KINGDOM}
+     */
+    public int getOwner(Block block) {
+        ConcurrentLongIntMap cache = cache(block);
+        long blockKey = block.getBlockKey();
+        int owner = cache.get(blockKey, MISSING);
+        if (owner != MISSING) {
+            return owner;
+        }
+
+        String kingdomId = null;
+        BlockState state = block.getState(false);
+        if (state instanceof TileState tile) {
+            kingdomId = tile.getPersistentDataContainer().get(key, PersistentDataType.STRING);
+        }
+        owner = kingdomRegistry.intern(kingdomId);
+        cache.put(blockKey, owner, MISSING);
+        return owner;
+    }
+
+    /**
+     * Записывает владельца только что поставленного механизма. Вызывать в регионе блока.
+     */
+    public void setOwner(Block block, int kingdom) {
+        BlockState state = block.getState();
+        if (state instanceof TileState tile) {
+            if (kingdom >= 0) {
+                tile.getPersistentDataContainer().set(key, PersistentDataType.STRING, kingdomRegistry.id(kingdom));
+            } else {
+                tile.getPersistentDataContainer().remove(key);
+            }
+            tile.update(false, false);
+        }
+        cache(block).put(block.getBlockKey(), kingdom, MISSING);
+    }
+
+    /**
+     * Убирает разрушенный механизм из кэша
+     */
+    public void evict(Block block) {
+        ConcurrentLongIntMap cache = owners.get(block.getWorld().getName());
+        if (cache != null) {
+            cache.remove(block.getBlockKey(), MISSING);
+        }
+    }
+
+    /**
+     * Убирает механизмы выгружаемого чанка из кэша. Вызывать в регионе чанка.
+     */
+    public void evict(Chunk chunk) {
+        ConcurrentLongIntMap cache = owners.get(chunk.getWorld().getName());
+        if (cache == null) {
+            return;
+        }
+        for (BlockState state : chunk.getTileEntities(false)) {
+            if (isAutomation(state.getType())) {
+                cache.remove(state.getBlock().getBlockKey(), MISSING);
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (ConcurrentLongIntMap cache : owners.values()) {
+            size += cache.size();
+        }
+        return size;
+    }
+
+    private ConcurrentLongIntMap cache(Block block) {
+        String worldName = block.getWorld().getName();
+        ConcurrentLongIntMap cache = owners.get(worldName);
+        return cache != null ? cache : owners.computeIfAbsent(worldName, name -> new ConcurrentLongIntMap());
+    }
+}
@@ -0,0 +1,436 @@
+package su.brim.plantrestrictions.manager;
+
+import su.brim.plantrestrictions.util.ConcurrentLongIntMap;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Chunk;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.Directional;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Королевство, посадившее растение.
+ * <p>
+ * В памяти для каждого мира хранится примитивное отображение ключа блока
+ * ({@link Block#getBlockKey()}) в индекс королевства из {@link KingdomRegistry},
+ * поэтому проверка сбора урожая — одно чтение без выделения памяти и без
+ * объектов на каждый блок. Посевы без владельца в индекс не попадают.
+ * <p>
+ * В PDC чанка владельцы лежат в компактном виде: список ID королевств, встречающихся
+ * в чанке, и массив записей по {@value #RECORD} байта — x и z внутри чанка,
+ * высота, номер королевства в списке. Изменения копятся в памяти, чанк помечается
+ * изменённым, а массив переписывается один раз — при выгрузке чанка, при сохранении
+ * мира и раз в {@value #SAVE_INTERVAL_SECONDS} секунд. В память чанк попадает при загрузке
+ * (или при первом обращении к нему) и убирается при выгрузке.
+ * <p>
+ * Плоды тыквы и арбуза своего владельца не имеют: он берётся у прикреплённого к плоду стебля.
+ */
+public class CropOwnership {
+
+    // Запись: (x << 4 | z), высота (два байта), номер королевства в списке чанка
+    private static final int RECORD = 4;
+    // Отсутствие чанка в памяти; у загруженного чанка хранится число посевов + 1
+    private static final int UNLOADED = 0;
+    // Высокие растения (тростник, бамбук, кактус) ищутся вниз до посаженного блока
+    private static final int MAX_STACK = 32;
+    // Период записи изменённых чанков, которые долго не выгружаются
+    private static final long SAVE_INTERVAL_SECONDS = 60L;
+    private static final BlockFace[] HORIZONTAL = {BlockFace.NORTH, BlockFace.EAST, BlockFace.SOUTH, BlockFace.WEST};
+
+    private final Plugin plugin;
+    private final NamespacedKey ownersKey;
+    private final NamespacedKey kingdomsKey;
+    private final KingdomRegistry kingdomRegistry;
+    private final Map<String, WorldIndex> worlds = new ConcurrentHashMap<>();
+    private ScheduledTask saveTask;
+
+    /**
+     * Индекс одного мира
+     */
+    private static final class WorldIndex {
+        // Ключ блока -> королевство
+        final ConcurrentLongIntMap owners = new ConcurrentLongIntMap();
+        // Ключ чанка -> число посевов с владельцем + 1
+        final ConcurrentLongIntMap chunks = new ConcurrentLongIntMap();
+        // Ключ чанка -> ещё не записанные в PDC изменения: позиция в чанке -> королевство
+        // (NO_KINGDOM — запись удалить). Вложенная карта меняется только в регионе чанка.
+        final Map<Long, Map<Integer, Integer>> dirty = new ConcurrentHashMap<>();
+    }
+
+    public CropOwnership(Plugin plugin, KingdomRegistry kingdomRegistry) {
+        this.plugin = plugin;
+        this.ownersKey = new NamespacedKey(plugin, "crop-owners");
+        this.kingdomsKey = new NamespacedKey(plugin, "crop-kingdoms");
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Королевство, посадившее растение в этом блоке. Вызывать в регионе блока.
+     * Для верхних блоков тростника, бамбука и кактуса возвращается владелец нижнего.
+     *
+     * @return индекс из {@link KingdomRegistry} или {@link KingdomRegistry#NO_KINGDOM}
+     */
+    public int getOwner(Block block) {
+        WorldIndex world = world(block.getWorld().getName());
+        ensureLoaded(world, block);
+        int owner = world.owners.get(block.getBlockKey(), KingdomRegistry.NO_KINGDOM);
+        if (owner != KingdomRegistry.NO_KINGDOM) {
+            return owner;
+        }
+
+        Material type = block.getType();
+        if (type == Material.MELON || type == Material.PUMPKIN) {
+            return fruitOwner(world, block, type == Material.MELON
+                    ? Material.ATTACHED_MELON_STEM : Material.ATTACHED_PUMPKIN_STEM);
+        }
+        int x = block.getX();
+        int z = block.getZ();
+        int minY = Math.max(block.getWorld().getMinHeight(), block.getY() - MAX_STACK);
+        for (int y = block.getY() - 1; y >= minY; y--) {
+            Block below = block.getWorld().getBlockAt(x, y, z);
+            if (below.getType() != type) {
+                return KingdomRegistry.NO_KINGDOM;
+            }
+            owner = world.owners.get(Block.getBlockKey(x, y, z), KingdomRegistry.NO_KINGDOM);
+            if (owner != KingdomRegistry.NO_KINGDOM) {
+                return owner;
+            }
+        }
+        return KingdomRegistry.NO_KINGDOM;
+    }
+
+    /**
+     * Владелец стебля, прикреплённого к плоду
+     */
+    private int fruitOwner(WorldIndex world, Block fruit, Material attachedStem) {
+        for (BlockFace face : HORIZONTAL) {
+            Block stem = fruit.getRelative(face);
+            if (stem.getType() != attachedStem || !(stem.getBlockData() instanceof Directional directional)
+                    || directional.getFacing() != face.getOppositeFace()) {
+                continue;
+            }
+            ensureLoaded(world, stem);
+            int owner = world.owners.get(stem.getBlockKey(), KingdomRegistry.NO_KINGDOM);
+            if (owner != KingdomRegistry.NO_KINGDOM) {
+                return owner;
+            }
+        }
+        return KingdomRegistry.NO_KINGDOM;
+    }
+
+    /**
+     * Записывает королевство, посадившее растение. Вызывать в регионе блока.
+     * В PDC изменение попадёт при выгрузке или сохранении чанка.
+     *
+     * @param kingdom индекс из {@link KingdomRegistry}; {@link KingdomRegistry#NO_KINGDOM} снимает владельца
+     */
+    public void setOwner(Block block, int kingdom) {
+        WorldIndex world = world(block.getWorld().getName());
+        ensureLoaded(world, block);
+        long blockKey = block.getBlockKey();
+        int previous = world.owners.get(blockKey, KingdomRegistry.NO_KINGDOM);
+        if (previous == kingdom) {
+            return;
+        }
+
+        long chunkKey = Chunk.getChunkKey(block.getX() >> 4, block.getZ() >> 4);
+        if (kingdom >= 0) {
+            world.owners.put(blockKey, kingdom, KingdomRegistry.NO_KINGDOM);
+            if (previous == KingdomRegistry.NO_KINGDOM) {
+                world.chunks.addTo(chunkKey, 1);
+            }
+        } else {
+            world.owners.remove(blockKey, KingdomRegistry.NO_KINGDOM);
+            world.chunks.addTo(chunkKey, -1);
+        }
+        world.dirty.computeIfAbsent(chunkKey, key -> new HashMap<>())
+                .put(position((block.getX() & 15) << 4 | (block.getZ() & 15), block.getY()), kingdom);
+    }
+
+    /**
+     * Убирает владельца исчезнувшего растения. Вызывать в регионе блока.
+     */
+    public void remove(Block block) {
+        WorldIndex world = worlds.get(block.getWorld().getName());
+        if (world != null && world.owners.get(block.getBlockKey(), KingdomRegistry.NO_KINGDOM)
+                != KingdomRegistry.NO_KINGDOM) {
+            setOwner(block, KingdomRegistry.NO_KINGDOM);
+        }
+    }
+
+    /**
+     * Переносит владельцев посевов чанка из PDC в память. Вызывать при загрузке чанка, в его регионе.
+     */
+    public void load(Chunk chunk) {
+        WorldIndex world = world(chunk.getWorld().getName());
+        long chunkKey = chunk.getChunkKey();
+        if (world.chunks.get(chunkKey, UNLOADED) != UNLOADED) {
+            return;
+        }
+
+        PersistentDataContainer chunkData = chunk.getPersistentDataContainer();
+        byte[] records = chunkData.get(ownersKey, PersistentDataType.BYTE_ARRAY);
+        List<String> kingdoms = chunkData.get(kingdomsKey, PersistentDataType.LIST.strings());
+        int count = 0;
+        if (records != null && kingdoms != null) {
+            int[] palette = new int[kingdoms.size()];
+            for (int i = 0; i < palette.length; i++) {
+                palette[i] = kingdomRegistry.intern(kingdoms.get(i));
+            }
+            int baseX = chunk.getX() << 4;
+            int baseZ = chunk.getZ() << 4;
+            for (int offset = 0; offset + RECORD <= records.length; offset += RECORD) {
+                int index = records[offset + 3] & 0xFF;
+                if (index >= palette.length) {
+                    continue;
+                }
+                world.owners.put(blockKey(records, offset, baseX, baseZ), palette[index], KingdomRegistry.NO_KINGDOM);
+                count++;
+            }
+        }
+        world.chunks.put(chunkKey, count + 1, UNLOADED);
+    }
+
+    /**
+     * Записывает изменения выгружаемого чанка в PDC и убирает владельцев его посевов из памяти
+     */
+    public void unload(Chunk chunk) {
+        WorldIndex world = worlds.get(chunk.getWorld().getName());
+        if (world == null) {
+            return;
+        }
+        Map<Integer, Integer> changes = world.dirty.remove(chunk.getChunkKey());
+        if (changes != null) {
+            store(chunk, changes);
+        }
+        if (world.chunks.remove(chunk.getChunkKey(), UNLOADED) <= 1) {
+            return;
+        }
+        byte[] records = chunk.getPersistentDataContainer().get(ownersKey, PersistentDataType.BYTE_ARRAY);
+        if (records == null) {
+            return;
+        }
+        int baseX = chunk.getX() << 4;
+        int baseZ = chunk.getZ() << 4;
+        for (int offset = 0; offset + RECORD <= records.length; offset += RECORD) {
+            world.owners.remove(blockKey(records, offset, baseX, baseZ), KingdomRegistry.NO_KINGDOM);
+        }
+    }
+
+    /**
+     * Запускает периодическую запись изменённых чанков. Вызывается при включении защиты посевов.
+     */
+    public synchronized void start() {
+        if (saveTask == null) {
+            saveTask = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> saveAll(),
+                    SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Записывает накопленные изменения и очищает индекс. Вызывается при отключении защиты посевов:
+     * без обработчика выгрузки чанков индекс иначе только рос бы. При остановке сервера Folia
+     * задачи регионов уже не выполняются, и теряются изменения после последней записи.
+     */
+    public synchronized void stop() {
+        if (saveTask != null) {
+            saveTask.cancel();
+            saveTask = null;
+        }
+        for (Map.Entry<String, WorldIndex> entry : worlds.entrySet()) {
+            World world = plugin.getServer().getWorld(entry.getKey());
+            if (world == null) {
+                continue;
+            }
+            for (Long chunkKey : entry.getValue().dirty.keySet()) {
+                Map<Integer, Integer> changes = entry.getValue().dirty.remove(chunkKey);
+                if (changes != null) {
+                    int x = (int) (long) chunkKey;
+                    int z = (int) (chunkKey >>> 32);
+                    // Обработчик выгрузки уже снят, поэтому чанк при необходимости загружается снова
+                    runInRegion(world, x, z, () -> store(world.getChunkAt(x, z), changes));
+                }
+            }
+        }
+        worlds.clear();
+    }
+
+    /**
+     * Записывает в PDC изменённые чанки мира. Вызывается при сохранении мира.
+     */
+    public void save(World world) {
+        WorldIndex index = worlds.get(world.getName());
+        if (index == null) {
+            return;
+        }
+        for (Long chunkKey : index.dirty.keySet()) {
+            int x = (int) (long) chunkKey;
+            int z = (int) (chunkKey >>> 32);
+            runInRegion(world, x, z, () -> {
+                // Выгруженный чанк записан обработчиком выгрузки
+                if (world.isChunkLoaded(x, z)) {
+                    Map<Integer, Integer> changes = index.dirty.remove(chunkKey);
+                    if (changes != null) {
+                        store(world.getChunkAt(x, z), changes);
+                    }
+                }
+            });
+        }
+    }
+
+    private void saveAll() {
+        for (World world : plugin.getServer().getWorlds()) {
+            save(world);
+        }
+    }
+
+    /**
+     * Выполняет действие сразу, если поток владеет регионом чанка (основной поток Paper),
+     * иначе в регионе чанка
+     */
+    private void runInRegion(World world, int chunkX, int chunkZ, Runnable action) {
+        if (plugin.getServer().isOwnedByCurrentRegion(world, chunkX, chunkZ)) {
+            action.run();
+        } else {
+            plugin.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ, action);
+        }
+    }
+
+    /**
+     * Количество посевов с владельцем в памяти
+     */
+    public int size() {
+        int size = 0;
+        for (WorldIndex world : worlds.values()) {
+            size += world.owners.size();
+        }
+        return size;
+    }
+
+    /**
+     * Количество чанков, владельцы посевов которых загружены в память
+     */
+    public int loadedChunks() {
+        int size = 0;
+        for (WorldIndex world : worlds.values()) {
+            size += world.chunks.size();
+        }
+        return size;
+    }
+
+    /**
+     * Приблизительный объём индекса в памяти, байт
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (WorldIndex world : worlds.values()) {
+            bytes += world.owners.memoryBytes() + world.chunks.memoryBytes();
+        }
+        return bytes;
+    }
+
+    private WorldIndex world(String worldName) {
+        WorldIndex world = worlds.get(worldName);
+        return world != null ? world : worlds.computeIfAbsent(worldName, name -> new WorldIndex());
+    }
+
+    private void ensureLoaded(WorldIndex world, Block block) {
+        if (world.chunks.get(Chunk.getChunkKey(block.getX() >> 4, block.getZ() >> 4), UNLOADED) == UNLOADED) {
+            load(block.getChunk());
+        }
+    }
+
+    /**
+     * Переписывает PDC чанка с накопленными изменениями за один проход: записи без владельца
+     * удаляются, неиспользуемые королевства убираются из списка чанка
+     */
+    private void store(Chunk chunk, Map<Integer, Integer> changes) {
+        PersistentDataContainer chunkData = chunk.getPersistentDataContainer();
+        byte[] records = chunkData.get(ownersKey, PersistentDataType.BYTE_ARRAY);
+        List<String> stored = chunkData.get(kingdomsKey, PersistentDataType.LIST.strings());
+        if (records == null || stored == null) {
+            records = new byte[0];
+            stored = List.of();
+        }
+
+        List<String> kingdoms = new ArrayList<>(stored.size() + 1);
+        byte[] result = new byte[records.length + changes.size() * RECORD];
+        int length = 0;
+        for (int offset = 0; offset + RECORD <= records.length; offset += RECORD) {
+            int index = records[offset + 3] & 0xFF;
+            int recordXZ = records[offset] & 0xFF;
+            int recordY = y(records, offset);
+            if (index >= stored.size() || changes.containsKey(position(recordXZ, recordY))) {
+                continue;
+            }
+            length = append(result, length, recordXZ, recordY, paletteIndex(kingdoms, stored.get(index)));
+        }
+        for (Map.Entry<Integer, Integer> change : changes.entrySet()) {
+            int kingdom = change.getValue();
+            if (kingdom >= 0) {
+                int position = change.getKey();
+                length = append(result, length, position >>> 16, (short) position,
+                        paletteIndex(kingdoms, kingdomRegistry.id(kingdom)));
+            }
+        }
+
+        if (length == 0) {
+            chunkData.remove(ownersKey);
+            chunkData.remove(kingdomsKey);
+            return;
+        }
+        chunkData.set(ownersKey, PersistentDataType.BYTE_ARRAY,
+                length == result.length ? result : Arrays.copyOf(result, length));
+        chunkData.set(kingdomsKey, PersistentDataType.LIST.strings(), kingdoms);
+    }
+
+    private static int append(byte[] buffer, int length, int localXZ, int y, int kingdom) {
+        buffer[length] = (byte) localXZ;
+        buffer[length + 1] = (byte) (y >> 8);
+        buffer[length + 2] = (byte) y;
+        buffer[length + 3] = (byte) kingdom;
+        return length + RECORD;
+    }
+
+    /**
+     * Номер королевства в списке чанка, при необходимости добавляет его.
+     * В чанке больше 256 королевств не встречается, поэтому номер помещается в байт.
+     */
+    private static int paletteIndex(List<String> kingdoms, String kingdomId) {
+        int index = kingdoms.indexOf(kingdomId);
+        if (index < 0) {
+            index = kingdoms.size();
+            kingdoms.add(kingdomId);
+        }
+        return index;
+    }
+
+    /**
+     * Позиция блока в чанке: (x << 4 | z) в старших 16 битах, высота в младших
+     */
+    private static int position(int localXZ, int y) {
+        return localXZ << 16 | (y & 0xFFFF);
+    }
+
+    private static long blockKey(byte[] records, int offset, int baseX, int baseZ) {
+        int localXZ = records[offset] & 0xFF;
+        return Block.getBlockKey(baseX + (localXZ >> 4), y(records, offset), baseZ + (localXZ & 15));
+    }
+
+    private static int y(byte[] records, int offset) {
+        return (short) ((records[offset + 1] << 8) | (records[offset + 2] & 0xFF));
+    }
+}
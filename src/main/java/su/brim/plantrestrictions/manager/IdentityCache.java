@@ -0,0 +1,144 @@
+package su.brim.plantrestrictions.manager;
+
+import su.brim.kingdoms.api.KingdomsAPI;
+import org.bukkit.entity.Player;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Кэш разрешённых данных игрока: королевство, админ KingdomsAddon, bypass право
+ * и группы прав условных правил.
+ * <p>
+ * Заполняется при входе, сбрасывается при выходе, смене мира (плагины прав
+ * обычно пересчитывают права в этот момент) и перезагрузке конфигурации.
+ * Смена королевства и прав без этих событий подхватывается по истечении срока жизни записи.
+ * <p>
+ * Записи неизменяемы и хранятся в {@link ConcurrentHashMap}, чтение из потоков
+ * регионов не блокируется.
+ */
+public class IdentityCache {
+
+    public static final String BYPASS_PERMISSION = "plantrestrictions.bypass";
+
+    private final KingdomsAPI kingdomsAPI;
+    private final KingdomRegistry kingdomRegistry;
+    private final Map<UUID, Identity> identities = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private volatile long ttlNanos = TimeUnit.SECONDS.toNanos(30);
+    // Права групп из условных правил, бит i маски — permissionGroups[i]
+    private volatile String[] permissionGroups = new String[0];
+
+    /**
+     * Разрешённые данные игрока
+     *
+     * @param kingdom   индекс королевства из {@link KingdomRegistry}
+     * @param kingdomId ID королевства (null если игрок без королевства)
+     * @param bypass    есть ли право plantrestrictions.bypass
+     * @param admin     является ли игрок админом KingdomsAddon
+     * @param groups    маска групп прав для условных правил ({@link RuleProgram#getPermissions()})
+     * @param expiresAt момент устаревания записи по {@link System#nanoTime()}
+     */
+    public record Identity(int kingdom, String kingdomId, boolean bypass, boolean admin, int groups,
+                           long expiresAt) {
+    }
+
+    public IdentityCache(KingdomsAPI kingdomsAPI, KingdomRegistry kingdomRegistry) {
+        this.kingdomsAPI = kingdomsAPI;
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Возвращает данные игрока из кэша, при промахе — запрашивает их заново
+     */
+    public Identity get(Player player) {
+        Identity identity = identities.get(player.getUniqueId());
+        if (identity != null && System.nanoTime() - identity.expiresAt() < 0) {
+            hits.increment();
+            return identity;
+        }
+
+        misses.increment();
+        return resolve(player);
+    }
+
+    /**
+     * Запрашивает данные игрока у KingdomsAddon и Bukkit и сохраняет их в кэш
+     */
+    public Identity resolve(Player player) {
+        String kingdomId = kingdomsAPI.getPlayerKingdom(player.getUniqueId());
+        Identity identity = new Identity(
+                kingdomRegistry.intern(kingdomId),
+                kingdomId,
+                player.hasPermission(BYPASS_PERMISSION),
+                kingdomsAPI.isAdmin(player),
+                groupsOf(player),
+                System.nanoTime() + ttlNanos);
+        identities.put(player.getUniqueId(), identity);
+        return identity;
+    }
+
+    private int groupsOf(Player player) {
+        String[] permissions = permissionGroups;
+        int groups = 0;
+        for (int i = 0; i < permissions.length; i++) {
+            if (player.hasPermission(permissions[i])) {
+                groups |= 1 << i;
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * Задаёт права групп новой политики. Вызывать перед {@link #invalidateAll()}.
+     */
+    public void setPermissionGroups(String[] permissions) {
+        this.permissionGroups = permissions;
+    }
+
+    /**
+     * Данные игрока из кэша без обращения к KingdomsAddon, даже если срок жизни записи истёк.
+     * Подходит для игроков из других регионов — объект {@link Player} не нужен.
+     *
+     * @return данные или null, если игрока нет в кэше (например, он не в сети)
+     */
+    public Identity cached(UUID playerId) {
+        return identities.get(playerId);
+    }
+
+    /**
+     * Сбрасывает данные игрока
+     */
+    public void invalidate(UUID playerId) {
+        identities.remove(playerId);
+    }
+
+    /**
+     * Сбрасывает данные всех игроков
+     */
+    public void invalidateAll() {
+        identities.clear();
+    }
+
+    public void setTtlSeconds(long seconds) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(Math.max(1L, seconds));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return identities.size();
+    }
+}
@@ -0,0 +1,103 @@
+package su.brim.plantrestrictions.manager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр ID королевств.
+ * Каждому королевству один раз присваивается небольшой целочисленный индекс,
+ * который не меняется между перезагрузками конфигурации. Благодаря этому
+ * индексы можно безопасно хранить в кэшах и снимках политики.
+ */
+public class KingdomRegistry {
+
+    /** Индекс игрока без королевства */
+    public static final int NO_KINGDOM = -1;
+
+    /**
+     * Индекс королевства, которого нет в реестре ({@link #lookup}). Политика проверяет его
+     * по строке королевств без собственного списка. Только для запросов к политике:
+     * в счётчики, метрики и владельцев не передаётся.
+     */
+    public static final int UNKNOWN_KINGDOM = Integer.MAX_VALUE;
+
+    private final Map<String, Integer> indices = new ConcurrentHashMap<>();
+    private volatile String[] ids = new String[0];
+
+    /**
+     * Возвращает индекс королевства, регистрируя его при первом обращении
+     *
+     * @param kingdomId ID королевства (null если игрок без королевства)
+     * @return индекс королевства или {@link #NO_KINGDOM}
+     */
+    public int intern(String kingdomId) {
+        if (kingdomId == null) {
+            return NO_KINGDOM;
+        }
+
+        Integer index = indices.get(kingdomId);
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (this) {
+            index = indices.get(kingdomId);
+            if (index != null) {
+                return index;
+            }
+
+            String[] current = ids;
+            String[] grown = new String[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = kingdomId;
+
+            // Сначала публикуем массив, затем индекс — так id(index) всегда валиден
+            ids = grown;
+            indices.put(kingdomId, current.length);
+            return current.length;
+        }
+    }
+
+    /**
+     * Возвращает индекс уже зарегистрированного королевства без регистрации нового
+     *
+     * @return индекс королевства или {@link #NO_KINGDOM}
+     */
+    public int indexOf(String kingdomId) {
+        if (kingdomId == null) {
+            return NO_KINGDOM;
+        }
+        Integer index = indices.get(kingdomId);
+        return index != null ? index : NO_KINGDOM;
+    }
+
+    /**
+     * Индекс королевства для запроса к политике без регистрации нового: строки извне
+     * (API, команды) не должны раздувать реестр. Регистрируются только королевства из
+     * конфигурации и подтверждённые KingdomsAddon.
+     *
+     * @return индекс королевства, {@link #NO_KINGDOM} для null или {@link #UNKNOWN_KINGDOM}
+     */
+    public int lookup(String kingdomId) {
+        if (kingdomId == null) {
+            return NO_KINGDOM;
+        }
+        Integer index = indices.get(kingdomId);
+        return index != null ? index : UNKNOWN_KINGDOM;
+    }
+
+    /**
+     * Возвращает ID королевства по индексу
+     */
+    public String id(int index) {
+        String[] current = ids;
+        return index >= 0 && index < current.length ? current[index] : null;
+    }
+
+    /**
+     * Количество зарегистрированных королевств
+     */
+    public int size() {
+        return ids.length;
+    }
+}
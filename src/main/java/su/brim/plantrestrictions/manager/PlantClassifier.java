@@ -0,0 +1,315 @@
+package su.brim.plantrestrictions.manager;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Единая таблица классификации материалов, индексированная по {@link Material#ordinal()}.
+ * <p>
+ * Каждому материалу соответствует набор флагов, а блоку посева — материал семян.
+ * Обработчикам событий достаточно одного чтения из массива, чтобы понять,
+ * относится ли материал к растениям. Встроенная таблица дополняется и
+ * переопределяется секцией {@code classification} в config.yml, поэтому новые
+ * растения можно добавить без пересборки плагина.
+ */
+public final class PlantClassifier {
+
+    /** Растение, посадка которого ограничивается (предмет или блок) */
+    public static final int PLANTABLE = 1;
+    /** Семена, которые сажаются правым кликом по блоку */
+    public static final int INTERACT_SEED = 1 << 1;
+    /** Семена/овощи, которые житель-фермер может получить и посадить */
+    public static final int VILLAGER_PLANTABLE = 1 << 2;
+    /** Блок посева, который ставит житель */
+    public static final int CROP_BLOCK = 1 << 3;
+    /** Блок растущего растения (посев, стебель, плод, тростник и т.п.) */
+    public static final int GROWING = 1 << 4;
+
+    private static final Material[] MATERIALS = Material.values();
+
+    private final byte[] flags;
+    private final Material[] cropSeeds;
+    private final Material[] growingPlants;
+
+    private PlantClassifier(byte[] flags, Material[] cropSeeds, Material[] growingPlants) {
+        this.flags = flags;
+        this.cropSeeds = cropSeeds;
+        this.growingPlants = growingPlants;
+    }
+
+    /**
+     * Флаги материала
+     */
+    public int flags(Material material) {
+        return flags[material.ordinal()];
+    }
+
+    /**
+     * Есть ли у материала хотя бы один из флагов
+     */
+    public boolean is(Material material, int flag) {
+        return (flags[material.ordinal()] & flag) != 0;
+    }
+
+    /**
+     * Материал семян для блока посева
+     *
+     * @return материал семян или null, если блок не является посевом
+     */
+    public Material seedOf(Material cropBlock) {
+        return cropSeeds[cropBlock.ordinal()];
+    }
+
+    /**
+     * Растение, по которому проверяется рост блока
+     *
+     * @return материал растения из политики или null, если рост блока не ограничивается
+     */
+    public Material plantOf(Material growingBlock) {
+        return growingPlants[growingBlock.ordinal()];
+    }
+
+    /**
+     * Все материалы с указанным флагом
+     */
+    public Set<Material> materials(int flag) {
+        Set<Material> result = EnumSet.noneOf(Material.class);
+        for (Material material : MATERIALS) {
+            if ((flags[material.ordinal()] & flag) != 0) {
+                result.add(material);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Встроенная таблица
+     */
+    public static PlantClassifier defaults() {
+        byte[] flags = new byte[MATERIALS.length];
+        Material[] cropSeeds = new Material[MATERIALS.length];
+        Material[] growingPlants = new Material[MATERIALS.length];
+        applyDefaults(flags, cropSeeds, growingPlants);
+        return new PlantClassifier(flags, cropSeeds, growingPlants);
+    }
+
+    /**
+     * Встроенная таблица с переопределениями из секции {@code classification}
+     *
+     * @param config корневая секция конфигурации
+     */
+    public static PlantClassifier load(ConfigurationSection config, Logger logger) {
+        byte[] flags = new byte[MATERIALS.length];
+        Material[] cropSeeds = new Material[MATERIALS.length];
+        Material[] growingPlants = new Material[MATERIALS.length];
+        applyDefaults(flags, cropSeeds, growingPlants);
+
+        ConfigurationSection section = config.getConfigurationSection("classification");
+        if (section == null) {
+            return new PlantClassifier(flags, cropSeeds, growingPlants);
+        }
+
+        applyOverrides(section, "plantable", PLANTABLE, flags, logger);
+        applyOverrides(section, "interact-seed", INTERACT_SEED, flags, logger);
+        applyOverrides(section, "villager-plantable", VILLAGER_PLANTABLE, flags, logger);
+
+        // crop-blocks: { БЛОК: СЕМЕНА } или { БЛОК: none } чтобы убрать
+        applyMapping(section, "crop-blocks", CROP_BLOCK, flags, cropSeeds, logger);
+        // growing: { БЛОК: РАСТЕНИЕ } или { БЛОК: none } чтобы убрать
+        applyMapping(section, "growing", GROWING, flags, growingPlants, logger);
+
+        return new PlantClassifier(flags, cropSeeds, growingPlants);
+    }
+
+    private static void applyMapping(ConfigurationSection section, String key, int flag,
+                                     byte[] flags, Material[] targets, Logger logger) {
+        ConfigurationSection mapping = section.getConfigurationSection(key);
+        if (mapping == null) {
+            return;
+        }
+        for (String blockName : mapping.getKeys(false)) {
+            Material block = Material.matchMaterial(blockName);
+            if (block == null) {
+                logger.warning("Неизвестный материал в classification." + key + ": " + blockName);
+                continue;
+            }
+            String targetName = mapping.getString(blockName, "");
+            if (targetName.equalsIgnoreCase("none")) {
+                flags[block.ordinal()] &= (byte) ~flag;
+                targets[block.ordinal()] = null;
+                continue;
+            }
+            Material target = Material.matchMaterial(targetName);
+            if (target == null) {
+                logger.warning("Неизвестный материал для " + blockName + " в classification." + key + ": " + targetName);
+                continue;
+            }
+            flags[block.ordinal()] |= (byte) flag;
+            targets[block.ordinal()] = target;
+        }
+    }
+
+    private static void applyOverrides(ConfigurationSection section, String key, int flag,
+                                       byte[] flags, Logger logger) {
+        for (String name : section.getStringList(key + ".add")) {
+            Material material = Material.matchMaterial(name);
+            if (material != null) {
+                flags[material.ordinal()] |= (byte) flag;
+            } else {
+                logger.warning("Неизвестный материал в classification." + key + ".add: " + name);
+            }
+        }
+        for (String name : section.getStringList(key + ".remove")) {
+            Material material = Material.matchMaterial(name);
+            if (material != null) {
+                flags[material.ordinal()] &= (byte) ~flag;
+            } else {
+                logger.warning("Неизвестный материал в classification." + key + ".remove: " + name);
+            }
+        }
+    }
+
+    private static void applyDefaults(byte[] flags, Material[] cropSeeds, Material[] growingPlants) {
+        // Саженцы деревьев
+        mark(flags, PLANTABLE,
+                Material.OAK_SAPLING,
+                Material.SPRUCE_SAPLING,
+                Material.BIRCH_SAPLING,
+                Material.JUNGLE_SAPLING,
+                Material.ACACIA_SAPLING,
+                Material.DARK_OAK_SAPLING,
+                Material.CHERRY_SAPLING,
+                Material.MANGROVE_PROPAGULE,
+                Material.PALE_OAK_SAPLING);
+
+        // Семена и посевы
+        mark(flags, PLANTABLE | INTERACT_SEED,
+                Material.WHEAT_SEEDS,
+                Material.BEETROOT_SEEDS,
+                Material.MELON_SEEDS,
+                Material.PUMPKIN_SEEDS,
+                Material.TORCHFLOWER_SEEDS,
+                Material.PITCHER_POD);
+
+        // Овощи, которые сажаются напрямую
+        mark(flags, PLANTABLE | INTERACT_SEED,
+                Material.POTATO,
+                Material.CARROT);
+
+        // Другие растения
+        mark(flags, PLANTABLE,
+                Material.SUGAR_CANE,
+                Material.CACTUS,
+                Material.BAMBOO_SAPLING,
+                Material.CHORUS_FLOWER);
+        mark(flags, PLANTABLE | INTERACT_SEED,
+                Material.COCOA_BEANS,
+                Material.SWEET_BERRIES,
+                Material.GLOW_BERRIES,
+                Material.NETHER_WART);
+
+        // Грибы
+        mark(flags, PLANTABLE,
+                Material.BROWN_MUSHROOM,
+                Material.RED_MUSHROOM,
+                Material.CRIMSON_FUNGUS,
+                Material.WARPED_FUNGUS);
+
+        // Цветы (1.20+)
+        mark(flags, PLANTABLE,
+                Material.TORCHFLOWER,
+                Material.PITCHER_PLANT,
+                Material.PINK_PETALS);
+
+        // Цветы (1.21.4 — Pale Garden)
+        mark(flags, PLANTABLE,
+                Material.OPEN_EYEBLOSSOM,
+                Material.CLOSED_EYEBLOSSOM);
+
+        // Растения (1.21.5 — Spring to Life)
+        mark(flags, PLANTABLE,
+                Material.WILDFLOWERS,
+                Material.FIREFLY_BUSH,
+                Material.BUSH,
+                Material.CACTUS_FLOWER);
+
+        // Высокие растения
+        mark(flags, PLANTABLE,
+                Material.SUNFLOWER,
+                Material.LILAC,
+                Material.ROSE_BUSH,
+                Material.PEONY);
+
+        // Азалии
+        mark(flags, PLANTABLE,
+                Material.AZALEA,
+                Material.FLOWERING_AZALEA);
+
+        // Материалы, которые житель может получить и посадить
+        mark(flags, VILLAGER_PLANTABLE,
+                Material.WHEAT_SEEDS,
+                Material.BEETROOT_SEEDS,
+                Material.TORCHFLOWER_SEEDS,
+                Material.PITCHER_POD,
+                Material.POTATO,
+                Material.CARROT);
+
+        // Блоки посевов, которые ставит житель, и соответствующие им семена
+        crop(flags, cropSeeds, Material.WHEAT, Material.WHEAT_SEEDS);
+        crop(flags, cropSeeds, Material.BEETROOTS, Material.BEETROOT_SEEDS);
+        crop(flags, cropSeeds, Material.POTATOES, Material.POTATO);
+        crop(flags, cropSeeds, Material.CARROTS, Material.CARROT);
+        crop(flags, cropSeeds, Material.TORCHFLOWER_CROP, Material.TORCHFLOWER_SEEDS);
+        crop(flags, cropSeeds, Material.PITCHER_CROP, Material.PITCHER_POD);
+
+        // Растущие блоки и растения, по которым проверяется их рост
+        growing(flags, growingPlants, Material.WHEAT_SEEDS, Material.WHEAT);
+        growing(flags, growingPlants, Material.BEETROOT_SEEDS, Material.BEETROOTS);
+        growing(flags, growingPlants, Material.POTATO, Material.POTATOES);
+        growing(flags, growingPlants, Material.CARROT, Material.CARROTS);
+        growing(flags, growingPlants, Material.TORCHFLOWER_SEEDS, Material.TORCHFLOWER_CROP, Material.TORCHFLOWER);
+        growing(flags, growingPlants, Material.PITCHER_POD, Material.PITCHER_CROP, Material.PITCHER_PLANT);
+        growing(flags, growingPlants, Material.MELON_SEEDS, Material.MELON_STEM, Material.MELON);
+        growing(flags, growingPlants, Material.PUMPKIN_SEEDS, Material.PUMPKIN_STEM, Material.PUMPKIN);
+        growing(flags, growingPlants, Material.COCOA_BEANS, Material.COCOA);
+        growing(flags, growingPlants, Material.SWEET_BERRIES, Material.SWEET_BERRY_BUSH);
+        growing(flags, growingPlants, Material.GLOW_BERRIES, Material.CAVE_VINES, Material.CAVE_VINES_PLANT);
+        growing(flags, growingPlants, Material.NETHER_WART, Material.NETHER_WART);
+        growing(flags, growingPlants, Material.SUGAR_CANE, Material.SUGAR_CANE);
+        growing(flags, growingPlants, Material.CACTUS, Material.CACTUS);
+        growing(flags, growingPlants, Material.CACTUS_FLOWER, Material.CACTUS_FLOWER);
+        growing(flags, growingPlants, Material.BAMBOO_SAPLING, Material.BAMBOO_SAPLING, Material.BAMBOO);
+        growing(flags, growingPlants, Material.CHORUS_FLOWER, Material.CHORUS_FLOWER, Material.CHORUS_PLANT);
+        growing(flags, growingPlants, Material.BROWN_MUSHROOM, Material.BROWN_MUSHROOM);
+        growing(flags, growingPlants, Material.RED_MUSHROOM, Material.RED_MUSHROOM);
+        // Саженцы, грибы и азалии растут в структуры и проверяются сами по себе
+        for (Material material : MATERIALS) {
+            if ((flags[material.ordinal()] & PLANTABLE) != 0 && growingPlants[material.ordinal()] == null
+                    && material.isBlock()) {
+                growing(flags, growingPlants, material, material);
+            }
+        }
+    }
+
+    private static void mark(byte[] flags, int flag, Material... materials) {
+        for (Material material : materials) {
+            flags[material.ordinal()] |= (byte) flag;
+        }
+    }
+
+    private static void growing(byte[] flags, Material[] growingPlants, Material plant, Material... blocks) {
+        for (Material block : blocks) {
+            flags[block.ordinal()] |= (byte) GROWING;
+            growingPlants[block.ordinal()] = plant;
+        }
+    }
+
+    private static void crop(byte[] flags, Material[] cropSeeds, Material block, Material seed) {
+        flags[block.ordinal()] |= (byte) CROP_BLOCK;
+        cropSeeds[block.ordinal()] = seed;
+    }
+}
@@ -1,74 +1,56 @@
 package su.brim.plantrestrictions.manager;
 
 import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.debug.DebugLogger;
 import org.bukkit.Material;
-import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.block.Block;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Менеджер разрешённых растений.
- * Использует ConcurrentHashMap для потокобезопасности в Folia.
+ * Политика хранится в виде неизменяемого снимка {@link PlantPolicy},
+ * который заменяется целиком при перезагрузке — это потокобезопасно для Folia.
  */
 public class PlantManager {
 
     private final PlantRestrictions plugin;
+    private final DebugLogger debug;
+    private final KingdomRegistry kingdomRegistry = new KingdomRegistry();
 
-    // Потокобезопасные коллекции для Folia
-    private final Map<String, Set<Material>> kingdomPlants = new ConcurrentHashMap<>();
-    private final Set<Material> globalAllowed = ConcurrentHashMap.newKeySet();
-
-    // Множество всех материалов, которые считаются "растениями"
-    private static final Set<Material> PLANTABLE_MATERIALS = createPlantableMaterials();
+    private volatile PlantPolicy policy;
+    // Пишется только в publish
+    private volatile long version;
 
     public PlantManager(PlantRestrictions plugin) {
         this.plugin = plugin;
+        this.debug = plugin.getDebugLogger();
     }
 
     /**
      * Загружает разрешённые растения из конфигурации
      */
     public void loadAllowedPlants() {
-        kingdomPlants.clear();
-        globalAllowed.clear();
-
-        FileConfiguration config = plugin.getConfig();
-
-        // Загрузка глобально разрешённых растений
-        List<String> globalList = config.getStringList("global-allowed");
-        for (String materialName : globalList) {
-            Material material = Material.matchMaterial(materialName);
-            if (material != null) {
-                globalAllowed.add(material);
-                plugin.debug("Глобально разрешено: " + material.name());
-            } else {
-                plugin.getLogger().warning("Неизвестный материал в global-allowed: " + materialName);
-            }
-        }
+        publish(compile(plugin.getConfig(), plugin.getConfigManager().isRestrictTeamless()));
+    }
 
-        // Загрузка растений для каждого королевства
-        ConfigurationSection kingdomsSection = config.getConfigurationSection("kingdoms");
-        if (kingdomsSection != null) {
-            for (String kingdomId : kingdomsSection.getKeys(false)) {
-                Set<Material> allowedSet = ConcurrentHashMap.newKeySet();
-
-                List<String> plants = config.getStringList("kingdoms." + kingdomId + ".allowed-plants");
-                for (String materialName : plants) {
-                    Material material = Material.matchMaterial(materialName);
-                    if (material != null) {
-                        allowedSet.add(material);
-                        plugin.debug("Королевство " + kingdomId + ": разрешено " + material.name());
-                    } else {
-                        plugin.getLogger().warning("Неизвестный материал для " + kingdomId + ": " + materialName);
-                    }
-                }
-
-                kingdomPlants.put(kingdomId, allowedSet);
-                plugin.getLogger().info("Загружено " + allowedSet.size() + " растений для " + kingdomId);
-            }
-        }
+    /**
+     * Компилирует новый снимок политики, не затрагивая текущий.
+     * Может вызываться из любого потока.
+     */
+    public PlantPolicy compile(FileConfiguration config, boolean restrictTeamless) {
+        PlantClassifier classifier = PlantClassifier.load(config, plugin.getLogger());
+        return PlantPolicy.compile(config, restrictTeamless, classifier, kingdomRegistry, plugin.getLogger());
+    }
+
+    /**
+     * Атомарно публикует новый снимок политики.
+     * Версия увеличивается после публикации: кто прочитал новую версию, увидит и новую политику.
+     */
+    public synchronized void publish(PlantPolicy policy) {
+        this.policy = policy;
+        this.version = version + 1;
     }
 
     /**
@@ -79,33 +61,50 @@ public class PlantManager {
      * @return true если посадка разрешена
      */
     public boolean canPlant(String kingdomId, Material material) {
-        // Проверяем, является ли это растением вообще
-        if (!isPlantable(material)) {
-            return true; // Не растение - разрешаем
-        }
+        return canPlant(kingdomRegistry.lookup(kingdomId), material);
+    }
 
-        // Глобально разрешённые растения
-        if (globalAllowed.contains(material)) {
-            plugin.debug("Материал " + material.name() + " глобально разрешён");
-            return true;
-        }
+    /**
+     * Проверяет, может ли королевство сажать данное растение
+     *
+     * @param kingdom  индекс королевства из {@link KingdomRegistry}
+     * @param material Материал для проверки
+     * @return true если посадка разрешена
+     */
+    public boolean canPlant(int kingdom, Material material) {
+        boolean result = policy.canPlant(kingdom, material);
+        debug.log(null, kingdom, material, "Проверка {} для {}: {}",
+                material, kingdomRegistry.id(kingdom), result);
+        return result;
+    }
 
-        // Игрок без королевства
-        if (kingdomId == null) {
-            boolean allowed = !plugin.getConfigManager().isRestrictTeamless();
-            plugin.debug("Игрок без королевства, restrict-teamless: " + !allowed + ", результат: " + allowed);
-            return allowed;
+    /**
+     * Проверяет, может ли королевство сажать данное растение в зоне
+     *
+     * @param kingdom  индекс королевства из {@link KingdomRegistry}
+     * @param zone     зона из {@link su.brim.plantrestrictions.territory.ZoneIndex#zoneAt}
+     * @param material Материал для проверки
+     * @return true если посадка разрешена
+     */
+    public boolean canPlant(int kingdom, int zone, Material material) {
+        boolean result = policy.canPlant(kingdom, zone, material);
+        // Проверка, чтобы не упаковывать индекс зоны при выключенной отладке
+        if (debug.isEnabled(null, kingdom, material)) {
+            debug.log(null, kingdom, material, "Проверка {} для {} в зоне {}: {}",
+                    material, kingdomRegistry.id(kingdom), zone, result);
         }
+        return result;
+    }
 
-        // Проверяем разрешение для королевства
-        Set<Material> allowed = kingdomPlants.get(kingdomId);
-        if (allowed == null) {
-            plugin.debug("Королевство " + kingdomId + " не найдено в конфигурации");
-            return false;
+    /**
+     * Проверяет посадку с учётом условных правил, см. {@link PlantPolicy#canPlant(int, int, int, Material, Block)}
+     */
+    public boolean canPlant(int kingdom, int groups, int zone, Material material, Block target) {
+        boolean result = policy.canPlant(kingdom, groups, zone, material, target);
+        if (debug.isEnabled(null, kingdom, material)) {
+            debug.log(null, kingdom, material, "Проверка {} для {} (группы {}, зона {}): {}",
+                    material, kingdomRegistry.id(kingdom), groups, zone, result);
         }
-
-        boolean result = allowed.contains(material);
-        plugin.debug("Проверка " + material.name() + " для " + kingdomId + ": " + result);
         return result;
     }
 
@@ -113,109 +112,52 @@ public class PlantManager {
      * Проверяет, является ли материал растением, которое можно посадить
      */
     public boolean isPlantable(Material material) {
-        return PLANTABLE_MATERIALS.contains(material);
+        return policy.getClassifier().is(material, PlantClassifier.PLANTABLE);
+    }
+
+    /**
+     * Текущая таблица классификации материалов
+     */
+    public PlantClassifier getClassifier() {
+        return policy.getClassifier();
     }
 
     /**
      * Получает список разрешённых растений для королевства
      */
     public Set<Material> getAllowedPlants(String kingdomId) {
-        Set<Material> result = new HashSet<>(globalAllowed);
-        Set<Material> kingdomSet = kingdomPlants.get(kingdomId);
-        if (kingdomSet != null) {
-            result.addAll(kingdomSet);
-        }
-        return result;
+        return policy.getAllowedPlants(kingdomId);
     }
 
     /**
      * Получает общее количество настроек растений
      */
     public int getTotalPlantsCount() {
-        int count = globalAllowed.size();
-        for (Set<Material> plants : kingdomPlants.values()) {
-            count += plants.size();
-        }
-        return count;
+        return policy.getTotalPlantsCount();
     }
 
     /**
      * Получает список всех королевств с настройками
      */
     public Set<String> getConfiguredKingdoms() {
-        return Collections.unmodifiableSet(kingdomPlants.keySet());
+        return policy.getConfiguredKingdoms();
+    }
+
+    /**
+     * Текущий скомпилированный снимок политики
+     */
+    public PlantPolicy getPolicy() {
+        return policy;
     }
 
     /**
-     * Создаёт множество всех материалов, которые можно посадить
+     * Номер опубликованной политики, растёт при каждой перезагрузке
      */
-    private static Set<Material> createPlantableMaterials() {
-        Set<Material> materials = EnumSet.noneOf(Material.class);
-
-        // Саженцы деревьев
-        materials.add(Material.OAK_SAPLING);
-        materials.add(Material.SPRUCE_SAPLING);
-        materials.add(Material.BIRCH_SAPLING);
-        materials.add(Material.JUNGLE_SAPLING);
-        materials.add(Material.ACACIA_SAPLING);
-        materials.add(Material.DARK_OAK_SAPLING);
-        materials.add(Material.CHERRY_SAPLING);
-        materials.add(Material.MANGROVE_PROPAGULE);
-        materials.add(Material.PALE_OAK_SAPLING);
-
-        // Семена и посевы
-        materials.add(Material.WHEAT_SEEDS);
-        materials.add(Material.BEETROOT_SEEDS);
-        materials.add(Material.MELON_SEEDS);
-        materials.add(Material.PUMPKIN_SEEDS);
-        materials.add(Material.TORCHFLOWER_SEEDS);
-        materials.add(Material.PITCHER_POD);
-
-        // Овощи, которые сажаются напрямую
-        materials.add(Material.POTATO);
-        materials.add(Material.CARROT);
-
-        // Другие растения
-        materials.add(Material.COCOA_BEANS);
-        materials.add(Material.SUGAR_CANE);
-        materials.add(Material.CACTUS);
-        materials.add(Material.BAMBOO_SAPLING);
-        materials.add(Material.SWEET_BERRIES);
-        materials.add(Material.GLOW_BERRIES);
-        materials.add(Material.NETHER_WART);
-        materials.add(Material.CHORUS_FLOWER);
-
-        // Грибы
-        materials.add(Material.BROWN_MUSHROOM);
-        materials.add(Material.RED_MUSHROOM);
-        materials.add(Material.CRIMSON_FUNGUS);
-        materials.add(Material.WARPED_FUNGUS);
-
-        // Цветы (1.20+)
-        materials.add(Material.TORCHFLOWER);
-        materials.add(Material.PITCHER_PLANT);
-        materials.add(Material.PINK_PETALS);
-
-        // Цветы (1.21.4 — Pale Garden)
-        materials.add(Material.OPEN_EYEBLOSSOM);
-        materials.add(Material.CLOSED_EYEBLOSSOM);
-
-        // Растения (1.21.5 — Spring to Life)
-        materials.add(Material.WILDFLOWERS);
-        materials.add(Material.FIREFLY_BUSH);
-        materials.add(Material.BUSH);
-        materials.add(Material.CACTUS_FLOWER);
-
-        // Высокие растения
-        materials.add(Material.SUNFLOWER);
-        materials.add(Material.LILAC);
-        materials.add(Material.ROSE_BUSH);
-        materials.add(Material.PEONY);
-
-        // Азалии
-        materials.add(Material.AZALEA);
-        materials.add(Material.FLOWERING_AZALEA);
-
-        return Collections.unmodifiableSet(materials);
+    public long getVersion() {
+        return version;
+    }
+
+    public KingdomRegistry getKingdomRegistry() {
+        return kingdomRegistry;
     }
 }
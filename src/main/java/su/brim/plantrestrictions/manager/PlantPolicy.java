@@ -0,0 +1,585 @@
+package su.brim.plantrestrictions.manager;
+
+import su.brim.plantrestrictions.quota.QuotaRules;
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import su.brim.plantrestrictions.territory.ZoneMode;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Неизменяемый скомпилированный снимок политики посадки.
+ * <p>
+ * Каждая строка — битовая маска по {@link Material#ordinal()}. Бит установлен,
+ * если материал разрешено сажать. Глобально разрешённые растения и все
+ * материалы, не являющиеся растениями, уже вшиты в каждую строку, поэтому
+ * проверка сводится к одному обращению к массиву и одной битовой операции.
+ * <p>
+ * Режимы зон ({@link ZoneMode}) сводятся к выбору строки: обычная строка королевства,
+ * строка «только глобальные» или строка, где запрещены все растения.
+ * <p>
+ * Снимок публикуется целиком, поэтому потоки регионов Folia никогда не видят
+ * частично загруженную политику.
+ */
+public final class PlantPolicy {
+
+    // Служебные строки, строки королевств идут следом
+    private static final int TEAMLESS_ROW = 0;
+    private static final int UNKNOWN_ROW = 1;
+    private static final int DENY_ROW = 2;
+    private static final int FIRST_KINGDOM_ROW = 3;
+
+    private static final int MATERIAL_COUNT = Material.values().length;
+    private static final int STRIDE = (MATERIAL_COUNT + 63) >>> 6;
+
+    private final PlantClassifier classifier;
+    private final long[] bits;
+    private final int kingdomCount;
+    private final boolean restrictTeamless;
+    private final ZoneMode rivalMode;
+    private final ZoneMode neutralMode;
+    private final ZoneMode wildMode;
+    private final boolean territories;
+    private final GrowthRules growth;
+    private final QuotaRules quotas;
+    private final CropProtection cropProtection;
+    private final Acquisition acquisition;
+    private final RuleProgram rules;
+    // Флаги классификации, для которых хотя бы одному игроку что-то запрещено
+    private final int restrictedFlags;
+    // Материалы, которые хоть кому-то запрещены без учёта зоны, бит по Material#ordinal()
+    private final long[] deniable;
+
+    private final Set<Material> globalAllowed;
+    private final Map<String, Set<Material>> kingdomPlants;
+    private final Map<String, Set<Material>> allowedPlants;
+    private final int totalPlantsCount;
+
+    private PlantPolicy(PlantClassifier classifier, long[] bits, int kingdomCount, boolean restrictTeamless,
+                        ZoneMode[] zoneModes, GrowthRules growth, QuotaRules quotas,
+                        CropProtection cropProtection, Acquisition acquisition, RuleProgram rules,
+                        Set<Material> globalAllowed, Map<String, Set<Material>> kingdomPlants,
+                        Map<String, Set<Material>> allowedPlants, int totalPlantsCount) {
+        this.classifier = classifier;
+        this.bits = bits;
+        this.kingdomCount = kingdomCount;
+        this.restrictTeamless = restrictTeamless;
+        this.rivalMode = zoneModes[0];
+        this.neutralMode = zoneModes[1];
+        this.wildMode = zoneModes[2];
+        this.territories = rivalMode != ZoneMode.NORMAL || neutralMode != ZoneMode.NORMAL
+                || wildMode != ZoneMode.NORMAL;
+        this.growth = growth;
+        this.quotas = quotas;
+        this.cropProtection = cropProtection;
+        this.acquisition = acquisition;
+        this.rules = rules;
+        this.globalAllowed = globalAllowed;
+        this.kingdomPlants = kingdomPlants;
+        this.allowedPlants = allowedPlants;
+        this.totalPlantsCount = totalPlantsCount;
+        this.restrictedFlags = computeRestrictedFlags();
+        this.deniable = computeDeniable();
+    }
+
+    /**
+     * Проверяет, может ли королевство сажать данный материал
+     *
+     * @param kingdom  индекс королевства из {@link KingdomRegistry}
+     *                 ({@link KingdomRegistry#NO_KINGDOM} если игрок без королевства)
+     * @param material материал для проверки
+     * @return true если посадка разрешена
+     */
+    public boolean canPlant(int kingdom, Material material) {
+        return test(kingdomRow(kingdom), material);
+    }
+
+    /**
+     * Проверяет, может ли королевство сажать данный материал в зоне
+     *
+     * @param kingdom  индекс королевства ({@link KingdomRegistry#NO_KINGDOM} если игрок без королевства)
+     * @param zone     зона из {@link ZoneIndex#zoneAt}
+     * @param material материал для проверки
+     * @return true если посадка разрешена
+     */
+    public boolean canPlant(int kingdom, int zone, Material material) {
+        ZoneMode mode;
+        if (zone >= 0) {
+            mode = zone == kingdom ? ZoneMode.NORMAL : rivalMode;
+        } else {
+            mode = zone == ZoneIndex.NEUTRAL ? neutralMode : wildMode;
+        }
+        int row = mode == ZoneMode.NORMAL ? kingdomRow(kingdom)
+                : mode == ZoneMode.GLOBAL_ONLY ? UNKNOWN_ROW : DENY_ROW;
+        return test(row, material);
+    }
+
+    /**
+     * Проверяет посадку с учётом условных правил ({@link RuleProgram}): решает первое
+     * подошедшее правило, если не подошло ни одно — списки королевств и режимы зон
+     *
+     * @param groups маска групп прав игрока (0 — у механизмов и жителей)
+     * @param zone   зона из {@link ZoneIndex#zoneAt} или {@link RuleProgram#UNKNOWN_ZONE}
+     * @param target блок, где появится растение, или null, если место неизвестно
+     */
+    public boolean canPlant(int kingdom, int groups, int zone, Material material, Block target) {
+        int verdict = rules.evaluate(material, kingdom, groups, zone, target);
+        if (verdict != RuleProgram.NO_MATCH) {
+            return verdict == RuleProgram.ALLOW;
+        }
+        return zone == RuleProgram.UNKNOWN_ZONE ? canPlant(kingdom, material) : canPlant(kingdom, zone, material);
+    }
+
+    /**
+     * Зависит ли решение от режимов зон. Если нет, искать зону в индексе не нужно.
+     */
+    public boolean usesTerritories() {
+        return territories;
+    }
+
+    /**
+     * Нужна ли зона для решения о посадке: режимы зон или правила с условием зоны
+     */
+    public boolean needsZone() {
+        return territories || rules.usesZones();
+    }
+
+    /**
+     * Скомпилированные условные правила
+     */
+    public RuleProgram getRules() {
+        return rules;
+    }
+
+    /**
+     * Правила роста растений
+     *
+     * @param enabled     включено ли ограничение роста
+     * @param chance      доля разрешённых событий роста для запрещённых растений (0 — рост заморожен)
+     * @param fertilize   ограничивать ли костную муку
+     * @param structures  ограничивать ли рост саженцев и грибов в структуры
+     * @param spread      ограничивать ли распространение (грибы, бамбук, хорус)
+     * @param worldModes  режим мира целиком по имени мира
+     */
+    public record GrowthRules(boolean enabled, float chance, boolean fertilize, boolean structures, boolean spread,
+                              Map<String, ZoneMode> worldModes) {
+
+        static final GrowthRules DISABLED = new GrowthRules(false, 0f, false, false, false, Map.of());
+    }
+
+    /**
+     * Может ли растение расти в зоне данного мира.
+     * На земле королевства растение растёт, если его может сажать владелец;
+     * в нейтральной и ничьей земле и в мире целиком действуют их режимы.
+     *
+     * @param worldName имя мира
+     * @param zone      зона из {@link ZoneIndex#zoneAt} ({@link ZoneIndex#WILD}, если зоны не используются)
+     * @param plant     растение из {@link PlantClassifier#plantOf(Material)}
+     */
+    public boolean canGrow(String worldName, int zone, Material plant) {
+        ZoneMode worldMode = growth.worldModes().get(worldName);
+        if (worldMode != null && worldMode != ZoneMode.NORMAL
+                && !test(worldMode == ZoneMode.GLOBAL_ONLY ? UNKNOWN_ROW : DENY_ROW, plant)) {
+            return false;
+        }
+        if (zone >= 0) {
+            return canPlant(zone, plant);
+        }
+        ZoneMode mode = zone == ZoneIndex.NEUTRAL ? neutralMode : wildMode;
+        return mode == ZoneMode.NORMAL || test(mode == ZoneMode.GLOBAL_ONLY ? UNKNOWN_ROW : DENY_ROW, plant);
+    }
+
+    public GrowthRules getGrowthRules() {
+        return growth;
+    }
+
+    /**
+     * Может ли правило роста хоть что-то запретить
+     */
+    public boolean restrictsGrowth() {
+        return growth.enabled() && (territories || !growth.worldModes().isEmpty());
+    }
+
+    /**
+     * Лимиты растений на чанк
+     */
+    public QuotaRules getQuotas() {
+        return quotas;
+    }
+
+    /**
+     * Защита посевов от чужих королевств
+     *
+     * @param enabled   записывать ли владельцев посевов и запрещать сбор урожая чужим
+     * @param trampling запрещать ли чужим вытаптывать грядки под посевами
+     * @param villagers запрещать ли сбор урожая жителям другого королевства или без владельца
+     */
+    public record CropProtection(boolean enabled, boolean trampling, boolean villagers) {
+
+        static final CropProtection DISABLED = new CropProtection(false, false, false);
+    }
+
+    public CropProtection getCropProtection() {
+        return cropProtection;
+    }
+
+    /**
+     * Запрет получения растений, которые нельзя сажать
+     *
+     * @param playerPickup   запрещать игрокам подбирать предметы с земли
+     * @param villagerPickup запрещать жителям подбирать семена
+     * @param trades         запрещать покупку у жителей и странствующих торговцев
+     * @param crafting       запрещать крафт
+     */
+    public record Acquisition(boolean playerPickup, boolean villagerPickup, boolean trades, boolean crafting) {
+
+        static final Acquisition DISABLED = new Acquisition(false, false, false, false);
+    }
+
+    public Acquisition getAcquisition() {
+        return acquisition;
+    }
+
+    /**
+     * Может ли материал быть запрещён хоть кому-то без учёта зоны: строкой королевства,
+     * строкой игроков без королевства или условным правилом. Для остальных материалов,
+     * в том числе всех, что не являются растениями, — одно обращение к массиву.
+     */
+    public boolean mayDeny(Material material) {
+        int ordinal = material.ordinal();
+        return (deniable[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    private int kingdomRow(int kingdom) {
+        return kingdom < 0 ? TEAMLESS_ROW
+                : kingdom < kingdomCount ? kingdom + FIRST_KINGDOM_ROW : UNKNOWN_ROW;
+    }
+
+    private boolean test(int row, Material material) {
+        int ordinal = material.ordinal();
+        return (bits[row * STRIDE + (ordinal >>> 6)] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Может ли житель без королевства-владельца посадить посев с данными семенами.
+     * Посадка разрешена, только если игроки без королевства не ограничены
+     * и могут сажать эти семена.
+     */
+    public boolean allowsVillagerCrop(Material seed) {
+        return !restrictTeamless && canPlant(KingdomRegistry.NO_KINGDOM, seed);
+    }
+
+    /**
+     * Запрещён ли хоть кому-то хотя бы один материал с указанным флагом классификации.
+     * Если нет, соответствующий обработчик событий ничего не делает и его можно не регистрировать.
+     * Для {@link PlantClassifier#CROP_BLOCK} проверяются семена посева: правило
+     * {@link #allowsVillagerCrop(Material)} и строки королевств-владельцев.
+     */
+    public boolean restricts(int flag) {
+        return (restrictedFlags & flag) != 0;
+    }
+
+    public boolean isRestrictTeamless() {
+        return restrictTeamless;
+    }
+
+    /**
+     * Таблица классификации материалов, с которой скомпилирован снимок
+     */
+    public PlantClassifier getClassifier() {
+        return classifier;
+    }
+
+    /**
+     * Проверяет, разрешён ли материал глобально
+     */
+    public boolean isGloballyAllowed(Material material) {
+        return globalAllowed.contains(material);
+    }
+
+    /**
+     * Возвращает неизменяемое множество разрешённых растений для королевства
+     * (включая глобально разрешённые)
+     */
+    public Set<Material> getAllowedPlants(String kingdomId) {
+        Set<Material> result = allowedPlants.get(kingdomId);
+        return result != null ? result : globalAllowed;
+    }
+
+    /**
+     * Список королевств, описанных в конфигурации
+     */
+    public Set<String> getConfiguredKingdoms() {
+        return kingdomPlants.keySet();
+    }
+
+    /**
+     * Общее количество настроек растений
+     */
+    public int getTotalPlantsCount() {
+        return totalPlantsCount;
+    }
+
+    /**
+     * Компилирует политику из конфигурации.
+     *
+     * @param config           корневая секция конфигурации
+     * @param restrictTeamless ограничивать ли игроков без королевства
+     * @param classifier       таблица классификации материалов
+     * @param registry         реестр королевств
+     * @param logger           логгер для предупреждений
+     */
+    public static PlantPolicy compile(ConfigurationSection config, boolean restrictTeamless,
+                                      PlantClassifier classifier, KingdomRegistry registry, Logger logger) {
+        // Загрузка глобально разрешённых растений
+        Set<Material> globalAllowed = EnumSet.noneOf(Material.class);
+        for (String materialName : config.getStringList("global-allowed")) {
+            Material material = Material.matchMaterial(materialName);
+            if (material != null) {
+                globalAllowed.add(material);
+            } else {
+                logger.warning("Неизвестный материал в global-allowed: " + materialName);
+            }
+        }
+
+        // Загрузка растений для каждого королевства
+        Map<String, Set<Material>> kingdomPlants = new LinkedHashMap<>();
+        ConfigurationSection kingdomsSection = config.getConfigurationSection("kingdoms");
+        if (kingdomsSection != null) {
+            for (String kingdomId : kingdomsSection.getKeys(false)) {
+                Set<Material> allowedSet = EnumSet.noneOf(Material.class);
+
+                List<String> plants = config.getStringList("kingdoms." + kingdomId + ".allowed-plants");
+                for (String materialName : plants) {
+                    Material material = Material.matchMaterial(materialName);
+                    if (material != null) {
+                        allowedSet.add(material);
+                    } else {
+                        logger.warning("Неизвестный материал для " + kingdomId + ": " + materialName);
+                    }
+                }
+
+                kingdomPlants.put(kingdomId, Collections.unmodifiableSet(allowedSet));
+                registry.intern(kingdomId);
+                logger.info("Загружено " + allowedSet.size() + " растений для " + kingdomId);
+            }
+        }
+
+        // Базовая строка: всё, что не является растением, плюс глобально разрешённое
+        long[] base = new long[STRIDE];
+        for (Material material : Material.values()) {
+            if (!classifier.is(material, PlantClassifier.PLANTABLE) || globalAllowed.contains(material)) {
+                setBit(base, 0, material.ordinal());
+            }
+        }
+
+        int kingdomCount = registry.size();
+        long[] bits = new long[(FIRST_KINGDOM_ROW + kingdomCount) * STRIDE];
+
+        if (restrictTeamless) {
+            System.arraycopy(base, 0, bits, TEAMLESS_ROW * STRIDE, STRIDE);
+        } else {
+            Arrays.fill(bits, TEAMLESS_ROW * STRIDE, (TEAMLESS_ROW + 1) * STRIDE, -1L);
+        }
+
+        // Королевство, не найденное в конфигурации, может сажать только глобально разрешённое
+        System.arraycopy(base, 0, bits, UNKNOWN_ROW * STRIDE, STRIDE);
+
+        // Строка запрета: разрешено только то, что не является растением
+        for (Material material : Material.values()) {
+            if (!classifier.is(material, PlantClassifier.PLANTABLE)) {
+                setBit(bits, DENY_ROW * STRIDE, material.ordinal());
+            }
+        }
+
+        Map<String, Set<Material>> allowedPlants = new HashMap<>();
+        int totalPlantsCount = globalAllowed.size();
+
+        for (int kingdom = 0; kingdom < kingdomCount; kingdom++) {
+            int offset = (kingdom + FIRST_KINGDOM_ROW) * STRIDE;
+            System.arraycopy(base, 0, bits, offset, STRIDE);
+
+            Set<Material> kingdomSet = kingdomPlants.get(registry.id(kingdom));
+            if (kingdomSet == null) {
+                continue;
+            }
+
+            for (Material material : kingdomSet) {
+                setBit(bits, offset, material.ordinal());
+            }
+
+            Set<Material> allowed = EnumSet.copyOf(globalAllowed);
+            allowed.addAll(kingdomSet);
+            allowedPlants.put(registry.id(kingdom), Collections.unmodifiableSet(allowed));
+            totalPlantsCount += kingdomSet.size();
+        }
+
+        ZoneMode[] zoneModes = new ZoneMode[]{ZoneMode.NORMAL, ZoneMode.NORMAL, ZoneMode.NORMAL};
+        if (config.getBoolean("territories.enabled", false)) {
+            zoneModes[0] = zoneMode(config, "territories.rival", ZoneMode.DENY, logger);
+            zoneModes[1] = zoneMode(config, "territories.neutral", ZoneMode.NORMAL, logger);
+            zoneModes[2] = zoneMode(config, "territories.wild", ZoneMode.NORMAL, logger);
+        }
+
+        return new PlantPolicy(classifier, bits, kingdomCount, restrictTeamless, zoneModes,
+                compileGrowth(config, logger),
+                QuotaRules.compile(config, classifier, registry, logger),
+                compileCropProtection(config),
+                compileAcquisition(config),
+                RuleProgram.compile(config, classifier, registry, logger),
+                Collections.unmodifiableSet(globalAllowed),
+                Collections.unmodifiableMap(kingdomPlants),
+                allowedPlants,
+                totalPlantsCount);
+    }
+
+    private int computeRestrictedFlags() {
+        // Зоны могут запретить посадку игроком или жителем в любой строке
+        int result = territories
+                ? PlantClassifier.PLANTABLE | PlantClassifier.INTERACT_SEED | PlantClassifier.CROP_BLOCK : 0;
+        int[] flags = {PlantClassifier.PLANTABLE, PlantClassifier.INTERACT_SEED, PlantClassifier.VILLAGER_PLANTABLE};
+        int rows = bits.length / STRIDE;
+        for (int flag : flags) {
+            long[] mask = new long[STRIDE];
+            for (Material material : classifier.materials(flag)) {
+                setBit(mask, 0, material.ordinal());
+            }
+            scan:
+            for (int row = 0; row < rows; row++) {
+                if (row == DENY_ROW) {
+                    continue;
+                }
+                for (int word = 0; word < STRIDE; word++) {
+                    if ((mask[word] & ~bits[row * STRIDE + word]) != 0) {
+                        result |= flag;
+                        break scan;
+                    }
+                }
+            }
+        }
+
+        // Условные правила могут запретить посадку и получение кому угодно, в том числе жителям
+        for (int flag : new int[]{PlantClassifier.PLANTABLE, PlantClassifier.INTERACT_SEED,
+                PlantClassifier.VILLAGER_PLANTABLE}) {
+            for (Material material : classifier.materials(flag)) {
+                if (rules.mayDeny(material)) {
+                    result |= flag;
+                    break;
+                }
+            }
+        }
+        for (Material block : classifier.materials(PlantClassifier.CROP_BLOCK)) {
+            if (rules.mayDeny(classifier.seedOf(block))) {
+                result |= PlantClassifier.CROP_BLOCK;
+                break;
+            }
+        }
+
+        // Посевы жителей: без владельца действует отдельное правило, с владельцем — строка его королевства
+        crops:
+        for (Material block : classifier.materials(PlantClassifier.CROP_BLOCK)) {
+            Material seed = classifier.seedOf(block);
+            if (!allowsVillagerCrop(seed)) {
+                result |= PlantClassifier.CROP_BLOCK;
+                break;
+            }
+            for (int kingdom = 0; kingdom < kingdomCount; kingdom++) {
+                if (!canPlant(kingdom, seed)) {
+                    result |= PlantClassifier.CROP_BLOCK;
+                    break crops;
+                }
+            }
+        }
+        return result;
+    }
+
+    private long[] computeDeniable() {
+        long[] result = new long[STRIDE];
+        int rows = bits.length / STRIDE;
+        for (int row = 0; row < rows; row++) {
+            if (row == DENY_ROW) {
+                continue;
+            }
+            for (int word = 0; word < STRIDE; word++) {
+                result[word] |= ~bits[row * STRIDE + word];
+            }
+        }
+        for (Material material : classifier.materials(PlantClassifier.PLANTABLE)) {
+            if (rules.mayDeny(material)) {
+                setBit(result, 0, material.ordinal());
+            }
+        }
+        return result;
+    }
+
+    private static GrowthRules compileGrowth(ConfigurationSection config, Logger logger) {
+        if (!config.getBoolean("growth.enabled", false)) {
+            return GrowthRules.DISABLED;
+        }
+
+        float chance = 0f;
+        String action = config.getString("growth.action", "freeze");
+        if (action.equalsIgnoreCase("slow")) {
+            chance = (float) Math.min(1.0, Math.max(0.0, config.getDouble("growth.slow-chance", 0.25)));
+        } else if (!action.equalsIgnoreCase("freeze")) {
+            logger.warning("Неизвестное действие growth.action: " + action + " (freeze, slow)");
+        }
+
+        Map<String, ZoneMode> worldModes = new HashMap<>();
+        ConfigurationSection worlds = config.getConfigurationSection("growth.worlds");
+        if (worlds != null) {
+            for (String worldName : worlds.getKeys(false)) {
+                ZoneMode mode = zoneMode(config, "growth.worlds." + worldName, ZoneMode.NORMAL, logger);
+                if (mode != ZoneMode.NORMAL) {
+                    worldModes.put(worldName, mode);
+                }
+            }
+        }
+
+        return new GrowthRules(true, chance,
+                config.getBoolean("growth.bone-meal", true),
+                config.getBoolean("growth.structures", true),
+                config.getBoolean("growth.spread", true),
+                Map.copyOf(worldModes));
+    }
+
+    private static CropProtection compileCropProtection(ConfigurationSection config) {
+        if (!config.getBoolean("crop-protection.enabled", false)) {
+            return CropProtection.DISABLED;
+        }
+        return new CropProtection(true,
+                config.getBoolean("crop-protection.trampling", true),
+                config.getBoolean("crop-protection.villagers", true));
+    }
+
+    private static Acquisition compileAcquisition(ConfigurationSection config) {
+        if (!config.getBoolean("acquisition.enabled", false)) {
+            return Acquisition.DISABLED;
+        }
+        return new Acquisition(
+                config.getBoolean("acquisition.player-pickup", true),
+                config.getBoolean("acquisition.villager-pickup", true),
+                config.getBoolean("acquisition.trades", true),
+                config.getBoolean("acquisition.crafting", true));
+    }
+
+    private static ZoneMode zoneMode(ConfigurationSection config, String path, ZoneMode fallback, Logger logger) {
+        String value = config.getString(path);
+        if (value == null) {
+            return fallback;
+        }
+        ZoneMode mode = ZoneMode.parse(value);
+        if (mode == null) {
+            logger.warning("Неизвестный режим зоны в " + path + ": " + value + " (normal, global-only, deny)");
+            return fallback;
+        }
+        return mode;
+    }
+
+    private static void setBit(long[] bits, int offset, int ordinal) {
+        bits[offset + (ordinal >>> 6)] |= 1L << ordinal;
+    }
+}
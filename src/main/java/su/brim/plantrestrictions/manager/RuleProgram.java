@@ -0,0 +1,426 @@
+package su.brim.plantrestrictions.manager;
+
+import su.brim.plantrestrictions.territory.ZoneIndex;
+import org.bukkit.Material;
+import org.bukkit.Registry;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.block.Block;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Условные правила посадки из секции {@code rules}, скомпилированные в плоскую программу.
+ * <p>
+ * Правило разрешает или запрещает набор растений, если выполнены все его условия:
+ * королевство, группа прав, зона, мир, измерение, биом и высота. Правила упорядочены
+ * при компиляции: сначала по убыванию {@code priority}, при равном приоритете запрет
+ * раньше разрешения, дальше — порядок в конфигурации. Решение принимает первое подошедшее
+ * правило; если не подошло ни одно, действуют списки королевств и режимы зон.
+ * <p>
+ * Для каждого материала заранее собран список номеров правил, которые его касаются,
+ * поэтому проверка растения без правил — одно чтение массива. Условия хранятся
+ * в параллельных массивах (битовые маски королевств, зон и измерений, границы высоты),
+ * проверка не выделяет память и не обращается к YAML. Биом читается из блока только
+ * если до условия биома дошло хотя бы одно правило.
+ */
+public final class RuleProgram {
+
+    /** Ни одно правило не подошло */
+    public static final int NO_MATCH = 0;
+    public static final int ALLOW = 1;
+    public static final int DENY = 2;
+
+    /** Зона неизвестна (проверка без места): правила с условием зоны не подходят */
+    public static final int UNKNOWN_ZONE = Integer.MIN_VALUE;
+
+    /** Не больше групп прав, чем бит в int */
+    static final int MAX_GROUPS = Integer.SIZE;
+
+    private static final int ZONE_OWN = 1;
+    private static final int ZONE_RIVAL = 1 << 1;
+    private static final int ZONE_NEUTRAL = 1 << 2;
+    private static final int ZONE_WILD = 1 << 3;
+    private static final int ANY_ZONE = ZONE_OWN | ZONE_RIVAL | ZONE_NEUTRAL | ZONE_WILD;
+    private static final int ANY_ENVIRONMENT = -1;
+
+    private static final Material[] MATERIALS = Material.values();
+    private static final int STRIDE = (MATERIALS.length + 63) >>> 6;
+
+    static final RuleProgram EMPTY = new RuleProgram(new Rule[0], new String[0]);
+
+    // Параллельные массивы по номеру правила в порядке проверки
+    private final boolean[] deny;
+    private final long[][] kingdoms;
+    private final int[] groups;
+    private final int[] zones;
+    private final String[][] worlds;
+    private final int[] environments;
+    private final Set<Biome>[] biomes;
+    private final int[] minY;
+    private final int[] maxY;
+    private final boolean[] located;
+    private final String[] ids;
+
+    // Номера правил для каждого материала по ordinal, null — правил нет
+    private final int[][] byMaterial;
+    private final long[] denied = new long[STRIDE];
+    private final String[] permissions;
+    private final boolean usesZones;
+
+    @SuppressWarnings("unchecked")
+    private RuleProgram(Rule[] rules, String[] permissions) {
+        int count = rules.length;
+        this.deny = new boolean[count];
+        this.kingdoms = new long[count][];
+        this.groups = new int[count];
+        this.zones = new int[count];
+        this.worlds = new String[count][];
+        this.environments = new int[count];
+        this.biomes = new Set[count];
+        this.minY = new int[count];
+        this.maxY = new int[count];
+        this.located = new boolean[count];
+        this.ids = new String[count];
+        this.permissions = permissions;
+
+        boolean zonesUsed = false;
+        List<List<Integer>> perMaterial = new ArrayList<>(MATERIALS.length);
+        for (int i = 0; i < MATERIALS.length; i++) {
+            perMaterial.add(null);
+        }
+        for (int r = 0; r < count; r++) {
+            Rule rule = rules[r];
+            deny[r] = rule.deny;
+            kingdoms[r] = rule.kingdoms;
+            groups[r] = rule.groups;
+            zones[r] = rule.zones;
+            worlds[r] = rule.worlds;
+            environments[r] = rule.environments;
+            biomes[r] = rule.biomes;
+            minY[r] = rule.minY;
+            maxY[r] = rule.maxY;
+            located[r] = rule.worlds != null || rule.environments != ANY_ENVIRONMENT || rule.biomes != null
+                    || rule.minY != Integer.MIN_VALUE || rule.maxY != Integer.MAX_VALUE;
+            ids[r] = rule.id;
+            zonesUsed |= rule.zones != ANY_ZONE;
+
+            for (Material plant : rule.plants) {
+                int ordinal = plant.ordinal();
+                List<Integer> list = perMaterial.get(ordinal);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    perMaterial.set(ordinal, list);
+                }
+                list.add(r);
+                if (rule.deny) {
+                    denied[ordinal >>> 6] |= 1L << ordinal;
+                }
+            }
+        }
+
+        this.byMaterial = new int[MATERIALS.length][];
+        for (int i = 0; i < MATERIALS.length; i++) {
+            List<Integer> list = perMaterial.get(i);
+            if (list != null) {
+                byMaterial[i] = list.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+        this.usesZones = zonesUsed;
+    }
+
+    /**
+     * Решение правил для посадки
+     *
+     * @param kingdom  индекс королевства ({@link KingdomRegistry#NO_KINGDOM} если без королевства)
+     * @param groups   маска групп прав игрока, см. {@link #getPermissions()}
+     * @param zone     зона из {@link ZoneIndex#zoneAt} или {@link #UNKNOWN_ZONE}
+     * @param target   блок, где появится растение; null — место неизвестно,
+     *                 правила с условиями места не подходят
+     * @return {@link #ALLOW}, {@link #DENY} или {@link #NO_MATCH}
+     */
+    public int evaluate(Material material, int kingdom, int groups, int zone, Block target) {
+        int[] candidates = byMaterial[material.ordinal()];
+        if (candidates == null) {
+            return NO_MATCH;
+        }
+
+        int zoneBit = zoneBit(kingdom, zone);
+        Biome biome = null;
+        for (int r : candidates) {
+            long[] kingdomMask = kingdoms[r];
+            if (kingdomMask != null) {
+                int bit = kingdom + 1;
+                if (bit >= kingdomMask.length << 6 || (kingdomMask[bit >>> 6] & (1L << bit)) == 0) {
+                    continue;
+                }
+            }
+            if ((groups & this.groups[r]) != this.groups[r]) {
+                continue;
+            }
+            if (zones[r] != ANY_ZONE && (zones[r] & zoneBit) == 0) {
+                continue;
+            }
+            if (located[r]) {
+                if (target == null) {
+                    continue;
+                }
+                World world = target.getWorld();
+                if (worlds[r] != null && !contains(worlds[r], world.getName())) {
+                    continue;
+                }
+                if ((environments[r] & (1 << world.getEnvironment().ordinal())) == 0) {
+                    continue;
+                }
+                int y = target.getY();
+                if (y < minY[r] || y > maxY[r]) {
+                    continue;
+                }
+                if (biomes[r] != null) {
+                    if (biome == null) {
+                        biome = target.getBiome();
+                    }
+                    if (!biomes[r].contains(biome)) {
+                        continue;
+                    }
+                }
+            }
+            return deny[r] ? DENY : ALLOW;
+        }
+        return NO_MATCH;
+    }
+
+    /**
+     * Есть ли правила с условием зоны. Тогда зону нужно искать, даже если режимы зон выключены.
+     */
+    public boolean usesZones() {
+        return usesZones;
+    }
+
+    /**
+     * Может ли какое-то правило запретить этот материал
+     */
+    public boolean mayDeny(Material material) {
+        int ordinal = material.ordinal();
+        return (denied[ordinal >>> 6] & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * Права групп: бит {@code i} маски групп игрока установлен, если у него есть право {@code permissions[i]}
+     */
+    public String[] getPermissions() {
+        return permissions.clone();
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    private static int zoneBit(int kingdom, int zone) {
+        if (zone == UNKNOWN_ZONE) {
+            return 0;
+        }
+        if (zone >= 0) {
+            return zone == kingdom ? ZONE_OWN : ZONE_RIVAL;
+        }
+        return zone == ZoneIndex.NEUTRAL ? ZONE_NEUTRAL : ZONE_WILD;
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String candidate : values) {
+            if (candidate.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Компилирует секцию {@code rules}: {@code id -> {effect, plants, kingdoms, permission,
+     * zones, worlds, dimensions, biomes, min-y, max-y, priority}}.
+     * Неизвестные значения пропускаются с предупреждением.
+     */
+    static RuleProgram compile(ConfigurationSection config, PlantClassifier classifier, KingdomRegistry registry,
+                               Logger logger) {
+        ConfigurationSection section = config.getConfigurationSection("rules");
+        if (section == null || section.getKeys(false).isEmpty()) {
+            return EMPTY;
+        }
+
+        Map<String, Integer> permissionGroups = new LinkedHashMap<>();
+        List<Rule> rules = new ArrayList<>();
+        for (String id : section.getKeys(false)) {
+            ConfigurationSection ruleSection = section.getConfigurationSection(id);
+            if (ruleSection == null) {
+                logger.warning("Правило rules." + id + " должно быть секцией");
+                continue;
+            }
+            Rule rule = compileRule(id, ruleSection, classifier, registry, permissionGroups, logger);
+            if (rule != null) {
+                rule.order = rules.size();
+                rules.add(rule);
+            }
+        }
+
+        // Приоритет по убыванию, при равном — запрет раньше разрешения, затем порядок в файле
+        rules.sort(Comparator.comparingInt((Rule rule) -> -rule.priority)
+                .thenComparing(rule -> !rule.deny)
+                .thenComparingInt(rule -> rule.order));
+
+        logger.info("Загружено " + rules.size() + " условных правил, групп прав: " + permissionGroups.size());
+        return new RuleProgram(rules.toArray(new Rule[0]), permissionGroups.keySet().toArray(new String[0]));
+    }
+
+    private static Rule compileRule(String id, ConfigurationSection section, PlantClassifier classifier,
+                                    KingdomRegistry registry, Map<String, Integer> permissionGroups, Logger logger) {
+        String where = "rules." + id;
+        Rule rule = new Rule();
+        rule.id = id;
+
+        String effect = section.getString("effect", "deny").toLowerCase(Locale.ROOT);
+        if (!effect.equals("allow") && !effect.equals("deny")) {
+            logger.warning("Неизвестный effect в " + where + ": " + effect + " (allow, deny)");
+            return null;
+        }
+        rule.deny = effect.equals("deny");
+        rule.priority = section.getInt("priority", 0);
+
+        List<String> plantNames = section.getStringList("plants");
+        Set<Material> plants = new HashSet<>();
+        for (String name : plantNames) {
+            if (name.equals("*")) {
+                plants.addAll(classifier.materials(PlantClassifier.PLANTABLE));
+                plants.addAll(classifier.materials(PlantClassifier.INTERACT_SEED));
+                continue;
+            }
+            Material material = Material.matchMaterial(name);
+            if (material == null) {
+                logger.warning("Неизвестный материал в " + where + ".plants: " + name);
+            } else {
+                plants.add(material);
+            }
+        }
+        if (plants.isEmpty()) {
+            logger.warning("Правило " + where + " не касается ни одного растения и пропущено");
+            return null;
+        }
+        rule.plants = plants.toArray(new Material[0]);
+
+        // Королевства: бит 0 — игроки без королевства, бит k + 1 — королевство k
+        List<String> kingdomIds = section.getStringList("kingdoms");
+        if (!kingdomIds.isEmpty()) {
+            List<Integer> indices = new ArrayList<>();
+            for (String kingdomId : kingdomIds) {
+                indices.add(kingdomId.equalsIgnoreCase("none") ? KingdomRegistry.NO_KINGDOM
+                        : registry.intern(kingdomId));
+            }
+            long[] mask = new long[(registry.size() + 1 + 63) >>> 6];
+            for (int index : indices) {
+                int bit = index + 1;
+                mask[bit >>> 6] |= 1L << bit;
+            }
+            rule.kingdoms = mask;
+        }
+
+        String permission = section.getString("permission");
+        if (permission != null && !permission.isBlank()) {
+            Integer group = permissionGroups.get(permission);
+            if (group == null) {
+                if (permissionGroups.size() == MAX_GROUPS) {
+                    logger.warning("Слишком много разных прав в rules (не больше " + MAX_GROUPS + "), правило "
+                            + where + " пропущено");
+                    return null;
+                }
+                group = permissionGroups.size();
+                permissionGroups.put(permission, group);
+            }
+            rule.groups = 1 << group;
+        }
+
+        List<String> zoneNames = section.getStringList("zones");
+        if (!zoneNames.isEmpty()) {
+            int mask = 0;
+            for (String zone : zoneNames) {
+                switch (zone.toLowerCase(Locale.ROOT)) {
+                    case "own" -> mask |= ZONE_OWN;
+                    case "rival" -> mask |= ZONE_RIVAL;
+                    case ZoneIndex.NEUTRAL_ID -> mask |= ZONE_NEUTRAL;
+                    case ZoneIndex.WILD_ID -> mask |= ZONE_WILD;
+                    default -> logger.warning("Неизвестная зона в " + where + ".zones: " + zone
+                            + " (own, rival, neutral, wild)");
+                }
+            }
+            rule.zones = mask;
+        }
+
+        List<String> worldNames = section.getStringList("worlds");
+        if (!worldNames.isEmpty()) {
+            rule.worlds = worldNames.toArray(new String[0]);
+        }
+
+        List<String> dimensions = section.getStringList("dimensions");
+        if (!dimensions.isEmpty()) {
+            int mask = 0;
+            for (String dimension : dimensions) {
+                try {
+                    mask |= 1 << World.Environment.valueOf(dimension.toUpperCase(Locale.ROOT)).ordinal();
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Неизвестное измерение в " + where + ".dimensions: " + dimension
+                            + " (" + Arrays.toString(World.Environment.values()) + ")");
+                }
+            }
+            rule.environments = mask;
+        }
+
+        List<String> biomeNames = section.getStringList("biomes");
+        if (!biomeNames.isEmpty()) {
+            Set<Biome> biomeSet = new HashSet<>();
+            for (String name : biomeNames) {
+                Biome biome = Registry.BIOME.match(name);
+                if (biome == null) {
+                    logger.warning("Неизвестный биом в " + where + ".biomes: " + name);
+                } else {
+                    biomeSet.add(biome);
+                }
+            }
+            rule.biomes = Set.copyOf(biomeSet);
+        }
+
+        if (section.isInt("min-y")) {
+            rule.minY = section.getInt("min-y");
+        }
+        if (section.isInt("max-y")) {
+            rule.maxY = section.getInt("max-y");
+        }
+        return rule;
+    }
+
+    /**
+     * Правило при компиляции
+     */
+    private static final class Rule {
+        String id;
+        boolean deny;
+        int priority;
+        int order;
+        Material[] plants;
+        long[] kingdoms;
+        int groups;
+        int zones = ANY_ZONE;
+        String[] worlds;
+        int environments = ANY_ENVIRONMENT;
+        Set<Biome> biomes;
+        int minY = Integer.MIN_VALUE;
+        int maxY = Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,86 @@
+package su.brim.plantrestrictions.manager;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Villager;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Королевство-владелец жителей-фермеров.
+ * <p>
+ * Владелец хранится в {@link PersistentDataContainer} жителя строковым ID
+ * королевства и переживает перезапуск сервера. Чтобы проверка посадки не
+ * разбирала PDC на каждое изменение блока, прочитанное значение кэшируется
+ * по UUID сущности — в том числе отсутствие владельца. Кэш очищается, когда
+ * сущность покидает мир.
+ */
+public class VillagerOwnership {
+
+    private final NamespacedKey key;
+    private final KingdomRegistry kingdomRegistry;
+    // Значения из KingdomRegistry (NO_KINGDOM — владельца нет); Integer для малых индексов не выделяется
+    private final Map<UUID, Integer> owners = new ConcurrentHashMap<>();
+
+    public VillagerOwnership(Plugin plugin, KingdomRegistry kingdomRegistry) {
+        this.key = new NamespacedKey(plugin, "owner-kingdom");
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Индекс королевства-владельца жителя.
+     * Вызывать в регионе жителя.
+     *
+     * @return индекс из {@link KingdomRegistry} или {@link KingdomRegistry#NO_KINGDOM}
+     */
+    public int getOwner(Villager villager) {
+        Integer cached = owners.get(villager.getUniqueId());
+        if (cached != null) {
+            return cached;
+        }
+        String kingdomId = villager.getPersistentDataContainer().get(key, PersistentDataType.STRING);
+        int owner = kingdomRegistry.intern(kingdomId);
+        owners.put(villager.getUniqueId(), owner);
+        return owner;
+    }
+
+    /**
+     * Назначает жителю королевство-владельца, заменяя прежнего.
+     * Игрокам без прав админа — только {@link #claim(Villager, int)}.
+     * Вызывать в регионе жителя.
+     *
+     * @return true если владелец изменился
+     */
+    public boolean setOwner(Villager villager, int kingdom) {
+        if (kingdom < 0 || getOwner(villager) == kingdom) {
+            return false;
+        }
+        villager.getPersistentDataContainer().set(key, PersistentDataType.STRING, kingdomRegistry.id(kingdom));
+        owners.put(villager.getUniqueId(), kingdom);
+        return true;
+    }
+
+    /**
+     * Назначает владельца, только если его ещё нет
+     *
+     * @return true если владелец назначен
+     */
+    public boolean claim(Villager villager, int kingdom) {
+        return getOwner(villager) == KingdomRegistry.NO_KINGDOM && setOwner(villager, kingdom);
+    }
+
+    /**
+     * Убирает сущность из кэша
+     */
+    public void evict(UUID entityId) {
+        owners.remove(entityId);
+    }
+
+    public int size() {
+        return owners.size();
+    }
+}
@@ -0,0 +1,241 @@
+package su.brim.plantrestrictions.metrics;
+
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import org.bukkit.Material;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики работы обработчиков событий.
+ * <p>
+ * Все счётчики — {@link LongAdder}, поэтому потоки регионов не конкурируют
+ * за одну ячейку памяти. Запись события — несколько инкрементов без блокировок
+ * и выделения памяти; замер задержки добавляет два вызова {@link System#nanoTime()}
+ * и может быть выключен.
+ */
+public class PlantMetrics {
+
+    /**
+     * Обработчики событий
+     */
+    public enum Handler {
+        PLACE("place"),
+        INTERACT("interact"),
+        VILLAGER_GIVE("villager_give"),
+        VILLAGER_PLANT("villager_plant"),
+        DISPENSE("dispense"),
+        GROW("grow"),
+        FERTILIZE("fertilize"),
+        STRUCTURE_GROW("structure_grow"),
+        SPREAD("spread"),
+        HARVEST("harvest"),
+        PICKUP("pickup"),
+        TRADE("trade"),
+        CRAFT("craft");
+
+        private final String label;
+
+        Handler(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * Чем закончилась обработка события
+     */
+    public enum Outcome {
+        /** Отсеяно дешёвыми предварительными проверками (не растение, не житель и т.п.) */
+        PREFILTERED("prefiltered"),
+        /** Пропущено из-за bypass права или админа KingdomsAddon */
+        BYPASS("bypass"),
+        ALLOWED("allowed"),
+        DENIED("denied");
+
+        private final String label;
+
+        Outcome(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /** Корзины гистограммы задержек: корзина i — задержка меньше 2^i нс */
+    public static final int LATENCY_BUCKETS = 32;
+
+    private static final Handler[] HANDLERS = Handler.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private final LongAdder[] events = newAdders(HANDLERS.length * OUTCOMES.length);
+    private final LongAdder[] latency = newAdders(HANDLERS.length * LATENCY_BUCKETS);
+    private final LongAdder[] latencySum = newAdders(HANDLERS.length);
+
+    private final KingdomRegistry kingdomRegistry;
+    // Индекс 0 — игроки без королевства, далее индексы из KingdomRegistry
+    private volatile LongAdder[] kingdomDenials = newAdders(1);
+    private final AtomicReferenceArray<LongAdder> materialDenials =
+            new AtomicReferenceArray<>(Material.values().length);
+
+    private volatile boolean enabled = true;
+    private volatile boolean latencyEnabled = true;
+
+    public PlantMetrics(KingdomRegistry kingdomRegistry) {
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setLatencyEnabled(boolean latencyEnabled) {
+        this.latencyEnabled = latencyEnabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Начало обработки события
+     *
+     * @return отметка времени или 0, если замер задержки выключен
+     */
+    public long start() {
+        return enabled && latencyEnabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Записывает итог обработки события
+     *
+     * @param start значение {@link #start()}
+     */
+    public void record(Handler handler, Outcome outcome, long start) {
+        if (!enabled) {
+            return;
+        }
+        events[handler.ordinal() * OUTCOMES.length + outcome.ordinal()].increment();
+
+        if (start != 0L) {
+            long nanos = Math.max(0L, System.nanoTime() - start);
+            int bucket = Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+            latency[handler.ordinal() * LATENCY_BUCKETS + bucket].increment();
+            latencySum[handler.ordinal()].add(nanos);
+        }
+    }
+
+    /**
+     * Записывает запрет посадки для королевства и материала
+     */
+    public void denied(int kingdom, Material material) {
+        if (!enabled) {
+            return;
+        }
+        kingdomAdder(kingdom + 1).increment();
+
+        int ordinal = material.ordinal();
+        LongAdder adder = materialDenials.get(ordinal);
+        if (adder == null) {
+            materialDenials.compareAndSet(ordinal, null, new LongAdder());
+            adder = materialDenials.get(ordinal);
+        }
+        adder.increment();
+    }
+
+    private LongAdder kingdomAdder(int slot) {
+        LongAdder[] adders = kingdomDenials;
+        if (slot < adders.length) {
+            return adders[slot];
+        }
+        synchronized (this) {
+            adders = kingdomDenials;
+            if (slot >= adders.length) {
+                LongAdder[] grown = new LongAdder[Math.max(slot + 1, kingdomRegistry.size() + 1)];
+                System.arraycopy(adders, 0, grown, 0, adders.length);
+                for (int i = adders.length; i < grown.length; i++) {
+                    grown[i] = new LongAdder();
+                }
+                kingdomDenials = grown;
+                adders = grown;
+            }
+            return adders[slot];
+        }
+    }
+
+    public long getEvents(Handler handler, Outcome outcome) {
+        return events[handler.ordinal() * OUTCOMES.length + outcome.ordinal()].sum();
+    }
+
+    public long getLatencyBucket(Handler handler, int bucket) {
+        return latency[handler.ordinal() * LATENCY_BUCKETS + bucket].sum();
+    }
+
+    public long getLatencySumNanos(Handler handler) {
+        return latencySum[handler.ordinal()].sum();
+    }
+
+    /**
+     * Оценка перцентиля задержки по гистограмме (верхняя граница корзины)
+     *
+     * @param quantile от 0 до 1
+     * @return задержка в наносекундах или -1, если замеров нет
+     */
+    public long getLatencyPercentile(Handler handler, double quantile) {
+        long[] buckets = new long[LATENCY_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            buckets[i] = getLatencyBucket(handler, i);
+            total += buckets[i];
+        }
+        if (total == 0) {
+            return -1L;
+        }
+        long target = (long) Math.ceil(total * quantile);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += buckets[i];
+            if (seen >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << (LATENCY_BUCKETS - 1);
+    }
+
+    /**
+     * Запреты по королевствам: индекс 0 — без королевства, далее индекс из реестра + 1
+     */
+    public long[] getKingdomDenials() {
+        LongAdder[] adders = kingdomDenials;
+        long[] result = new long[adders.length];
+        for (int i = 0; i < adders.length; i++) {
+            result[i] = adders[i].sum();
+        }
+        return result;
+    }
+
+    /**
+     * Запреты по материалам, индекс — {@link Material#ordinal()}
+     */
+    public long[] getMaterialDenials() {
+        long[] result = new long[materialDenials.length()];
+        for (int i = 0; i < result.length; i++) {
+            LongAdder adder = materialDenials.get(i);
+            result[i] = adder != null ? adder.sum() : 0L;
+        }
+        return result;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
@@ -0,0 +1,161 @@
+package su.brim.plantrestrictions.metrics;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.analytics.PlantAnalytics;
+import su.brim.plantrestrictions.manager.IdentityCache;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Material;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Периодически выгружает {@link PlantMetrics} в файл в текстовом формате Prometheus.
+ * Файл читает textfile collector node exporter'а; запись атомарная — через временный файл.
+ */
+public class PrometheusExporter {
+
+    private static final Material[] MATERIALS = Material.values();
+
+    private final PlantRestrictions plugin;
+    private final Path file;
+    private final long intervalSeconds;
+    private ScheduledTask task;
+
+    public PrometheusExporter(PlantRestrictions plugin, Path file, long intervalSeconds) {
+        this.plugin = plugin;
+        this.file = file;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    public void start() {
+        task = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, t -> export(),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getIntervalSeconds() {
+        return intervalSeconds;
+    }
+
+    /**
+     * Выгружает метрики в файл
+     */
+    public void export() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temp, render(), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Не удалось выгрузить метрики в " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Текущее состояние метрик в текстовом формате Prometheus
+     */
+    public String render() {
+        PlantMetrics metrics = plugin.getMetrics();
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("# HELP plantrestrictions_events_total Обработанные события по обработчику и итогу\n");
+        out.append("# TYPE plantrestrictions_events_total counter\n");
+        for (PlantMetrics.Handler handler : PlantMetrics.Handler.values()) {
+            for (PlantMetrics.Outcome outcome : PlantMetrics.Outcome.values()) {
+                out.append("plantrestrictions_events_total{handler=\"").append(handler.label())
+                        .append("\",outcome=\"").append(outcome.label()).append("\"} ")
+                        .append(metrics.getEvents(handler, outcome)).append('\n');
+            }
+        }
+
+        out.append("# HELP plantrestrictions_handler_latency_seconds Время обработки события\n");
+        out.append("# TYPE plantrestrictions_handler_latency_seconds histogram\n");
+        for (PlantMetrics.Handler handler : PlantMetrics.Handler.values()) {
+            long cumulative = 0;
+            for (int bucket = 0; bucket < PlantMetrics.LATENCY_BUCKETS; bucket++) {
+                cumulative += metrics.getLatencyBucket(handler, bucket);
+                out.append("plantrestrictions_handler_latency_seconds_bucket{handler=\"").append(handler.label())
+                        .append("\",le=\"").append(formatSeconds(1L << bucket)).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+            out.append("plantrestrictions_handler_latency_seconds_bucket{handler=\"").append(handler.label())
+                    .append("\",le=\"+Inf\"} ").append(cumulative).append('\n');
+            out.append("plantrestrictions_handler_latency_seconds_sum{handler=\"").append(handler.label())
+                    .append("\"} ").append(formatSeconds(metrics.getLatencySumNanos(handler))).append('\n');
+            out.append("plantrestrictions_handler_latency_seconds_count{handler=\"").append(handler.label())
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+
+        KingdomRegistry registry = plugin.getPlantManager().getKingdomRegistry();
+        long[] kingdomDenials = metrics.getKingdomDenials();
+        out.append("# HELP plantrestrictions_denials_by_kingdom_total Запреты посадки по королевству\n");
+        out.append("# TYPE plantrestrictions_denials_by_kingdom_total counter\n");
+        for (int i = 0; i < kingdomDenials.length; i++) {
+            String kingdom = i == 0 ? "" : registry.id(i - 1);
+            out.append("plantrestrictions_denials_by_kingdom_total{kingdom=\"").append(escape(kingdom))
+                    .append("\"} ").append(kingdomDenials[i]).append('\n');
+        }
+
+        long[] materialDenials = metrics.getMaterialDenials();
+        out.append("# HELP plantrestrictions_denials_by_material_total Запреты посадки по материалу\n");
+        out.append("# TYPE plantrestrictions_denials_by_material_total counter\n");
+        for (int i = 0; i < materialDenials.length; i++) {
+            if (materialDenials[i] > 0) {
+                out.append("plantrestrictions_denials_by_material_total{material=\"").append(MATERIALS[i].name())
+                        .append("\"} ").append(materialDenials[i]).append('\n');
+            }
+        }
+
+        IdentityCache cache = plugin.getIdentityCache();
+        out.append("# TYPE plantrestrictions_identity_cache_hits_total counter\n");
+        out.append("plantrestrictions_identity_cache_hits_total ").append(cache.getHits()).append('\n');
+        out.append("# TYPE plantrestrictions_identity_cache_misses_total counter\n");
+        out.append("plantrestrictions_identity_cache_misses_total ").append(cache.getMisses()).append('\n');
+        out.append("# TYPE plantrestrictions_debug_dropped_total counter\n");
+        out.append("plantrestrictions_debug_dropped_total ").append(plugin.getDebugLogger().getDroppedCount()).append('\n');
+        out.append("# TYPE plantrestrictions_audit_written_total counter\n");
+        out.append("plantrestrictions_audit_written_total ").append(plugin.getAuditLog().getWrittenCount()).append('\n');
+        out.append("# TYPE plantrestrictions_audit_dropped_total counter\n");
+        out.append("plantrestrictions_audit_dropped_total ").append(plugin.getAuditLog().getDroppedCount()).append('\n');
+        PlantAnalytics analytics = plugin.getAnalytics();
+        out.append("# HELP plantrestrictions_analytics_pending_rows Счётчики истории посадок, ещё не записанные в базу\n");
+        out.append("# TYPE plantrestrictions_analytics_pending_rows gauge\n");
+        out.append("plantrestrictions_analytics_pending_rows ").append(analytics.getPendingRows()).append('\n');
+        out.append("# TYPE plantrestrictions_analytics_flushed_rows_total counter\n");
+        out.append("plantrestrictions_analytics_flushed_rows_total ").append(analytics.getFlushedRows()).append('\n');
+        out.append("# TYPE plantrestrictions_analytics_failed_flushes_total counter\n");
+        out.append("plantrestrictions_analytics_failed_flushes_total ").append(analytics.getFailedFlushes()).append('\n');
+        if (plugin.getPolicySync().isEnabled()) {
+            out.append("# HELP plantrestrictions_cluster_policy_version Применённая версия общей политики, 0 — локальный config.yml\n");
+            out.append("# TYPE plantrestrictions_cluster_policy_version gauge\n");
+            out.append("plantrestrictions_cluster_policy_version ").append(plugin.getPolicySync().getAppliedVersion()).append('\n');
+        }
+
+        return out.toString();
+    }
+
+    private static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1_000_000_000.0);
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,297 @@
+package su.brim.plantrestrictions.quota;
+
+import su.brim.plantrestrictions.util.ConcurrentLongIntMap;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Счётчики растений по группам {@link QuotaRules} в каждом загруженном чанке.
+ * <p>
+ * Счётчик меняется на единицу при посадке, разрушении и росте растения и сразу
+ * записывается в PDC чанка, поэтому проверка лимита — одно чтение из
+ * {@link ConcurrentLongIntMap} по ключу чанка, без обхода блоков. В память
+ * счётчики попадают из PDC при загрузке чанка (или при первом обращении к нему)
+ * и убираются при выгрузке.
+ * <p>
+ * Чанк без сохранённых счётчиков, с новой группой или с устаревшим пересчётом
+ * ({@code quotas.rescan-hours}) один раз пересчитывается по {@link ChunkSnapshot}
+ * в асинхронном потоке — так исправляется расхождение из-за изменений, о которых
+ * сервер не сообщает событиями (вода, разрушение опоры).
+ */
+public class QuotaCounter {
+
+    // Служебная ячейка после счётчиков групп: состояние чанка в памяти.
+    // Значения от SCANNING — номер идущего пересчёта, чтобы отличить его от пересчёта после повторной загрузки
+    private static final int LOADED = 1;
+    private static final int SCANNING = 2;
+
+    private final AtomicInteger scans = new AtomicInteger();
+
+    private final Plugin plugin;
+    private final NamespacedKey countsKey;
+    private final NamespacedKey scannedKey;
+
+    private volatile Layout layout;
+
+    /**
+     * Счётчики для текущего набора групп: для каждого мира массив
+     * {@code [группа] -> ключ чанка -> количество} и последняя ячейка — состояние чанка
+     */
+    private static final class Layout {
+        // Заменяется на месте, пока набор групп тот же: счётчики и идущие пересчёты остаются
+        volatile QuotaRules rules;
+        // Ключи групп в контейнере PDC чанка
+        final NamespacedKey[] keys;
+        final Map<String, ConcurrentLongIntMap[]> worlds = new ConcurrentHashMap<>();
+
+        Layout(Plugin plugin, QuotaRules rules) {
+            this.rules = rules;
+            this.keys = new NamespacedKey[rules.groupCount()];
+            for (int group = 0; group < keys.length; group++) {
+                keys[group] = new NamespacedKey(plugin, rules.groupName(group));
+            }
+        }
+
+        ConcurrentLongIntMap[] world(String worldName) {
+            ConcurrentLongIntMap[] maps = worlds.get(worldName);
+            return maps != null ? maps : worlds.computeIfAbsent(worldName, name -> {
+                ConcurrentLongIntMap[] created = new ConcurrentLongIntMap[rules.groupCount() + 1];
+                for (int i = 0; i < created.length; i++) {
+                    created[i] = new ConcurrentLongIntMap();
+                }
+                return created;
+            });
+        }
+    }
+
+    public QuotaCounter(Plugin plugin) {
+        this.plugin = plugin;
+        this.countsKey = new NamespacedKey(plugin, "quota-counts");
+        this.scannedKey = new NamespacedKey(plugin, "quota-scanned");
+        this.layout = new Layout(plugin, QuotaRules.DISABLED);
+    }
+
+    /**
+     * Переходит на новые правила. Если набор групп изменился, счётчики в памяти
+     * сбрасываются и заново читаются из PDC при следующем обращении к чанку.
+     */
+    public void apply(QuotaRules rules) {
+        Layout current = layout;
+        if (!rules.enabled()) {
+            if (current.rules.enabled()) {
+                layout = new Layout(plugin, QuotaRules.DISABLED);
+            }
+        } else if (!current.rules.enabled() || !current.rules.groupNames().equals(rules.groupNames())) {
+            layout = new Layout(plugin, rules);
+        } else {
+            // Те же группы, другие лимиты — раскладка, счётчики и идущие пересчёты остаются
+            current.rules = rules;
+        }
+    }
+
+    /**
+     * Количество растений группы в чанке блока. Вызывать в регионе блока.
+     */
+    public int count(Block block, int group) {
+        Layout current = layout;
+        if (group >= current.rules.groupCount()) {
+            return 0;
+        }
+        ConcurrentLongIntMap[] maps = current.world(block.getWorld().getName());
+        long chunkKey = Chunk.getChunkKey(block.getX() >> 4, block.getZ() >> 4);
+        if (maps[maps.length - 1].get(chunkKey, 0) == 0) {
+            load(current, block.getChunk());
+        }
+        return maps[group].get(chunkKey, 0);
+    }
+
+    /**
+     * Учитывает замену блока {@code from} на {@code to}. Вызывать в регионе блока.
+     */
+    public void change(Block block, Material from, Material to) {
+        Layout current = layout;
+        if (!current.rules.enabled()) {
+            return;
+        }
+        int removed = current.rules.groupOfBlock(from);
+        int added = current.rules.groupOfBlock(to);
+        if (removed == added) {
+            return;
+        }
+        if (removed != QuotaRules.NO_GROUP) {
+            add(current, block, removed, -1);
+        }
+        if (added != QuotaRules.NO_GROUP) {
+            add(current, block, added, 1);
+        }
+    }
+
+    /**
+     * Переносит счётчики чанка из PDC в память. Вызывать при загрузке чанка, в его регионе.
+     */
+    public void load(Chunk chunk) {
+        Layout current = layout;
+        if (current.rules.enabled()) {
+            load(current, chunk);
+        }
+    }
+
+    /**
+     * Убирает счётчики выгружаемого чанка из памяти, в PDC они уже записаны
+     */
+    public void unload(Chunk chunk) {
+        ConcurrentLongIntMap[] maps = layout.worlds.get(chunk.getWorld().getName());
+        if (maps == null) {
+            return;
+        }
+        long chunkKey = chunk.getChunkKey();
+        for (ConcurrentLongIntMap map : maps) {
+            map.remove(chunkKey, 0);
+        }
+    }
+
+    /**
+     * Количество чанков со счётчиками в памяти
+     */
+    public int loadedChunks() {
+        int size = 0;
+        for (ConcurrentLongIntMap[] maps : layout.worlds.values()) {
+            size += maps[maps.length - 1].size();
+        }
+        return size;
+    }
+
+    private void add(Layout current, Block block, int group, int delta) {
+        ConcurrentLongIntMap[] maps = current.world(block.getWorld().getName());
+        long chunkKey = Chunk.getChunkKey(block.getX() >> 4, block.getZ() >> 4);
+        if (maps[maps.length - 1].get(chunkKey, 0) == 0) {
+            load(current, block.getChunk());
+        }
+        int value = maps[group].addTo(chunkKey, delta);
+        if (maps[maps.length - 1].get(chunkKey, 0) >= SCANNING) {
+            // Изменение поверх снимка пересчёта: store() прибавит его к результату и запишет в PDC
+            return;
+        }
+        if (value < 0) {
+            // Растение появилось без события и не попало в счётчик — не уходим в минус
+            maps[group].remove(chunkKey, 0);
+            value = 0;
+        }
+        PersistentDataContainer chunkData = block.getChunk().getPersistentDataContainer();
+        PersistentDataContainer counts = chunkData.get(countsKey, PersistentDataType.TAG_CONTAINER);
+        if (counts == null) {
+            counts = chunkData.getAdapterContext().newPersistentDataContainer();
+        }
+        counts.set(current.keys[group], PersistentDataType.INTEGER, value);
+        chunkData.set(countsKey, PersistentDataType.TAG_CONTAINER, counts);
+    }
+
+    private void load(Layout current, Chunk chunk) {
+        ConcurrentLongIntMap[] maps = current.world(chunk.getWorld().getName());
+        long chunkKey = chunk.getChunkKey();
+        QuotaRules rules = current.rules;
+
+        PersistentDataContainer chunkData = chunk.getPersistentDataContainer();
+        PersistentDataContainer counts = chunkData.get(countsKey, PersistentDataType.TAG_CONTAINER);
+        Long scanned = chunkData.get(scannedKey, PersistentDataType.LONG);
+        boolean stale = scanned == null
+                || (rules.rescanMillis() > 0 && System.currentTimeMillis() - scanned > rules.rescanMillis());
+
+        for (int group = 0; group < rules.groupCount(); group++) {
+            Integer value = counts != null ? counts.get(current.keys[group], PersistentDataType.INTEGER) : null;
+            if (value == null) {
+                stale = true;
+            } else if (value > 0) {
+                maps[group].put(chunkKey, value, 0);
+            }
+        }
+
+        if (!stale) {
+            maps[maps.length - 1].put(chunkKey, LOADED, 0);
+            return;
+        }
+        if (maps[maps.length - 1].get(chunkKey, 0) >= SCANNING) {
+            return;
+        }
+        // Чанк меняется только в своём регионе, поэтому между проверкой и записью пересчёт не начнётся
+        int scan = SCANNING + (scans.getAndIncrement() & 0x3fffffff);
+        maps[maps.length - 1].put(chunkKey, scan, 0);
+
+        // Пересчёт: снимок в регионе, обход блоков вне его, запись результата снова в регионе
+        World world = chunk.getWorld();
+        int chunkX = chunk.getX();
+        int chunkZ = chunk.getZ();
+        ChunkSnapshot snapshot = chunk.getChunkSnapshot(false, false, false);
+        // Счётчики на момент снимка: посадки и разрушения во время пересчёта — разница с ними
+        int[] before = new int[rules.groupCount()];
+        for (int group = 0; group < before.length; group++) {
+            before[group] = maps[group].get(chunkKey, 0);
+        }
+        int minY = world.getMinHeight();
+        int maxY = world.getMaxHeight();
+        plugin.getServer().getAsyncScheduler().runNow(plugin, task -> {
+            int[] scannedCounts = scan(rules, snapshot, minY, maxY);
+            plugin.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> {
+                if (layout != current || !world.isChunkLoaded(chunkX, chunkZ)) {
+                    return;
+                }
+                store(current, world.getChunkAt(chunkX, chunkZ), scan, scannedCounts, before);
+            });
+        });
+    }
+
+    private void store(Layout current, Chunk chunk, int scan, int[] scannedCounts, int[] before) {
+        ConcurrentLongIntMap[] maps = current.world(chunk.getWorld().getName());
+        long chunkKey = chunk.getChunkKey();
+        if (maps[maps.length - 1].get(chunkKey, 0) != scan) {
+            // Чанк выгружался, пока шёл пересчёт: разница со снимком уже неизвестна
+            return;
+        }
+        PersistentDataContainer chunkData = chunk.getPersistentDataContainer();
+        PersistentDataContainer counts = chunkData.getAdapterContext().newPersistentDataContainer();
+        for (int group = 0; group < scannedCounts.length; group++) {
+            int value = Math.max(0, scannedCounts[group] + maps[group].get(chunkKey, 0) - before[group]);
+            if (value > 0) {
+                maps[group].put(chunkKey, value, 0);
+            } else {
+                maps[group].remove(chunkKey, 0);
+            }
+            counts.set(current.keys[group], PersistentDataType.INTEGER, value);
+        }
+        chunkData.set(countsKey, PersistentDataType.TAG_CONTAINER, counts);
+        chunkData.set(scannedKey, PersistentDataType.LONG, System.currentTimeMillis());
+        maps[maps.length - 1].put(chunkKey, LOADED, 0);
+    }
+
+    private static int[] scan(QuotaRules rules, ChunkSnapshot snapshot, int minY, int maxY) {
+        int[] counts = new int[rules.groupCount()];
+        for (int sectionY = minY; sectionY < maxY; sectionY += 16) {
+            if (snapshot.isSectionEmpty((sectionY - minY) >> 4)) {
+                continue;
+            }
+            for (int y = sectionY; y < sectionY + 16 && y < maxY; y++) {
+                for (int x = 0; x < 16; x++) {
+                    for (int z = 0; z < 16; z++) {
+                        int group = rules.groupOfBlock(snapshot.getBlockType(x, y, z));
+                        if (group != QuotaRules.NO_GROUP) {
+                            counts[group]++;
+                        }
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+}
@@ -0,0 +1,230 @@
+package su.brim.plantrestrictions.quota;
+
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import org.bukkit.Material;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Скомпилированные лимиты растений на чанк из секции {@code quotas}.
+ * <p>
+ * Растения объединяются в группы; лимит задаётся на группу в одном чанке
+ * и может отличаться для разных королевств. Группа растения и группа растущего
+ * блока ({@link PlantClassifier#plantOf(Material)}) заранее разложены в массивы
+ * по ordinal, лимиты — в плоский массив {@code [строка королевства][группа]},
+ * поэтому проверка — несколько чтений из массивов.
+ * <p>
+ * Неизменяемый, входит в снимок {@code PlantPolicy}.
+ */
+public final class QuotaRules {
+
+    /** Группа не ограничена */
+    public static final int NO_GROUP = -1;
+    /** Лимита нет */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    public static final QuotaRules DISABLED = new QuotaRules(false, new String[0],
+            filled(Material.values().length), filled(Material.values().length), new int[0], 0L);
+
+    // Имена групп становятся ключами PDC чанка
+    private static final Pattern GROUP_NAME = Pattern.compile("[a-z0-9._-]+");
+    private static final String DEFAULT_ROW = "default";
+
+    private final boolean enabled;
+    private final String[] groups;
+    private final byte[] plantGroups;
+    private final byte[] blockGroups;
+    // Строка 0 — по умолчанию (без королевства и королевства без своих лимитов), далее индекс + 1
+    private final int[] limits;
+    private final long rescanMillis;
+
+    private QuotaRules(boolean enabled, String[] groups, byte[] plantGroups, byte[] blockGroups, int[] limits,
+                       long rescanMillis) {
+        this.enabled = enabled;
+        this.groups = groups;
+        this.plantGroups = plantGroups;
+        this.blockGroups = blockGroups;
+        this.limits = limits;
+        this.rescanMillis = rescanMillis;
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Группа растения (предмета, которым сажают)
+     *
+     * @return индекс группы или {@link #NO_GROUP}
+     */
+    public int groupOfPlant(Material plant) {
+        return plantGroups[plant.ordinal()];
+    }
+
+    /**
+     * Группа растущего блока
+     *
+     * @return индекс группы или {@link #NO_GROUP}
+     */
+    public int groupOfBlock(Material block) {
+        return blockGroups[block.ordinal()];
+    }
+
+    public int groupCount() {
+        return groups.length;
+    }
+
+    public String groupName(int group) {
+        return groups[group];
+    }
+
+    /**
+     * Имена групп в порядке индексов
+     */
+    public List<String> groupNames() {
+        return List.of(groups);
+    }
+
+    /**
+     * Лимит группы в чанке для королевства
+     *
+     * @param kingdom индекс королевства или {@link KingdomRegistry#NO_KINGDOM}
+     * @return лимит или {@link #UNLIMITED}
+     */
+    public int limit(int kingdom, int group) {
+        int row = kingdom + 1;
+        if (row * groups.length >= limits.length) {
+            // Королевство появилось после компиляции — лимиты по умолчанию
+            row = 0;
+        }
+        return limits[row * groups.length + group];
+    }
+
+    /**
+     * Через сколько мс сохранённые в чанке счётчики пересчитываются заново (0 — не пересчитываются)
+     */
+    public long rescanMillis() {
+        return rescanMillis;
+    }
+
+    /**
+     * Компилирует секцию {@code quotas}:
+     * <pre>
+     * quotas:
+     *   enabled: true
+     *   groups:
+     *     crops: [WHEAT_SEEDS, CARROT, POTATO]
+     *   limits:
+     *     default: { crops: 256 }
+     *     snow_kingdom: { crops: 128 }
+     * </pre>
+     */
+    public static QuotaRules compile(ConfigurationSection config, PlantClassifier classifier,
+                                     KingdomRegistry registry, Logger logger) {
+        if (!config.getBoolean("quotas.enabled", false)) {
+            return DISABLED;
+        }
+
+        Material[] materials = Material.values();
+        byte[] plantGroups = filled(materials.length);
+        List<String> groups = new ArrayList<>();
+
+        ConfigurationSection groupsSection = config.getConfigurationSection("quotas.groups");
+        if (groupsSection != null) {
+            for (String name : groupsSection.getKeys(false)) {
+                String groupName = name.toLowerCase(Locale.ROOT);
+                if (!GROUP_NAME.matcher(groupName).matches()) {
+                    logger.warning("Недопустимое имя группы quotas.groups." + name + " (разрешены a-z, 0-9, . _ -)");
+                    continue;
+                }
+                if (groups.size() == Byte.MAX_VALUE) {
+                    logger.warning("Слишком много групп в quotas.groups, " + name + " пропущена");
+                    continue;
+                }
+                int group = groups.size();
+                groups.add(groupName);
+                for (String materialName : groupsSection.getStringList(name)) {
+                    Material material = Material.matchMaterial(materialName);
+                    if (material == null) {
+                        logger.warning("Неизвестный материал в quotas.groups." + name + ": " + materialName);
+                    } else if (plantGroups[material.ordinal()] != NO_GROUP) {
+                        logger.warning(material + " уже входит в группу " + groups.get(plantGroups[material.ordinal()])
+                                + ", повтор в quotas.groups." + name + " пропущен");
+                    } else {
+                        plantGroups[material.ordinal()] = (byte) group;
+                    }
+                }
+            }
+        }
+
+        // Растущий блок считается в группе своего растения
+        byte[] blockGroups = filled(materials.length);
+        for (Material material : materials) {
+            Material plant = classifier.plantOf(material);
+            if (plant != null) {
+                blockGroups[material.ordinal()] = plantGroups[plant.ordinal()];
+            }
+        }
+
+        int groupCount = groups.size();
+        int kingdomCount = registry.size();
+        int[] limits = new int[(kingdomCount + 1) * groupCount];
+        Arrays.fill(limits, UNLIMITED);
+
+        ConfigurationSection limitsSection = config.getConfigurationSection("quotas.limits");
+        if (limitsSection != null) {
+            // Сначала строка по умолчанию, она же основа для строк королевств
+            readLimits(limitsSection.getConfigurationSection(DEFAULT_ROW), DEFAULT_ROW, groups, limits, 0, logger);
+            for (int kingdom = 0; kingdom < kingdomCount; kingdom++) {
+                System.arraycopy(limits, 0, limits, (kingdom + 1) * groupCount, groupCount);
+            }
+            for (String rowName : limitsSection.getKeys(false)) {
+                if (rowName.equals(DEFAULT_ROW)) {
+                    continue;
+                }
+                int kingdom = registry.indexOf(rowName);
+                if (kingdom == KingdomRegistry.NO_KINGDOM || kingdom >= kingdomCount) {
+                    logger.warning("Королевство " + rowName + " из quotas.limits не найдено в kingdoms,"
+                            + " действуют лимиты по умолчанию");
+                    continue;
+                }
+                readLimits(limitsSection.getConfigurationSection(rowName), rowName, groups, limits,
+                        (kingdom + 1) * groupCount, logger);
+            }
+        }
+
+        long rescanMillis = TimeUnit.HOURS.toMillis(Math.max(0L, config.getLong("quotas.rescan-hours", 24L)));
+        logger.info("Лимиты растений: " + groupCount + " групп");
+        return new QuotaRules(true, groups.toArray(new String[0]), plantGroups, blockGroups, limits, rescanMillis);
+    }
+
+    private static void readLimits(ConfigurationSection row, String rowName, List<String> groups, int[] limits,
+                                   int offset, Logger logger) {
+        if (row == null) {
+            return;
+        }
+        for (String groupName : row.getKeys(false)) {
+            int group = groups.indexOf(groupName.toLowerCase(Locale.ROOT));
+            if (group < 0) {
+                logger.warning("Неизвестная группа в quotas.limits." + rowName + ": " + groupName);
+                continue;
+            }
+            int limit = row.getInt(groupName, -1);
+            limits[offset + group] = limit < 0 ? UNLIMITED : limit;
+        }
+    }
+
+    private static byte[] filled(int length) {
+        byte[] result = new byte[length];
+        Arrays.fill(result, (byte) NO_GROUP);
+        return result;
+    }
+}
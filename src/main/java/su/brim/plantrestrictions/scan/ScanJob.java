@@ -0,0 +1,813 @@
+package su.brim.plantrestrictions.scan;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.manager.CropOwnership;
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.manager.PlantClassifier;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import su.brim.plantrestrictions.quota.QuotaCounter;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.block.data.Bisected;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Перепись растений мира ({@code /pr scan}) с необязательным удалением
+ * или заменой растений, которые по текущей политике здесь расти не должны.
+ * <p>
+ * Список чанков берётся из заголовков файлов регионов ({@link StoredChunks}).
+ * Каждый тик асинхронный диспетчер отправляет не больше {@code scan.chunks-per-tick}
+ * чанков в планировщики их регионов и держит не больше {@code scan.max-in-flight}
+ * чанков в работе. В регионе снимается только {@link ChunkSnapshot}, обход блоков
+ * выполняется асинхронно; исправление — снова в регионе, с проверкой, что блок не изменился.
+ * <p>
+ * Разрешено ли растение, решается так же, как для роста: на земле королевства —
+ * по правилам владельца, в нейтральной и ничьей земле — по режимам зон.
+ * Если задано королевство, весь мир проверяется по его правилам.
+ * <p>
+ * Прогресс и накопленные итоги периодически сохраняются в {@code scans/checkpoint.bin};
+ * после перезапуска сервера перепись продолжается с сохранённого места.
+ * Построчный отчёт по чанкам дописывается в {@code scans/<мир>-<время>.tsv}.
+ */
+public class ScanJob {
+
+    // 2: в конце контрольной точки — длина отчёта, которой она соответствует
+    private static final int FORMAT_VERSION = 2;
+    private static final String CHECKPOINT = "checkpoint.bin";
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // Сколько незагруженных чанков можно пропустить за тик в режиме loaded
+    private static final int SKIPS_PER_TICK = 4096;
+    private static final Material[] MATERIALS = Material.values();
+
+    /**
+     * Какие чанки проверять
+     */
+    public enum Source {
+        /** Только загруженные сейчас */
+        LOADED("loaded"),
+        /** Все сохранённые, незагруженные загружаются без генерации */
+        STORED("stored");
+
+        private final String label;
+
+        Source(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+
+        public static Source parse(String value) {
+            for (Source source : values()) {
+                if (source.label.equalsIgnoreCase(value)) {
+                    return source;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Что делать с неразрешёнными растениями
+     */
+    public enum Remediation {
+        /** Только посчитать */
+        NONE("none"),
+        /** Убрать */
+        REMOVE("remove"),
+        /** Заменить на {@link Options#convertTo()} */
+        CONVERT("convert");
+
+        private final String label;
+
+        Remediation(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    /**
+     * Параметры переписи
+     *
+     * @param kingdom   проверять по правилам этого королевства, null — по владельцам земли
+     * @param convertTo материал для {@link Remediation#CONVERT}, иначе null
+     */
+    public record Options(String world, Source source, String kingdom, Remediation remediation, Material convertTo) {
+    }
+
+    /**
+     * Ограничения нагрузки из секции {@code scan}
+     */
+    public record Settings(int chunksPerTick, int maxInFlight, long checkpointSeconds) {
+    }
+
+    private final PlantRestrictions plugin;
+    private final Options options;
+    private final Settings settings;
+    private final long[] chunks;
+    private final long startedAt;
+    private final Path directory;
+    private final Path reportFile;
+    private final int kingdom;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Дозапись отчёта и контрольной точки выполняется по очереди
+    private final Object reportLock = new Object();
+    private volatile boolean running;
+    private ScheduledTask dispatcher;
+    private long nextCheckpoint;
+
+    // Состояние ниже защищено this
+    private final BitSet completed;
+    private int cursor;
+    private long chunksScanned;
+    private long chunksSkipped;
+    private long plants;
+    private long disallowed;
+    private long removed;
+    private final Map<Material, long[]> materials = new EnumMap<>(Material.class);
+    private final Map<String, long[]> zones = new LinkedHashMap<>();
+    private final List<String> pendingRows = new ArrayList<>();
+
+    private ScanJob(PlantRestrictions plugin, Options options, Settings settings, long[] chunks, long startedAt,
+                    Path reportFile, BitSet completed) {
+        this.plugin = plugin;
+        this.options = options;
+        this.settings = settings;
+        this.chunks = chunks;
+        this.startedAt = startedAt;
+        this.directory = reportFile.getParent();
+        this.reportFile = reportFile;
+        this.completed = completed;
+        this.kingdom = options.kingdom() != null
+                ? plugin.getPlantManager().getKingdomRegistry().lookup(options.kingdom())
+                : KingdomRegistry.NO_KINGDOM;
+    }
+
+    /**
+     * Готовит новую перепись: читает список сохранённых чанков мира. Выполняет ввод-вывод.
+     */
+    public static ScanJob create(PlantRestrictions plugin, Options options, Settings settings) throws IOException {
+        World world = Bukkit.getWorld(options.world());
+        if (world == null) {
+            throw new IOException("мир " + options.world() + " не загружен");
+        }
+        long[] chunks = StoredChunks.list(world.getWorldFolder().toPath());
+        long startedAt = System.currentTimeMillis();
+        Path directory = directory(plugin);
+        Path reportFile = directory.resolve(options.world() + "-"
+                + LocalDateTime.now().format(FILE_TIME) + ".tsv");
+        return new ScanJob(plugin, options, settings, chunks, startedAt, reportFile, new BitSet(chunks.length));
+    }
+
+    /**
+     * Восстанавливает прерванную перепись из контрольной точки
+     *
+     * @return перепись или null, если контрольной точки нет
+     */
+    public static ScanJob resume(PlantRestrictions plugin, Settings settings) throws IOException {
+        Path checkpoint = directory(plugin).resolve(CHECKPOINT);
+        if (!Files.exists(checkpoint)) {
+            return null;
+        }
+        try (InputStream file = Files.newInputStream(checkpoint);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            int version = in.readInt();
+            if (version != 1 && version != FORMAT_VERSION) {
+                throw new IOException("неподдерживаемая версия контрольной точки");
+            }
+            String world = in.readUTF();
+            Source source = Source.valueOf(in.readUTF());
+            String kingdom = emptyToNull(in.readUTF());
+            Remediation remediation = Remediation.valueOf(in.readUTF());
+            String convertTo = emptyToNull(in.readUTF());
+            long startedAt = in.readLong();
+            Path reportFile = directory(plugin).resolve(in.readUTF());
+
+            long[] chunks = new long[in.readInt()];
+            for (int i = 0; i < chunks.length; i++) {
+                chunks[i] = in.readLong();
+            }
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+
+            Options options = new Options(world, source, kingdom, remediation,
+                    convertTo != null ? Material.matchMaterial(convertTo) : null);
+            ScanJob job = new ScanJob(plugin, options, settings, chunks, startedAt, reportFile, BitSet.valueOf(words));
+            job.chunksScanned = in.readLong();
+            job.chunksSkipped = in.readLong();
+            job.plants = in.readLong();
+            job.disallowed = in.readLong();
+            job.removed = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                Material material = Material.matchMaterial(in.readUTF());
+                long count = in.readLong();
+                long denied = in.readLong();
+                if (material != null) {
+                    job.materials.put(material, new long[]{count, denied});
+                }
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                job.zones.put(in.readUTF(), new long[]{in.readLong(), in.readLong()});
+            }
+            if (version >= 2) {
+                // Строки, дописанные после контрольной точки, относятся к чанкам, которые будут проверены заново
+                truncate(reportFile, in.readLong());
+            }
+            return job;
+        }
+    }
+
+    /**
+     * Запускает или продолжает перепись
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        nextCheckpoint = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(settings.checkpointSeconds());
+        dispatcher = plugin.getServer().getAsyncScheduler().runAtFixedRate(plugin, task -> tick(),
+                50L, 50L, TimeUnit.MILLISECONDS);
+        plugin.getLogger().info("Перепись растений мира " + options.world() + ": " + completed.cardinality()
+                + "/" + chunks.length + " чанков уже проверено");
+    }
+
+    /**
+     * Приостанавливает перепись и сохраняет контрольную точку.
+     * Незавершённые чанки будут проверены заново при продолжении.
+     */
+    public void pause() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            dispatcher.cancel();
+            dispatcher = null;
+        }
+        saveCheckpoint();
+    }
+
+    /**
+     * Останавливает перепись и удаляет контрольную точку; отчёт остаётся
+     */
+    public void cancel() {
+        synchronized (this) {
+            running = false;
+            if (dispatcher != null) {
+                dispatcher.cancel();
+                dispatcher = null;
+            }
+        }
+        flushReport(false);
+        try {
+            Files.deleteIfExists(directory.resolve(CHECKPOINT));
+        } catch (IOException e) {
+            plugin.getLogger().warning("Не удалось удалить контрольную точку переписи: " + e.getMessage());
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public Options getOptions() {
+        return options;
+    }
+
+    public Path getReportFile() {
+        return reportFile;
+    }
+
+    /**
+     * Текущие итоги
+     */
+    public synchronized Progress progress() {
+        List<Map.Entry<Material, long[]>> top = new ArrayList<>(materials.entrySet());
+        top.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        Map<String, Long> topMaterials = new LinkedHashMap<>();
+        for (Map.Entry<Material, long[]> entry : top.subList(0, Math.min(5, top.size()))) {
+            topMaterials.put(entry.getKey().name(), entry.getValue()[0]);
+        }
+        Map<String, Long> zoneCounts = new LinkedHashMap<>();
+        zones.forEach((zone, counts) -> zoneCounts.put(zone, counts[0]));
+        return new Progress(completed.cardinality(), chunks.length, chunksScanned, chunksSkipped,
+                plants, disallowed, removed, topMaterials, zoneCounts, System.currentTimeMillis() - startedAt);
+    }
+
+    /**
+     * Итоги переписи на момент запроса
+     *
+     * @param completedChunks обработано чанков из списка, включая пропущенные
+     * @param topMaterials    пять самых частых растений
+     */
+    public record Progress(int completedChunks, int totalChunks, long scannedChunks, long skippedChunks,
+                           long plants, long disallowed, long removed, Map<String, Long> topMaterials,
+                           Map<String, Long> zones, long elapsedMillis) {
+    }
+
+    private void tick() {
+        if (!running) {
+            return;
+        }
+        World world = Bukkit.getWorld(options.world());
+        if (world == null) {
+            plugin.getLogger().warning("Мир " + options.world() + " выгружен, перепись приостановлена");
+            pause();
+            return;
+        }
+
+        int budget = settings.chunksPerTick();
+        int skips = SKIPS_PER_TICK;
+        while (budget > 0 && skips > 0 && inFlight.get() < settings.maxInFlight()) {
+            int index = nextIndex();
+            if (index < 0) {
+                break;
+            }
+            long key = chunks[index];
+            int chunkX = (int) key;
+            int chunkZ = (int) (key >>> 32);
+            // Проверка загруженности без захода в регион не тратит бюджет тика
+            if (options.source() == Source.LOADED && !world.isChunkLoaded(chunkX, chunkZ)) {
+                complete(index, null);
+                skips--;
+                continue;
+            }
+            budget--;
+            inFlight.incrementAndGet();
+            dispatch(world, index, chunkX, chunkZ);
+        }
+
+        boolean done;
+        synchronized (this) {
+            done = cursor >= chunks.length && inFlight.get() == 0;
+        }
+        if (done) {
+            finish();
+        } else if (System.currentTimeMillis() >= nextCheckpoint) {
+            nextCheckpoint = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(settings.checkpointSeconds());
+            saveCheckpoint();
+        }
+    }
+
+    private synchronized int nextIndex() {
+        while (cursor < chunks.length && completed.get(cursor)) {
+            cursor++;
+        }
+        return cursor < chunks.length ? cursor++ : -1;
+    }
+
+    private void dispatch(World world, int index, int chunkX, int chunkZ) {
+        try {
+            if (options.source() == Source.LOADED) {
+                plugin.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> {
+                    if (world.isChunkLoaded(chunkX, chunkZ)) {
+                        snapshot(world, index, world.getChunkAt(chunkX, chunkZ));
+                    } else {
+                        release(index, null);
+                    }
+                });
+            } else {
+                world.getChunkAtAsync(chunkX, chunkZ, false).whenComplete((chunk, error) -> {
+                    if (chunk != null && error == null) {
+                        snapshot(world, index, chunk);
+                    } else {
+                        release(index, null);
+                    }
+                });
+            }
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("Перепись: чанк " + chunkX + "," + chunkZ + " пропущен: " + e);
+            release(index, null);
+        }
+    }
+
+    /**
+     * В регионе чанка: снимок и передача в асинхронный поток.
+     * Если растения будут исправляться, чанк удерживается билетом плагина до конца исправления.
+     */
+    private void snapshot(World world, int index, Chunk chunk) {
+        try {
+            int zone = plugin.getZoneIndex().zoneAt(world, chunk.getX(), chunk.getZ());
+            ChunkSnapshot snapshot = chunk.getChunkSnapshot(false, false, false);
+            int minY = world.getMinHeight();
+            int maxY = world.getMaxHeight();
+            if (options.remediation() != Remediation.NONE) {
+                chunk.addPluginChunkTicket(plugin);
+            }
+            plugin.getServer().getAsyncScheduler().runNow(plugin, task -> count(world, index, zone, snapshot, minY, maxY));
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("Перепись: чанк " + chunk.getX() + "," + chunk.getZ() + " пропущен: " + e);
+            release(index, null);
+        }
+    }
+
+    /**
+     * Вне региона: обход блоков снимка
+     */
+    private void count(World world, int index, int zone, ChunkSnapshot snapshot, int minY, int maxY) {
+        PlantPolicy policy = plugin.getPlantManager().getPolicy();
+        PlantClassifier classifier = policy.getClassifier();
+        String worldName = world.getName();
+        boolean remediate = options.remediation() != Remediation.NONE;
+
+        Map<Material, int[]> counts = new EnumMap<>(Material.class);
+        // Упакованные позиции (y << 8 | z << 4 | x) и ordinal найденного блока
+        int[] positions = new int[16];
+        int[] types = new int[16];
+        int found = 0;
+
+        for (int sectionY = minY; sectionY < maxY; sectionY += 16) {
+            if (snapshot.isSectionEmpty((sectionY - minY) >> 4)) {
+                continue;
+            }
+            for (int y = sectionY; y < sectionY + 16 && y < maxY; y++) {
+                for (int z = 0; z < 16; z++) {
+                    for (int x = 0; x < 16; x++) {
+                        Material type = snapshot.getBlockType(x, y, z);
+                        Material plant = classifier.plantOf(type);
+                        if (plant == null) {
+                            continue;
+                        }
+                        boolean allowed = kingdom != KingdomRegistry.NO_KINGDOM
+                                ? policy.canPlant(kingdom, zone, plant)
+                                : policy.canGrow(worldName, zone, plant);
+                        int[] plantCounts = counts.computeIfAbsent(plant, key -> new int[2]);
+                        plantCounts[0]++;
+                        if (allowed) {
+                            continue;
+                        }
+                        plantCounts[1]++;
+                        if (remediate) {
+                            if (found == positions.length) {
+                                positions = Arrays.copyOf(positions, found * 2);
+                                types = Arrays.copyOf(types, found * 2);
+                            }
+                            positions[found] = ((y - minY) << 8) | (z << 4) | x;
+                            types[found] = type.ordinal();
+                            found++;
+                        }
+                    }
+                }
+            }
+        }
+
+        ChunkResult result = new ChunkResult(snapshot.getX(), snapshot.getZ(), zone, counts);
+        int chunkX = snapshot.getX();
+        int chunkZ = snapshot.getZ();
+        if (found == 0) {
+            if (remediate) {
+                plugin.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ,
+                        () -> world.removePluginChunkTicket(chunkX, chunkZ, plugin));
+            }
+            release(index, result);
+            return;
+        }
+
+        int[] packed = Arrays.copyOf(positions, found);
+        int[] expected = Arrays.copyOf(types, found);
+        plugin.getServer().getRegionScheduler().execute(plugin, world, chunkX, chunkZ, () -> {
+            boolean loaded = world.isChunkLoaded(chunkX, chunkZ);
+            try {
+                if (loaded) {
+                    result.removed = remediate(world, chunkX, chunkZ, minY, packed, expected);
+                }
+            } catch (RuntimeException e) {
+                plugin.getLogger().warning("Перепись: исправление чанка " + chunkX + "," + chunkZ + " не выполнено: " + e);
+                release(index, null);
+                return;
+            } finally {
+                world.removePluginChunkTicket(chunkX, chunkZ, plugin);
+            }
+            if (loaded) {
+                release(index, result);
+            } else {
+                // Билет не удержал чанк (например, мир выгружался) — чанк проверяется заново
+                retry(index);
+            }
+        });
+    }
+
+    /**
+     * В регионе загруженного чанка: удаление или замена найденных растений, если блок не изменился.
+     * У высокого растения убираются обе половины, заменяется нижняя.
+     */
+    private int remediate(World world, int chunkX, int chunkZ, int minY, int[] positions, int[] types) {
+        Material target = options.remediation() == Remediation.CONVERT && options.convertTo() != null
+                ? options.convertTo()
+                : Material.AIR;
+        QuotaCounter quotaCounter = plugin.getQuotaCounter();
+        CropOwnership cropOwnership = plugin.getCropOwnership();
+        int changed = 0;
+        for (int i = 0; i < positions.length; i++) {
+            int position = positions[i];
+            Block block = world.getBlockAt((chunkX << 4) + (position & 15), minY + (position >>> 8),
+                    (chunkZ << 4) + ((position >> 4) & 15));
+            Material current = block.getType();
+            if (current.ordinal() != types[i]) {
+                continue;
+            }
+            if (block.getBlockData() instanceof Bisected bisected) {
+                Block other = block.getRelative(bisected.getHalf() == Bisected.Half.BOTTOM
+                        ? BlockFace.UP : BlockFace.DOWN);
+                if (other.getType() == current) {
+                    // Вторая половина тоже в списке, но к её очереди блок уже изменится
+                    Block top = bisected.getHalf() == Bisected.Half.BOTTOM ? other : block;
+                    Block bottom = top == other ? block : other;
+                    replace(top, current, Material.AIR, quotaCounter, cropOwnership);
+                    replace(bottom, current, target, quotaCounter, cropOwnership);
+                    changed++;
+                    continue;
+                }
+            }
+            replace(block, current, target, quotaCounter, cropOwnership);
+            changed++;
+        }
+        return changed;
+    }
+
+    private static void replace(Block block, Material current, Material target, QuotaCounter quotaCounter,
+                                CropOwnership cropOwnership) {
+        block.setType(target, false);
+        quotaCounter.change(block, current, target);
+        cropOwnership.remove(block);
+    }
+
+    private void release(int index, ChunkResult result) {
+        complete(index, result);
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Возвращает чанк в очередь, не отмечая его проверенным
+     */
+    private void retry(int index) {
+        synchronized (this) {
+            cursor = Math.min(cursor, index);
+        }
+        inFlight.decrementAndGet();
+    }
+
+    private synchronized void complete(int index, ChunkResult result) {
+        if (completed.get(index)) {
+            return;
+        }
+        completed.set(index);
+        if (result == null) {
+            chunksSkipped++;
+            return;
+        }
+        chunksScanned++;
+        removed += result.removed;
+        String zone = plugin.getZoneIndex().describe(result.zone);
+        long[] zoneCounts = zones.computeIfAbsent(zone, key -> new long[2]);
+        for (Map.Entry<Material, int[]> entry : result.counts.entrySet()) {
+            int[] counts = entry.getValue();
+            long[] total = materials.computeIfAbsent(entry.getKey(), key -> new long[2]);
+            total[0] += counts[0];
+            total[1] += counts[1];
+            zoneCounts[0] += counts[0];
+            zoneCounts[1] += counts[1];
+            plants += counts[0];
+            disallowed += counts[1];
+            pendingRows.add(result.chunkX + "\t" + result.chunkZ + "\t" + zone + "\t" + entry.getKey().name()
+                    + "\t" + counts[0] + "\t" + counts[1]);
+        }
+    }
+
+    private void finish() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            dispatcher.cancel();
+            dispatcher = null;
+        }
+        flushReport(true);
+        try {
+            Files.deleteIfExists(directory.resolve(CHECKPOINT));
+        } catch (IOException e) {
+            plugin.getLogger().warning("Не удалось удалить контрольную точку переписи: " + e.getMessage());
+        }
+        Progress progress = progress();
+        plugin.getLogger().info(String.format(Locale.ROOT,
+                "Перепись мира %s завершена: %d чанков, %d растений, %d не разрешено, %d исправлено. Отчёт: %s",
+                options.world(), progress.scannedChunks(), progress.plants(), progress.disallowed(),
+                progress.removed(), reportFile.getFileName()));
+        plugin.finishScan(this);
+    }
+
+    /**
+     * Сохраняет контрольную точку атомарно, через временный файл.
+     * Строки отчёта и состояние снимаются вместе, а в контрольную точку записывается длина
+     * отчёта после дозаписи: при продолжении лишние строки отчёта отрезаются, поэтому отчёт
+     * и контрольная точка всегда описывают одни и те же проверенные чанки.
+     */
+    private void saveCheckpoint() {
+        synchronized (reportLock) {
+            List<String> rows;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + chunks.length * 8);
+            DataOutputStream out = new DataOutputStream(buffer);
+            try {
+                synchronized (this) {
+                    rows = new ArrayList<>(pendingRows);
+                    pendingRows.clear();
+                    writeState(out);
+                }
+                long reportLength = appendReport(rows, null);
+                if (reportLength < 0) {
+                    // Прежняя контрольная точка остаётся, чанки после неё будут проверены заново
+                    return;
+                }
+                out.writeLong(reportLength);
+                out.flush();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+
+            Path checkpoint = directory.resolve(CHECKPOINT);
+            Path temp = directory.resolve(CHECKPOINT + ".tmp");
+            try {
+                Files.createDirectories(directory);
+                Files.write(temp, buffer.toByteArray());
+                Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Не удалось сохранить контрольную точку переписи: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(options.world());
+        out.writeUTF(options.source().name());
+        out.writeUTF(options.kingdom() != null ? options.kingdom() : "");
+        out.writeUTF(options.remediation().name());
+        out.writeUTF(options.convertTo() != null ? options.convertTo().name() : "");
+        out.writeLong(startedAt);
+        out.writeUTF(reportFile.getFileName().toString());
+
+        out.writeInt(chunks.length);
+        for (long chunk : chunks) {
+            out.writeLong(chunk);
+        }
+        long[] words = completed.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+
+        out.writeLong(chunksScanned);
+        out.writeLong(chunksSkipped);
+        out.writeLong(plants);
+        out.writeLong(disallowed);
+        out.writeLong(removed);
+        out.writeInt(materials.size());
+        for (Map.Entry<Material, long[]> entry : materials.entrySet()) {
+            out.writeUTF(entry.getKey().name());
+            out.writeLong(entry.getValue()[0]);
+            out.writeLong(entry.getValue()[1]);
+        }
+        out.writeInt(zones.size());
+        for (Map.Entry<String, long[]> entry : zones.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue()[0]);
+            out.writeLong(entry.getValue()[1]);
+        }
+    }
+
+    /**
+     * Дописывает накопленные строки отчёта, в конце переписи — и итоги
+     */
+    private void flushReport(boolean summary) {
+        synchronized (reportLock) {
+            List<String> rows;
+            Progress progress = summary ? progress() : null;
+            synchronized (this) {
+                rows = new ArrayList<>(pendingRows);
+                pendingRows.clear();
+            }
+            appendReport(rows, progress);
+        }
+    }
+
+    /**
+     * Дописывает строки и итоги в отчёт
+     *
+     * @return длина отчёта после записи или -1 при ошибке
+     */
+    private long appendReport(List<String> rows, Progress progress) {
+        try {
+            Files.createDirectories(directory);
+            boolean header = !Files.exists(reportFile);
+            try (OutputStream file = Files.newOutputStream(reportFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+                 BufferedWriter out = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8))) {
+                if (header) {
+                    out.write("# chunk_x\tchunk_z\tzone\tplant\tcount\tdisallowed\n");
+                }
+                for (String row : rows) {
+                    out.write(row);
+                    out.write('\n');
+                }
+                if (progress != null) {
+                    out.write("# итого: чанков " + progress.scannedChunks() + ", пропущено " + progress.skippedChunks()
+                            + ", растений " + progress.plants() + ", не разрешено " + progress.disallowed()
+                            + ", исправлено " + progress.removed() + "\n");
+                    for (Map.Entry<Material, long[]> entry : materialTotals().entrySet()) {
+                        out.write("# " + entry.getKey().name() + "\t" + entry.getValue()[0] + "\t"
+                                + entry.getValue()[1] + "\n");
+                    }
+                }
+            }
+            return Files.size(reportFile);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Не удалось записать отчёт переписи: " + e.getMessage());
+            return -1L;
+        }
+    }
+
+    private static void truncate(Path file, long length) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > length) {
+                channel.truncate(length);
+            }
+        }
+    }
+
+    private synchronized Map<Material, long[]> materialTotals() {
+        Map<Material, long[]> copy = new EnumMap<>(Material.class);
+        materials.forEach((material, counts) -> copy.put(material, counts.clone()));
+        return copy;
+    }
+
+    private static Path directory(PlantRestrictions plugin) {
+        return plugin.getDataFolder().toPath().resolve("scans");
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Итог одного чанка: растение -> [всего, не разрешено]
+     */
+    private static final class ChunkResult {
+        final int chunkX;
+        final int chunkZ;
+        final int zone;
+        final Map<Material, int[]> counts;
+        int removed;
+
+        ChunkResult(int chunkX, int chunkZ, int zone, Map<Material, int[]> counts) {
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.zone = zone;
+            this.counts = counts;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package su.brim.plantrestrictions.scan;
+
+import org.bukkit.Chunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Список сохранённых чанков мира по заголовкам файлов регионов {@code region/r.X.Z.mca}.
+ * <p>
+ * Первые 4 КиБ файла региона — таблица смещений 32×32 чанков; ненулевая запись
+ * означает, что чанк сохранён. Сами чанки не читаются.
+ */
+final class StoredChunks {
+
+    private static final Pattern REGION_FILE = Pattern.compile("r\\.(-?\\d+)\\.(-?\\d+)\\.mca");
+    private static final int HEADER_BYTES = 4096;
+
+    private StoredChunks() {
+    }
+
+    /**
+     * Ключи ({@link Chunk#getChunkKey(int, int)}) всех сохранённых чанков в порядке регионов
+     */
+    static long[] list(Path worldFolder) throws IOException {
+        Path regionFolder = worldFolder.resolve("region");
+        if (!Files.isDirectory(regionFolder)) {
+            return new long[0];
+        }
+
+        Path[] regionFiles;
+        try (Stream<Path> files = Files.list(regionFolder)) {
+            regionFiles = files.filter(file -> REGION_FILE.matcher(file.getFileName().toString()).matches())
+                    .sorted()
+                    .toArray(Path[]::new);
+        }
+
+        long[] keys = new long[1024];
+        int count = 0;
+        byte[] header = new byte[HEADER_BYTES];
+        for (Path file : regionFiles) {
+            Matcher matcher = REGION_FILE.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            int regionX = Integer.parseInt(matcher.group(1));
+            int regionZ = Integer.parseInt(matcher.group(2));
+
+            int read;
+            try (InputStream in = Files.newInputStream(file)) {
+                read = in.readNBytes(header, 0, HEADER_BYTES);
+            }
+            if (read < HEADER_BYTES) {
+                continue;
+            }
+
+            ByteBuffer table = ByteBuffer.wrap(header);
+            for (int i = 0; i < 1024; i++) {
+                if (table.getInt(i * 4) == 0) {
+                    continue;
+                }
+                if (count == keys.length) {
+                    keys = Arrays.copyOf(keys, count * 2);
+                }
+                keys[count++] = Chunk.getChunkKey((regionX << 5) + (i & 31), (regionZ << 5) + (i >> 5));
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+}
@@ -0,0 +1,190 @@
+package su.brim.plantrestrictions.season;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Расписание сезонов из секции {@code seasons}.
+ * <p>
+ * Сезон действует с даты {@code from} по дату {@code to} включительно. Дата вида {@code MM-dd}
+ * повторяется каждый год (диапазон может переходить через Новый год), вида {@code yyyy-MM-dd} —
+ * разовая. Если действуют несколько сезонов, выбирается первый по порядку в конфигурации.
+ * Секция {@code policy} сезона накладывается на основную конфигурацию по листовым ключам:
+ * списки заменяются целиком, секции дополняются.
+ */
+public final class SeasonSchedule {
+
+    /** Ни один сезон не действует — основная политика */
+    public static final int BASE = -1;
+
+    public static final SeasonSchedule NONE = new SeasonSchedule(ZoneId.systemDefault(), List.of());
+
+    private final ZoneId zone;
+    private final List<Window> windows;
+
+    /**
+     * Период сезона: годовой ({@code fromDay}/{@code toDay}) или разовый ({@code fromDate}/{@code toDate})
+     */
+    private record Window(String name, MonthDay fromDay, MonthDay toDay, LocalDate fromDate, LocalDate toDate,
+                          ConfigurationSection policy) {
+
+        boolean yearly() {
+            return fromDay != null;
+        }
+    }
+
+    private SeasonSchedule(ZoneId zone, List<Window> windows) {
+        this.zone = zone;
+        this.windows = List.copyOf(windows);
+    }
+
+    public int size() {
+        return windows.size();
+    }
+
+    public String name(int season) {
+        return season == BASE ? "основная" : windows.get(season).name();
+    }
+
+    /**
+     * Сезон, действующий в момент {@code now}
+     *
+     * @return номер сезона или {@link #BASE}
+     */
+    public int activeAt(Instant now) {
+        LocalDate date = LocalDate.ofInstant(now, zone);
+        MonthDay day = MonthDay.from(date);
+        for (int i = 0; i < windows.size(); i++) {
+            Window window = windows.get(i);
+            boolean active;
+            if (window.yearly()) {
+                active = window.fromDay().compareTo(window.toDay()) <= 0
+                        ? !day.isBefore(window.fromDay()) && !day.isAfter(window.toDay())
+                        : !day.isBefore(window.fromDay()) || !day.isAfter(window.toDay());
+            } else {
+                active = !date.isBefore(window.fromDate()) && !date.isAfter(window.toDate());
+            }
+            if (active) {
+                return i;
+            }
+        }
+        return BASE;
+    }
+
+    /**
+     * Ближайшая после {@code now} граница какого-либо сезона
+     *
+     * @return момент или null, если границ впереди нет
+     */
+    public Instant nextTransition(Instant now) {
+        int year = LocalDate.ofInstant(now, zone).getYear();
+        Instant next = null;
+        for (Window window : windows) {
+            if (window.yearly()) {
+                for (int y = year; y <= year + 1; y++) {
+                    next = earliestAfter(now, next, startOf(window.fromDay().atYear(y)));
+                    next = earliestAfter(now, next, startOf(window.toDay().atYear(y).plusDays(1)));
+                }
+            } else {
+                next = earliestAfter(now, next, startOf(window.fromDate()));
+                next = earliestAfter(now, next, startOf(window.toDate().plusDays(1)));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Основная конфигурация с наложенной секцией {@code policy} сезона
+     */
+    public YamlConfiguration overlay(YamlConfiguration base, int season) {
+        YamlConfiguration merged = new YamlConfiguration();
+        merged.setDefaults(base.getDefaults());
+        for (String key : base.getKeys(true)) {
+            if (!base.isConfigurationSection(key)) {
+                merged.set(key, base.get(key));
+            }
+        }
+        ConfigurationSection policy = windows.get(season).policy();
+        if (policy != null) {
+            for (String key : policy.getKeys(true)) {
+                if (!policy.isConfigurationSection(key)) {
+                    merged.set(key, policy.get(key));
+                }
+            }
+        }
+        return merged;
+    }
+
+    private Instant startOf(LocalDate date) {
+        return date.atStartOfDay(zone).toInstant();
+    }
+
+    private static Instant earliestAfter(Instant now, Instant current, Instant candidate) {
+        if (!candidate.isAfter(now)) {
+            return current;
+        }
+        return current == null || candidate.isBefore(current) ? candidate : current;
+    }
+
+    /**
+     * Разбирает секцию {@code seasons}. Сезоны с неверными датами пропускаются с предупреждением.
+     */
+    public static SeasonSchedule parse(ConfigurationSection config, Logger logger) {
+        if (!config.getBoolean("seasons.enabled", false)) {
+            return NONE;
+        }
+
+        ZoneId zone = ZoneId.systemDefault();
+        String zoneId = config.getString("seasons.timezone", "");
+        if (!zoneId.isBlank()) {
+            try {
+                zone = ZoneId.of(zoneId);
+            } catch (DateTimeException e) {
+                logger.warning("Неизвестный часовой пояс seasons.timezone: " + zoneId + ", используется " + zone);
+            }
+        }
+
+        List<Window> windows = new ArrayList<>();
+        ConfigurationSection variants = config.getConfigurationSection("seasons.variants");
+        if (variants != null) {
+            for (String name : variants.getKeys(false)) {
+                ConfigurationSection section = variants.getConfigurationSection(name);
+                if (section == null) {
+                    continue;
+                }
+                String from = section.getString("from", "");
+                String to = section.getString("to", "");
+                ConfigurationSection policy = section.getConfigurationSection("policy");
+                try {
+                    if (from.length() == 5 && to.length() == 5) {
+                        windows.add(new Window(name, MonthDay.parse("--" + from), MonthDay.parse("--" + to),
+                                null, null, policy));
+                    } else {
+                        LocalDate fromDate = LocalDate.parse(from);
+                        LocalDate toDate = LocalDate.parse(to);
+                        if (toDate.isBefore(fromDate)) {
+                            logger.warning("Сезон " + name + " заканчивается раньше, чем начинается, пропущен");
+                            continue;
+                        }
+                        windows.add(new Window(name, null, null, fromDate, toDate, policy));
+                    }
+                } catch (DateTimeParseException e) {
+                    logger.warning("Неверные даты сезона " + name + ": from: " + from + ", to: " + to
+                            + " (MM-dd каждый год или yyyy-MM-dd один раз)");
+                }
+            }
+        }
+        logger.info("Загружено сезонов: " + windows.size());
+        return new SeasonSchedule(zone, windows);
+    }
+}
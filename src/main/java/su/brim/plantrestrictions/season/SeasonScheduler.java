@@ -0,0 +1,101 @@
+package su.brim.plantrestrictions.season;
+
+import su.brim.plantrestrictions.PlantRestrictions;
+import su.brim.plantrestrictions.manager.PlantPolicy;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Смена политики по расписанию сезонов.
+ * <p>
+ * Политика каждого сезона компилируется при загрузке конфигурации вместе с основной.
+ * Одна асинхронная задача просыпается к ближайшей границе сезона и публикует
+ * готовый снимок; обработчики событий часы не смотрят и расписание не вычисляют.
+ * Задача просыпается не реже раза в час, чтобы перевод часов и сон сервера
+ * не сдвигали смену сезона.
+ */
+public class SeasonScheduler {
+
+    private static final long MAX_SLEEP_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private final PlantRestrictions plugin;
+    private SeasonSchedule schedule = SeasonSchedule.NONE;
+    private PlantPolicy base;
+    private PlantPolicy[] variants = new PlantPolicy[0];
+    private int active = SeasonSchedule.BASE;
+    private ScheduledTask task;
+
+    public SeasonScheduler(PlantRestrictions plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Устанавливает новое расписание и скомпилированные политики сезонов
+     *
+     * @param variants политики в порядке сезонов расписания
+     * @return политика, которая должна действовать сейчас
+     */
+    public synchronized PlantPolicy install(SeasonSchedule schedule, PlantPolicy base, PlantPolicy[] variants) {
+        this.schedule = schedule;
+        this.base = base;
+        this.variants = variants;
+        this.active = schedule.activeAt(Instant.now());
+        if (schedule.size() > 0) {
+            plugin.getLogger().info("Текущий сезон: " + schedule.name(active));
+        }
+        scheduleNext();
+        return policy(active);
+    }
+
+    /**
+     * Название действующего сезона
+     */
+    public synchronized String getActiveSeason() {
+        return schedule.name(active);
+    }
+
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void transition() {
+        // Блокировки берутся в том же порядке, что и при публикации перезагрузки
+        // (PlantRestrictions#publishReload), иначе смена сезона затёрла бы её или была затёрта
+        synchronized (plugin) {
+            synchronized (this) {
+                task = null;
+                int season = schedule.activeAt(Instant.now());
+                if (season != active) {
+                    plugin.getLogger().info("Смена сезона: " + schedule.name(active) + " -> " + schedule.name(season));
+                    active = season;
+                    plugin.publishPolicy(policy(season));
+                }
+                scheduleNext();
+            }
+        }
+    }
+
+    private void scheduleNext() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        Instant now = Instant.now();
+        Instant next = schedule.nextTransition(now);
+        if (next == null) {
+            return;
+        }
+        long delay = Math.max(1L, Math.min(MAX_SLEEP_MILLIS, next.toEpochMilli() - now.toEpochMilli()));
+        task = plugin.getServer().getAsyncScheduler().runDelayed(plugin, t -> transition(),
+                delay, TimeUnit.MILLISECONDS);
+    }
+
+    private PlantPolicy policy(int season) {
+        return season == SeasonSchedule.BASE ? base : variants[season];
+    }
+}
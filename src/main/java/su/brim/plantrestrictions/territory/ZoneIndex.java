@@ -0,0 +1,216 @@
+package su.brim.plantrestrictions.territory;
+
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.util.ConcurrentLongIntMap;
+import org.bukkit.Chunk;
+import org.bukkit.NamespacedKey;
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Индекс зон по чанкам: для каждого мира — отображение ключа чанка
+ * ({@link Chunk#getChunkKey(int, int)}) в зону.
+ * <p>
+ * Зона — индекс королевства-владельца из {@link KingdomRegistry},
+ * {@link #NEUTRAL} или {@link #WILD} (ничья земля). Индекс состоит из двух слоёв:
+ * <ul>
+ *     <li>базовый — прямоугольники из секции {@code territories.worlds},
+ *     пересобирается при перезагрузке и публикуется целиком;</li>
+ *     <li>точечные назначения — хранятся в {@link PersistentDataContainer} чанка,
+ *     попадают в индекс при загрузке чанка и убираются при выгрузке,
+ *     меняются командой {@code /pr zone} без пересборки.</li>
+ * </ul>
+ * Поиск не выделяет память и не упаковывает ключ чанка.
+ */
+public class ZoneIndex {
+
+    /** Ничья земля */
+    public static final int WILD = -1;
+    /** Нейтральная зона */
+    public static final int NEUTRAL = -2;
+
+    public static final String WILD_ID = "wild";
+    public static final String NEUTRAL_ID = "neutral";
+
+    // Отсутствие точечного назначения — смотрим базовый слой
+    private static final int MISSING = Integer.MIN_VALUE;
+    private static final int MAX_BASE_CHUNKS = 1 << 22;
+
+    private final NamespacedKey key;
+    private final KingdomRegistry kingdomRegistry;
+    private volatile Map<String, ConcurrentLongIntMap> base = Map.of();
+    private final Map<String, ConcurrentLongIntMap> overrides = new ConcurrentHashMap<>();
+
+    public ZoneIndex(Plugin plugin, KingdomRegistry kingdomRegistry) {
+        this.key = new NamespacedKey(plugin, "zone");
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Зона чанка
+     *
+     * @return индекс королевства, {@link #NEUTRAL} или {@link #WILD}
+     */
+    public int zoneAt(World world, int chunkX, int chunkZ) {
+        long chunkKey = Chunk.getChunkKey(chunkX, chunkZ);
+        String worldName = world.getName();
+
+        ConcurrentLongIntMap assigned = overrides.get(worldName);
+        if (assigned != null) {
+            int zone = assigned.get(chunkKey, MISSING);
+            if (zone != MISSING) {
+                return zone;
+            }
+        }
+        ConcurrentLongIntMap configured = base.get(worldName);
+        return configured != null ? configured.get(chunkKey, WILD) : WILD;
+    }
+
+    /**
+     * Собирает базовый слой из секции {@code territories.worlds}, не затрагивая текущий.
+     * Формат: {@code мир -> зона -> ["x1,z1,x2,z2", ...]} в координатах чанков.
+     */
+    public Map<String, ConcurrentLongIntMap> compile(ConfigurationSection config, Logger logger) {
+        Map<String, ConcurrentLongIntMap> result = new HashMap<>();
+        ConfigurationSection worlds = config.getConfigurationSection("territories.worlds");
+        if (worlds == null) {
+            return result;
+        }
+
+        int total = 0;
+        for (String worldName : worlds.getKeys(false)) {
+            ConfigurationSection zones = worlds.getConfigurationSection(worldName);
+            if (zones == null) {
+                continue;
+            }
+            ConcurrentLongIntMap chunks = new ConcurrentLongIntMap();
+            for (String zoneId : zones.getKeys(false)) {
+                int zone = parseZone(zoneId);
+                List<String> areas = zones.getStringList(zoneId);
+                for (String area : areas) {
+                    int[] bounds = parseArea(area);
+                    if (bounds == null) {
+                        logger.warning("Неверная область " + area + " для " + zoneId + " в мире " + worldName
+                                + " (ожидается x1,z1,x2,z2 в чанках)");
+                        continue;
+                    }
+                    long cells = (long) (bounds[2] - bounds[0] + 1) * (bounds[3] - bounds[1] + 1);
+                    if (total + cells > MAX_BASE_CHUNKS) {
+                        logger.warning("Слишком большая область " + area + " для " + zoneId + " в мире " + worldName
+                                + ": всего допускается " + MAX_BASE_CHUNKS + " чанков");
+                        continue;
+                    }
+                    total += (int) cells;
+                    for (int x = bounds[0]; x <= bounds[2]; x++) {
+                        for (int z = bounds[1]; z <= bounds[3]; z++) {
+                            chunks.put(Chunk.getChunkKey(x, z), zone, WILD);
+                        }
+                    }
+                }
+            }
+            result.put(worldName, chunks);
+            logger.info("Загружено " + chunks.size() + " чанков зон для мира " + worldName);
+        }
+        return result;
+    }
+
+    /**
+     * Атомарно публикует базовый слой
+     */
+    public void publish(Map<String, ConcurrentLongIntMap> compiled) {
+        this.base = Map.copyOf(compiled);
+    }
+
+    /**
+     * Переносит точечное назначение из PDC чанка в индекс.
+     * Вызывать при загрузке чанка, в его регионе.
+     */
+    public void load(Chunk chunk) {
+        String zoneId = chunk.getPersistentDataContainer().get(key, PersistentDataType.STRING);
+        if (zoneId != null) {
+            overrides.computeIfAbsent(chunk.getWorld().getName(), name -> new ConcurrentLongIntMap())
+                    .put(chunk.getChunkKey(), parseZone(zoneId), MISSING);
+        }
+    }
+
+    /**
+     * Убирает точечное назначение выгружаемого чанка из индекса
+     */
+    public void unload(Chunk chunk) {
+        ConcurrentLongIntMap assigned = overrides.get(chunk.getWorld().getName());
+        if (assigned != null) {
+            assigned.remove(chunk.getChunkKey(), MISSING);
+        }
+    }
+
+    /**
+     * Назначает чанку зону поверх базового слоя. Вызывать в регионе чанка.
+     */
+    public void assign(Chunk chunk, int zone) {
+        chunk.getPersistentDataContainer().set(key, PersistentDataType.STRING, describe(zone));
+        overrides.computeIfAbsent(chunk.getWorld().getName(), name -> new ConcurrentLongIntMap())
+                .put(chunk.getChunkKey(), zone, MISSING);
+    }
+
+    /**
+     * Снимает точечное назначение, чанк снова следует базовому слою. Вызывать в регионе чанка.
+     *
+     * @return true если назначение было
+     */
+    public boolean reset(Chunk chunk) {
+        PersistentDataContainer container = chunk.getPersistentDataContainer();
+        boolean had = container.has(key, PersistentDataType.STRING);
+        container.remove(key);
+        unload(chunk);
+        return had;
+    }
+
+    /**
+     * Зона по строковому ID: {@value #NEUTRAL_ID}, {@value #WILD_ID} или ID королевства
+     */
+    public int parseZone(String zoneId) {
+        if (NEUTRAL_ID.equalsIgnoreCase(zoneId)) {
+            return NEUTRAL;
+        }
+        if (WILD_ID.equalsIgnoreCase(zoneId)) {
+            return WILD;
+        }
+        return kingdomRegistry.intern(zoneId);
+    }
+
+    /**
+     * Строковый ID зоны
+     */
+    public String describe(int zone) {
+        return switch (zone) {
+            case NEUTRAL -> NEUTRAL_ID;
+            case WILD -> WILD_ID;
+            default -> kingdomRegistry.id(zone);
+        };
+    }
+
+    private static int[] parseArea(String area) {
+        String[] parts = area.split(",");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            int x1 = Integer.parseInt(parts[0].trim());
+            int z1 = Integer.parseInt(parts[1].trim());
+            int x2 = Integer.parseInt(parts[2].trim());
+            int z2 = Integer.parseInt(parts[3].trim());
+            return new int[]{Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package su.brim.plantrestrictions.territory;
+
+import java.util.Locale;
+
+/**
+ * Что можно сажать в зоне определённого вида
+ */
+public enum ZoneMode {
+    /** Обычные правила королевства игрока */
+    NORMAL("normal"),
+    /** Только глобально разрешённые растения */
+    GLOBAL_ONLY("global-only"),
+    /** Никакие растения */
+    DENY("deny");
+
+    private final String label;
+
+    ZoneMode(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Режим по значению из конфигурации
+     *
+     * @return режим или null, если значение не распознано
+     */
+    public static ZoneMode parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        String normalized = value.trim().toLowerCase(Locale.ROOT).replace('_', '-');
+        for (ZoneMode mode : values()) {
+            if (mode.label.equals(normalized)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,51 @@
+package su.brim.plantrestrictions.trace;
+
+/**
+ * Формат файла трассы событий посадки ({@code traces/trace-<время>.bin.gz}).
+ * <p>
+ * Поток в gzip: заголовок, затем записи, каждая начинается с байта-тега.
+ * Строки (имена миров, королевств, материалов, обработчиков) записываются один раз
+ * определениями, события ссылаются на них номерами, поэтому событие занимает
+ * {@value #EVENT_BYTES} байт до сжатия. Имена вместо ordinal'ов позволяют
+ * воспроизводить трассу на сборке с другим набором материалов.
+ * <pre>
+ * заголовок: int MAGIC, short VERSION, long время начала (мс от эпохи),
+ *            byte число обработчиков, UTF метки обработчиков по порядку
+ * WORLD:     byte номер, UTF имя, byte World.Environment ordinal
+ * KINGDOM:   short индекс, UTF ID
+ * MATERIAL:  short номер, UTF имя
+ * EVENT:     long нс от начала, byte обработчик, byte рука, short материал,
+ *            short королевство (-1 — без королевства), int группы прав, byte мир,
+ *            int x чанка, int z чанка, short y, byte итог
+ * </pre>
+ * Мир {@link #NO_WORLD} — у события нет места (передача семян жителю).
+ */
+public final class TraceFormat {
+
+    public static final int MAGIC = 0x50525452;
+    public static final short VERSION = 1;
+
+    public static final byte TAG_WORLD = 1;
+    public static final byte TAG_KINGDOM = 2;
+    public static final byte TAG_MATERIAL = 3;
+    public static final byte TAG_EVENT = 4;
+
+    public static final int EVENT_BYTES = 31;
+
+    public static final byte HAND_MAIN = 0;
+    public static final byte HAND_OFF = 1;
+    public static final byte HAND_NONE = 2;
+
+    public static final int NO_WORLD = 0xFF;
+
+    /** Итоги: совпадают с порядком {@code PlantListener.Verdict} */
+    public static final byte ALLOWED = 0;
+    public static final byte DENIED = 1;
+    public static final byte QUOTA = 2;
+
+    public static final String FILE_PREFIX = "trace-";
+    public static final String FILE_SUFFIX = ".bin.gz";
+
+    private TraceFormat() {
+    }
+}
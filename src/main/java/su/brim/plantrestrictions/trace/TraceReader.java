@@ -0,0 +1,143 @@
+package su.brim.plantrestrictions.trace;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Последовательное чтение файла трассы {@link TraceFormat}.
+ * Определения миров, королевств и материалов разрешаются в имена, поэтому
+ * читатель не зависит от Bukkit и используется вне сервера.
+ */
+public class TraceReader implements Closeable {
+
+    /**
+     * Мир из трассы
+     *
+     * @param environment ordinal {@code World.Environment}
+     */
+    public record World(String name, int environment) {
+    }
+
+    /**
+     * Событие трассы
+     *
+     * @param handler  метка обработчика ({@code PlantMetrics.Handler#label()})
+     * @param kingdom  ID королевства или null
+     * @param world    мир или null, если у события нет места
+     */
+    public record Event(long nanos, String handler, byte hand, String material, String kingdom, int groups,
+                        World world, int chunkX, int chunkZ, int y, byte outcome) {
+    }
+
+    private final DataInputStream in;
+    private final long startMillis;
+    private final String[] handlers;
+    private final List<World> worlds = new ArrayList<>();
+    private final List<String> kingdoms = new ArrayList<>();
+    private final List<String> materials = new ArrayList<>();
+
+    public TraceReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file), 1 << 16)));
+        try {
+            if (in.readInt() != TraceFormat.MAGIC) {
+                throw new IOException("Не файл трассы: " + file);
+            }
+            short version = in.readShort();
+            if (version != TraceFormat.VERSION) {
+                throw new IOException("Неподдерживаемая версия трассы: " + version);
+            }
+            this.startMillis = in.readLong();
+            this.handlers = new String[in.readUnsignedByte()];
+            for (int i = 0; i < handlers.length; i++) {
+                handlers[i] = in.readUTF();
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Время начала записи, мс от эпохи
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Следующее событие
+     *
+     * @return событие или null в конце файла
+     */
+    public Event next() throws IOException {
+        while (true) {
+            int tag = in.read();
+            switch (tag) {
+                case -1 -> {
+                    return null;
+                }
+                case TraceFormat.TAG_WORLD -> define(worlds, in.readUnsignedByte(),
+                        new World(in.readUTF(), in.readUnsignedByte()));
+                case TraceFormat.TAG_KINGDOM -> define(kingdoms, in.readShort(), in.readUTF());
+                case TraceFormat.TAG_MATERIAL -> define(materials, in.readShort(), in.readUTF());
+                case TraceFormat.TAG_EVENT -> {
+                    return readEvent();
+                }
+                default -> throw new IOException("Неизвестный тег записи трассы: " + tag);
+            }
+        }
+    }
+
+    /**
+     * Все оставшиеся события. Обрезанный конец файла (сервер остановлен во время записи) не считается ошибкой.
+     */
+    public List<Event> readAll() throws IOException {
+        List<Event> events = new ArrayList<>();
+        try {
+            Event event;
+            while ((event = next()) != null) {
+                events.add(event);
+            }
+        } catch (EOFException e) {
+            // Трасса оборвана, берём всё прочитанное
+        }
+        return events;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private Event readEvent() throws IOException {
+        long nanos = in.readLong();
+        int handler = in.readUnsignedByte();
+        byte hand = in.readByte();
+        int material = in.readShort();
+        int kingdom = in.readShort();
+        int groups = in.readInt();
+        int world = in.readUnsignedByte();
+        int chunkX = in.readInt();
+        int chunkZ = in.readInt();
+        int y = in.readShort();
+        byte outcome = in.readByte();
+        return new Event(nanos, handlers[handler], hand, materials.get(material),
+                kingdom >= 0 ? kingdoms.get(kingdom) : null, groups,
+                world != TraceFormat.NO_WORLD ? worlds.get(world) : null, chunkX, chunkZ, y, outcome);
+    }
+
+    private static <T> void define(List<T> list, int index, T value) {
+        while (list.size() <= index) {
+            list.add(null);
+        }
+        list.set(index, value);
+    }
+}
@@ -0,0 +1,321 @@
+package su.brim.plantrestrictions.trace;
+
+import su.brim.plantrestrictions.manager.KingdomRegistry;
+import su.brim.plantrestrictions.metrics.PlantMetrics;
+import su.brim.plantrestrictions.util.MpscRingBuffer;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.inventory.EquipmentSlot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Запись трассы событий посадки для воспроизведения вне сервера
+ * ({@code TraceReplay} в {@code src/jmh}).
+ * <p>
+ * Как и {@code AuditLog}: потоки регионов только кладут событие в
+ * {@link MpscRingBuffer}, единственный поток записи пачками переводит их
+ * в формат {@link TraceFormat}. Переполненный буфер не задерживает игру —
+ * событие отбрасывается и учитывается в {@link #getDroppedCount()}.
+ * Пока запись не включена, {@link #record} сводится к одному чтению volatile-поля.
+ */
+public class TraceRecorder {
+
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int BATCH = 1024;
+    private static final long FLUSH_INTERVAL_MS = 200L;
+    private static final long STOP_TIMEOUT_MS = 5000L;
+
+    /**
+     * Событие в очереди записи. Имена мира и королевства разрешаются потоком записи.
+     */
+    private record Event(long nanos, PlantMetrics.Handler handler, byte hand, Material material, int kingdom,
+                         int groups, World world, int chunkX, int chunkZ, int y, byte outcome) {
+    }
+
+    private final Logger logger;
+    private final KingdomRegistry kingdomRegistry;
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    // null — запись не идёт
+    private volatile MpscRingBuffer<Event> buffer;
+    private volatile long startNanos;
+    private Thread writer;
+    private Writer task;
+    private Path file;
+
+    public TraceRecorder(Logger logger, KingdomRegistry kingdomRegistry) {
+        this.logger = logger;
+        this.kingdomRegistry = kingdomRegistry;
+    }
+
+    /**
+     * Начинает запись в новый файл в папке. Создаёт файл, поэтому вызывать в асинхронном потоке.
+     *
+     * @return файл трассы
+     * @throws IllegalStateException если запись уже идёт
+     */
+    public synchronized Path start(Path directory) throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("Запись трассы уже идёт");
+        }
+        Files.createDirectories(directory);
+        Path created = directory.resolve(TraceFormat.FILE_PREFIX + LocalDateTime.now().format(FILE_TIME)
+                + TraceFormat.FILE_SUFFIX);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(created, StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE), 1 << 16)));
+        writeHeader(out);
+
+        MpscRingBuffer<Event> queue = new MpscRingBuffer<>(BUFFER_SIZE);
+        written.reset();
+        dropped.reset();
+        startNanos = System.nanoTime();
+        task = new Writer(queue, out);
+        writer = new Thread(task, "PlantRestrictions-Trace");
+        writer.setDaemon(true);
+        writer.start();
+        file = created;
+        buffer = queue;
+        return created;
+    }
+
+    /**
+     * Останавливает запись, дописав накопленные события. Ждёт поток записи,
+     * поэтому вызывать в асинхронном потоке.
+     *
+     * @return файл трассы или null, если запись не шла или остановлена ошибкой
+     */
+    public Path stop() {
+        Thread stopping;
+        Writer stoppingTask;
+        Path stopped;
+        synchronized (this) {
+            buffer = null;
+            if (writer == null) {
+                return null;
+            }
+            stopping = writer;
+            stoppingTask = task;
+            stopped = file;
+            writer = null;
+            task = null;
+            file = null;
+        }
+        // Не прерывание: оно закрыло бы файл посреди записи, и конец трассы потерялся бы
+        stoppingTask.stopping = true;
+        LockSupport.unpark(stopping);
+        try {
+            stopping.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return stopped;
+    }
+
+    /**
+     * Запись остановлена ошибкой: освобождает место для новой записи
+     */
+    private synchronized void release(Writer failed) {
+        if (task == failed) {
+            buffer = null;
+            writer = null;
+            task = null;
+            file = null;
+        }
+    }
+
+    public boolean isRecording() {
+        return buffer != null;
+    }
+
+    /**
+     * Записывает решение обработчика. Не блокирует и не выполняет ввод-вывод.
+     *
+     * @param hand    рука игрока или null
+     * @param kingdom индекс королевства игрока или владельца
+     * @param groups  маска групп прав, 0 для жителей и механизмов
+     * @param target  блок, в котором появится растение, или null, если место неизвестно
+     * @param outcome {@link TraceFormat#ALLOWED}, {@link TraceFormat#DENIED} или {@link TraceFormat#QUOTA}
+     */
+    public void record(PlantMetrics.Handler handler, EquipmentSlot hand, Material material, int kingdom, int groups,
+                       Block target, byte outcome) {
+        MpscRingBuffer<Event> current = buffer;
+        if (current == null) {
+            return;
+        }
+        byte handByte = hand == EquipmentSlot.HAND ? TraceFormat.HAND_MAIN
+                : hand == EquipmentSlot.OFF_HAND ? TraceFormat.HAND_OFF : TraceFormat.HAND_NONE;
+        Event event = target != null
+                ? new Event(System.nanoTime() - startNanos, handler, handByte, material, kingdom, groups,
+                target.getWorld(), target.getX() >> 4, target.getZ() >> 4, target.getY(), outcome)
+                : new Event(System.nanoTime() - startNanos, handler, handByte, material, kingdom, groups,
+                null, 0, 0, 0, outcome);
+        if (!current.offer(event)) {
+            dropped.increment();
+        }
+    }
+
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(TraceFormat.MAGIC);
+        out.writeShort(TraceFormat.VERSION);
+        out.writeLong(System.currentTimeMillis());
+        PlantMetrics.Handler[] handlers = PlantMetrics.Handler.values();
+        out.writeByte(handlers.length);
+        for (PlantMetrics.Handler handler : handlers) {
+            out.writeUTF(handler.label());
+        }
+    }
+
+    /**
+     * Поток записи: переводит события в формат трассы, определяя строки при первой встрече
+     */
+    private final class Writer implements Runnable {
+
+        private final MpscRingBuffer<Event> source;
+        private final DataOutputStream out;
+        private final Map<World, Integer> worlds = new IdentityHashMap<>();
+        private final Map<Material, Integer> materials = new HashMap<>();
+        private final boolean[] kingdoms = new boolean[1 << 15];
+        private boolean failed;
+        private volatile boolean stopping;
+
+        Writer(MpscRingBuffer<Event> source, DataOutputStream out) {
+            this.source = source;
+            this.out = out;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long intervalNanos = TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS);
+                while (!stopping && !failed) {
+                    drain();
+                    // stop() будит поток через unpark
+                    LockSupport.parkNanos(this, intervalNanos);
+                }
+                drain();
+            } finally {
+                close(out);
+                if (failed) {
+                    release(this);
+                }
+            }
+        }
+
+        private void drain() {
+            if (failed) {
+                return;
+            }
+            int count;
+            do {
+                count = source.drain(this::write, BATCH);
+            } while (count == BATCH);
+        }
+
+        private void write(Event event) {
+            if (failed) {
+                return;
+            }
+            try {
+                int world = event.world() != null ? world(event.world()) : TraceFormat.NO_WORLD;
+                if (world < 0 || event.kingdom() >= kingdoms.length) {
+                    dropped.increment();
+                    return;
+                }
+                int kingdom = event.kingdom();
+                if (kingdom >= 0 && !kingdoms[kingdom]) {
+                    out.writeByte(TraceFormat.TAG_KINGDOM);
+                    out.writeShort(kingdom);
+                    out.writeUTF(kingdomRegistry.id(kingdom));
+                    kingdoms[kingdom] = true;
+                }
+                int material = material(event.material());
+
+                out.writeByte(TraceFormat.TAG_EVENT);
+                out.writeLong(event.nanos());
+                out.writeByte(event.handler().ordinal());
+                out.writeByte(event.hand());
+                out.writeShort(material);
+                out.writeShort(kingdom);
+                out.writeInt(event.groups());
+                out.writeByte(world);
+                out.writeInt(event.chunkX());
+                out.writeInt(event.chunkZ());
+                out.writeShort(event.y());
+                out.writeByte(event.outcome());
+                written.increment();
+            } catch (IOException e) {
+                logger.warning("Ошибка записи трассы, запись остановлена: " + e.getMessage());
+                failed = true;
+                // Новые события больше не принимаются; место для новой записи освобождает run()
+                buffer = null;
+            }
+        }
+
+        private int world(World world) throws IOException {
+            Integer index = worlds.get(world);
+            if (index != null) {
+                return index;
+            }
+            if (worlds.size() >= TraceFormat.NO_WORLD) {
+                return -1;
+            }
+            int created = worlds.size();
+            out.writeByte(TraceFormat.TAG_WORLD);
+            out.writeByte(created);
+            out.writeUTF(world.getName());
+            out.writeByte(world.getEnvironment().ordinal());
+            worlds.put(world, created);
+            return created;
+        }
+
+        private int material(Material material) throws IOException {
+            Integer index = materials.get(material);
+            if (index != null) {
+                return index;
+            }
+            int created = materials.size();
+            out.writeByte(TraceFormat.TAG_MATERIAL);
+            out.writeShort(created);
+            out.writeUTF(material.name());
+            materials.put(material, created);
+            return created;
+        }
+
+        private void close(OutputStream stream) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.warning("Ошибка закрытия файла трассы: " + e.getMessage());
+            }
+        }
+    }
+}
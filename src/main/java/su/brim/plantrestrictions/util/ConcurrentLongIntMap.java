@@ -0,0 +1,316 @@
+package su.brim.plantrestrictions.util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Потокобезопасное отображение {@code long -> int} без упаковки ключей и значений.
+ * <p>
+ * Ключи распределены по полосам, каждая полоса — таблица с открытой адресацией
+ * (линейное пробирование) под своим {@link StampedLock}. Чтение оптимистичное:
+ * без блокировки и выделения памяти, повтор под блокировкой чтения только при
+ * конкурентной записи в ту же полосу. Подходит для индексов по ключу чанка,
+ * которые читаются из всех потоков регионов, а меняются редко и точечно.
+ * <p>
+ * Ключ {@link Long#MIN_VALUE} зарезервирован под пустую ячейку.
+ */
+public final class ConcurrentLongIntMap {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * @param stripes количество полос, округляется вверх до степени двойки
+     */
+    public ConcurrentLongIntMap(int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.stripeMask = count - 1;
+    }
+
+    public ConcurrentLongIntMap() {
+        this(64);
+    }
+
+    /**
+     * Значение по ключу
+     *
+     * @param missing что вернуть, если ключа нет
+     */
+    public int get(long key, int missing) {
+        long mix = mix(key);
+        Stripe stripe = stripes[(int) mix & stripeMask];
+        int slot = (int) (mix >>> 32);
+
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            int result = find(stripe.table, key, slot, missing);
+            if (stripe.lock.validate(stamp)) {
+                return result;
+            }
+        }
+
+        stamp = stripe.lock.readLock();
+        try {
+            return find(stripe.table, key, slot, missing);
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Записывает значение
+     *
+     * @param missing что вернуть, если ключа не было
+     * @return предыдущее значение
+     */
+    public int put(long key, int value, int missing) {
+        checkKey(key);
+        long mix = mix(key);
+        Stripe stripe = stripes[(int) mix & stripeMask];
+        long stamp = stripe.lock.writeLock();
+        try {
+            return stripe.put(key, (int) (mix >>> 32), value, missing);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Прибавляет {@code delta} к значению (отсутствующий ключ считается нулём).
+     * Ключ со значением 0 удаляется, чтобы счётчики не копились бесконечно.
+     *
+     * @return новое значение
+     */
+    public int addTo(long key, int delta) {
+        checkKey(key);
+        long mix = mix(key);
+        Stripe stripe = stripes[(int) mix & stripeMask];
+        int slot = (int) (mix >>> 32);
+        long stamp = stripe.lock.writeLock();
+        try {
+            int value = find(stripe.table, key, slot, 0) + delta;
+            if (value == 0) {
+                stripe.remove(key, slot, 0);
+            } else {
+                stripe.put(key, slot, value, 0);
+            }
+            return value;
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Удаляет ключ
+     *
+     * @param missing что вернуть, если ключа не было
+     * @return удалённое значение
+     */
+    public int remove(long key, int missing) {
+        long mix = mix(key);
+        Stripe stripe = stripes[(int) mix & stripeMask];
+        long stamp = stripe.lock.writeLock();
+        try {
+            return stripe.remove(key, (int) (mix >>> 32), missing);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Количество ключей
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                size += stripe.size;
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Приблизительный объём таблиц в байтах: ключ и значение на каждую ячейку, включая пустые
+     */
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                bytes += (long) stripe.table.keys.length * (Long.BYTES + Integer.BYTES);
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+        return bytes;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.writeLock();
+            try {
+                stripe.table = new Table(INITIAL_CAPACITY);
+                stripe.size = 0;
+            } finally {
+                stripe.lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Обходит все пары. Каждая полоса обходится под блокировкой чтения,
+     * поэтому действие не должно обращаться к этому же отображению на запись.
+     */
+    public void forEach(Entry action) {
+        for (Stripe stripe : stripes) {
+            long stamp = stripe.lock.readLock();
+            try {
+                Table table = stripe.table;
+                for (int i = 0; i < table.keys.length; i++) {
+                    if (table.keys[i] != EMPTY) {
+                        action.accept(table.keys[i], table.values[i]);
+                    }
+                }
+            } finally {
+                stripe.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Пара ключ-значение без упаковки
+     */
+    @FunctionalInterface
+    public interface Entry {
+        void accept(long key, int value);
+    }
+
+    private static int find(Table table, long key, int slot, int missing) {
+        long[] keys = table.keys;
+        int mask = keys.length - 1;
+        int i = slot & mask;
+        // Ограничение числа проб защищает оптимистичное чтение от зацикливания на частично изменённой таблице
+        for (int probes = 0; probes <= mask; probes++) {
+            long k = keys[i];
+            if (k == key) {
+                return table.values[i];
+            }
+            if (k == EMPTY) {
+                return missing;
+            }
+            i = (i + 1) & mask;
+        }
+        return missing;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Ключ Long.MIN_VALUE зарезервирован");
+        }
+    }
+
+    private static final class Table {
+        final long[] keys;
+        final int[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+    }
+
+    private static final class Stripe {
+        final StampedLock lock = new StampedLock();
+        Table table = new Table(INITIAL_CAPACITY);
+        int size;
+
+        int put(long key, int slot, int value, int missing) {
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int i = slot & mask;
+            while (t.keys[i] != EMPTY) {
+                if (t.keys[i] == key) {
+                    int previous = t.values[i];
+                    t.values[i] = value;
+                    return previous;
+                }
+                i = (i + 1) & mask;
+            }
+            t.keys[i] = key;
+            t.values[i] = value;
+            if (++size > (t.keys.length >>> 2) * 3) {
+                grow();
+            }
+            return missing;
+        }
+
+        int remove(long key, int slot, int missing) {
+            Table t = table;
+            long[] keys = t.keys;
+            int mask = keys.length - 1;
+            int i = slot & mask;
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) {
+                    return missing;
+                }
+                i = (i + 1) & mask;
+            }
+            int removed = t.values[i];
+
+            // Обратный сдвиг: переносим следующие элементы цепочки на освободившееся место
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == EMPTY) {
+                    break;
+                }
+                int ideal = (int) (mix(keys[j]) >>> 32) & mask;
+                boolean between = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+                if (!between) {
+                    keys[i] = keys[j];
+                    t.values[i] = t.values[j];
+                    i = j;
+                }
+            }
+            keys[i] = EMPTY;
+            size--;
+            return removed;
+        }
+
+        private void grow() {
+            Table old = table;
+            Table grown = new Table(old.keys.length << 1);
+            int mask = grown.keys.length - 1;
+            for (int i = 0; i < old.keys.length; i++) {
+                long key = old.keys[i];
+                if (key == EMPTY) {
+                    continue;
+                }
+                int j = (int) (mix(key) >>> 32) & mask;
+                while (grown.keys[j] != EMPTY) {
+                    j = (j + 1) & mask;
+                }
+                grown.keys[j] = key;
+                grown.values[j] = old.values[i];
+            }
+            table = grown;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package su.brim.plantrestrictions.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Ограниченный кольцевой буфер без блокировок: много писателей, один читатель.
+ * <p>
+ * У каждой ячейки есть номер последовательности: писатель захватывает позицию
+ * одним CAS хвоста и публикует элемент записью номера, читатель забирает
+ * элементы по порядку позиций. Полный буфер не ждёт читателя —
+ * {@link #offer(Object)} сразу возвращает false.
+ * <p>
+ * {@link #poll()} и {@link #drain(Consumer, int)} можно вызывать только из одного потока.
+ */
+public final class MpscRingBuffer<E> {
+
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Меняется только читателем
+    private long head;
+
+    /**
+     * @param capacity ёмкость, округляется вверх до степени двойки
+     */
+    public MpscRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Добавляет элемент, не дожидаясь читателя
+     *
+     * @return false, если буфер заполнен
+     */
+    public boolean offer(E element) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.getAcquire(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.setPlain(index, element);
+                    // Публикация: после этой записи читатель увидит элемент
+                    sequences.setRelease(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // Ячейку ещё не освободил читатель
+                return false;
+            }
+            // Позицию занял другой писатель — пробуем следующую
+        }
+    }
+
+    /**
+     * Забирает следующий элемент. Только для потока-читателя.
+     *
+     * @return элемент или null, если буфер пуст
+     */
+    public E poll() {
+        int index = (int) head & mask;
+        if (sequences.getAcquire(index) != head + 1) {
+            return null;
+        }
+        E element = elements.getPlain(index);
+        elements.setPlain(index, null);
+        sequences.setRelease(index, head + mask + 1);
+        head++;
+        return element;
+    }
+
+    /**
+     * Забирает до {@code limit} элементов подряд. Только для потока-читателя.
+     *
+     * @return количество переданных элементов
+     */
+    public int drain(Consumer<? super E> action, int limit) {
+        int count = 0;
+        E element;
+        while (count < limit && (element = poll()) != null) {
+            action.accept(element);
+            count++;
+        }
+        return count;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Приблизительное количество элементов в буфере
+     */
+    public int size() {
+        return (int) Math.max(0L, Math.min(tail.get() - head, capacity()));
+    }
+}